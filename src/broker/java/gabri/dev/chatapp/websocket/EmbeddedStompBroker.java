@@ -0,0 +1,79 @@
+package gabri.dev.chatapp.websocket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.artemis.core.config.Configuration;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.core.settings.impl.AddressSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+
+/**
+ * Broker STOMP embebido (ActiveMQ Artemis) para desarrollo y pruebas locales con varios nodos.
+ * <p>
+ * Solo se compila con el perfil Maven {@code broker} y solo arranca con
+ * {@code app.broker.embedded.enabled=true}. El nodo que lo levanta sigue
+ * siendo un nodo normal: él y los demás apuntan su relay ({@code app.broker.mode=relay})
+ * a {@code app.broker.embedded.host}:{@code app.broker.embedded.port}.
+ * </p>
+ * <p>
+ * No persiste mensajes ni exige credenciales, y las colas y direcciones se crean al suscribirse
+ * y se borran al quedar sin suscriptores. {@code /topic/} se mapea a direcciones multicast
+ * (todas las suscripciones reciben cada mensaje) y {@code /queue/} a anycast, igual que el
+ * broker simple. En producción conviene un broker dedicado (Artemis o RabbitMQ con STOMP).
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.broker.embedded", name = "enabled", havingValue = "true")
+@Slf4j
+public class EmbeddedStompBroker {
+
+    @Value("${app.broker.embedded.host:0.0.0.0}")
+    private String host;
+
+    @Value("${app.broker.embedded.port:61613}")
+    private int port;
+
+    private EmbeddedActiveMQ server;
+
+    @PostConstruct
+    public void start() throws Exception {
+        String acceptor = "tcp://" + host + ":" + port
+                + "?protocols=STOMP"
+                + ";anycastPrefix=/queue/"
+                + ";multicastPrefix=/topic/"
+                // La conexión se da por caída tras 2 intervalos de heartbeat del cliente sin tráfico
+                + ";heartBeatToConnectionTtlModifier=2.0";
+
+        Configuration configuration = new ConfigurationImpl()
+                .setName("carrot-broker")
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .setJMXManagementEnabled(false)
+                .addAcceptorConfiguration("stomp", acceptor)
+                .addAddressSetting("#", new AddressSettings()
+                        .setAutoCreateAddresses(true)
+                        .setAutoCreateQueues(true)
+                        .setAutoDeleteAddresses(true)
+                        .setAutoDeleteQueues(true));
+        configuration.setBrokerInstance(new File(System.getProperty("java.io.tmpdir"), "carrot-broker"));
+
+        server = new EmbeddedActiveMQ();
+        server.setConfiguration(configuration);
+        server.start();
+        log.info("Broker STOMP embebido escuchando en {}:{}", host, port);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if (server != null) {
+            server.stop();
+            log.info("Broker STOMP embebido detenido");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package gabri.dev.chatapp.websocket;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.stomp.StompReactorNettyCodec;
+import org.springframework.messaging.tcp.reactor.ReactorNettyTcpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.tcp.TcpClient;
+
+import java.time.Duration;
+
+/**
+ * Cliente TCP del relay STOMP, con reactor-netty.
+ * <p>
+ * Solo se compila con el perfil Maven {@code broker} y solo se crea con
+ * {@code app.broker.mode=relay}; {@link WebSocketConfig} lo toma si existe.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.broker", name = "mode", havingValue = "relay")
+public class StompRelayClientConfig {
+
+    @Value("${app.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${app.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${app.broker.relay.max-connections:50000}")
+    private int relayMaxConnections;
+
+    @Value("${app.broker.relay.connect-timeout-ms:5000}")
+    private int relayConnectTimeoutMs;
+
+    /**
+     * Conexiones del relay. El pool por defecto de Spring admite 10.000 conexiones,
+     * es decir, 10.000 sesiones WebSocket por nodo; aquí el límite es configurable.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider stompRelayConnections() {
+        return ConnectionProvider.builder("stomp-relay")
+                .maxConnections(relayMaxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(relayConnectTimeoutMs))
+                .build();
+    }
+
+    @Bean
+    public ReactorNettyTcpClient<byte[]> stompRelayTcpClient(ConnectionProvider stompRelayConnections) {
+        TcpClient tcpClient = TcpClient.create(stompRelayConnections)
+                .host(relayHost)
+                .port(relayPort)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, relayConnectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, true);
+
+        return new ReactorNettyTcpClient<>(tcpClient, new StompReactorNettyCodec());
+    }
+}
@@ -0,0 +1,86 @@
+package gabri.dev.chatapp.benchmarks;
+
+import gabri.dev.chatapp.dtos.websocket.ChatMessageWS;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.entities.User;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Datos de prueba compartidos por los benchmarks.
+ */
+final class BenchmarkFixtures {
+
+    /**
+     * Clave HS256 de 256 bits en Base64, solo para benchmarks.
+     */
+    static final String JWT_SECRET = "YmVuY2htYXJrLXNlY3JldC1rZXktZm9yLWptaC1ydW5zLW9ubHktMDAwMDA=";
+
+    static final long JWT_EXPIRATION_MS = 3_600_000L;
+
+    private BenchmarkFixtures() {
+    }
+
+    static User user(long id) {
+        return User.builder()
+                .id(id)
+                .username("user" + id)
+                .email("user" + id + "@example.com")
+                .password("$2a$10$abcdefghijklmnopqrstuv")
+                .fullName("Usuario " + id)
+                .status(User.UserStatus.ONLINE)
+                .enabled(true)
+                .emailVerified(true)
+                .createdAt(LocalDateTime.now())
+                .lastSeenAt(LocalDateTime.now())
+                .build();
+    }
+
+    static ChatRoom chatRoom(long id, int participants) {
+        Set<User> users = new HashSet<>();
+        for (long i = 1; i <= participants; i++) {
+            users.add(user(i));
+        }
+
+        return ChatRoom.builder()
+                .id(id)
+                .name("sala-" + id)
+                .type(ChatRoom.ChatRoomType.GROUP)
+                .description("Sala de benchmark")
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .createdBy(user(1))
+                .participants(users)
+                .messageCount(1000L)
+                .build();
+    }
+
+    static Message message(long id, ChatRoom chatRoom, User sender) {
+        return Message.builder()
+                .id(id)
+                .content("Hola, este es un mensaje de prueba de longitud típica en una conversación")
+                .type(Message.MessageType.CHAT)
+                .sentAt(LocalDateTime.now())
+                .isEdited(false)
+                .sender(sender)
+                .chatRoom(chatRoom)
+                .build();
+    }
+
+    static ChatMessageWS chatMessage(long id) {
+        return ChatMessageWS.builder()
+                .id(id)
+                .chatRoomId(1L)
+                .senderId(1L)
+                .senderUsername("user1")
+                .content("Hola, este es un mensaje de prueba de longitud típica en una conversación")
+                .type(Message.MessageType.CHAT)
+                .sentAt(LocalDateTime.now())
+                .isEdited(false)
+                .clientMessageId("c-" + id)
+                .build();
+    }
+}
@@ -0,0 +1,39 @@
+package gabri.dev.chatapp.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gabri.dev.chatapp.configs.MappersConfig;
+import gabri.dev.chatapp.dtos.websocket.ChatMessageWS;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialización JSON de {@link ChatMessageWS}, el payload que se envía a cada suscriptor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChatMessageSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ChatMessageWS chatMessage;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        objectMapper = new MappersConfig().objectMapper();
+        chatMessage = BenchmarkFixtures.chatMessage(1);
+        json = objectMapper.writeValueAsBytes(chatMessage);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(chatMessage);
+    }
+
+    @Benchmark
+    public ChatMessageWS deserialize() throws Exception {
+        return objectMapper.readValue(json, ChatMessageWS.class);
+    }
+}
@@ -0,0 +1,50 @@
+package gabri.dev.chatapp.benchmarks;
+
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.security.JwtPrincipal;
+import gabri.dev.chatapp.services.JwtService;
+import gabri.dev.chatapp.services.TokenRevocationService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generación, parseo y validación de tokens JWT.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtServiceBenchmark {
+
+    private JwtService jwtService;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setup() {
+        jwtService = new JwtService(new TokenRevocationService(new ClusterService()));
+        ReflectionTestUtils.setField(jwtService, "secretKey", BenchmarkFixtures.JWT_SECRET);
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", BenchmarkFixtures.JWT_EXPIRATION_MS);
+        jwtService.init();
+
+        user = BenchmarkFixtures.user(1);
+        token = jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public String generate() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public String parse() {
+        return jwtService.extractUsername(token);
+    }
+
+    @Benchmark
+    public JwtPrincipal validate() {
+        return jwtService.authenticate(token);
+    }
+}
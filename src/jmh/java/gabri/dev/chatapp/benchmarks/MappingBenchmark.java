@@ -0,0 +1,73 @@
+package gabri.dev.chatapp.benchmarks;
+
+import gabri.dev.chatapp.configs.MappersConfig;
+import gabri.dev.chatapp.dtos.ChatRoomDTO;
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.mappers.ChatRoomMapper;
+import gabri.dev.chatapp.mappers.MessageMapper;
+import gabri.dev.chatapp.mappers.UserMapper;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Mapeo de entidades a DTOs: {@link ModelMapper} contra los mappers escritos a mano.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MappingBenchmark {
+
+    @Param({"2", "50"})
+    private int participants;
+
+    private ModelMapper modelMapper;
+    private UserMapper userMapper;
+    private MessageMapper messageMapper;
+    private ChatRoomMapper chatRoomMapper;
+    private Message message;
+    private ChatRoom chatRoom;
+
+    @Setup
+    public void setup() {
+        modelMapper = new MappersConfig().modelMapper();
+        userMapper = new UserMapper();
+        messageMapper = new MessageMapper(userMapper);
+        chatRoomMapper = new ChatRoomMapper(userMapper);
+        chatRoom = BenchmarkFixtures.chatRoom(1, participants);
+        message = BenchmarkFixtures.message(1, chatRoom, BenchmarkFixtures.user(1));
+
+        // La primera llamada arma el TypeMap; no forma parte de lo que se mide
+        modelMapper.map(message, MessageDTO.class);
+        modelMapper.map(chatRoom, ChatRoomDTO.class);
+    }
+
+    @Benchmark
+    public MessageDTO messageToDto() {
+        return modelMapper.map(message, MessageDTO.class);
+    }
+
+    @Benchmark
+    public ChatRoomDTO chatRoomToDto() {
+        return modelMapper.map(chatRoom, ChatRoomDTO.class);
+    }
+
+    @Benchmark
+    public MessageDTO messageToDtoHandWritten() {
+        return messageMapper.toDTO(message);
+    }
+
+    @Benchmark
+    public ChatRoomDTO chatRoomToDtoHandWritten() {
+        // Mismo resultado que ModelMapper: incluye los participantes
+        ChatRoomDTO dto = chatRoomMapper.toDTO(chatRoom);
+        dto.setParticipants(chatRoom.getParticipants().stream()
+                .map(userMapper::toDTO)
+                .collect(Collectors.toList()));
+        return dto;
+    }
+}
@@ -0,0 +1,109 @@
+package gabri.dev.chatapp.benchmarks;
+
+import gabri.dev.chatapp.JavaSpringComposeApplication;
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.MessageSendDTO;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import gabri.dev.chatapp.repositories.UserRepository;
+import gabri.dev.chatapp.security.JwtPrincipal;
+import gabri.dev.chatapp.services.ChatRoomMembershipService;
+import gabri.dev.chatapp.services.MessageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envío de un mensaje por REST ({@link MessageService#sendMessage}) contra un archivo SQLite temporal.
+ * <p>
+ * Levanta la aplicación completa, así que mide el camino real: transacción, inserción,
+ * triggers del índice de búsqueda y actualización de los datos desnormalizados de la sala.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class MessageServiceBenchmark {
+
+    private Path dataDir;
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+    private MessageSendDTO sendDTO;
+
+    @Setup
+    public void setup() throws IOException {
+        dataDir = Files.createTempDirectory("chatapp-bench");
+
+        context = new SpringApplicationBuilder(JavaSpringComposeApplication.class)
+                .run(
+                        "--spring.datasource.url=jdbc:sqlite:" + dataDir.resolve("chatapp.db"),
+                        "--server.port=0",
+                        "--jwt.secret=" + BenchmarkFixtures.JWT_SECRET,
+                        "--jwt.expiration=" + BenchmarkFixtures.JWT_EXPIRATION_MS,
+                        "--spring.mail.username=benchmark",
+                        "--spring.mail.password=benchmark",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=warn",
+                        "--logging.level.gabri.dev.chatapp=warn",
+                        "--logging.level.org.springframework.security=warn",
+                        "--logging.level.org.springframework.web.socket=warn",
+                        "--logging.level.org.springframework.messaging=warn"
+                );
+
+        User user = context.getBean(UserRepository.class).save(User.builder()
+                .username("bench")
+                .email("bench@example.com")
+                .password("-")
+                .status(User.UserStatus.ONLINE)
+                .enabled(true)
+                .emailVerified(true)
+                .build());
+
+        Set<User> participants = new HashSet<>();
+        participants.add(user);
+        ChatRoom chatRoom = context.getBean(ChatRoomRepository.class).save(ChatRoom.builder()
+                .name("bench-room")
+                .type(ChatRoom.ChatRoomType.GROUP)
+                .createdBy(user)
+                .participants(participants)
+                .build());
+        context.getBean(ChatRoomMembershipService.class).registerChatRoom(chatRoom);
+
+        // Los hilos de medición de JMH no son fijos: el usuario autenticado se comparte entre todos
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                new JwtPrincipal(user.getId(), user.getUsername(), null, null), null, Collections.emptyList()));
+
+        messageService = context.getBean(MessageService.class);
+        sendDTO = MessageSendDTO.builder()
+                .chatRoomId(chatRoom.getId())
+                .content("Hola, este es un mensaje de prueba de longitud típica en una conversación")
+                .type(Message.MessageType.CHAT)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public MessageDTO sendMessage() {
+        return messageService.sendMessage(sendDTO);
+    }
+}
@@ -0,0 +1,166 @@
+package gabri.dev.chatapp.benchmarks;
+
+import gabri.dev.chatapp.JavaSpringComposeApplication;
+import gabri.dev.chatapp.configs.SqliteDataSourceConfig;
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.MessageSendDTO;
+import gabri.dev.chatapp.dtos.MessageSliceDTO;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import gabri.dev.chatapp.repositories.UserRepository;
+import gabri.dev.chatapp.security.JwtPrincipal;
+import gabri.dev.chatapp.services.ChatRoomMembershipService;
+import gabri.dev.chatapp.services.MessageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escrituras y lecturas concurrentes de mensajes contra un archivo SQLite temporal,
+ * con el pool por defecto de Spring Boot y con {@link SqliteDataSourceConfig}.
+ * <p>
+ * En el grupo {@code mixed} dos hilos envían mensajes mientras seis leen el historial
+ * de la sala, como varios clientes activos a la vez. Con el pool por defecto todas las
+ * conexiones compiten por el lock del archivo; con la configuración ajustada las escrituras
+ * esperan su turno en la conexión de escritura y las lecturas siguen en paralelo en modo WAL.
+ * </p>
+ * <p>
+ * Con el pool por defecto algunas escrituras fallan con {@code SQLITE_BUSY}. No cortan la medición:
+ * se cuentan aparte, y junto al throughput de cada operación JMH informa {@code committed}
+ * (escrituras confirmadas por segundo) y {@code busyErrors} (escrituras rechazadas por segundo).
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class SqliteAccessBenchmark {
+
+    private static final int PRELOADED_MESSAGES = 1000;
+
+    @Param({"false", "true"})
+    private boolean tuning;
+
+    private Path dataDir;
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+    private MessageSendDTO sendDTO;
+    private Long chatRoomId;
+
+    @Setup
+    public void setup() throws IOException {
+        dataDir = Files.createTempDirectory("chatapp-bench");
+
+        context = new SpringApplicationBuilder(JavaSpringComposeApplication.class)
+                .run(
+                        "--spring.datasource.url=jdbc:sqlite:" + dataDir.resolve("chatapp.db"),
+                        "--app.sqlite.tuning.enabled=" + tuning,
+                        "--server.port=0",
+                        "--jwt.secret=" + BenchmarkFixtures.JWT_SECRET,
+                        "--jwt.expiration=" + BenchmarkFixtures.JWT_EXPIRATION_MS,
+                        "--spring.mail.username=benchmark",
+                        "--spring.mail.password=benchmark",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=warn",
+                        "--logging.level.gabri.dev.chatapp=warn",
+                        "--logging.level.org.springframework.security=warn",
+                        "--logging.level.org.springframework.web.socket=warn",
+                        "--logging.level.org.springframework.messaging=warn"
+                );
+
+        User user = context.getBean(UserRepository.class).save(User.builder()
+                .username("bench")
+                .email("bench@example.com")
+                .password("-")
+                .status(User.UserStatus.ONLINE)
+                .enabled(true)
+                .emailVerified(true)
+                .build());
+
+        Set<User> participants = new HashSet<>();
+        participants.add(user);
+        ChatRoom chatRoom = context.getBean(ChatRoomRepository.class).save(ChatRoom.builder()
+                .name("bench-room")
+                .type(ChatRoom.ChatRoomType.GROUP)
+                .createdBy(user)
+                .participants(participants)
+                .build());
+        context.getBean(ChatRoomMembershipService.class).registerChatRoom(chatRoom);
+        chatRoomId = chatRoom.getId();
+
+        // Los hilos de medición de JMH no son fijos: el usuario autenticado se comparte entre todos
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                new JwtPrincipal(user.getId(), user.getUsername(), null, null), null, Collections.emptyList()));
+
+        messageService = context.getBean(MessageService.class);
+        sendDTO = MessageSendDTO.builder()
+                .chatRoomId(chatRoomId)
+                .content("Hola, este es un mensaje de prueba de longitud típica en una conversación")
+                .type(Message.MessageType.CHAT)
+                .build();
+
+        // Historial previo, para que las lecturas recorran páginas completas
+        for (int i = 0; i < PRELOADED_MESSAGES; i++) {
+            messageService.sendMessage(sendDTO);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public MessageDTO write(WriteCounters counters) {
+        try {
+            MessageDTO message = messageService.sendMessage(sendDTO);
+            counters.committed++;
+            return message;
+        } catch (CannotAcquireLockException e) {
+            counters.busyErrors++;
+            return null;
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public MessageSliceDTO read() {
+        return messageService.getMessageHistory(chatRoomId, null, 50);
+    }
+
+    /**
+     * Resultado de las escrituras de cada hilo, informado por JMH como operaciones por segundo.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class WriteCounters {
+
+        public long committed;
+        public long busyErrors;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            committed = 0;
+            busyErrors = 0;
+        }
+    }
+}
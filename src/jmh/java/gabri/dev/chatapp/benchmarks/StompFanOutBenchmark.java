@@ -0,0 +1,89 @@
+package gabri.dev.chatapp.benchmarks;
+
+import gabri.dev.chatapp.configs.MappersConfig;
+import gabri.dev.chatapp.dtos.websocket.ChatMessageWS;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envío de un mensaje de chat a una sala con N suscriptores a través del broker simple.
+ * <p>
+ * Reproduce el camino de {@code SimpMessageSendingOperations.convertAndSend}: conversión
+ * a JSON, resolución de suscripciones en el broker y, por cada sesión, la codificación
+ * del frame STOMP que haría el handler de salida. Los canales son sincrónicos para medir
+ * solo ese trabajo, sin colas ni hilos.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StompFanOutBenchmark {
+
+    private static final String DESTINATION = "/topic/chatroom/1";
+
+    @Param({"10", "100", "1000"})
+    private int subscribers;
+
+    private SimpleBrokerMessageHandler broker;
+    private SimpMessagingTemplate messagingTemplate;
+    private ChatMessageWS chatMessage;
+    private long encodedBytes;
+
+    @Setup
+    public void setup() {
+        ExecutorSubscribableChannel clientInboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+
+        StompEncoder encoder = new StompEncoder();
+        clientOutboundChannel.subscribe(message -> {
+            StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+            accessor.updateStompCommandAsServerMessage();
+            encodedBytes += encoder.encode(accessor.getMessageHeaders(), (byte[]) message.getPayload()).length;
+        });
+
+        broker = new SimpleBrokerMessageHandler(
+                clientInboundChannel, clientOutboundChannel, brokerChannel, List.of("/topic", "/queue"));
+        broker.start();
+
+        for (int i = 0; i < subscribers; i++) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            accessor.setSessionId("session-" + i);
+            accessor.setSubscriptionId("sub-0");
+            accessor.setDestination(DESTINATION);
+            Message<byte[]> subscribe = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+            clientInboundChannel.send(subscribe);
+        }
+
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(new MappersConfig().objectMapper());
+
+        messagingTemplate = new SimpMessagingTemplate(brokerChannel);
+        messagingTemplate.setMessageConverter(converter);
+
+        chatMessage = BenchmarkFixtures.chatMessage(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    public long fanOut() {
+        messagingTemplate.convertAndSend(DESTINATION, chatMessage);
+        return encodedBytes;
+    }
+}
@@ -1,20 +1,27 @@
 package gabri.dev.chatapp;
 
+import gabri.dev.chatapp.configs.MessageImportRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Clase Main.
  */
 @SpringBootApplication
-@EnableAsync
+@EnableScheduling
 public class JavaSpringComposeApplication {
     /**
      * Main program.
+     * In import mode ({@code --import.file}) the context is closed once the import finishes and
+     * the process exits with the code reported by {@link MessageImportRunner}.
      * @param args application args
      */
     public static void main(String[] args) {
-        SpringApplication.run(JavaSpringComposeApplication.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(JavaSpringComposeApplication.class, args);
+        if (context.getBean(MessageImportRunner.class).isExecuted()) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 }
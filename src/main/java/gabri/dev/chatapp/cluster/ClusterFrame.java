@@ -0,0 +1,41 @@
+package gabri.dev.chatapp.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Frame del canal entre nodos: un tipo y un cuerpo binario.
+ * <p>
+ * En el cable va como {@code [int largo][byte tipo][cuerpo]}, donde el largo cuenta el tipo
+ * y el cuerpo. El cuerpo lo escribe y lo lee cada emisor y receptor con
+ * {@link java.io.DataOutput}/{@link java.io.DataInput}. Un frame ya armado puede enviarse
+ * a varios nodos sin volver a codificarse.
+ * </p>
+ */
+public record ClusterFrame(ClusterFrameType type, byte[] body) {
+
+    /**
+     * Escribe el cuerpo de un frame.
+     */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * Arma un frame escribiendo su cuerpo.
+     */
+    public static ClusterFrame of(ClusterFrameType type, BodyWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            writer.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            // ByteArrayOutputStream no lanza IOException; solo puede venir del propio writer
+            throw new UncheckedIOException(e);
+        }
+        return new ClusterFrame(type, bytes.toByteArray());
+    }
+}
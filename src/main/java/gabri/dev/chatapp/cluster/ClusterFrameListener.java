@@ -0,0 +1,15 @@
+package gabri.dev.chatapp.cluster;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * Recibe los frames de un tipo enviados por otros nodos.
+ * Se ejecuta en el hilo de lectura de la conexión: mientras corre no se leen más frames
+ * de ese nodo, así que debe ser breve.
+ */
+@FunctionalInterface
+public interface ClusterFrameListener {
+
+    void onFrame(String fromNodeId, DataInput body) throws IOException;
+}
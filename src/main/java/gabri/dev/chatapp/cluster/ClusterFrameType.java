@@ -0,0 +1,61 @@
+package gabri.dev.chatapp.cluster;
+
+/**
+ * Tipos de frame del canal entre nodos. Se transmiten por su ordinal: solo se agregan al final.
+ */
+public enum ClusterFrameType {
+
+    /** Saludo al abrir una conexión: ID, host, puerto y nonce del nodo. Lo usa el transporte. */
+    HELLO,
+
+    /** Señal de vida en conexiones sin tráfico. Lo usa el transporte. */
+    PING,
+
+    /** Mensaje publicado en un destino {@code /topic/...}. */
+    PUBLISH,
+
+    /** Alta o baja del interés de un nodo en una sala, enviada al dueño de la sala. */
+    INTEREST,
+
+    /** Lista completa de salas de interés de un nodo entre las que posee el destinatario. */
+    INTEREST_SYNC,
+
+    /** Pedido de un {@link #INTEREST_SYNC}. */
+    INTEREST_SYNC_REQUEST,
+
+    /** Evento de escritura, enviado al dueño de la sala. */
+    TYPING,
+
+    /** Cambiaron los participantes de una sala. */
+    MEMBERSHIP_CHANGED,
+
+    /** Se revocaron uno o más tokens. */
+    TOKEN_REVOKED,
+
+    /** Se modificó un usuario cacheado. */
+    USER_EVICTED,
+
+    /** Cambió la ventana de últimos mensajes de una sala. */
+    RECENT_MESSAGES,
+
+    /** Mensaje, edición o eliminación de una sala, enviado al dueño para que lo numere y publique. */
+    ROOM_EVENT,
+
+    /** Pedido de reanudación de una sala, enviado a su dueño. */
+    REPLAY_REQUEST,
+
+    /** Respuesta a un {@link #REPLAY_REQUEST} para una sesión del nodo que lo pidió. */
+    REPLAY,
+
+    /** Prueba de que quien conectó conoce el secreto del cluster. Lo usa el transporte. */
+    AUTH;
+
+    private static final ClusterFrameType[] VALUES = values();
+
+    static ClusterFrameType fromCode(int code) {
+        if (code < 0 || code >= VALUES.length) {
+            throw new IllegalArgumentException("Tipo de frame desconocido: " + code);
+        }
+        return VALUES[code];
+    }
+}
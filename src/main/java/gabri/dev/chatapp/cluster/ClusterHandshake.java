@@ -0,0 +1,165 @@
+package gabri.dev.chatapp.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Saludo autenticado al abrir una conexión entre nodos, con el secreto {@code app.cluster.secret}.
+ * <p>
+ * Quien conecta envía {@code HELLO} con su ID, host, puerto y un nonce al azar. Quien acepta
+ * responde con su propio {@code HELLO}, que agrega un HMAC-SHA256 del nonce recibido y de su
+ * identidad; quien conecta lo verifica y cierra el saludo con {@code AUTH}, el HMAC del nonce
+ * del otro y de la suya. Cada lado prueba conocer el secreto sobre un nonce que eligió el otro,
+ * así que un saludo grabado no sirve para otra conexión. Hasta completar el saludo no se lee
+ * ningún otro frame, y los del saludo no pueden superar {@link #MAX_HANDSHAKE_FRAME_BYTES}.
+ * </p>
+ * <p>
+ * El saludo autentica a los nodos pero no cifra el tráfico: fuera de una red de confianza,
+ * el puerto del cluster debe pasar por una VPN o un túnel.
+ * </p>
+ */
+final class ClusterHandshake {
+
+    static final int NONCE_BYTES = 16;
+
+    // Un HELLO ocupa unos pocos cientos de bytes; antes de autenticar no se aceptan frames grandes
+    static final int MAX_HANDSHAKE_FRAME_BYTES = 4096;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String ACCEPTOR = "carrot-cluster-acceptor";
+    private static final String CONNECTOR = "carrot-cluster-connector";
+
+    private final SecretKeySpec key;
+    private final String nodeId;
+    private final String host;
+    private final int port;
+    private final SecureRandom random = new SecureRandom();
+
+    ClusterHandshake(String secret, String nodeId, String host, int port) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.nodeId = nodeId;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Saluda por una conexión que abrió este nodo.
+     * @return el saludo del otro nodo, ya verificado
+     * @throws RejectedException si el otro nodo no probó conocer el secreto
+     */
+    Hello connect(DataInputStream in, DataOutputStream out) throws IOException {
+        byte[] nonce = newNonce();
+        ClusterService.writeFrame(out, helloFrame(nonce, new byte[0]));
+        out.flush();
+
+        Hello remote = readHello(in);
+        verify(remote, remote.proof(), proof(ACCEPTOR, nonce, remote.nodeId(), remote.host(), remote.port(), remote.nonce()));
+
+        byte[] proof = proof(CONNECTOR, remote.nonce(), nodeId, host, port, nonce);
+        ClusterService.writeFrame(out, new ClusterFrame(ClusterFrameType.AUTH, proof));
+        out.flush();
+        return remote;
+    }
+
+    /**
+     * Saluda por una conexión que abrió otro nodo.
+     * @return el saludo del otro nodo, ya verificado
+     * @throws RejectedException si el otro nodo no probó conocer el secreto
+     */
+    Hello accept(DataInputStream in, DataOutputStream out) throws IOException {
+        Hello remote = readHello(in);
+
+        byte[] nonce = newNonce();
+        ClusterService.writeFrame(out, helloFrame(nonce, proof(ACCEPTOR, remote.nonce(), nodeId, host, port, nonce)));
+        out.flush();
+
+        ClusterFrame auth = ClusterService.readFrame(in, MAX_HANDSHAKE_FRAME_BYTES);
+        if (auth.type() != ClusterFrameType.AUTH) {
+            throw new RejectedException("Se esperaba AUTH del nodo " + remote.nodeId() + " y llegó " + auth.type());
+        }
+        verify(remote, auth.body(), proof(CONNECTOR, nonce, remote.nodeId(), remote.host(), remote.port(), remote.nonce()));
+        return remote;
+    }
+
+    private ClusterFrame helloFrame(byte[] nonce, byte[] proof) {
+        return ClusterFrame.of(ClusterFrameType.HELLO, body -> {
+            body.writeUTF(nodeId);
+            body.writeUTF(host);
+            body.writeInt(port);
+            body.write(nonce);
+            body.writeShort(proof.length);
+            body.write(proof);
+        });
+    }
+
+    private static Hello readHello(DataInputStream in) throws IOException {
+        ClusterFrame frame = ClusterService.readFrame(in, MAX_HANDSHAKE_FRAME_BYTES);
+        if (frame.type() != ClusterFrameType.HELLO) {
+            throw new RejectedException("Se esperaba HELLO y llegó " + frame.type());
+        }
+
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(frame.body()));
+        String remoteNodeId = body.readUTF();
+        String remoteHost = body.readUTF();
+        int remotePort = body.readInt();
+        byte[] nonce = new byte[NONCE_BYTES];
+        body.readFully(nonce);
+        byte[] proof = new byte[body.readUnsignedShort()];
+        body.readFully(proof);
+        return new Hello(remoteNodeId, remoteHost, remotePort, nonce, proof);
+    }
+
+    private static void verify(Hello remote, byte[] received, byte[] expected) throws RejectedException {
+        if (!MessageDigest.isEqual(received, expected)) {
+            throw new RejectedException("El nodo " + remote.nodeId() + " (" + remote.host() + ":" + remote.port()
+                    + ") no usa el mismo secreto del cluster");
+        }
+    }
+
+    /**
+     * HMAC del rol de quien lo calcula, el nonce del otro lado y la identidad propia.
+     */
+    private byte[] proof(String role, byte[] peerNonce, String proverNodeId, String proverHost, int proverPort,
+                         byte[] proverNonce) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeUTF(role);
+        data.write(peerNonce);
+        data.writeUTF(proverNodeId);
+        data.writeUTF(proverHost);
+        data.writeInt(proverPort);
+        data.write(proverNonce);
+
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(bytes.toByteArray());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC no disponible", e);
+        }
+    }
+
+    private byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        return nonce;
+    }
+
+    record Hello(String nodeId, String host, int port, byte[] nonce, byte[] proof) {
+    }
+
+    /**
+     * El otro extremo no completó el saludo: no conoce el secreto o no habla el protocolo.
+     */
+    static final class RejectedException extends IOException {
+
+        RejectedException(String message) {
+            super(message);
+        }
+    }
+}
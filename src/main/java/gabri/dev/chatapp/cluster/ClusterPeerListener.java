@@ -0,0 +1,19 @@
+package gabri.dev.chatapp.cluster;
+
+/**
+ * Recibe las altas y bajas de nodos. Cada una cambia el reparto de salas.
+ */
+public interface ClusterPeerListener {
+
+    /**
+     * Hay conexión hacia el nodo: ya puede recibir frames.
+     */
+    default void peerUp(String nodeId) {
+    }
+
+    /**
+     * Se perdió la conexión hacia el nodo.
+     */
+    default void peerDown(String nodeId) {
+    }
+}
@@ -0,0 +1,18 @@
+package gabri.dev.chatapp.cluster;
+
+/**
+ * Descarta o recarga el estado que este nodo mantiene con frames de los demás.
+ * <p>
+ * Mientras una conexión está caída los frames hacia ese nodo se pierden, así que al volver
+ * cualquier copia local puede haber quedado vieja. Lo que se arma desde la base se recarga;
+ * lo que solo vive en memoria se descarta y se vuelve a pedir.
+ * </p>
+ */
+@FunctionalInterface
+public interface ClusterResyncListener {
+
+    /**
+     * Se ejecuta en el hilo de resincronización; si lanza una excepción se vuelve a intentar.
+     */
+    void resync() throws Exception;
+}
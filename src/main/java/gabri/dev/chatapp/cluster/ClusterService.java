@@ -0,0 +1,608 @@
+package gabri.dev.chatapp.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Procesos de Carrot en un mismo equipo que forman un cluster.
+ * <p>
+ * Cada nodo escucha en {@code 127.0.0.1:app.cluster.port} y abre una conexión TCP persistente
+ * hacia cada uno de los demás, que encuentra en los puertos locales de
+ * {@code app.cluster.peer-ports}. Por esas conexiones viajan {@link ClusterFrame frames} binarios:
+ * cada nodo envía por las suyas y lee por las que le abrieron los demás.
+ * </p>
+ * <p>
+ * Las salas se reparten entre los nodos conectados con un {@link ConsistentHashRing anillo
+ * de hashing consistente}; {@link #ownerOf(long)} indica el dueño de cada una. El anillo se
+ * vuelve a armar en cada alta o baja de nodo y se avisa a los {@link ClusterPeerListener}.
+ * Dos nodos pueden ver por un momento anillos distintos; quienes usan el reparto lo
+ * toleran y se resincronizan con cada cambio.
+ * </p>
+ * <p>
+ * Mientras una conexión está caída, los frames hacia ese nodo se descartan. Por eso cada
+ * conexión nueva o recuperada, saliente o entrante, sube la {@linkplain #getEpoch() época} del
+ * nodo y, en un hilo aparte, se ejecutan los {@link ClusterResyncListener} (cachés de usuarios,
+ * participantes, últimos mensajes y registros de eventos). Hasta que terminan,
+ * {@link #isSynced()} es false y el nodo rechaza el tráfico autenticado.
+ * </p>
+ * <p>
+ * Solo se aceptan nodos que conocen {@code app.cluster.secret}: cada conexión empieza con un
+ * {@link ClusterHandshake saludo autenticado} y hasta completarlo no se procesa ningún frame:
+ * el puerto es solo de loopback, pero cualquier proceso del equipo puede conectarse a él.
+ * </p>
+ * <p>
+ * Los nodos no replican datos: todos usan el mismo archivo de SQLite y el mismo directorio de
+ * archivo, así que deben correr en el mismo equipo. El bloqueo de archivos de SQLite no es
+ * confiable en sistemas de archivos de red, por eso el cluster no arranca si la base o el
+ * directorio de archivo están en memoria o en una carpeta de red. Las escrituras de todos los
+ * nodos esperan el mismo lock de la base: sumar nodos reparte las conexiones WebSocket y la CPU
+ * entre procesos, no la capacidad de escritura.
+ * </p>
+ * <p>
+ * Con {@code app.cluster.enabled=false} (por defecto) el nodo está solo: es dueño de
+ * todas las salas y los envíos no hacen nada.
+ * </p>
+ */
+@Service
+@Slf4j
+public class ClusterService {
+
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int MIN_SECRET_LENGTH = 16;
+    private static final String LOOPBACK = "127.0.0.1";
+
+    // Sistemas de archivos de red: SQLite no puede bloquear un archivo compartido en ellos
+    private static final Set<String> NETWORK_FILE_SYSTEMS = Set.of("nfs", "nfs4", "cifs", "smb", "smb2", "smb3",
+            "smbfs", "afs", "ncpfs", "9p", "sshfs", "fuse.sshfs", "glusterfs", "fuse.glusterfs", "ceph",
+            "fuse.ceph", "lustre", "davfs", "fuse.s3fs");
+
+    @Value("${app.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.cluster.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${app.cluster.secret:}")
+    private String secret;
+
+    @Value("${app.cluster.port:7600}")
+    private int port;
+
+    @Value("${app.cluster.peer-ports:}")
+    private List<String> peerPorts;
+
+    @Value("${app.cluster.points-per-node:128}")
+    private int pointsPerNode;
+
+    @Value("${app.cluster.heartbeat-ms:2000}")
+    private int heartbeatMs;
+
+    @Value("${app.cluster.connect-timeout-ms:3000}")
+    private int connectTimeoutMs;
+
+    @Value("${app.cluster.retry-ms:3000}")
+    private long retryMs;
+
+    @Value("${app.cluster.queue-capacity:50000}")
+    private int queueCapacity;
+
+    @Value("${spring.datasource.url}")
+    private String datasourceUrl;
+
+    @Value("${app.archive.dir:./data/archive}")
+    private String archiveDir;
+
+    private String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private ClusterHandshake handshake;
+
+    /**
+     * Conexiones salientes, conectadas o no, por dirección {@code 127.0.0.1:puerto}.
+     */
+    private final Map<String, PeerConnection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * Conexiones salientes conectadas, por ID de nodo.
+     */
+    private final Map<String, PeerConnection> peers = new ConcurrentHashMap<>();
+
+    /**
+     * Direcciones por las que este nodo se encontró a sí mismo; no se vuelven a intentar.
+     */
+    private final Set<String> selfAddresses = ConcurrentHashMap.newKeySet();
+
+    private final Set<Socket> inboundSockets = ConcurrentHashMap.newKeySet();
+    private final Map<ClusterFrameType, List<ClusterFrameListener>> frameListeners = new EnumMap<>(ClusterFrameType.class);
+    private final List<ClusterPeerListener> peerListeners = new CopyOnWriteArrayList<>();
+    private final List<ClusterResyncListener> resyncListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Sube con cada conexión nueva o recuperada con otro nodo.
+     */
+    private final AtomicLong epoch = new AtomicLong();
+
+    /**
+     * Última época para la que terminó la resincronización.
+     */
+    private volatile long syncedEpoch;
+
+    private volatile ConsistentHashRing ring;
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+    private ExecutorService resyncExecutor;
+
+    public ClusterService() {
+        for (ClusterFrameType type : ClusterFrameType.values()) {
+            frameListeners.put(type, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    /**
+     * Revisa la configuración del cluster al crear el servicio, antes de atender requests.
+     */
+    @PostConstruct
+    public void checkConfiguration() {
+        if (!enabled) {
+            return;
+        }
+        if (secret.length() < MIN_SECRET_LENGTH) {
+            throw new IllegalStateException("El cluster requiere app.cluster.secret, de al menos "
+                    + MIN_SECRET_LENGTH + " caracteres e igual en todos los nodos");
+        }
+        requireLocalStorage("La base de datos", databasePath(datasourceUrl));
+        requireLocalStorage("El directorio de archivo", archiveDir);
+    }
+
+    /**
+     * Arranca cuando la aplicación ya está lista, para que los listeners estén registrados
+     * antes de recibir el primer frame.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        if (!configuredNodeId.isBlank()) {
+            nodeId = configuredNodeId;
+        }
+        handshake = new ClusterHandshake(secret, nodeId, LOOPBACK, port);
+        rebuildRing();
+
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(InetAddress.getByName(LOOPBACK), port));
+        } catch (IOException e) {
+            log.error("No se pudo abrir el puerto del cluster {}:{}: {}", LOOPBACK, port, e.getMessage());
+            closeQuietly(serverSocket);
+            return;
+        }
+        running = true;
+
+        resyncExecutor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "cluster-resync");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Thread acceptor = new Thread(this::acceptLoop, "cluster-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        for (String peerPort : peerPorts) {
+            if (!peerPort.isBlank()) {
+                addPeer(Integer.parseInt(peerPort.trim()), true);
+            }
+        }
+
+        log.info("Nodo {} del cluster escuchando en {}:{}", nodeId, LOOPBACK, port);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        closeQuietly(serverSocket);
+        connections.values().forEach(PeerConnection::stop);
+        inboundSockets.forEach(ClusterService::closeQuietly);
+        resyncExecutor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Época del nodo en el cluster: sube con cada conexión nueva o recuperada con otro nodo.
+     */
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    /**
+     * Indica si el nodo terminó de resincronizarse para la época actual. Mientras no, sus
+     * cachés pueden tener datos que otro nodo cambió durante un corte. Sin cluster, siempre true.
+     */
+    public boolean isSynced() {
+        return syncedEpoch == epoch.get();
+    }
+
+    /**
+     * Devuelve el ID del nodo dueño de una clave (por ejemplo, el ID de una sala).
+     */
+    public String ownerOf(long key) {
+        ConsistentHashRing current = ring;
+        String owner = current != null ? current.ownerOf(key) : null;
+        return owner != null ? owner : nodeId;
+    }
+
+    /**
+     * Indica si este nodo es el dueño de una clave.
+     */
+    public boolean isOwner(long key) {
+        return nodeId.equals(ownerOf(key));
+    }
+
+    /**
+     * Devuelve los IDs de los demás nodos conectados.
+     */
+    public Set<String> getPeerIds() {
+        return Collections.unmodifiableSet(peers.keySet());
+    }
+
+    /**
+     * Envía un frame a un nodo. Devuelve false si no hay conexión con él o su cola está llena.
+     */
+    public boolean send(String targetNodeId, ClusterFrame frame) {
+        PeerConnection peer = peers.get(targetNodeId);
+        return peer != null && peer.send(frame);
+    }
+
+    /**
+     * Envía un frame a todos los demás nodos conectados.
+     */
+    public void broadcast(ClusterFrame frame) {
+        for (PeerConnection peer : peers.values()) {
+            peer.send(frame);
+        }
+    }
+
+    /**
+     * Registra quién recibe los frames de un tipo.
+     */
+    public void addFrameListener(ClusterFrameType type, ClusterFrameListener listener) {
+        frameListeners.get(type).add(listener);
+    }
+
+    /**
+     * Registra quién recibe las altas y bajas de nodos.
+     */
+    public void addPeerListener(ClusterPeerListener listener) {
+        peerListeners.add(listener);
+    }
+
+    /**
+     * Registra quién descarta o recarga su estado al resincronizar con el cluster.
+     */
+    public void addResyncListener(ClusterResyncListener listener) {
+        resyncListeners.add(listener);
+    }
+
+    // --- Transporte ---
+
+    int getHeartbeatMs() {
+        return heartbeatMs;
+    }
+
+    int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    long getRetryMs() {
+        return retryMs;
+    }
+
+    ClusterHandshake handshake() {
+        return handshake;
+    }
+
+    /**
+     * Abre una conexión hacia un puerto local, si no hay ya una.
+     * @param configured si el puerto está en {@code app.cluster.peer-ports}
+     */
+    void addPeer(int peerPort, boolean configured) {
+        String address = LOOPBACK + ":" + peerPort;
+        if (!running || selfAddresses.contains(address)) {
+            return;
+        }
+
+        connections.computeIfAbsent(address, key -> {
+            PeerConnection connection = new PeerConnection(this, LOOPBACK, peerPort, configured, queueCapacity);
+            connection.start();
+            return connection;
+        });
+    }
+
+    /**
+     * Decide si una conexión recién saludada se usa: no si lleva a este mismo nodo
+     * o si ya hay otra conexión activa hacia ese nodo por otra dirección.
+     */
+    boolean accept(PeerConnection connection, String remoteNodeId) {
+        if (nodeId.equals(remoteNodeId)) {
+            selfAddresses.add(connection.address());
+            return false;
+        }
+
+        PeerConnection existing = peers.get(remoteNodeId);
+        return existing == null || existing == connection;
+    }
+
+    void peerUp(PeerConnection connection) {
+        peers.put(connection.nodeId(), connection);
+        rebuildRing();
+        requestResync();
+        log.info("Nodo {} conectado ({}); nodos en el cluster: {}", connection.nodeId(), connection.address(), peers.size() + 1);
+
+        for (ClusterPeerListener listener : peerListeners) {
+            try {
+                listener.peerUp(connection.nodeId());
+            } catch (Exception e) {
+                log.warn("Error notificando alta del nodo {}: {}", connection.nodeId(), e.getMessage());
+            }
+        }
+    }
+
+    void peerDown(PeerConnection connection) {
+        if (!peers.remove(connection.nodeId(), connection)) {
+            return;
+        }
+        rebuildRing();
+        log.info("Nodo {} desconectado; nodos en el cluster: {}", connection.nodeId(), peers.size() + 1);
+
+        for (ClusterPeerListener listener : peerListeners) {
+            try {
+                listener.peerDown(connection.nodeId());
+            } catch (Exception e) {
+                log.warn("Error notificando baja del nodo {}: {}", connection.nodeId(), e.getMessage());
+            }
+        }
+    }
+
+    void forget(PeerConnection connection) {
+        connections.remove(connection.address(), connection);
+    }
+
+    private synchronized void rebuildRing() {
+        List<String> nodeIds = new ArrayList<>(peers.keySet());
+        nodeIds.add(nodeId);
+        ring = new ConsistentHashRing(nodeIds, pointsPerNode);
+    }
+
+    /**
+     * Sube la época y resincroniza en el hilo {@code cluster-resync}. Los pedidos que llegan
+     * mientras corre una resincronización se resuelven con una sola pasada más.
+     */
+    private void requestResync() {
+        long requested = epoch.incrementAndGet();
+        log.debug("Resincronización pedida (época {})", requested);
+        try {
+            resyncExecutor.execute(this::resync);
+        } catch (RejectedExecutionException e) {
+            // El nodo se está deteniendo
+        }
+    }
+
+    private void resync() {
+        while (running) {
+            long target = epoch.get();
+            if (syncedEpoch == target) {
+                return;
+            }
+
+            boolean complete = true;
+            for (ClusterResyncListener listener : resyncListeners) {
+                try {
+                    listener.resync();
+                } catch (Exception e) {
+                    complete = false;
+                    log.warn("Error resincronizando con el cluster: {}", e.getMessage());
+                }
+            }
+
+            if (complete) {
+                syncedEpoch = target;
+                log.info("Nodo resincronizado con el cluster (época {})", target);
+            } else {
+                try {
+                    Thread.sleep(retryMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread reader = new Thread(() -> readLoop(socket), "cluster-in-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Error aceptando conexión del cluster: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Lee los frames que envía otro nodo por una conexión entrante.
+     */
+    private void readLoop(Socket socket) {
+        inboundSockets.add(socket);
+        String remoteNodeId = null;
+
+        try (socket) {
+            // Sin frames (ni PING) durante 3 intervalos, el otro nodo se da por caído
+            socket.setSoTimeout(heartbeatMs * 3);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+            ClusterHandshake.Hello remote = handshake.accept(in, out);
+            remoteNodeId = remote.nodeId();
+            if (!nodeId.equals(remoteNodeId)) {
+                // Lo que ese nodo envió mientras no había conexión se perdió
+                requestResync();
+            }
+
+            // Conexión de vuelta, necesaria si este nodo no tiene el puerto del otro en app.cluster.peer-ports
+            if (!nodeId.equals(remoteNodeId) && !peers.containsKey(remoteNodeId)) {
+                addPeer(remote.port(), false);
+            }
+
+            while (running) {
+                ClusterFrame frame = readFrame(in);
+                if (frame.type() != ClusterFrameType.PING) {
+                    dispatch(remoteNodeId, frame);
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            log.info("El nodo {} dejó de responder", remoteNodeId);
+            PeerConnection peer = remoteNodeId != null ? peers.get(remoteNodeId) : null;
+            if (peer != null) {
+                peer.reconnect();
+            }
+        } catch (ClusterHandshake.RejectedException e) {
+            log.warn("Conexión del cluster rechazada desde {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } catch (IOException e) {
+            log.debug("Conexión entrante de {} cerrada: {}", remoteNodeId, e.getMessage());
+        } finally {
+            inboundSockets.remove(socket);
+        }
+    }
+
+    private void dispatch(String fromNodeId, ClusterFrame frame) {
+        for (ClusterFrameListener listener : frameListeners.get(frame.type())) {
+            try {
+                listener.onFrame(fromNodeId, new DataInputStream(new ByteArrayInputStream(frame.body())));
+            } catch (Exception e) {
+                log.warn("Error procesando frame {} del nodo {}: {}", frame.type(), fromNodeId, e.getMessage());
+            }
+        }
+    }
+
+    static void writeFrame(DataOutputStream out, ClusterFrame frame) throws IOException {
+        out.writeInt(frame.body().length + 1);
+        out.writeByte(frame.type().ordinal());
+        out.write(frame.body());
+    }
+
+    static ClusterFrame readFrame(DataInputStream in) throws IOException {
+        return readFrame(in, MAX_FRAME_BYTES);
+    }
+
+    static ClusterFrame readFrame(DataInputStream in, int maxBytes) throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > maxBytes) {
+            throw new IOException("Largo de frame inválido: " + length);
+        }
+
+        ClusterFrameType type;
+        try {
+            type = ClusterFrameType.fromCode(in.readUnsignedByte());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        byte[] body = new byte[length - 1];
+        in.readFully(body);
+        return new ClusterFrame(type, body);
+    }
+
+    /**
+     * Ruta del archivo de una URL {@code jdbc:sqlite:...}, o null si la base está en memoria.
+     */
+    static String databasePath(String url) {
+        String path = url.startsWith("jdbc:sqlite:") ? url.substring("jdbc:sqlite:".length()) : url;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            if (path.substring(query).contains("mode=memory")) {
+                return null;
+            }
+            path = path.substring(0, query);
+        }
+        if (path.startsWith("file:")) {
+            path = path.substring("file:".length());
+        }
+        return path.isBlank() || path.startsWith(":memory:") ? null : path;
+    }
+
+    /**
+     * Falla si una ruta compartida por los nodos no está en un disco local de este equipo.
+     * @param location ruta del archivo o directorio, o null si está en memoria
+     */
+    static void requireLocalStorage(String description, String location) {
+        if (location == null) {
+            throw new IllegalStateException(description + " está en memoria: los nodos del cluster deben compartir el mismo archivo");
+        }
+        if (location.startsWith("\\\\") || location.startsWith("//")) {
+            throw new IllegalStateException(description + " está en una carpeta de red (" + location
+                    + "): SQLite no puede compartir el archivo entre equipos, los nodos deben correr en el mismo");
+        }
+
+        // La ruta puede no existir todavía: se revisa el disco de la carpeta más cercana que sí existe
+        Path existing = Path.of(location).toAbsolutePath().normalize();
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) {
+            return;
+        }
+
+        try {
+            String type = Files.getFileStore(existing).type().toLowerCase(Locale.ROOT);
+            if (NETWORK_FILE_SYSTEMS.contains(type)) {
+                throw new IllegalStateException(description + " está en un sistema de archivos de red (" + location
+                        + ", " + type + "): SQLite no puede compartir el archivo entre equipos, los nodos deben correr en el mismo");
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo revisar el disco de {}: {}", location, e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Se está cerrando de todas formas
+        }
+    }
+}
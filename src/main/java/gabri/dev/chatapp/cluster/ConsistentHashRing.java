@@ -0,0 +1,58 @@
+package gabri.dev.chatapp.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Anillo de hashing consistente que reparte claves (IDs de sala) entre nodos.
+ * <p>
+ * Cada nodo ocupa varios puntos del anillo y una clave pertenece al primer punto
+ * desde su hash en adelante. Al entrar o salir un nodo solo cambian de dueño
+ * las claves de sus puntos, aproximadamente 1/N del total. No se modifica:
+ * cada cambio de nodos arma un anillo nuevo.
+ * </p>
+ */
+final class ConsistentHashRing {
+
+    private final TreeMap<Long, String> points = new TreeMap<>();
+
+    ConsistentHashRing(Collection<String> nodeIds, int pointsPerNode) {
+        for (String nodeId : nodeIds) {
+            long seed = hash(nodeId.getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < pointsPerNode; i++) {
+                points.put(mix(seed + i), nodeId);
+            }
+        }
+    }
+
+    /**
+     * Devuelve el nodo dueño de una clave, o null si el anillo está vacío.
+     */
+    String ownerOf(long key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = points.ceilingEntry(mix(key));
+        return entry != null ? entry.getValue() : points.firstEntry().getValue();
+    }
+
+    private static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h = (h ^ b) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Mezcla de SplitMix64: claves consecutivas quedan repartidas por todo el anillo.
+     */
+    private static long mix(long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
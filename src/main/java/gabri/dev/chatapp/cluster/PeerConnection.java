@@ -0,0 +1,187 @@
+package gabri.dev.chatapp.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conexión saliente hacia otro nodo, por la que este nodo le envía sus frames.
+ * <p>
+ * Un hilo propio conecta, se autentica con el {@link ClusterHandshake saludo} y escribe lo que
+ * haya en la cola, agrupando varios frames por escritura; sin tráfico envía {@code PING}. Si la conexión se cae reintenta
+ * cada {@code app.cluster.retry-ms}: los puertos de {@code app.cluster.peer-ports} para siempre,
+ * los de nodos que se conectaron primero hasta {@link #MAX_FAILED_ATTEMPTS} intentos seguidos.
+ * </p>
+ */
+@Slf4j
+final class PeerConnection implements Runnable {
+
+    private static final int MAX_FAILED_ATTEMPTS = 20;
+    private static final int MAX_FRAMES_PER_WRITE = 256;
+
+    private final ClusterService cluster;
+    private final String host;
+    private final int port;
+    private final boolean configured;
+    private final BlockingQueue<ClusterFrame> queue;
+
+    private volatile boolean running = true;
+    private volatile boolean connected;
+    private volatile String nodeId;
+    private volatile Socket socket;
+    private Thread thread;
+
+    PeerConnection(ClusterService cluster, String host, int port, boolean configured, int queueCapacity) {
+        this.cluster = cluster;
+        this.host = host;
+        this.port = port;
+        this.configured = configured;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    String address() {
+        return host + ":" + port;
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    void start() {
+        thread = new Thread(this, "cluster-out-" + address());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Encola un frame. Devuelve false si no hay conexión o la cola está llena.
+     */
+    boolean send(ClusterFrame frame) {
+        if (!connected) {
+            return false;
+        }
+        if (!queue.offer(frame)) {
+            log.warn("Cola hacia el nodo {} llena, frame {} descartado", nodeId, frame.type());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cierra la conexión actual; el hilo vuelve a conectar.
+     */
+    void reconnect() {
+        closeSocket();
+    }
+
+    void stop() {
+        running = false;
+        closeSocket();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        int failedAttempts = 0;
+
+        while (running) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                s.setTcpNoDelay(true);
+                s.setKeepAlive(true);
+                s.connect(new InetSocketAddress(host, port), cluster.getConnectTimeoutMs());
+                s.setSoTimeout(cluster.getConnectTimeoutMs());
+
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 64 * 1024));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+
+                String remoteId = cluster.handshake().connect(in, out).nodeId();
+
+                if (!cluster.accept(this, remoteId)) {
+                    running = false;
+                    break;
+                }
+
+                nodeId = remoteId;
+                queue.clear();
+                connected = true;
+                failedAttempts = 0;
+                cluster.peerUp(this);
+
+                writeLoop(out);
+            } catch (ClusterHandshake.RejectedException e) {
+                failedAttempts++;
+                log.warn("Saludo con el nodo {} rechazado: {}", address(), e.getMessage());
+            } catch (IOException e) {
+                failedAttempts++;
+                log.debug("Conexión con el nodo {} perdida: {}", address(), e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                socket = null;
+                if (connected) {
+                    connected = false;
+                    cluster.peerDown(this);
+                }
+            }
+
+            if (!configured && failedAttempts >= MAX_FAILED_ATTEMPTS) {
+                log.info("Nodo {} inalcanzable, se deja de intentar", address());
+                running = false;
+            }
+            if (running) {
+                try {
+                    Thread.sleep(cluster.getRetryMs());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+        }
+
+        cluster.forget(this);
+    }
+
+    private void writeLoop(DataOutputStream out) throws IOException, InterruptedException {
+        List<ClusterFrame> batch = new ArrayList<>(MAX_FRAMES_PER_WRITE);
+        ClusterFrame ping = ClusterFrame.of(ClusterFrameType.PING, body -> { });
+
+        while (running) {
+            ClusterFrame first = queue.poll(cluster.getHeartbeatMs(), TimeUnit.MILLISECONDS);
+            if (first == null) {
+                ClusterService.writeFrame(out, ping);
+                out.flush();
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, MAX_FRAMES_PER_WRITE - 1);
+            for (ClusterFrame frame : batch) {
+                ClusterService.writeFrame(out, frame);
+            }
+            out.flush();
+            batch.clear();
+        }
+    }
+
+    private void closeSocket() {
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // Se está cerrando de todas formas
+            }
+        }
+    }
+}
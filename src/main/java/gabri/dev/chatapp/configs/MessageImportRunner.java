@@ -0,0 +1,91 @@
+package gabri.dev.chatapp.configs;
+
+import gabri.dev.chatapp.dtos.MessageImportResultDTO;
+import gabri.dev.chatapp.services.MessageImportService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Modo de línea de comandos para importar mensajes desde un archivo NDJSON.
+ * <p>
+ * Solo actúa si se pasa {@code --import.file}; la aplicación importa y termina.
+ * El servidor web igual arranca (la configuración MVC lo requiere), así que conviene
+ * darle un puerto libre:
+ * </p>
+ * <pre>
+ * java -jar carrot.jar --server.port=0 \
+ *      --import.file=chatroom-1.ndjson.gz [--import.chat-room-id=7] [--import.start-line=5001]
+ * </pre>
+ * <p>
+ * Sin {@code --import.chat-room-id} cada línea va a la sala indicada en su {@code chatRoomId}.
+ * Los archivos terminados en {@code .gz} se descomprimen. Si la importación se interrumpe, el log
+ * indica desde qué línea retomarla con {@code --import.start-line}.
+ * </p>
+ * <p>
+ * Al terminar, {@link gabri.dev.chatapp.JavaSpringComposeApplication} cierra el contexto con
+ * {@link org.springframework.boot.SpringApplication#exit}, que toma el código de salida de este
+ * runner: 0 si la importación terminó (aunque se hayan omitido líneas) y 1 si falló.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageImportRunner implements ApplicationRunner, ExitCodeGenerator {
+
+    private final MessageImportService messageImportService;
+
+    private volatile boolean executed;
+    private volatile int exitCode;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("import.file")) {
+            return;
+        }
+
+        Path file = Path.of(args.getOptionValues("import.file").get(0));
+        Long chatRoomId = args.containsOption("import.chat-room-id")
+                ? Long.valueOf(args.getOptionValues("import.chat-room-id").get(0))
+                : null;
+        long startLine = args.containsOption("import.start-line")
+                ? Long.parseLong(args.getOptionValues("import.start-line").get(0))
+                : 1;
+
+        try (InputStream input = open(file)) {
+            log.info("Importando mensajes desde {} (línea inicial: {})", file, startLine);
+            MessageImportResultDTO result = messageImportService.importMessages(input, chatRoomId, startLine);
+            result.getErrors().forEach(error -> log.warn("Omitida: {}", error));
+        } catch (Exception e) {
+            log.error("Error importando mensajes desde {}: {}", file, e.getMessage(), e);
+            exitCode = 1;
+        }
+        executed = true;
+    }
+
+    /**
+     * Indica si se ejecutó una importación, y por lo tanto la aplicación debe terminar.
+     */
+    public boolean isExecuted() {
+        return executed;
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream input = Files.newInputStream(file);
+        return file.toString().endsWith(".gz") ? new GZIPInputStream(input) : input;
+    }
+}
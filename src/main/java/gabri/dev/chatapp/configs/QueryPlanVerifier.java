@@ -0,0 +1,323 @@
+package gabri.dev.chatapp.configs;
+
+import gabri.dev.chatapp.entities.ChatRoom;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Revisa al arrancar, con {@code EXPLAIN QUERY PLAN}, que las consultas principales de los
+ * repositorios usen índices.
+ * <p>
+ * Cada consulta es el SQL equivalente al de su método de repositorio, con los mismos filtros,
+ * JOINs y orden. Si alguna recorre una tabla o un índice completo ({@code SCAN}), o necesita
+ * ordenar en un B-tree temporal cuando el orden debería salir del índice, el arranque falla
+ * con el plan de cada consulta afectada. Así una migración que borra o cambia un índice, o
+ * una consulta nueva sin índice, se detecta antes de llegar a producción.
+ * </p>
+ * <p>
+ * Al cambiar una consulta de los repositorios hay que actualizar aquí su equivalente. Cada
+ * método declarado en un repositorio tiene aquí su consulta o figura en {@link #UNCHECKED} con
+ * el motivo por el que recorre la tabla: {@code QueryPlanVerifierTest} falla si un método nuevo
+ * no está en ninguna de las dos listas o si alguna nombra un método que ya no existe.
+ * Se desactiva con {@code app.schema.verify-query-plans=false}.
+ * </p>
+ */
+@Component
+@DependsOn("schemaMigrationRunner")
+@RequiredArgsConstructor
+@Slf4j
+public class QueryPlanVerifier {
+
+    private static final List<PlanCheck> CHECKS = List.of(
+            // MessageRepository
+            new PlanCheck("MessageRepository.findByChatRoomIdOrderBySentAtAsc",
+                    "SELECT m.id FROM messages m WHERE m.chat_room_id = ? ORDER BY m.sent_at ASC", false),
+            new PlanCheck("MessageRepository.findByChatRoomId",
+                    "SELECT m.id, s.username FROM messages m JOIN users s ON s.id = m.sender_id " +
+                            "WHERE m.chat_room_id = ? ORDER BY m.sent_at DESC LIMIT ? OFFSET ?", false),
+            new PlanCheck("MessageRepository.findHistoryFirstPage",
+                    "SELECT m.id, s.username FROM messages m JOIN users s ON s.id = m.sender_id " +
+                            "WHERE m.chat_room_id = ? ORDER BY m.sent_at DESC, m.id DESC LIMIT ?", false),
+            new PlanCheck("MessageRepository.findHistoryBefore",
+                    "SELECT m.id, s.username FROM messages m JOIN users s ON s.id = m.sender_id " +
+                            "WHERE m.chat_room_id = ? AND m.sent_at <= ? AND (m.sent_at < ? OR m.id < ?) " +
+                            "ORDER BY m.sent_at DESC, m.id DESC LIMIT ?", false),
+            new PlanCheck("MessageRepository.findExportFirstBatch",
+                    "SELECT m.id, s.username FROM messages m JOIN users s ON s.id = m.sender_id " +
+                            "WHERE m.chat_room_id = ? ORDER BY m.sent_at ASC, m.id ASC LIMIT ?", false),
+            new PlanCheck("MessageRepository.findExportBatchAfter",
+                    "SELECT m.id, s.username FROM messages m JOIN users s ON s.id = m.sender_id " +
+                            "WHERE m.chat_room_id = ? AND m.sent_at >= ? AND (m.sent_at > ? OR m.id > ?) " +
+                            "ORDER BY m.sent_at ASC, m.id ASC LIMIT ?", false),
+            new PlanCheck("MessageRepository.findLastMessagesByChatRoomId",
+                    "SELECT m.id, s.username FROM messages m JOIN users s ON s.id = m.sender_id " +
+                            "WHERE m.chat_room_id = ? ORDER BY m.sent_at DESC, m.id DESC LIMIT ?", false),
+            new PlanCheck("MessageRepository.findLastMessageByChatRoomId",
+                    "SELECT m.id FROM messages m WHERE m.chat_room_id = ? ORDER BY m.sent_at DESC LIMIT 1", false),
+            new PlanCheck("MessageRepository.findViewById",
+                    "SELECT m.id, s.username FROM messages m JOIN users s ON s.id = m.sender_id WHERE m.id = ?", false),
+            new PlanCheck("MessageRepository.findViewsByIdIn",
+                    "SELECT m.id, s.username FROM messages m JOIN users s ON s.id = m.sender_id " +
+                            "WHERE m.id IN (?, ?)", false),
+            new PlanCheck("MessageRepository.findBySenderId",
+                    "SELECT m.id FROM messages m WHERE m.sender_id = ? ORDER BY m.sent_at DESC", false),
+            new PlanCheck("MessageRepository.findByChatRoomIdAndType",
+                    "SELECT m.id FROM messages m WHERE m.chat_room_id = ? AND m.type = ? " +
+                            "ORDER BY m.sent_at ASC", false),
+            new PlanCheck("MessageRepository.findEditedMessages",
+                    "SELECT m.id FROM messages m WHERE m.chat_room_id = ? AND m.is_edited = 1 " +
+                            "ORDER BY m.edited_at DESC", false),
+            new PlanCheck("MessageRepository.findMessagesBetweenDates",
+                    "SELECT m.id FROM messages m WHERE m.chat_room_id = ? AND m.sent_at BETWEEN ? AND ? " +
+                            "ORDER BY m.sent_at ASC", false),
+            new PlanCheck("MessageRepository.findMaxIdByChatRoomId",
+                    "SELECT MAX(m.id) FROM messages m WHERE m.chat_room_id = ?", false),
+            new PlanCheck("MessageRepository.countMessagesByChatRoomId",
+                    "SELECT COUNT(m.id) FROM messages m WHERE m.chat_room_id = ?", false),
+            new PlanCheck("MessageRepository.deleteByIdIn",
+                    "DELETE FROM messages WHERE id IN (?, ?)", false),
+            new PlanCheck("MessageRepository.deleteByChatRoomId",
+                    "DELETE FROM messages WHERE chat_room_id = ?", false),
+            new PlanCheck("MessageRepository.deleteBatchByChatRoomId",
+                    "DELETE FROM messages WHERE id IN (SELECT id FROM messages WHERE chat_room_id = ? LIMIT ?)", false),
+            new PlanCheck("MessageRepository.findArchiveBatch",
+                    "SELECT m.id, s.username FROM messages m JOIN users s ON s.id = m.sender_id " +
+                            "WHERE m.chat_room_id = ? AND m.sent_at < ? ORDER BY m.sent_at ASC, m.id ASC LIMIT ?", false),
+            // El orden por relevancia no sale del índice de texto completo: se ordenan solo las coincidencias
+            new PlanCheck("MessageRepository.searchFirstPage",
+                    "SELECT rowid, rank FROM messages_fts WHERE messages_fts MATCH ? " +
+                            "ORDER BY rank, rowid DESC LIMIT ?", true),
+            new PlanCheck("MessageRepository.searchAfter",
+                    "SELECT rowid, rank FROM messages_fts WHERE messages_fts MATCH ? " +
+                            "AND (rank > ? OR (rank = ? AND rowid < ?)) ORDER BY rank, rowid DESC LIMIT ?", true),
+            new PlanCheck("MessageRepository.findSnippets",
+                    "SELECT rowid FROM messages_fts WHERE messages_fts MATCH ? AND rowid IN (?, ?)", false),
+
+            // MessageArchiveSegmentRepository
+            new PlanCheck("MessageArchiveSegmentRepository.findBetween",
+                    "SELECT s.id FROM message_archive_segments s WHERE s.chat_room_id = ? " +
+                            "AND s.last_sent_at >= ? AND (s.last_sent_at > ? OR s.last_id > ?) " +
+                            "AND (s.first_sent_at < ? OR (s.first_sent_at = ? AND s.first_id < ?)) " +
+                            "ORDER BY s.last_sent_at DESC, s.last_id DESC", false),
+            new PlanCheck("MessageArchiveSegmentRepository.findByChatRoomIdInOrder",
+                    "SELECT s.id FROM message_archive_segments s WHERE s.chat_room_id = ? " +
+                            "ORDER BY s.last_sent_at ASC, s.last_id ASC", false),
+            new PlanCheck("MessageArchiveSegmentRepository.deleteByChatRoomId",
+                    "DELETE FROM message_archive_segments WHERE chat_room_id = ?", false),
+
+            // ChatRoomReadStateRepository
+            new PlanCheck("ChatRoomReadStateRepository.countUnreadByChatRoomIds",
+                    "SELECT cr.id, COUNT(m.id) FROM chat_rooms cr " +
+                            "LEFT JOIN chat_room_read_state rs ON rs.chat_room_id = cr.id AND rs.user_id = ? " +
+                            "JOIN messages m ON m.chat_room_id = cr.id AND m.id > COALESCE(rs.last_read_message_id, 0) " +
+                            "WHERE cr.id IN (?, ?) AND m.sender_id <> ? GROUP BY cr.id", false),
+            new PlanCheck("ChatRoomReadStateRepository.advanceCaughtUp",
+                    "UPDATE chat_room_read_state SET last_read_message_id = ?, updated_at = ? " +
+                            "WHERE chat_room_id = ? AND last_read_message_id >= ? AND last_read_message_id < ?", false),
+            new PlanCheck("ChatRoomReadStateRepository.upsertLastRead",
+                    "INSERT INTO chat_room_read_state (user_id, chat_room_id, last_read_message_id, updated_at) " +
+                            "SELECT ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM chat_room_participants p " +
+                            "WHERE p.chat_room_id = ? AND p.user_id = ?) " +
+                            "ON CONFLICT (user_id, chat_room_id) DO UPDATE SET " +
+                            "last_read_message_id = MAX(last_read_message_id, excluded.last_read_message_id), " +
+                            "updated_at = excluded.updated_at", false),
+            new PlanCheck("ChatRoomReadStateRepository.deleteByChatRoomId",
+                    "DELETE FROM chat_room_read_state WHERE chat_room_id = ?", false),
+            new PlanCheck("ChatRoomReadStateRepository.deleteByUserIdAndChatRoomId",
+                    "DELETE FROM chat_room_read_state WHERE user_id = ? AND chat_room_id = ?", false),
+
+            // ChatRoomRepository: las salas de un usuario se ordenan en memoria, son pocas
+            new PlanCheck("ChatRoomRepository.findByName",
+                    "SELECT cr.id FROM chat_rooms cr WHERE cr.name = ?", false),
+            new PlanCheck("ChatRoomRepository.existsByName",
+                    "SELECT cr.id FROM chat_rooms cr WHERE cr.name = ? LIMIT 1", false),
+            new PlanCheck("ChatRoomRepository.findByParticipantsContaining",
+                    "SELECT cr.id FROM chat_rooms cr JOIN chat_room_participants p ON p.chat_room_id = cr.id " +
+                            "WHERE p.user_id = ? ORDER BY cr.updated_at DESC", true),
+            new PlanCheck("ChatRoomRepository.findByParticipantId",
+                    "SELECT cr.id FROM chat_rooms cr JOIN chat_room_participants p ON p.chat_room_id = cr.id " +
+                            "WHERE p.user_id = ? ORDER BY cr.updated_at DESC", true),
+            new PlanCheck("ChatRoomRepository.findByParticipantIdWithCreator",
+                    "SELECT cr.id, c.username FROM chat_rooms cr LEFT JOIN users c ON c.id = cr.created_by_user_id " +
+                            "JOIN chat_room_participants p ON p.chat_room_id = cr.id " +
+                            "WHERE p.user_id = ? ORDER BY cr.updated_at DESC", true),
+            new PlanCheck("ChatRoomRepository.searchByNameForParticipant",
+                    "SELECT cr.id, c.username FROM chat_rooms cr LEFT JOIN users c ON c.id = cr.created_by_user_id " +
+                            "JOIN chat_room_participants p ON p.chat_room_id = cr.id " +
+                            "WHERE p.user_id = ? AND lower(cr.name) LIKE lower('%' || ? || '%') " +
+                            "ORDER BY cr.updated_at DESC", true),
+            new PlanCheck("ChatRoomRepository.findPrivateChatRoom",
+                    "SELECT cr.id FROM chat_rooms cr JOIN chat_room_participants p1 ON p1.chat_room_id = cr.id " +
+                            "JOIN chat_room_participants p2 ON p2.chat_room_id = cr.id " +
+                            "WHERE cr.type = 'PRIVATE' AND p1.user_id = ? AND p2.user_id = ? " +
+                            "AND (SELECT COUNT(p.user_id) FROM chat_room_participants p WHERE p.chat_room_id = cr.id) = 2", false),
+            new PlanCheck("ChatRoomRepository.countParticipants",
+                    "SELECT (SELECT COUNT(p.user_id) FROM chat_room_participants p WHERE p.chat_room_id = cr.id) " +
+                            "FROM chat_rooms cr WHERE cr.id = ?", false),
+            new PlanCheck("ChatRoomRepository.registerNewMessages",
+                    "UPDATE chat_rooms SET message_count = message_count + ?, last_message_id = ?, " +
+                            "last_message_at = ?, last_message_preview = ?, updated_at = ? WHERE id = ?", false),
+            new PlanCheck("ChatRoomRepository.updateLastMessagePreview",
+                    "UPDATE chat_rooms SET last_message_preview = ? WHERE id = ? AND last_message_id = ?", false),
+            new PlanCheck("ChatRoomRepository.decrementMessageCount",
+                    "UPDATE chat_rooms SET message_count = message_count - 1 WHERE id = ? AND message_count > 0", false),
+            new PlanCheck("ChatRoomRepository.updateLastMessage",
+                    "UPDATE chat_rooms SET last_message_id = ?, last_message_at = ?, last_message_preview = ? " +
+                            "WHERE id = ?", false),
+            new PlanCheck("ChatRoomRepository.recalculateMessageStats",
+                    "UPDATE chat_rooms SET " +
+                            "message_count = (SELECT COUNT(*) FROM messages m WHERE m.chat_room_id = chat_rooms.id) + " +
+                            "(SELECT COALESCE(SUM(s.message_count), 0) FROM message_archive_segments s " +
+                            "WHERE s.chat_room_id = chat_rooms.id), " +
+                            "last_message_id = (SELECT m.id FROM messages m WHERE m.chat_room_id = chat_rooms.id " +
+                            "ORDER BY m.sent_at DESC, m.id DESC LIMIT 1), " +
+                            "last_message_at = (SELECT m.sent_at FROM messages m WHERE m.chat_room_id = chat_rooms.id " +
+                            "ORDER BY m.sent_at DESC, m.id DESC LIMIT 1), " +
+                            "last_message_preview = (SELECT substr(m.content, 1, " + ChatRoom.PREVIEW_LENGTH + ") " +
+                            "FROM messages m WHERE m.chat_room_id = chat_rooms.id ORDER BY m.sent_at DESC, m.id DESC LIMIT 1) " +
+                            "WHERE id IN (?, ?)", false),
+            new PlanCheck("ChatRoomRepository.findActiveById",
+                    "SELECT cr.id FROM chat_rooms cr WHERE cr.id = ? AND cr.deleted_at IS NULL", false),
+            new PlanCheck("ChatRoomRepository.markDeleted",
+                    "UPDATE chat_rooms SET deleted_at = ?, name = name || '" + ChatRoom.DELETED_NAME_MARKER + "' || id " +
+                            "WHERE id = ? AND deleted_at IS NULL", false),
+            new PlanCheck("ChatRoomRepository.deleteParticipantsByChatRoomId",
+                    "DELETE FROM chat_room_participants WHERE chat_room_id = ?", false),
+            new PlanCheck("ChatRoomRepository.deleteChatRoomById",
+                    "DELETE FROM chat_rooms WHERE id = ?", false),
+            new PlanCheck("ChatRoomRepository.findParticipantIdsByChatRoomId",
+                    "SELECT p.user_id FROM chat_rooms cr JOIN chat_room_participants p ON p.chat_room_id = cr.id " +
+                            "WHERE cr.id = ?", false),
+            new PlanCheck("ChatRoomRepository.findIdsByParticipantId",
+                    "SELECT cr.id FROM chat_rooms cr JOIN chat_room_participants p ON p.chat_room_id = cr.id " +
+                            "WHERE p.user_id = ?", false),
+            new PlanCheck("ChatRoomRepository.isUserParticipant",
+                    "SELECT COUNT(cr.id) FROM chat_rooms cr JOIN chat_room_participants p ON p.chat_room_id = cr.id " +
+                            "WHERE cr.id = ? AND p.user_id = ?", false),
+            new PlanCheck("ChatRoomRepository.findParticipantsByChatRoomIds",
+                    "SELECT cr.id, u.username FROM chat_rooms cr JOIN chat_room_participants p ON p.chat_room_id = cr.id " +
+                            "JOIN users u ON u.id = p.user_id WHERE cr.id IN (?, ?)", false),
+            new PlanCheck("ChatRoomRepository.findDeletedIdsBefore",
+                    "SELECT cr.id FROM chat_rooms cr WHERE cr.deleted_at < ? ORDER BY cr.deleted_at ASC", false),
+            new PlanCheck("ChatRoomRepository.findGroupChatRoomsCreatedBy",
+                    "SELECT cr.id FROM chat_rooms cr WHERE cr.created_by_user_id = ? AND cr.type = 'GROUP'", false),
+
+            // EmailOutboxRepository
+            new PlanCheck("EmailOutboxRepository.findDue",
+                    "SELECT e.id FROM email_outbox e WHERE e.failed_at IS NULL AND e.next_attempt_at <= ? " +
+                            "ORDER BY e.next_attempt_at ASC, e.id ASC LIMIT ?", false),
+            new PlanCheck("EmailOutboxRepository.deleteByIdIn",
+                    "DELETE FROM email_outbox WHERE id IN (?, ?)", false),
+            new PlanCheck("EmailOutboxRepository.scheduleRetry",
+                    "UPDATE email_outbox SET attempts = attempts + 1, next_attempt_at = ?, last_error = ? " +
+                            "WHERE id = ?", false),
+            new PlanCheck("EmailOutboxRepository.markFailed",
+                    "UPDATE email_outbox SET attempts = attempts + 1, failed_at = ?, last_error = ? WHERE id = ?", false),
+
+            // UserRepository
+            new PlanCheck("UserRepository.findByStatus",
+                    "SELECT u.id, u.username FROM users u WHERE u.status = ?", false),
+            new PlanCheck("UserRepository.findIdByUsername",
+                    "SELECT u.id FROM users u WHERE u.username = ?", false),
+            new PlanCheck("UserRepository.findByUsername",
+                    "SELECT u.id FROM users u WHERE u.username = ?", false),
+            new PlanCheck("UserRepository.existsByUsername",
+                    "SELECT u.id FROM users u WHERE u.username = ? LIMIT 1", false),
+            new PlanCheck("UserRepository.findByEmail",
+                    "SELECT u.id FROM users u WHERE u.email = ?", false),
+            new PlanCheck("UserRepository.existsByEmail",
+                    "SELECT u.id FROM users u WHERE u.email = ? LIMIT 1", false),
+            new PlanCheck("UserRepository.updateUserStatus",
+                    "UPDATE users SET status = ?, last_seen_at = ? WHERE id = ?", false),
+
+            // VerificationTokenRepository
+            new PlanCheck("VerificationTokenRepository.findByToken",
+                    "SELECT t.id FROM verification_tokens t WHERE t.token = ?", false),
+            new PlanCheck("VerificationTokenRepository.findByUser",
+                    "SELECT t.id FROM verification_tokens t WHERE t.user_id = ?", false),
+            new PlanCheck("VerificationTokenRepository.deleteByUser",
+                    "SELECT t.id FROM verification_tokens t WHERE t.user_id = ?", false)
+    );
+
+    /**
+     * Métodos de repositorio que recorren una tabla a propósito, con el motivo.
+     */
+    static final Map<String, String> UNCHECKED = Map.ofEntries(
+            Map.entry("ChatRoomRepository.findByType", "sin uso; el tipo no tiene índice"),
+            Map.entry("ChatRoomRepository.findByNameContainingIgnoreCase", "sin uso; LIKE con comodín inicial"),
+            Map.entry("ChatRoomRepository.findRetentionPolicies", "todas las salas, en el archivado periódico"),
+            Map.entry("ChatRoomRepository.findAllParticipantIds", "toda la tabla, al cargar el índice de membresía"),
+            Map.entry("UserRepository.findByUsernameContainingIgnoreCase", "LIKE con comodín inicial"),
+            Map.entry("UserRepository.findByEnabled", "sin uso; devuelve casi todos los usuarios"),
+            Map.entry("UserRepository.findAllExceptUser", "devuelve todos los usuarios"),
+            Map.entry("UserRepository.findUsersNotInChatRoom", "sin uso; devuelve casi todos los usuarios")
+    );
+
+    // Un índice de texto completo aparece como SCAN de la tabla virtual, con la restricción que usa
+    private static final Pattern INDEXED_VIRTUAL_TABLE = Pattern.compile("SCAN \\S+ VIRTUAL TABLE INDEX \\d+:.+");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.schema.verify-query-plans:true}")
+    private boolean enabled;
+
+    @PostConstruct
+    public void verify() {
+        if (!enabled) {
+            return;
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (PlanCheck check : CHECKS) {
+            List<String> plan = explain(check.sql());
+            boolean scans = plan.stream().anyMatch(QueryPlanVerifier::isScan);
+            boolean sorts = plan.stream().anyMatch(step -> step.startsWith("USE TEMP B-TREE"));
+            if (scans || (sorts && !check.sortAllowed())) {
+                failures.add(check.name() + ":\n    " + String.join("\n    ", plan));
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Consultas sin índice adecuado:\n  " + String.join("\n  ", failures));
+        }
+        log.info("Planes de consulta verificados: {} consultas usan índices", CHECKS.size());
+    }
+
+    /**
+     * Nombres de los métodos de repositorio con consulta revisada.
+     */
+    static Set<String> checkedQueries() {
+        return CHECKS.stream().map(PlanCheck::name).collect(Collectors.toSet());
+    }
+
+    private static boolean isScan(String step) {
+        return step.startsWith("SCAN ") && !step.equals("SCAN CONSTANT ROW")
+                && !INDEXED_VIRTUAL_TABLE.matcher(step).matches();
+    }
+
+    /**
+     * Pasos del plan. Los parámetros quedan sin valor: sin estadísticas el plan no depende de ellos.
+     */
+    private List<String> explain(String sql) {
+        return jdbcTemplate.query("EXPLAIN QUERY PLAN " + sql, (rs, rowNum) -> rs.getString("detail"));
+    }
+
+    /**
+     * Consulta a revisar. {@code sortAllowed} admite un ordenamiento temporal, para las
+     * consultas que ordenan pocas filas ya filtradas por índice.
+     */
+    private record PlanCheck(String name, String sql, boolean sortAllowed) {
+    }
+}
@@ -0,0 +1,214 @@
+package gabri.dev.chatapp.configs;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Migraciones versionadas del esquema.
+ * <p>
+ * Los scripts están en {@code db/migration} y se llaman como los de Flyway:
+ * {@code V<versión>__<descripción>.sql}. Al arrancar, antes de que se cree el
+ * {@code EntityManagerFactory}, se aplican en orden las versiones que no figuran en
+ * {@code schema_history}, cada una en su propia transacción. Hibernate ya no modifica el
+ * esquema ({@code ddl-auto=none}).
+ * </p>
+ * <p>
+ * Una migración aplicada no se edita: si el checksum de un script ya aplicado cambió, el
+ * arranque falla. Los cambios de esquema van en un script nuevo.
+ * </p>
+ * <p>
+ * Los scripts se separan en sentencias por el {@code ;} final de línea; en un
+ * {@code CREATE TRIGGER} la sentencia termina en la línea {@code END;}.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SchemaMigrationRunner {
+
+    private static final String LOCATION = "classpath:db/migration/V*__*.sql";
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private final DataSource dataSource;
+
+    @PostConstruct
+    public void migrate() {
+        TreeMap<Integer, Migration> migrations = loadMigrations();
+
+        try (Connection connection = dataSource.getConnection()) {
+            createHistoryTable(connection);
+            Map<Integer, Long> applied = appliedChecksums(connection);
+
+            for (Map.Entry<Integer, Long> entry : applied.entrySet()) {
+                Migration migration = migrations.get(entry.getKey());
+                if (migration == null) {
+                    log.warn("La base tiene aplicada la migración V{}, que esta versión no conoce", entry.getKey());
+                } else if (migration.checksum() != entry.getValue()) {
+                    throw new IllegalStateException("La migración " + migration.fileName() +
+                            " cambió después de aplicarse; los cambios de esquema van en un script nuevo");
+                }
+            }
+
+            int count = 0;
+            for (Migration migration : migrations.values()) {
+                if (!applied.containsKey(migration.version())) {
+                    apply(connection, migration);
+                    count++;
+                }
+            }
+
+            if (count > 0) {
+                log.info("Esquema actualizado a V{} ({} migraciones aplicadas)", migrations.lastKey(), count);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("No se pudo migrar el esquema: " + e.getMessage(), e);
+        }
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : migration.statements()) {
+                statement.execute(sql);
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO schema_history (version, description, checksum, installed_on, execution_ms) " +
+                            "VALUES (?, ?, ?, ?, ?)")) {
+                insert.setInt(1, migration.version());
+                insert.setString(2, migration.description());
+                insert.setLong(3, migration.checksum());
+                insert.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+                insert.setLong(5, System.currentTimeMillis() - start);
+                insert.executeUpdate();
+            }
+
+            connection.commit();
+            log.info("Migración {} aplicada en {} ms", migration.fileName(), System.currentTimeMillis() - start);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Falló " + migration.fileName() + ": " + e.getMessage(), e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void createHistoryTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_history (" +
+                    "version integer primary key, " +
+                    "description varchar(200) not null, " +
+                    "checksum bigint not null, " +
+                    "installed_on timestamp not null, " +
+                    "execution_ms bigint not null)");
+        }
+    }
+
+    private static Map<Integer, Long> appliedChecksums(Connection connection) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT version, checksum FROM schema_history")) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return applied;
+    }
+
+    private static TreeMap<Integer, Migration> loadMigrations() {
+        TreeMap<Integer, Migration> migrations = new TreeMap<>();
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+                Matcher matcher = FILE_NAME.matcher(resource.getFilename());
+                if (!matcher.matches()) {
+                    throw new IllegalStateException("Nombre de migración inválido: " + resource.getFilename());
+                }
+
+                byte[] content = StreamUtils.copyToByteArray(resource.getInputStream());
+                CRC32 crc = new CRC32();
+                crc.update(content);
+
+                Migration migration = new Migration(Integer.parseInt(matcher.group(1)),
+                        matcher.group(2).replace('_', ' '), resource.getFilename(), crc.getValue(),
+                        splitStatements(new String(content, StandardCharsets.UTF_8)));
+                Migration previous = migrations.put(migration.version(), migration);
+                if (previous != null) {
+                    throw new IllegalStateException("Versión de migración repetida: " +
+                            previous.fileName() + " y " + migration.fileName());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return migrations;
+    }
+
+    private static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        for (String line : script.split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            current.append(line).append('\n');
+
+            boolean inTrigger = current.toString().stripLeading().toUpperCase(Locale.ROOT).startsWith("CREATE TRIGGER");
+            boolean ends = inTrigger ? trimmed.equalsIgnoreCase("END;") : trimmed.endsWith(";");
+            if (ends) {
+                statements.add(current.toString().trim());
+                current.setLength(0);
+            }
+        }
+
+        if (!current.toString().isBlank()) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    /**
+     * Hace que el {@code EntityManagerFactory} espere a las migraciones, como con Flyway.
+     */
+    @Component
+    static class EntityManagerFactoryDependsOnMigrations extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependsOnMigrations() {
+            super(SchemaMigrationRunner.class);
+        }
+    }
+
+    private record Migration(int version, String description, String fileName, long checksum,
+                             List<String> statements) {
+    }
+}
@@ -0,0 +1,132 @@
+package gabri.dev.chatapp.configs;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+
+/**
+ * Conexiones a SQLite: una sola conexión de escritura y un pool de lectura.
+ * <p>
+ * SQLite admite un escritor a la vez. Con un pool común, las transacciones que escriben
+ * compiten por el lock del archivo y esperan en {@code busy_timeout} o fallan con
+ * {@code SQLITE_BUSY}. Aquí todas las escrituras pasan por la misma conexión: esperan su
+ * turno en el pool, una detrás de otra, sin reintentar contra el archivo. Las transacciones
+ * de solo lectura ({@code @Transactional(readOnly = true)}) usan un pool aparte, con
+ * {@code query_only}; en modo WAL leen en paralelo entre sí y con el escritor.
+ * </p>
+ * <p>
+ * Cada conexión abre con los pragmas de {@code app.sqlite.*}. El modo de journal queda
+ * guardado en el archivo: lo fija el escritor y los lectores lo heredan. Con
+ * {@code app.sqlite.tuning.enabled=false} esta configuración no se aplica y Spring Boot
+ * crea su pool por defecto, sin pragmas.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sqlite.tuning.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class SqliteDataSourceConfig {
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${app.sqlite.journal-mode:WAL}")
+    private String journalMode;
+
+    @Value("${app.sqlite.synchronous:NORMAL}")
+    private String synchronous;
+
+    @Value("${app.sqlite.mmap-size-mb:256}")
+    private long mmapSizeMb;
+
+    @Value("${app.sqlite.cache-size-mb:16}")
+    private int cacheSizeMb;
+
+    @Value("${app.sqlite.busy-timeout-ms:5000}")
+    private int busyTimeoutMs;
+
+    @Value("${app.sqlite.temp-store:MEMORY}")
+    private String tempStore;
+
+    @Value("${app.sqlite.read-pool-size:4}")
+    private int readPoolSize;
+
+    @Value("${app.sqlite.write-timeout-ms:30000}")
+    private long writeTimeoutMs;
+
+    private HikariDataSource writer;
+    private HikariDataSource reader;
+
+    /**
+     * DataSource de la aplicación. Las conexiones se piden recién al ejecutar la primera
+     * sentencia, cuando ya se sabe si la transacción es de solo lectura.
+     */
+    @Bean
+    public DataSource dataSource() {
+        // El escritor se abre primero: fija el modo de journal antes de que lleguen los lectores
+        SQLiteConfig writerConfig = sqliteConfig();
+        writerConfig.setJournalMode(SQLiteConfig.JournalMode.valueOf(journalMode.toUpperCase()));
+        writerConfig.setSynchronous(SQLiteConfig.SynchronousMode.valueOf(synchronous.toUpperCase()));
+
+        HikariConfig writerPool = hikariConfig("sqlite-writer", writerConfig);
+        writerPool.setMaximumPoolSize(1);
+        writerPool.setMinimumIdle(1);
+        writerPool.setConnectionTimeout(writeTimeoutMs);
+        writer = new HikariDataSource(writerPool);
+
+        HikariConfig readerPool = hikariConfig("sqlite-reader", sqliteConfig());
+        readerPool.setMaximumPoolSize(readPoolSize);
+        readerPool.setMinimumIdle(1);
+        readerPool.setConnectionInitSql("PRAGMA query_only = 1");
+        reader = new HikariDataSource(readerPool);
+
+        log.info("SQLite en {}: journal {}, synchronous {}, 1 conexión de escritura y hasta {} de lectura",
+                url, journalMode, synchronous, readPoolSize);
+
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(writer);
+        dataSource.setReadOnlyDataSource(reader);
+        return dataSource;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (reader != null) {
+            reader.close();
+        }
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Pragmas comunes a todas las conexiones.
+     */
+    private SQLiteConfig sqliteConfig() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(busyTimeoutMs);
+        // Negativo: tamaño en KiB y no en páginas
+        config.setCacheSize(-cacheSizeMb * 1024);
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSizeMb * 1024 * 1024));
+        config.setTempStore(SQLiteConfig.TempStore.valueOf(tempStore.toUpperCase()));
+        return config;
+    }
+
+    private HikariConfig hikariConfig(String poolName, SQLiteConfig sqliteConfig) {
+        SQLiteDataSource dataSource = new SQLiteDataSource(sqliteConfig);
+        dataSource.setUrl(url);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setDataSource(dataSource);
+        return config;
+    }
+}
@@ -1,6 +1,10 @@
 package gabri.dev.chatapp.configs;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
@@ -19,6 +23,46 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @EnableWebMvc
 public class WebConfig implements WebMvcConfigurer {
 
+    @Value("${app.export.timeout-ms:1800000}")
+    private long asyncTimeoutMs;
+
+    @Value("${app.export.max-concurrent:4}")
+    private int maxConcurrentStreams;
+
+    /**
+     * Executor for asynchronous MVC responses, such as the streamed history export.
+     * <p>
+     * Kept separate from the application task executor so that long downloads
+     * cannot starve other asynchronous work.
+     * </p>
+     *
+     * @return the executor used by {@link #configureAsyncSupport(AsyncSupportConfigurer)}.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor mvcAsyncTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrentStreams);
+        executor.setMaxPoolSize(maxConcurrentStreams);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("mvc-async-");
+        return executor;
+    }
+
+    /**
+     * Configures asynchronous request processing.
+     * <p>
+     * {@code @EnableWebMvc} turns off Spring Boot's {@code spring.mvc.async.*} properties,
+     * so the executor and timeout are set here. The timeout must cover a full export.
+     * </p>
+     *
+     * @param configurer the {@link AsyncSupportConfigurer} to customize.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(mvcAsyncTaskExecutor());
+        configurer.setDefaultTimeout(asyncTimeoutMs);
+    }
+
     /**
      * Configures CORS mapping for all endpoints in the application.
      *
@@ -2,15 +2,23 @@ package gabri.dev.chatapp.controllers;
 
 import gabri.dev.chatapp.dtos.*;
 import gabri.dev.chatapp.services.ChatRoomService;
+import gabri.dev.chatapp.services.MessageExportService;
+import gabri.dev.chatapp.services.MessageImportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -23,7 +31,11 @@ import java.util.List;
 @Tag(name = "Salas de Chat", description = "Endpoints para gestión de salas de chat")
 public class ChatRoomController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final ChatRoomService chatRoomService;
+    private final MessageExportService messageExportService;
+    private final MessageImportService messageImportService;
 
     /**
      * Obtiene todas las salas de chat del usuario actual.
@@ -132,6 +144,23 @@ public class ChatRoomController {
         return ResponseEntity.ok(ApiResponseDTO.success(chatRoom, "Participante removido exitosamente"));
     }
 
+    /**
+     * Marca una sala como leída hasta un mensaje.
+     */
+    @PostMapping("/{id}/read")
+    @Operation(summary = "Marcar como leída",
+            description = "Marca la sala como leída hasta el mensaje indicado, o completa si no se indica")
+    public ResponseEntity<ApiResponseDTO<Void>> markAsRead(
+            @PathVariable Long id,
+            @RequestBody(required = false) MarkReadDTO markReadDTO) {
+
+        log.debug("Request para marcar como leída la sala {}", id);
+
+        chatRoomService.markAsRead(id, markReadDTO);
+
+        return ResponseEntity.ok(ApiResponseDTO.success(null, "Sala marcada como leída"));
+    }
+
     /**
      * Abandona una sala de chat.
      */
@@ -150,14 +179,32 @@ public class ChatRoomController {
      * Elimina una sala de chat grupal.
      */
     @DeleteMapping("/{id}")
-    @Operation(summary = "Eliminar sala", description = "Elimina una sala grupal (solo creador)")
-    public ResponseEntity<ApiResponseDTO<Void>> deleteChatRoom(@PathVariable Long id) {
+    @Operation(summary = "Eliminar sala",
+            description = "Elimina una sala grupal (solo creador). La sala deja de verse al instante " +
+                    "y sus mensajes se borran en segundo plano")
+    public ResponseEntity<ApiResponseDTO<ChatRoomDeletionDTO>> deleteChatRoom(@PathVariable Long id) {
 
         log.info("Request para eliminar sala de chat con ID: {}", id);
 
-        chatRoomService.deleteChatRoom(id);
+        ChatRoomDeletionDTO deletion = chatRoomService.deleteChatRoom(id);
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(ApiResponseDTO.success(deletion, "Sala eliminada; sus mensajes se borran en segundo plano"));
+    }
+
+    /**
+     * Obtiene el avance del borrado de una sala eliminada.
+     */
+    @GetMapping("/{id}/deletion")
+    @Operation(summary = "Avance de eliminación",
+            description = "Mensajes borrados hasta ahora de una sala eliminada (solo quien la eliminó)")
+    public ResponseEntity<ApiResponseDTO<ChatRoomDeletionDTO>> getDeletionProgress(@PathVariable Long id) {
+
+        log.info("Request para ver la eliminación de la sala {}", id);
+
+        ChatRoomDeletionDTO deletion = chatRoomService.getDeletionProgress(id);
 
-        return ResponseEntity.ok(ApiResponseDTO.success(null, "Sala eliminada exitosamente"));
+        return ResponseEntity.ok(ApiResponseDTO.success(deletion, "Avance de eliminación obtenido exitosamente"));
     }
 
     /**
@@ -174,4 +221,47 @@ public class ChatRoomController {
 
         return ResponseEntity.ok(ApiResponseDTO.success(chatRooms, "Búsqueda completada exitosamente"));
     }
-}
\ No newline at end of file
+
+    /**
+     * Exporta el historial completo de una sala como NDJSON.
+     */
+    @GetMapping("/{id}/export")
+    @Operation(summary = "Exportar historial",
+            description = "Descarga todos los mensajes de la sala, un JSON por línea (NDJSON), opcionalmente comprimido con gzip")
+    public ResponseEntity<StreamingResponseBody> exportChatRoom(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+
+        log.info("Request para exportar historial de sala {} (gzip: {})", id, gzip);
+
+        StreamingResponseBody body = messageExportService.exportChatRoom(id, gzip);
+
+        String fileName = "chatroom-" + id + (gzip ? ".ndjson.gz" : ".ndjson");
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(fileName)
+                        .build()
+                        .toString())
+                .body(body);
+    }
+
+    /**
+     * Importa mensajes a una sala desde NDJSON, en el formato de la exportación.
+     */
+    @PostMapping("/{id}/import")
+    @Operation(summary = "Importar historial",
+            description = "Inserta en bloque los mensajes del cuerpo (NDJSON, opcionalmente comprimido con gzip). " +
+                    "Los remitentes se buscan por username y deben participar de la sala")
+    public ResponseEntity<ApiResponseDTO<MessageImportResultDTO>> importChatRoom(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            InputStream body) throws IOException {
+
+        log.info("Request para importar historial a sala {} (gzip: {})", id, gzip);
+
+        MessageImportResultDTO result = messageImportService.importToChatRoom(id, body, gzip);
+
+        return ResponseEntity.ok(ApiResponseDTO.success(result, "Importación completada"));
+    }
+}
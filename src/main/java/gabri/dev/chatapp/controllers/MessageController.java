@@ -59,6 +59,25 @@ public class MessageController {
         return ResponseEntity.ok(ApiResponseDTO.success(messages, "Mensajes obtenidos exitosamente"));
     }
 
+    /**
+     * Obtiene el historial de una sala paginado por cursor.
+     */
+    @GetMapping("/chatroom/{chatRoomId}/history")
+    @Operation(summary = "Historial por cursor",
+            description = "Obtiene mensajes anteriores al cursor 'before' (del más reciente al más antiguo). " +
+                    "Omitir 'before' para la primera porción; usar 'nextCursor' de la respuesta para continuar")
+    public ResponseEntity<ApiResponseDTO<MessageSliceDTO>> getMessageHistory(
+            @PathVariable Long chatRoomId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int limit) {
+
+        log.info("Request para obtener historial de sala {} - limit {}", chatRoomId, limit);
+
+        MessageSliceDTO slice = messageService.getMessageHistory(chatRoomId, before, limit);
+
+        return ResponseEntity.ok(ApiResponseDTO.success(slice, "Mensajes obtenidos exitosamente"));
+    }
+
     /**
      * Obtiene los últimos N mensajes de una sala.
      */
@@ -123,16 +142,37 @@ public class MessageController {
      * Busca mensajes por contenido en una sala.
      */
     @GetMapping("/chatroom/{chatRoomId}/search")
-    @Operation(summary = "Buscar mensajes", description = "Busca mensajes por contenido en una sala")
-    public ResponseEntity<ApiResponseDTO<List<MessageDTO>>> searchMessages(
+    @Operation(summary = "Buscar mensajes",
+            description = "Busca mensajes por contenido en una sala, ordenados por relevancia y paginados por cursor")
+    public ResponseEntity<ApiResponseDTO<MessageSearchSliceDTO>> searchMessages(
             @PathVariable Long chatRoomId,
-            @RequestParam String query) {
+            @RequestParam String query,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
 
         log.info("Request para buscar mensajes en sala {} con query: {}", chatRoomId, query);
 
-        List<MessageDTO> messages = messageService.searchMessages(chatRoomId, query);
+        MessageSearchSliceDTO results = messageService.searchMessages(chatRoomId, query, cursor, limit);
+
+        return ResponseEntity.ok(ApiResponseDTO.success(results, "Búsqueda completada exitosamente"));
+    }
+
+    /**
+     * Busca mensajes por contenido en todas las salas del usuario actual.
+     */
+    @GetMapping("/search")
+    @Operation(summary = "Buscar en todas las salas",
+            description = "Busca mensajes por contenido en todas las salas donde participa el usuario")
+    public ResponseEntity<ApiResponseDTO<MessageSearchSliceDTO>> searchAllMessages(
+            @RequestParam String query,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+
+        log.info("Request para buscar mensajes en todas las salas con query: {}", query);
+
+        MessageSearchSliceDTO results = messageService.searchAllMessages(query, cursor, limit);
 
-        return ResponseEntity.ok(ApiResponseDTO.success(messages, "Búsqueda completada exitosamente"));
+        return ResponseEntity.ok(ApiResponseDTO.success(results, "Búsqueda completada exitosamente"));
     }
 
     /**
@@ -26,4 +26,12 @@ public class ChatMessageWS {
     private Message.MessageType type;
     private LocalDateTime sentAt;
     private Boolean isEdited;
+    private LocalDateTime editedAt;
+
+    // Identificador asignado por el cliente emisor, para reconciliar su mensaje provisional
+    private String clientMessageId;
+
+    // Posición del evento en la sala y numeración a la que pertenece, para detectar huecos al reconectar
+    private Long seq;
+    private Long epoch;
 }
\ No newline at end of file
@@ -29,5 +29,7 @@ public class ChatRoomDTO {
     private List<UserDTO> participants;
     private MessageDTO lastMessage;
     private Integer participantCount;
-    private Long unreadCount; // Mensajes no leídos (para futuras implementaciones)
+    private Long messageCount;
+    private Integer retentionDays; // null: retención global
+    private Long unreadCount; // Mensajes no leídos por el usuario actual
 }
\ No newline at end of file
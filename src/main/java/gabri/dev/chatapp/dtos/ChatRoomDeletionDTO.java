@@ -0,0 +1,35 @@
+package gabri.dev.chatapp.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO con el avance de la eliminación de una sala.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatRoomDeletionDTO {
+
+    private Long chatRoomId;
+    private Status status;
+
+    // Mensajes en la base al empezar el borrado y borrados hasta ahora; null mientras está pendiente
+    private Long totalMessages;
+    private Long deletedMessages;
+
+    private LocalDateTime requestedAt;
+    private LocalDateTime finishedAt;
+
+    public enum Status {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
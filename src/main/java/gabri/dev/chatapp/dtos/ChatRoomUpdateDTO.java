@@ -1,5 +1,6 @@
 package gabri.dev.chatapp.dtos;
 
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -23,4 +24,10 @@ public class ChatRoomUpdateDTO {
 
     @Size(max = 500, message = "La URL de la imagen no puede exceder 500 caracteres")
     private String imageUrl;
+
+    /**
+     * Días que los mensajes quedan en la base antes de archivarse; 0 para no archivarlos nunca.
+     */
+    @Min(value = 0, message = "La retención no puede ser negativa")
+    private Integer retentionDays;
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package gabri.dev.chatapp.dtos.websocket;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * {@link ChatMessageWS} en formato compacto, para las sesiones que lo negocian.
+ * <p>
+ * Se codifica en CBOR como un arreglo, sin nombres de campo, en el orden de
+ * {@link JsonPropertyOrder}; los campos nuevos se agregan al final, para que los clientes
+ * existentes sigan leyendo los anteriores. Las fechas van en milisegundos desde epoch y los datos
+ * del remitente solo en el primer mensaje suyo que recibe la sesión; en los siguientes
+ * {@code sender} es null y el cliente lo resuelve por {@code senderId}.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@JsonFormat(shape = JsonFormat.Shape.ARRAY)
+@JsonPropertyOrder({"id", "chatRoomId", "senderId", "content", "type", "sentAt", "isEdited",
+        "clientMessageId", "seq", "epoch", "sender", "editedAt"})
+public class CompactMessageWS {
+
+    private Long id;
+    private Long chatRoomId;
+    private Long senderId;
+    private String content;
+    private String type;
+    private Long sentAt;
+    private Boolean isEdited;
+    private String clientMessageId;
+    private Long seq;
+    private Long epoch;
+    private Sender sender;
+    private Long editedAt;
+
+    /**
+     * Datos del remitente, enviados una vez por sesión.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonFormat(shape = JsonFormat.Shape.ARRAY)
+    @JsonPropertyOrder({"id", "username", "avatarUrl"})
+    public static class Sender {
+        private Long id;
+        private String username;
+        private String avatarUrl;
+    }
+}
@@ -0,0 +1,42 @@
+package gabri.dev.chatapp.dtos.websocket;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * {@link RoomReplayWS} en formato compacto: un arreglo CBOR con los eventos
+ * como arreglos {@code [kind, mensaje]}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonFormat(shape = JsonFormat.Shape.ARRAY)
+@JsonPropertyOrder({"chatRoomId", "epoch", "lastSeq", "resync", "events"})
+public class CompactReplayWS {
+
+    private Long chatRoomId;
+    private Long epoch;
+    private Long lastSeq;
+    private Boolean resync;
+    private List<Event> events;
+
+    /**
+     * Evento reenviado de la sala.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonFormat(shape = JsonFormat.Shape.ARRAY)
+    @JsonPropertyOrder({"kind", "message"})
+    public static class Event {
+        private RoomEventWS.Kind kind;
+        private CompactMessageWS message;
+    }
+}
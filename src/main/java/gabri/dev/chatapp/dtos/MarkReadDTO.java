@@ -0,0 +1,21 @@
+package gabri.dev.chatapp.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO para marcar una sala como leída hasta un mensaje.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MarkReadDTO {
+
+    /**
+     * ID del último mensaje leído. Si es null, se marca como leída toda la sala.
+     */
+    private Long messageId;
+}
@@ -0,0 +1,24 @@
+package gabri.dev.chatapp.dtos.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO de confirmación de un mensaje enviado por WebSocket.
+ * Se envía solo a la sesión que envió el mensaje.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageAckWS {
+
+    // Identificador que el cliente asignó al mensaje al enviarlo
+    private String clientMessageId;
+    private Long messageId;
+    private Long chatRoomId;
+    private Boolean success;
+    private String error;
+}
@@ -0,0 +1,61 @@
+package gabri.dev.chatapp.dtos;
+
+import gabri.dev.chatapp.exceptions.InvalidOperationException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Cursor opaco para la paginación del historial de mensajes.
+ * <p>
+ * Identifica la posición {@code (sentAt, id)} del último mensaje entregado al cliente.
+ * Se serializa como Base64 URL-safe para que el cliente lo trate como un valor opaco.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private LocalDateTime sentAt;
+    private Long id;
+
+    /**
+     * Codifica el cursor como texto opaco.
+     * @return el cursor codificado
+     */
+    public String encode() {
+        String raw = sentAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodifica un cursor generado por {@link #encode()}.
+     * @param cursor el cursor codificado
+     * @return el cursor decodificado
+     * @throws InvalidOperationException si el cursor no es válido
+     */
+    public static MessageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            if (separator <= 0) {
+                throw new InvalidOperationException("Cursor inválido");
+            }
+            return new MessageCursor(
+                    LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1))
+            );
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidOperationException("Cursor inválido");
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package gabri.dev.chatapp.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO con el resultado de una importación masiva de mensajes.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageImportResultDTO {
+
+    private Long imported;
+    private Long skipped;
+
+    // Primeras líneas omitidas, con el motivo
+    private List<String> errors;
+
+    private Long elapsedMs;
+    private Double messagesPerSecond;
+}
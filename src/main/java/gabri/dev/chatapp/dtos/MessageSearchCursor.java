@@ -0,0 +1,59 @@
+package gabri.dev.chatapp.dtos;
+
+import gabri.dev.chatapp.exceptions.InvalidOperationException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor opaco para la paginación de resultados de búsqueda.
+ * <p>
+ * Identifica la posición {@code (score, id)} del último resultado entregado, según el
+ * orden por relevancia del índice de texto completo. Se serializa igual que {@link MessageCursor}.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private Double score;
+    private Long id;
+
+    /**
+     * Codifica el cursor como texto opaco.
+     * @return el cursor codificado
+     */
+    public String encode() {
+        String raw = score + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodifica un cursor generado por {@link #encode()}.
+     * @param cursor el cursor codificado
+     * @return el cursor decodificado
+     * @throws InvalidOperationException si el cursor no es válido
+     */
+    public static MessageSearchCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            if (separator <= 0) {
+                throw new InvalidOperationException("Cursor inválido");
+            }
+            return new MessageSearchCursor(
+                    Double.parseDouble(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1))
+            );
+        } catch (IllegalArgumentException e) {
+            throw new InvalidOperationException("Cursor inválido");
+        }
+    }
+}
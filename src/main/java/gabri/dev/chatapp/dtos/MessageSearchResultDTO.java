@@ -0,0 +1,21 @@
+package gabri.dev.chatapp.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO para un resultado de búsqueda de mensajes.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageSearchResultDTO {
+
+    private MessageDTO message;
+
+    // Fragmento del contenido con los términos encontrados entre <mark> y </mark>
+    private String snippet;
+}
@@ -0,0 +1,25 @@
+package gabri.dev.chatapp.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO para una porción de resultados de búsqueda paginada por cursor.
+ * Los resultados vienen del más relevante al menos relevante.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageSearchSliceDTO {
+
+    private List<MessageSearchResultDTO> results;
+
+    // Cursor para pedir la siguiente porción (null si no hay más)
+    private String nextCursor;
+    private Boolean hasMore;
+}
@@ -27,4 +27,8 @@ public class MessageSendDTO {
 
     @Builder.Default
     private Message.MessageType type = Message.MessageType.CHAT;
+
+    // Identificador opcional asignado por el cliente; se devuelve en la confirmación
+    @Size(max = 64, message = "El identificador del cliente no puede exceder 64 caracteres")
+    private String clientMessageId;
 }
\ No newline at end of file
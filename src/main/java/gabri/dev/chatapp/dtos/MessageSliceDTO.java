@@ -0,0 +1,25 @@
+package gabri.dev.chatapp.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO para una porción del historial de mensajes paginada por cursor.
+ * Los mensajes vienen del más reciente al más antiguo.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageSliceDTO {
+
+    private List<MessageDTO> messages;
+
+    // Cursor para pedir la siguiente porción (null si no hay más)
+    private String nextCursor;
+    private Boolean hasMore;
+}
@@ -0,0 +1,26 @@
+package gabri.dev.chatapp.dtos.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Evento de una sala reenviado al reanudarla: un mensaje nuevo, editado o eliminado.
+ * El {@code seq} del evento es el del mensaje.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RoomEventWS {
+
+    private Kind kind;
+    private ChatMessageWS message;
+
+    public enum Kind {
+        MESSAGE,
+        EDITED,
+        DELETED
+    }
+}
@@ -0,0 +1,29 @@
+package gabri.dev.chatapp.dtos.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO de respuesta a la reanudación de una sala, enviado solo a la sesión que la pidió.
+ * <p>
+ * Si {@code resync} es false, {@code events} tiene en orden los eventos posteriores al último
+ * que vio el cliente. Si es true, el hueco no se puede cubrir desde memoria: el cliente debe
+ * recargar la sala por REST y seguir desde {@code epoch} y {@code lastSeq}.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RoomReplayWS {
+
+    private Long chatRoomId;
+    private Long epoch;
+    private Long lastSeq;
+    private Boolean resync;
+    private List<RoomEventWS> events;
+}
@@ -0,0 +1,21 @@
+package gabri.dev.chatapp.dtos.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO con el último evento que vio un cliente de una sala, enviado al reconectar
+ * para recibir solo los eventos que se perdió.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RoomResumeWS {
+
+    // Epoch y seq del último evento recibido; null si el cliente todavía no recibió ninguno
+    private Long epoch;
+    private Long lastSeq;
+}
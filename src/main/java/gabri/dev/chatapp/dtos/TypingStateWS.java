@@ -0,0 +1,33 @@
+package gabri.dev.chatapp.dtos.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO con quiénes están escribiendo en una sala, enviado por WebSocket.
+ * Cada envío reemplaza al anterior: una lista vacía significa que nadie escribe.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TypingStateWS {
+
+    private Long chatRoomId;
+    private List<TypingUser> users;
+
+    /**
+     * Usuario que está escribiendo.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TypingUser {
+        private Long userId;
+        private String username;
+    }
+}
@@ -2,6 +2,7 @@ package gabri.dev.chatapp.entities;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -29,12 +30,24 @@ import java.util.Set;
  *   <li>Many-to-One con {@link User} (creador de la sala)</li>
  * </ul>
  *
+ * <h3>Índices:</h3>
+ * <p>
+ * Definidos en {@code db/migration/V3__query_indexes.sql}.
+ * </p>
+ * <ul>
+ *   <li>{@code idx_chat_rooms_creator_type}: {@code (created_by_user_id, type)}, salas creadas por un usuario</li>
+ *   <li>{@code idx_participants_user_room}: {@code (user_id, chat_room_id)} en {@code chat_room_participants},
+ *   salas de un usuario (la clave primaria empieza por {@code chat_room_id})</li>
+ * </ul>
+ *
  * @author Gabri
  * @version 1.0
  * @since 1.0
  */
 @Entity
-@Table(name = "chat_rooms")
+@Table(name = "chat_rooms", indexes = {
+        @Index(name = "idx_chat_rooms_creator_type", columnList = "created_by_user_id, type")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -117,6 +130,65 @@ public class ChatRoom {
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
+    /**
+     * ID del último mensaje enviado en la sala.
+     * <p>
+     * Columna desnormalizada para evitar buscar el último mensaje en {@code messages}.
+     * Solo se escribe mediante las actualizaciones atómicas de {@code ChatRoomRepository};
+     * por eso no es insertable ni actualizable desde la entidad.
+     * </p>
+     */
+    @Column(insertable = false, updatable = false)
+    private Long lastMessageId;
+
+    /**
+     * Fecha y hora del último mensaje enviado en la sala.
+     * Desnormalizada, mantenida junto con {@link #lastMessageId}.
+     */
+    @Column(insertable = false, updatable = false)
+    private LocalDateTime lastMessageAt;
+
+    /**
+     * Fragmento inicial del contenido del último mensaje (máximo {@value #PREVIEW_LENGTH} caracteres).
+     * Desnormalizado, mantenido junto con {@link #lastMessageId}.
+     */
+    @Column(insertable = false, updatable = false, length = PREVIEW_LENGTH)
+    private String lastMessagePreview;
+
+    /**
+     * Cantidad de mensajes de la sala.
+     * <p>
+     * Contador desnormalizado que reemplaza al {@code COUNT} sobre {@code messages}.
+     * Se incrementa y decrementa atómicamente en la base de datos.
+     * </p>
+     */
+    @Column(nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    @Builder.Default
+    private Long messageCount = 0L;
+
+    /**
+     * Días que los mensajes de la sala quedan en la base antes de pasar al archivo.
+     * <p>
+     * {@code null} usa la retención global ({@code app.archive.default-retention-days});
+     * {@code 0} deja los mensajes siempre en la base.
+     * </p>
+     */
+    @Column
+    private Integer retentionDays;
+
+    /**
+     * Momento en que se pidió eliminar la sala, o {@code null} si está activa.
+     * <p>
+     * Una sala marcada ya no se muestra ni acepta mensajes; sus mensajes se borran
+     * de a lotes en segundo plano y al final se borra la fila (ver {@code ChatRoomDeletionService}).
+     * Al marcarla, al nombre se le agrega {@value #DELETED_NAME_MARKER} y el ID, así el nombre
+     * queda libre para otra sala mientras dura el borrado.
+     * </p>
+     */
+    @Column
+    private LocalDateTime deletedAt;
+
     /**
      * Conjunto de usuarios que participan en esta sala.
      * <p>
@@ -138,7 +210,8 @@ public class ChatRoom {
     @JoinTable(
             name = "chat_room_participants",
             joinColumns = @JoinColumn(name = "chat_room_id"),
-            inverseJoinColumns = @JoinColumn(name = "user_id")
+            inverseJoinColumns = @JoinColumn(name = "user_id"),
+            indexes = @Index(name = "idx_participants_user_room", columnList = "user_id, chat_room_id")
     )
     @Builder.Default
     private Set<User> participants = new HashSet<>();
@@ -147,12 +220,13 @@ public class ChatRoom {
      * Colección de mensajes enviados en esta sala.
      * <p>
      * Relación bidireccional One-to-Many con {@link Message}.
-     * Los mensajes son eliminados en cascada si se elimina la sala.
+     * Sin cascada: al eliminar la sala sus mensajes se borran con sentencias SQL por lotes,
+     * sin cargarlos (ver {@code ChatRoomDeletionService}).
      * </p>
      *
      * @see Message#chatRoom
      */
-    @OneToMany(mappedBy = "chatRoom", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OneToMany(mappedBy = "chatRoom")
     @Builder.Default
     private Set<Message> messages = new HashSet<>();
 
@@ -168,6 +242,29 @@ public class ChatRoom {
     @JoinColumn(name = "created_by_user_id")
     private User createdBy;
 
+    /**
+     * Longitud máxima del fragmento guardado en {@link #lastMessagePreview}.
+     */
+    public static final int PREVIEW_LENGTH = 200;
+
+    /**
+     * Separador entre el nombre original y el ID en el nombre de una sala marcada para eliminar.
+     * Los nombres de sala no pueden contenerlo.
+     */
+    public static final String DELETED_NAME_MARKER = "#deleted-";
+
+    /**
+     * Genera el fragmento de vista previa de un contenido.
+     * @param content el contenido completo del mensaje
+     * @return el contenido truncado a {@link #PREVIEW_LENGTH} caracteres
+     */
+    public static String previewOf(String content) {
+        if (content == null || content.length() <= PREVIEW_LENGTH) {
+            return content;
+        }
+        return content.substring(0, PREVIEW_LENGTH);
+    }
+
     /**
      * Enumeración que define los tipos de salas de chat disponibles.
      * <p>
@@ -0,0 +1,74 @@
+package gabri.dev.chatapp.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Entidad que guarda hasta qué mensaje leyó cada usuario en cada sala.
+ * <p>
+ * Con este cursor se calculan los mensajes no leídos: son los mensajes de la sala
+ * con ID mayor a {@link #lastReadMessageId} que no envió el propio usuario.
+ * </p>
+ * <p>
+ * La clave primaria es {@code (chat_room_id, user_id)}: sirve de índice para las consultas
+ * por sala y es el destino del {@code ON CONFLICT} del upsert con el que se escriben los
+ * cursores, que nombra las mismas columnas.
+ * </p>
+ */
+@Entity
+@Table(name = "chat_room_read_state")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatRoomReadState {
+
+    @EmbeddedId
+    private ChatRoomReadStateId id;
+
+    /**
+     * Usuario dueño del cursor de lectura.
+     */
+    @MapsId("userId")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    /**
+     * Sala a la que corresponde el cursor.
+     */
+    @MapsId("chatRoomId")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "chat_room_id", nullable = false)
+    private ChatRoom chatRoom;
+
+    /**
+     * ID del último mensaje leído por el usuario en la sala.
+     */
+    @Column(nullable = false)
+    private Long lastReadMessageId;
+
+    /**
+     * Fecha de la última actualización del cursor.
+     */
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    /**
+     * Clave compuesta: usuario y sala.
+     */
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ChatRoomReadStateId implements Serializable {
+
+        private Long userId;
+
+        private Long chatRoomId;
+    }
+}
@@ -0,0 +1,63 @@
+package gabri.dev.chatapp.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Email pendiente de envío en la bandeja de salida.
+ * <p>
+ * Se guarda en la misma transacción que lo origina (registro, reenvío de verificación,
+ * verificación), así un email no se pierde si el envío falla ni se envía si la transacción
+ * se revierte. Se elimina al enviarse; tras agotar los reintentos queda con {@code failedAt}
+ * y el último error, para revisarlo.
+ * </p>
+ */
+@Entity
+@Table(name = "email_outbox")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EmailOutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String body;
+
+    /**
+     * Intentos de envío fallidos hasta ahora.
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    /**
+     * Momento a partir del cual se puede intentar enviar.
+     */
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 500)
+    private String lastError;
+
+    /**
+     * Momento en que se descartó tras agotar los reintentos, o {@code null} si sigue pendiente.
+     */
+    @Column
+    private LocalDateTime failedAt;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -19,12 +19,34 @@ import java.time.LocalDateTime;
  *   <li>Many-to-One con {@link ChatRoom} (sala donde se envió)</li>
  * </ul>
  *
+ * <h3>Índices:</h3>
+ * <p>
+ * Los crean las migraciones de {@code db/migration}; las anotaciones {@link Index} solo los documentan.
+ * </p>
+ * <ul>
+ *   <li>{@code idx_messages_room_sent_id}: {@code (chat_room_id, sent_at, id)}, usado por la
+ *   paginación por cursor del historial (seek en lugar de OFFSET)</li>
+ *   <li>{@code idx_messages_room_id_sender}: {@code (chat_room_id, id, sender_id)}, usado por el
+ *   conteo de no leídos (rango {@code id > cursor} sin leer la tabla)</li>
+ *   <li>{@code idx_messages_sender_sent}: {@code (sender_id, sent_at)}, mensajes de un remitente</li>
+ *   <li>{@code idx_messages_room_edited}: {@code (chat_room_id, is_edited, edited_at)}, mensajes
+ *   editados de una sala</li>
+ *   <li>{@code idx_messages_room_type_sent}: {@code (chat_room_id, type, sent_at)}, mensajes de una
+ *   sala por tipo</li>
+ * </ul>
+ *
  * @author Gabri
  * @version 1.0
  * @since 1.0
  */
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_room_sent_id", columnList = "chat_room_id, sent_at, id"),
+        @Index(name = "idx_messages_room_id_sender", columnList = "chat_room_id, id, sender_id"),
+        @Index(name = "idx_messages_sender_sent", columnList = "sender_id, sent_at"),
+        @Index(name = "idx_messages_room_edited", columnList = "chat_room_id, is_edited, edited_at"),
+        @Index(name = "idx_messages_room_type_sent", columnList = "chat_room_id, type, sent_at")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -0,0 +1,69 @@
+package gabri.dev.chatapp.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Segmento del archivo de mensajes de una sala.
+ * <p>
+ * Cada segmento es un archivo NDJSON comprimido con gzip, con mensajes consecutivos de la sala
+ * en orden {@code (sentAt, id)}, que ya no están en {@code messages}. El archivo no se modifica
+ * después de escrito; esta fila guarda su rango para ubicarlo sin abrirlo.
+ * </p>
+ */
+@Entity
+@Table(name = "message_archive_segments", indexes = {
+        @Index(name = "idx_archive_segments_room_last", columnList = "chat_room_id, last_sent_at, last_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageArchiveSegment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Sala a la que pertenecen los mensajes.
+     */
+    @Column(name = "chat_room_id", nullable = false)
+    private Long chatRoomId;
+
+    /**
+     * Nombre del archivo dentro del directorio de la sala.
+     */
+    @Column(nullable = false)
+    private String fileName;
+
+    /**
+     * Posición {@code (sentAt, id)} del primer mensaje del segmento.
+     */
+    @Column(nullable = false)
+    private LocalDateTime firstSentAt;
+
+    @Column(nullable = false)
+    private Long firstId;
+
+    /**
+     * Posición {@code (sentAt, id)} del último mensaje del segmento.
+     */
+    @Column(nullable = false)
+    private LocalDateTime lastSentAt;
+
+    @Column(nullable = false)
+    private Long lastId;
+
+    /**
+     * Cantidad de mensajes del segmento.
+     */
+    @Column(nullable = false)
+    private Integer messageCount;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
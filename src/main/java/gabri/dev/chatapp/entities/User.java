@@ -22,12 +22,22 @@ import java.util.Set;
  *   <li>Many-to-Many con {@link ChatRoom} (salas de chat)</li>
  * </ul>
  *
+ * <h3>Índices:</h3>
+ * <p>
+ * Ver {@code db/migration/V3__query_indexes.sql}.
+ * </p>
+ * <ul>
+ *   <li>{@code idx_users_status}: {@code (status)}, usuarios por estado de conexión</li>
+ * </ul>
+ *
  * @author Gabri
  * @version 1.0
  * @since 1.0
  */
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_status", columnList = "status")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -0,0 +1,11 @@
+package gabri.dev.chatapp.exceptions;
+
+/**
+ * Excepción lanzada cuando la cola de ingreso de mensajes no admite más mensajes.
+ */
+public class MessageQueueFullException extends CarrotException {
+
+    public MessageQueueFullException() {
+        super("El servidor no puede aceptar más mensajes en este momento, intenta nuevamente");
+    }
+}
@@ -0,0 +1,26 @@
+package gabri.dev.chatapp.mail;
+
+import org.springframework.mail.SimpleMailMessage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Medio por el que se envían los emails de la bandeja de salida.
+ * <p>
+ * Se elige con {@code app.mail.transport}: {@code smtp} (por defecto) usa el servidor de
+ * {@code spring.mail.*}; {@code file} escribe cada email en un archivo, para desarrollo y
+ * pruebas sin servidor SMTP.
+ * </p>
+ */
+public interface EmailTransport {
+
+    /**
+     * Envía un lote de emails, reutilizando la conexión cuando el medio lo permite.
+     * @param messages los emails a enviar
+     * @return los emails que no se pudieron enviar, con su error (por identidad); vacío si se enviaron todos
+     * @throws org.springframework.mail.MailException si falla el lote completo (servidor caído,
+     *         credenciales inválidas): no se envió ninguno
+     */
+    Map<SimpleMailMessage, Exception> send(List<SimpleMailMessage> messages);
+}
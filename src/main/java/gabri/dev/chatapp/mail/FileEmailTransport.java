@@ -0,0 +1,69 @@
+package gabri.dev.chatapp.mail;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Escribe cada email como un archivo {@code .eml} en {@code app.mail.file.dir}, en lugar de enviarlo.
+ * <p>
+ * Para desarrollo y pruebas: los enlaces de verificación se pueden abrir desde el archivo
+ * sin configurar un servidor SMTP.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "app.mail.transport", havingValue = "file")
+@Slf4j
+public class FileEmailTransport implements EmailTransport {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Value("${app.mail.file.dir:./data/mail}")
+    private Path directory;
+
+    @Override
+    public Map<SimpleMailMessage, Exception> send(List<SimpleMailMessage> messages) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new MailSendException("No se pudo crear el directorio de emails " + directory, e);
+        }
+
+        Map<SimpleMailMessage, Exception> failed = new IdentityHashMap<>();
+
+        for (SimpleMailMessage message : messages) {
+            Path file = directory.resolve(System.currentTimeMillis() + "-" + sequence.incrementAndGet() + ".eml");
+            try {
+                Files.writeString(file, format(message), StandardCharsets.UTF_8);
+                log.debug("Email para {} escrito en {}", String.join(", ", message.getTo()), file);
+            } catch (IOException e) {
+                failed.put(message, e);
+            }
+        }
+        return failed;
+    }
+
+    private static String format(SimpleMailMessage message) {
+        return "Date: " + DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now()) + "\r\n" +
+                "From: " + message.getFrom() + "\r\n" +
+                "To: " + String.join(", ", message.getTo()) + "\r\n" +
+                "Subject: " + message.getSubject() + "\r\n" +
+                "Content-Type: text/plain; charset=UTF-8\r\n" +
+                "\r\n" +
+                message.getText() + "\r\n";
+    }
+}
@@ -0,0 +1,66 @@
+package gabri.dev.chatapp.mail;
+
+import jakarta.mail.SendFailedException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Envío por SMTP con el {@link JavaMailSender} de Spring Boot.
+ * <p>
+ * Todo el lote va en una sola llamada, que abre una conexión al servidor y envía los emails
+ * por ella. Si el servidor rechaza algunos, el resto queda enviado y se devuelven los rechazados;
+ * si falla la conexión o la autenticación, se lanza la excepción.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "app.mail.transport", havingValue = "smtp", matchIfMissing = true)
+@RequiredArgsConstructor
+public class SmtpEmailTransport implements EmailTransport {
+
+    private final JavaMailSender mailSender;
+
+    @Override
+    public Map<SimpleMailMessage, Exception> send(List<SimpleMailMessage> messages) {
+        Map<SimpleMailMessage, Exception> failed = new IdentityHashMap<>();
+        try {
+            mailSender.send(messages.toArray(SimpleMailMessage[]::new));
+        } catch (MailSendException e) {
+            Map<Object, Exception> failedMessages = e.getFailedMessages();
+            if (isBatchFailure(failedMessages, messages.size())) {
+                throw e;
+            }
+            for (SimpleMailMessage message : messages) {
+                Exception error = failedMessages.get(message);
+                if (error != null) {
+                    failed.put(message, error);
+                }
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Indica si el error es del lote y no de cada email: sin detalle por mensaje, o el mismo
+     * error para todos sin ser un rechazo de destinatarios, que es como {@link JavaMailSender}
+     * informa una conexión que no se pudo abrir.
+     */
+    private static boolean isBatchFailure(Map<Object, Exception> failedMessages, int batchSize) {
+        if (failedMessages.isEmpty()) {
+            return true;
+        }
+        if (failedMessages.size() < batchSize) {
+            return false;
+        }
+        Exception first = failedMessages.values().iterator().next();
+        return !(first instanceof SendFailedException)
+                && failedMessages.values().stream().allMatch(error -> error == first);
+    }
+}
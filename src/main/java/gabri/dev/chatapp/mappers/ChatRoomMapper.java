@@ -0,0 +1,38 @@
+package gabri.dev.chatapp.mappers;
+
+import gabri.dev.chatapp.dtos.ChatRoomDTO;
+import gabri.dev.chatapp.entities.ChatRoom;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mapeo de {@link ChatRoom} a {@link ChatRoomDTO}.
+ * <p>
+ * Solo completa los datos propios de la sala y su creador. Participantes, último mensaje
+ * y no leídos los agrega el servicio, que decide cómo cargarlos (por sala o en lote).
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class ChatRoomMapper {
+
+    private final UserMapper userMapper;
+
+    /**
+     * Mapea los datos propios de una sala a su DTO.
+     */
+    public ChatRoomDTO toDTO(ChatRoom chatRoom) {
+        return ChatRoomDTO.builder()
+                .id(chatRoom.getId())
+                .name(chatRoom.getName())
+                .type(chatRoom.getType())
+                .description(chatRoom.getDescription())
+                .imageUrl(chatRoom.getImageUrl())
+                .createdAt(chatRoom.getCreatedAt())
+                .updatedAt(chatRoom.getUpdatedAt())
+                .createdBy(userMapper.toDTO(chatRoom.getCreatedBy()))
+                .messageCount(chatRoom.getMessageCount())
+                .retentionDays(chatRoom.getRetentionDays())
+                .build();
+    }
+}
@@ -0,0 +1,63 @@
+package gabri.dev.chatapp.mappers;
+
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.UserDTO;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.repositories.projections.MessageView;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mapeo de mensajes a {@link MessageDTO}, desde la entidad o desde la proyección {@link MessageView}.
+ */
+@Component
+@RequiredArgsConstructor
+public class MessageMapper {
+
+    private final UserMapper userMapper;
+
+    /**
+     * Mapea una entidad mensaje a su DTO.
+     * El remitente se inicializa si todavía es un proxy lazy.
+     */
+    public MessageDTO toDTO(Message message) {
+        return new MessageDTO(
+                message.getId(),
+                message.getContent(),
+                message.getType(),
+                message.getSentAt(),
+                message.getEditedAt(),
+                message.getIsEdited(),
+                userMapper.toDTO(message.getSender()),
+                message.getChatRoom().getId()
+        );
+    }
+
+    /**
+     * Mapea una proyección de mensaje a su DTO, sin pasar por entidades.
+     */
+    public MessageDTO toDTO(MessageView view) {
+        UserDTO sender = new UserDTO(
+                view.senderId(),
+                view.senderUsername(),
+                view.senderEmail(),
+                view.senderFullName(),
+                view.senderAvatarUrl(),
+                view.senderStatus(),
+                view.senderEnabled(),
+                view.senderCreatedAt(),
+                view.senderLastSeenAt()
+        );
+
+        return new MessageDTO(
+                view.id(),
+                view.content(),
+                view.type(),
+                view.sentAt(),
+                view.editedAt(),
+                view.isEdited(),
+                sender,
+                view.chatRoomId()
+        );
+    }
+}
@@ -0,0 +1,37 @@
+package gabri.dev.chatapp.mappers;
+
+import gabri.dev.chatapp.dtos.UserDTO;
+import gabri.dev.chatapp.entities.User;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mapeo de {@link User} a {@link UserDTO}.
+ * <p>
+ * Escrito a mano en lugar de usar {@code ModelMapper}: sin reflexión ni objetos intermedios,
+ * y sin tocar las colecciones lazy del usuario.
+ * </p>
+ */
+@Component
+public class UserMapper {
+
+    /**
+     * Mapea un usuario a su DTO. No incluye la contraseña.
+     */
+    public UserDTO toDTO(User user) {
+        if (user == null) {
+            return null;
+        }
+
+        return new UserDTO(
+                user.getId(),
+                user.getUsername(),
+                user.getEmail(),
+                user.getFullName(),
+                user.getAvatarUrl(),
+                user.getStatus(),
+                user.getEnabled(),
+                user.getCreatedAt(),
+                user.getLastSeenAt()
+        );
+    }
+}
@@ -0,0 +1,97 @@
+package gabri.dev.chatapp.repositories;
+
+import gabri.dev.chatapp.entities.ChatRoomReadState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repositorio para gestionar los cursores de lectura de las salas.
+ */
+@Repository
+public interface ChatRoomReadStateRepository extends JpaRepository<ChatRoomReadState, ChatRoomReadState.ChatRoomReadStateId> {
+
+    /**
+     * Crea o avanza el cursor de lectura de un usuario en una sala.
+     * <p>
+     * El cursor nunca retrocede ({@code MAX}) y solo se escribe si el usuario
+     * sigue siendo participante de la sala.
+     * </p>
+     * @param userId el ID del usuario
+     * @param chatRoomId el ID de la sala
+     * @param messageId el ID del último mensaje leído
+     * @param updatedAt fecha de la actualización
+     * @return filas insertadas o actualizadas
+     */
+    @Modifying
+    @Query(value = "INSERT INTO chat_room_read_state (user_id, chat_room_id, last_read_message_id, updated_at) " +
+            "SELECT :userId, :chatRoomId, :messageId, :updatedAt " +
+            "WHERE EXISTS (SELECT 1 FROM chat_room_participants p " +
+            "WHERE p.chat_room_id = :chatRoomId AND p.user_id = :userId) " +
+            "ON CONFLICT (user_id, chat_room_id) DO UPDATE SET " +
+            "last_read_message_id = MAX(last_read_message_id, excluded.last_read_message_id), " +
+            "updated_at = excluded.updated_at", nativeQuery = true)
+    int upsertLastRead(@Param("userId") Long userId,
+                       @Param("chatRoomId") Long chatRoomId,
+                       @Param("messageId") Long messageId,
+                       @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Avanza los cursores que estaban al día hasta un nuevo mensaje.
+     * @param chatRoomId el ID de la sala
+     * @param previousMessageId cursor mínimo para considerar a un usuario al día
+     * @param messageId nuevo valor del cursor
+     * @param updatedAt fecha de la actualización
+     * @return filas actualizadas
+     */
+    @Modifying
+    @Query("UPDATE ChatRoomReadState rs SET rs.lastReadMessageId = :messageId, rs.updatedAt = :updatedAt " +
+            "WHERE rs.chatRoom.id = :chatRoomId AND rs.lastReadMessageId >= :previousMessageId " +
+            "AND rs.lastReadMessageId < :messageId")
+    int advanceCaughtUp(@Param("chatRoomId") Long chatRoomId,
+                        @Param("previousMessageId") Long previousMessageId,
+                        @Param("messageId") Long messageId,
+                        @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Cuenta los mensajes no leídos de un usuario en varias salas con una sola consulta.
+     * <p>
+     * Parte de cada sala, toma el cursor del usuario (si existe) y recorre solo el rango
+     * {@code id > cursor} del índice {@code (chat_room_id, id, sender_id)}.
+     * Las salas sin mensajes no leídos no aparecen en el resultado.
+     * </p>
+     * @param userId el ID del usuario
+     * @param chatRoomIds los IDs de las salas
+     * @return filas {@code [chatRoomId, cantidad]}
+     */
+    @Query("SELECT cr.id, COUNT(m.id) FROM ChatRoom cr " +
+            "LEFT JOIN ChatRoomReadState rs ON rs.chatRoom.id = cr.id AND rs.user.id = :userId " +
+            "JOIN Message m ON m.chatRoom.id = cr.id AND m.id > COALESCE(rs.lastReadMessageId, 0) " +
+            "WHERE cr.id IN :chatRoomIds AND m.sender.id <> :userId " +
+            "GROUP BY cr.id")
+    List<Object[]> countUnreadByChatRoomIds(@Param("userId") Long userId,
+                                            @Param("chatRoomIds") Collection<Long> chatRoomIds);
+
+    /**
+     * Elimina los cursores de lectura de una sala.
+     * @param chatRoomId el ID de la sala
+     */
+    @Modifying
+    @Query("DELETE FROM ChatRoomReadState rs WHERE rs.chatRoom.id = :chatRoomId")
+    void deleteByChatRoomId(@Param("chatRoomId") Long chatRoomId);
+
+    /**
+     * Elimina el cursor de lectura de un usuario en una sala.
+     * @param userId el ID del usuario
+     * @param chatRoomId el ID de la sala
+     */
+    @Modifying
+    @Query("DELETE FROM ChatRoomReadState rs WHERE rs.user.id = :userId AND rs.chatRoom.id = :chatRoomId")
+    void deleteByUserIdAndChatRoomId(@Param("userId") Long userId, @Param("chatRoomId") Long chatRoomId);
+}
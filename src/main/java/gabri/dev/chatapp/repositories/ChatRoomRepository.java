@@ -3,10 +3,13 @@ package gabri.dev.chatapp.repositories;
 import gabri.dev.chatapp.entities.ChatRoom;
 import gabri.dev.chatapp.entities.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -54,17 +57,48 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
     @Query("SELECT cr FROM ChatRoom cr JOIN cr.participants p WHERE p.id = :userId ORDER BY cr.updatedAt DESC")
     List<ChatRoom> findByParticipantId(@Param("userId") Long userId);
 
+    /**
+     * Busca las salas de un usuario trayendo el creador en la misma consulta.
+     * Pensado para armar el listado de salas sin consultas N+1.
+     * @param userId el ID del usuario
+     * @return lista de salas donde participa, con {@code createdBy} inicializado
+     */
+    @Query("SELECT cr FROM ChatRoom cr LEFT JOIN FETCH cr.createdBy JOIN cr.participants p " +
+            "WHERE p.id = :userId ORDER BY cr.updatedAt DESC")
+    List<ChatRoom> findByParticipantIdWithCreator(@Param("userId") Long userId);
+
+    /**
+     * Busca, entre las salas de un usuario, las que contengan el texto dado (case insensitive).
+     * @param userId el ID del usuario
+     * @param name el texto a buscar
+     * @return lista de salas que coinciden, con {@code createdBy} inicializado
+     */
+    @Query("SELECT cr FROM ChatRoom cr LEFT JOIN FETCH cr.createdBy JOIN cr.participants p " +
+            "WHERE p.id = :userId AND LOWER(cr.name) LIKE LOWER(CONCAT('%', :name, '%')) " +
+            "ORDER BY cr.updatedAt DESC")
+    List<ChatRoom> searchByNameForParticipant(@Param("userId") Long userId,
+                                              @Param("name") String name);
+
+    /**
+     * Obtiene los participantes de varias salas en una sola consulta, ya como DTO.
+     * @param chatRoomIds los IDs de las salas
+     * @return filas {@code [chatRoomId, UserDTO]}
+     */
+    @Query("SELECT cr.id, new gabri.dev.chatapp.dtos.UserDTO(" +
+            "p.id, p.username, p.email, p.fullName, p.avatarUrl, p.status, p.enabled, p.createdAt, p.lastSeenAt) " +
+            "FROM ChatRoom cr JOIN cr.participants p WHERE cr.id IN :chatRoomIds")
+    List<Object[]> findParticipantsByChatRoomIds(@Param("chatRoomIds") Collection<Long> chatRoomIds);
+
     /**
      * Busca una sala de chat privada entre dos usuarios específicos.
-     * Una sala privada debe tener exactamente 2 participantes.
+     * Una sala privada debe tener exactamente 2 participantes. La búsqueda parte de las
+     * salas del primer usuario, por índice, en vez de recorrer todas las salas.
      * @param userId1 el ID del primer usuario
      * @param userId2 el ID del segundo usuario
      * @return Optional con la sala si existe
      */
-    @Query("SELECT cr FROM ChatRoom cr " +
-            "WHERE cr.type = 'PRIVATE' " +
-            "AND :user1 MEMBER OF cr.participants " +
-            "AND :user2 MEMBER OF cr.participants " +
+    @Query("SELECT cr FROM ChatRoom cr JOIN cr.participants p1 JOIN cr.participants p2 " +
+            "WHERE cr.type = 'PRIVATE' AND p1 = :user1 AND p2 = :user2 " +
             "AND SIZE(cr.participants) = 2")
     Optional<ChatRoom> findPrivateChatRoom(@Param("user1") User user1,
                                            @Param("user2") User user2);
@@ -92,6 +126,172 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
     @Query("SELECT SIZE(cr.participants) FROM ChatRoom cr WHERE cr.id = :chatRoomId")
     Integer countParticipants(@Param("chatRoomId") Long chatRoomId);
 
+    /**
+     * Registra nuevos mensajes en los datos desnormalizados de la sala.
+     * <p>
+     * Incrementa el contador, actualiza el último mensaje y mueve {@code updatedAt}
+     * a la fecha del mensaje, de modo que el orden de las salas refleje la actividad real.
+     * </p>
+     * @param chatRoomId el ID de la sala
+     * @param count cantidad de mensajes nuevos
+     * @param messageId ID del mensaje más reciente
+     * @param sentAt fecha del mensaje más reciente
+     * @param preview fragmento del contenido del mensaje más reciente
+     * @return filas actualizadas
+     */
+    @Modifying
+    @Query("UPDATE ChatRoom cr SET cr.messageCount = cr.messageCount + :count, " +
+            "cr.lastMessageId = :messageId, cr.lastMessageAt = :sentAt, " +
+            "cr.lastMessagePreview = :preview, cr.updatedAt = :sentAt " +
+            "WHERE cr.id = :chatRoomId")
+    int registerNewMessages(@Param("chatRoomId") Long chatRoomId,
+                            @Param("count") long count,
+                            @Param("messageId") Long messageId,
+                            @Param("sentAt") LocalDateTime sentAt,
+                            @Param("preview") String preview);
+
+    /**
+     * Actualiza la vista previa si el mensaje editado es el último de la sala.
+     * @param chatRoomId el ID de la sala
+     * @param messageId el ID del mensaje editado
+     * @param preview el nuevo fragmento del contenido
+     * @return filas actualizadas (0 si el mensaje no era el último)
+     */
+    @Modifying
+    @Query("UPDATE ChatRoom cr SET cr.lastMessagePreview = :preview " +
+            "WHERE cr.id = :chatRoomId AND cr.lastMessageId = :messageId")
+    int updateLastMessagePreview(@Param("chatRoomId") Long chatRoomId,
+                                 @Param("messageId") Long messageId,
+                                 @Param("preview") String preview);
+
+    /**
+     * Decrementa el contador de mensajes de la sala.
+     * @param chatRoomId el ID de la sala
+     * @return filas actualizadas
+     */
+    @Modifying
+    @Query("UPDATE ChatRoom cr SET cr.messageCount = cr.messageCount - 1 " +
+            "WHERE cr.id = :chatRoomId AND cr.messageCount > 0")
+    int decrementMessageCount(@Param("chatRoomId") Long chatRoomId);
+
+    /**
+     * Reemplaza el último mensaje de la sala (por ejemplo, tras eliminar el último).
+     * @param chatRoomId el ID de la sala
+     * @param messageId ID del nuevo último mensaje, o null si la sala quedó vacía
+     * @param sentAt fecha del nuevo último mensaje, o null
+     * @param preview fragmento del nuevo último mensaje, o null
+     * @return filas actualizadas
+     */
+    @Modifying
+    @Query("UPDATE ChatRoom cr SET cr.lastMessageId = :messageId, cr.lastMessageAt = :sentAt, " +
+            "cr.lastMessagePreview = :preview WHERE cr.id = :chatRoomId")
+    int updateLastMessage(@Param("chatRoomId") Long chatRoomId,
+                          @Param("messageId") Long messageId,
+                          @Param("sentAt") LocalDateTime sentAt,
+                          @Param("preview") String preview);
+
+    /**
+     * Recalcula desde {@code messages} el contador y el último mensaje de las salas dadas.
+     * Se usa tras cargas masivas; la migración V9 hace lo mismo con las salas existentes.
+     * El contador incluye los mensajes archivados.
+     * El último mensaje es el más reciente por {@code (sent_at, id)}: un mensaje importado
+     * recibe un ID nuevo aunque sea antiguo.
+     * @param chatRoomIds los IDs de las salas
+     * @return filas actualizadas
+     */
+    @Modifying
+    @Query(value = "UPDATE chat_rooms SET " +
+            "message_count = (SELECT COUNT(*) FROM messages m WHERE m.chat_room_id = chat_rooms.id) + " +
+            "(SELECT COALESCE(SUM(s.message_count), 0) FROM message_archive_segments s " +
+            "WHERE s.chat_room_id = chat_rooms.id), " +
+            "last_message_id = (SELECT m.id FROM messages m WHERE m.chat_room_id = chat_rooms.id " +
+            "ORDER BY m.sent_at DESC, m.id DESC LIMIT 1), " +
+            "last_message_at = (SELECT m.sent_at FROM messages m WHERE m.chat_room_id = chat_rooms.id " +
+            "ORDER BY m.sent_at DESC, m.id DESC LIMIT 1), " +
+            "last_message_preview = (SELECT substr(m.content, 1, " + ChatRoom.PREVIEW_LENGTH + ") " +
+            "FROM messages m WHERE m.chat_room_id = chat_rooms.id ORDER BY m.sent_at DESC, m.id DESC LIMIT 1) " +
+            "WHERE id IN (:chatRoomIds)", nativeQuery = true)
+    int recalculateMessageStats(@Param("chatRoomIds") Collection<Long> chatRoomIds);
+
+    /**
+     * Obtiene la retención configurada de cada sala, para el archivado de mensajes.
+     * @return filas {@code [chatRoomId, retentionDays]}; {@code retentionDays} es {@code null} si usa la global
+     */
+    @Query("SELECT cr.id, cr.retentionDays FROM ChatRoom cr WHERE cr.deletedAt IS NULL")
+    List<Object[]> findRetentionPolicies();
+
+    /**
+     * Busca una sala que no esté marcada para eliminar.
+     * @param id el ID de la sala
+     * @return la sala, si existe y está activa
+     */
+    @Query("SELECT cr FROM ChatRoom cr WHERE cr.id = :id AND cr.deletedAt IS NULL")
+    Optional<ChatRoom> findActiveById(@Param("id") Long id);
+
+    /**
+     * Marca una sala para eliminar, si no lo estaba, y libera su nombre agregándole
+     * {@link ChatRoom#DELETED_NAME_MARKER} y el ID.
+     * @param chatRoomId el ID de la sala
+     * @param deletedAt momento del pedido
+     * @return 1 si se marcó, 0 si ya estaba marcada o no existe
+     */
+    @Modifying
+    @Query("UPDATE ChatRoom cr SET cr.deletedAt = :deletedAt, " +
+            "cr.name = CONCAT(cr.name, '" + ChatRoom.DELETED_NAME_MARKER + "', CAST(cr.id AS String)) " +
+            "WHERE cr.id = :chatRoomId AND cr.deletedAt IS NULL")
+    int markDeleted(@Param("chatRoomId") Long chatRoomId, @Param("deletedAt") LocalDateTime deletedAt);
+
+    /**
+     * Obtiene las salas marcadas para eliminar antes de una fecha, cuyo borrado no terminó.
+     * @param before fecha límite del pedido (excluida)
+     * @return los IDs, de la marcada hace más tiempo a la más reciente
+     */
+    @Query("SELECT cr.id FROM ChatRoom cr WHERE cr.deletedAt < :before ORDER BY cr.deletedAt ASC")
+    List<Long> findDeletedIdsBefore(@Param("before") LocalDateTime before);
+
+    /**
+     * Elimina los participantes de una sala con una sola sentencia.
+     * @param chatRoomId el ID de la sala
+     */
+    @Modifying
+    @Query(value = "DELETE FROM chat_room_participants WHERE chat_room_id = :chatRoomId", nativeQuery = true)
+    void deleteParticipantsByChatRoomId(@Param("chatRoomId") Long chatRoomId);
+
+    /**
+     * Elimina una sala con una sola sentencia, sin cargar sus mensajes ni participantes.
+     * Los mensajes y participantes se eliminan antes por separado.
+     * @param chatRoomId el ID de la sala
+     * @return filas eliminadas
+     */
+    @Modifying
+    @Query("DELETE FROM ChatRoom cr WHERE cr.id = :chatRoomId")
+    int deleteChatRoomById(@Param("chatRoomId") Long chatRoomId);
+
+    /**
+     * Obtiene los IDs de las salas donde participa un usuario.
+     * @param userId el ID del usuario
+     * @return los IDs de las salas
+     */
+    @Query("SELECT cr.id FROM ChatRoom cr JOIN cr.participants p WHERE p.id = :userId")
+    List<Long> findIdsByParticipantId(@Param("userId") Long userId);
+
+    /**
+     * Obtiene todos los pares (ID de sala, ID de usuario) de participantes.
+     * Se usa para cargar el índice de participantes en memoria.
+     * @return filas {@code [chatRoomId, userId]}
+     */
+    @Query("SELECT cr.id, p.id FROM ChatRoom cr JOIN cr.participants p")
+    List<Object[]> findAllParticipantIds();
+
+    /**
+     * Obtiene los IDs de los participantes de una sala.
+     * Se usa para recargar una sala del índice de participantes en memoria.
+     * @param chatRoomId el ID de la sala
+     * @return los IDs de los participantes
+     */
+    @Query("SELECT p.id FROM ChatRoom cr JOIN cr.participants p WHERE cr.id = :chatRoomId")
+    List<Long> findParticipantIdsByChatRoomId(@Param("chatRoomId") Long chatRoomId);
+
     /**
      * Verifica si un usuario es participante de una sala.
      * @param chatRoomId el ID de la sala
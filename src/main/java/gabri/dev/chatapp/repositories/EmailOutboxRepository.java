@@ -0,0 +1,58 @@
+package gabri.dev.chatapp.repositories;
+
+import gabri.dev.chatapp.entities.EmailOutboxMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repositorio para la bandeja de salida de emails.
+ */
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    /**
+     * Busca los emails pendientes cuyo próximo intento ya venció, del más atrasado al más reciente.
+     * @param now fecha actual
+     * @param pageable cantidad de emails a recuperar
+     * @return los emails a enviar
+     */
+    @Query("SELECT e FROM EmailOutboxMessage e WHERE e.failedAt IS NULL AND e.nextAttemptAt <= :now " +
+            "ORDER BY e.nextAttemptAt ASC, e.id ASC")
+    List<EmailOutboxMessage> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Elimina los emails enviados.
+     * @param ids los IDs de los emails
+     */
+    @Modifying
+    @Query("DELETE FROM EmailOutboxMessage e WHERE e.id IN :ids")
+    void deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Registra un intento fallido y programa el siguiente.
+     */
+    @Modifying
+    @Query("UPDATE EmailOutboxMessage e SET e.attempts = e.attempts + 1, e.nextAttemptAt = :nextAttemptAt, " +
+            "e.lastError = :error WHERE e.id = :id")
+    void scheduleRetry(@Param("id") Long id,
+                       @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                       @Param("error") String error);
+
+    /**
+     * Descarta un email tras agotar los reintentos.
+     */
+    @Modifying
+    @Query("UPDATE EmailOutboxMessage e SET e.attempts = e.attempts + 1, e.failedAt = :failedAt, " +
+            "e.lastError = :error WHERE e.id = :id")
+    void markFailed(@Param("id") Long id,
+                    @Param("failedAt") LocalDateTime failedAt,
+                    @Param("error") String error);
+}
@@ -0,0 +1,52 @@
+package gabri.dev.chatapp.repositories;
+
+import gabri.dev.chatapp.entities.MessageArchiveSegment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repositorio para los segmentos del archivo de mensajes.
+ */
+@Repository
+public interface MessageArchiveSegmentRepository extends JpaRepository<MessageArchiveSegment, Long> {
+
+    /**
+     * Segmentos de una sala con mensajes entre dos posiciones {@code (sentAt, id)}, excluidas,
+     * del más nuevo al más antiguo.
+     * @param chatRoomId el ID de la sala
+     * @param beforeSentAt fecha del límite superior
+     * @param beforeId ID del límite superior
+     * @param afterSentAt fecha del límite inferior
+     * @param afterId ID del límite inferior
+     * @return los segmentos que pueden tener mensajes en el rango
+     */
+    @Query("SELECT s FROM MessageArchiveSegment s WHERE s.chatRoomId = :chatRoomId " +
+            "AND s.lastSentAt >= :afterSentAt AND (s.lastSentAt > :afterSentAt OR s.lastId > :afterId) " +
+            "AND (s.firstSentAt < :beforeSentAt OR (s.firstSentAt = :beforeSentAt AND s.firstId < :beforeId)) " +
+            "ORDER BY s.lastSentAt DESC, s.lastId DESC")
+    List<MessageArchiveSegment> findBetween(@Param("chatRoomId") Long chatRoomId,
+                                            @Param("beforeSentAt") LocalDateTime beforeSentAt,
+                                            @Param("beforeId") Long beforeId,
+                                            @Param("afterSentAt") LocalDateTime afterSentAt,
+                                            @Param("afterId") Long afterId);
+
+    /**
+     * Segmentos de una sala en orden cronológico.
+     */
+    @Query("SELECT s FROM MessageArchiveSegment s WHERE s.chatRoomId = :chatRoomId " +
+            "ORDER BY s.lastSentAt ASC, s.lastId ASC")
+    List<MessageArchiveSegment> findByChatRoomIdInOrder(@Param("chatRoomId") Long chatRoomId);
+
+    /**
+     * Elimina los segmentos de una sala (los archivos los borra quien llama).
+     */
+    @Modifying
+    @Query("DELETE FROM MessageArchiveSegment s WHERE s.chatRoomId = :chatRoomId")
+    void deleteByChatRoomId(@Param("chatRoomId") Long chatRoomId);
+}
@@ -1,15 +1,20 @@
 package gabri.dev.chatapp.repositories;
 
 import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.repositories.projections.MessageView;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repositorio para la entidad Message.
@@ -30,20 +35,83 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
      * Busca mensajes de una sala con paginación.
      * @param chatRoomId el ID de la sala
      * @param pageable información de paginación
-     * @return página de mensajes
+     * @return página de mensajes, como proyección con el remitente
      */
-    @Query("SELECT m FROM Message m WHERE m.chatRoom.id = :chatRoomId ORDER BY m.sentAt DESC")
-    Page<Message> findByChatRoomId(@Param("chatRoomId") Long chatRoomId, Pageable pageable);
+    @Query(value = MessageView.SELECT + "WHERE m.chatRoom.id = :chatRoomId ORDER BY m.sentAt DESC",
+            countQuery = "SELECT COUNT(m) FROM Message m WHERE m.chatRoom.id = :chatRoomId")
+    Page<MessageView> findByChatRoomId(@Param("chatRoomId") Long chatRoomId, Pageable pageable);
+
+    /**
+     * Primera página del historial de una sala usando paginación por cursor.
+     * No ejecuta COUNT: el llamador pide {@code limit + 1} filas para saber si hay más.
+     * @param chatRoomId el ID de la sala
+     * @param pageable solo se usa el tamaño (la página siempre es 0)
+     * @return mensajes del más reciente al más antiguo, como proyección con el remitente
+     */
+    @Query(MessageView.SELECT + "WHERE m.chatRoom.id = :chatRoomId " +
+            "ORDER BY m.sentAt DESC, m.id DESC")
+    List<MessageView> findHistoryFirstPage(@Param("chatRoomId") Long chatRoomId, Pageable pageable);
+
+    /**
+     * Página del historial anterior a un cursor {@code (sentAt, id)}.
+     * <p>
+     * La condición {@code sentAt <= :sentAt} acota el rango sobre el índice
+     * {@code (chat_room_id, sent_at, id)} y la segunda condición desempata por ID,
+     * por lo que el costo no depende de cuán atrás esté el cursor.
+     * </p>
+     * @param chatRoomId el ID de la sala
+     * @param sentAt fecha del último mensaje recibido por el cliente
+     * @param id ID del último mensaje recibido por el cliente
+     * @param pageable solo se usa el tamaño (la página siempre es 0)
+     * @return mensajes del más reciente al más antiguo, como proyección con el remitente
+     */
+    @Query(MessageView.SELECT + "WHERE m.chatRoom.id = :chatRoomId " +
+            "AND m.sentAt <= :sentAt AND (m.sentAt < :sentAt OR m.id < :id) " +
+            "ORDER BY m.sentAt DESC, m.id DESC")
+    List<MessageView> findHistoryBefore(@Param("chatRoomId") Long chatRoomId,
+                                        @Param("sentAt") LocalDateTime sentAt,
+                                        @Param("id") Long id,
+                                        Pageable pageable);
+
+    /**
+     * Primer lote de la exportación de una sala, del mensaje más antiguo al más reciente.
+     * @param chatRoomId el ID de la sala
+     * @param pageable solo se usa el tamaño (la página siempre es 0)
+     * @return mensajes del más antiguo al más reciente, como proyección con el remitente
+     */
+    @Query(MessageView.SELECT + "WHERE m.chatRoom.id = :chatRoomId " +
+            "ORDER BY m.sentAt ASC, m.id ASC")
+    List<MessageView> findExportFirstBatch(@Param("chatRoomId") Long chatRoomId, Pageable pageable);
+
+    /**
+     * Lote de la exportación posterior a un cursor {@code (sentAt, id)}.
+     * Recorre el índice {@code (chat_room_id, sent_at, id)} igual que {@link #findHistoryBefore},
+     * en sentido inverso.
+     * @param chatRoomId el ID de la sala
+     * @param sentAt fecha del último mensaje exportado
+     * @param id ID del último mensaje exportado
+     * @param pageable solo se usa el tamaño (la página siempre es 0)
+     * @return mensajes del más antiguo al más reciente, como proyección con el remitente
+     */
+    @Query(MessageView.SELECT + "WHERE m.chatRoom.id = :chatRoomId " +
+            "AND m.sentAt >= :sentAt AND (m.sentAt > :sentAt OR m.id > :id) " +
+            "ORDER BY m.sentAt ASC, m.id ASC")
+    List<MessageView> findExportBatchAfter(@Param("chatRoomId") Long chatRoomId,
+                                           @Param("sentAt") LocalDateTime sentAt,
+                                           @Param("id") Long id,
+                                           Pageable pageable);
 
     /**
      * Busca los últimos N mensajes de una sala.
      * @param chatRoomId el ID de la sala
-     * @paramlimit número de mensajes a recuperar
-     * @return lista de mensajes
+     * @param pageable cantidad de mensajes a recuperar
+     * @return lista de mensajes del más nuevo al más antiguo, como proyección con el remitente
      */
-    @Query("SELECT m FROM Message m WHERE m.chatRoom.id = :chatRoomId ORDER BY m.sentAt DESC")
-    List<Message> findLastMessagesByChatRoomId(@Param("chatRoomId") Long chatRoomId,
-                                               Pageable pageable);
+    // Se llama fuera de una transacción desde la caché de últimos mensajes: así va al pool de lectura
+    @Transactional(readOnly = true)
+    @Query(MessageView.SELECT + "WHERE m.chatRoom.id = :chatRoomId ORDER BY m.sentAt DESC, m.id DESC")
+    List<MessageView> findLastMessagesByChatRoomId(@Param("chatRoomId") Long chatRoomId,
+                                                   Pageable pageable);
 
     /**
      * Busca mensajes enviados por un usuario específico.
@@ -71,6 +139,31 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("SELECT m FROM Message m WHERE m.chatRoom.id = :chatRoomId ORDER BY m.sentAt DESC LIMIT 1")
     Message findLastMessageByChatRoomId(@Param("chatRoomId") Long chatRoomId);
 
+    /**
+     * Busca un mensaje por ID trayendo el remitente en la misma consulta.
+     * @param id el ID del mensaje
+     * @return Optional con el mensaje, como proyección con el remitente
+     */
+    @Query(MessageView.SELECT + "WHERE m.id = :id")
+    Optional<MessageView> findViewById(@Param("id") Long id);
+
+    /**
+     * Busca mensajes por ID trayendo el remitente en la misma consulta.
+     * Usado con los IDs desnormalizados de último mensaje de cada sala y con los resultados de búsqueda.
+     * @param ids los IDs de los mensajes
+     * @return los mensajes encontrados, como proyección con el remitente
+     */
+    @Query(MessageView.SELECT + "WHERE m.id IN :ids")
+    List<MessageView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Busca el mayor ID de mensaje de una sala.
+     * @param chatRoomId el ID de la sala
+     * @return el mayor ID, o null si la sala no tiene mensajes
+     */
+    @Query("SELECT MAX(m.id) FROM Message m WHERE m.chatRoom.id = :chatRoomId")
+    Long findMaxIdByChatRoomId(@Param("chatRoomId") Long chatRoomId);
+
     /**
      * Cuenta los mensajes en una sala de chat.
      * @param chatRoomId el ID de la sala
@@ -93,21 +186,87 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
                                            @Param("endDate") LocalDateTime endDate);
 
     /**
-     * Busca mensajes que contengan un texto específico (búsqueda).
+     * Primera página de una búsqueda en el índice de texto completo {@code messages_fts}.
+     * <p>
+     * Los resultados se ordenan por relevancia (bm25, menor es mejor) y luego por ID descendente.
+     * La relevancia se devuelve como texto con 17 dígitos para no perder precisión al armar
+     * el cursor (el driver la informaría como REAL de precisión simple).
+     * </p>
+     * @param match la expresión FTS5 (términos y filtro de salas)
+     * @param limit cantidad máxima de resultados
+     * @return filas {@code [id, score]}
+     */
+    @Query(value = "SELECT rowid, printf('%!.17g', rank) FROM messages_fts WHERE messages_fts MATCH :match " +
+            "ORDER BY rank, rowid DESC LIMIT :limit", nativeQuery = true)
+    List<Object[]> searchFirstPage(@Param("match") String match, @Param("limit") int limit);
+
+    /**
+     * Página de una búsqueda posterior a un cursor {@code (score, id)}.
+     * @param match la expresión FTS5 (términos y filtro de salas)
+     * @param score relevancia del último resultado recibido por el cliente
+     * @param id ID del último resultado recibido por el cliente
+     * @param limit cantidad máxima de resultados
+     * @return filas {@code [id, score]}
+     */
+    @Query(value = "SELECT rowid, printf('%!.17g', rank) FROM messages_fts WHERE messages_fts MATCH :match " +
+            "AND (rank > :score OR (rank = :score AND rowid < :id)) " +
+            "ORDER BY rank, rowid DESC LIMIT :limit", nativeQuery = true)
+    List<Object[]> searchAfter(@Param("match") String match,
+                               @Param("score") Double score,
+                               @Param("id") Long id,
+                               @Param("limit") int limit);
+
+    /**
+     * Genera los fragmentos resaltados de una página de resultados.
+     * Se pide aparte para no calcular fragmentos de resultados que no se devuelven.
+     * @param match la misma expresión FTS5 usada en la búsqueda
+     * @param ids los IDs de los mensajes de la página
+     * @return filas {@code [id, snippet]}
+     */
+    @Query(value = "SELECT rowid, snippet(messages_fts, 0, '<mark>', '</mark>', '…', 12) " +
+            "FROM messages_fts WHERE messages_fts MATCH :match AND rowid IN (:ids)", nativeQuery = true)
+    List<Object[]> findSnippets(@Param("match") String match, @Param("ids") Collection<Long> ids);
+
+    /**
+     * Busca los mensajes más antiguos de una sala enviados antes de una fecha, para archivarlos.
      * @param chatRoomId el ID de la sala
-     * @param searchTerm el texto a buscar
-     * @return lista de mensajes que coinciden
+     * @param before fecha límite (excluida)
+     * @param pageable cantidad de mensajes a recuperar
+     * @return lista de mensajes en orden {@code (sentAt, id)} ascendente
      */
-    @Query("SELECT m FROM Message m WHERE m.chatRoom.id = :chatRoomId " +
-            "AND LOWER(m.content) LIKE LOWER(CONCAT('%', :searchTerm, '%')) " +
-            "ORDER BY m.sentAt DESC")
-    List<Message> searchMessagesByContent(@Param("chatRoomId") Long chatRoomId,
-                                          @Param("searchTerm") String searchTerm);
+    @Query(MessageView.SELECT + "WHERE m.chatRoom.id = :chatRoomId AND m.sentAt < :before " +
+            "ORDER BY m.sentAt ASC, m.id ASC")
+    List<MessageView> findArchiveBatch(@Param("chatRoomId") Long chatRoomId,
+                                       @Param("before") LocalDateTime before,
+                                       Pageable pageable);
+
+    /**
+     * Elimina mensajes por ID con una sola sentencia, sin cargarlos.
+     * @param ids los IDs de los mensajes
+     * @return filas eliminadas
+     */
+    @Modifying
+    @Query("DELETE FROM Message m WHERE m.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Elimina hasta {@code limit} mensajes de una sala con una sola sentencia, sin cargarlos.
+     * Llamado en transacciones cortas sucesivas, borra una sala grande sin retener la
+     * conexión de escritura más que lo que dura cada lote.
+     * @param chatRoomId el ID de la sala
+     * @param limit cantidad máxima de mensajes a eliminar
+     * @return filas eliminadas
+     */
+    @Modifying
+    @Query(value = "DELETE FROM messages WHERE id IN " +
+            "(SELECT id FROM messages WHERE chat_room_id = :chatRoomId LIMIT :limit)", nativeQuery = true)
+    int deleteBatchByChatRoomId(@Param("chatRoomId") Long chatRoomId, @Param("limit") int limit);
 
     /**
-     * Elimina todos los mensajes de una sala de chat.
+     * Elimina todos los mensajes de una sala de chat con una sola sentencia, sin cargarlos.
      * @param chatRoomId el ID de la sala
      */
+    @Modifying
     @Query("DELETE FROM Message m WHERE m.chatRoom.id = :chatRoomId")
     void deleteByChatRoomId(@Param("chatRoomId") Long chatRoomId);
 
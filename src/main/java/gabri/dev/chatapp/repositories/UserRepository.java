@@ -1,5 +1,6 @@
 package gabri.dev.chatapp.repositories;
 
+import gabri.dev.chatapp.dtos.UserDTO;
 import gabri.dev.chatapp.entities.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -18,6 +19,14 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
+    /**
+     * Inicio de las consultas que devuelven {@link UserDTO} directamente, sin hidratar entidades.
+     * El orden de los argumentos es el del constructor de {@link UserDTO}.
+     */
+    String USER_DTO_SELECT = "SELECT new gabri.dev.chatapp.dtos.UserDTO(" +
+            "u.id, u.username, u.email, u.fullName, u.avatarUrl, u.status, u.enabled, u.createdAt, u.lastSeenAt) " +
+            "FROM User u ";
+
     /**
      * Busca un usuario por su username.
      * @param username el nombre de usuario
@@ -25,6 +34,14 @@ public interface UserRepository extends JpaRepository<User, Long> {
      */
     Optional<User> findByUsername(String username);
 
+    /**
+     * Busca solo el ID de un usuario por su username.
+     * @param username el nombre de usuario
+     * @return Optional con el ID si existe
+     */
+    @Query("SELECT u.id FROM User u WHERE u.username = :username")
+    Optional<Long> findIdByUsername(@Param("username") String username);
+
     /**
      * Busca un usuario por su email.
      * @param email el correo electrónico
@@ -49,16 +66,18 @@ public interface UserRepository extends JpaRepository<User, Long> {
     /**
      * Busca usuarios por su estado de conexión.
      * @param status el estado del usuario
-     * @return lista de usuarios con ese estado
+     * @return lista de usuarios con ese estado, ya como DTO
      */
-    List<User> findByStatus(User.UserStatus status);
+    @Query(USER_DTO_SELECT + "WHERE u.status = :status")
+    List<UserDTO> findByStatus(@Param("status") User.UserStatus status);
 
     /**
      * Busca usuarios cuyo username contenga el texto dado (case insensitive).
      * @param username el texto a buscar
-     * @return lista de usuarios que coinciden
+     * @return lista de usuarios que coinciden, ya como DTO
      */
-    List<User> findByUsernameContainingIgnoreCase(String username);
+    @Query(USER_DTO_SELECT + "WHERE LOWER(u.username) LIKE LOWER(CONCAT('%', :username, '%'))")
+    List<UserDTO> findByUsernameContainingIgnoreCase(@Param("username") String username);
 
     /**
      * Busca usuarios habilitados.
@@ -82,10 +101,10 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * Busca todos los usuarios excepto el usuario dado.
      * Útil para listar usuarios con los que se puede iniciar un chat.
      * @param userId el ID del usuario a excluir
-     * @return lista de usuarios
+     * @return lista de usuarios, ya como DTO
      */
-    @Query("SELECT u FROM User u WHERE u.id != :userId AND u.enabled = true")
-    List<User> findAllExceptUser(@Param("userId") Long userId);
+    @Query(USER_DTO_SELECT + "WHERE u.id != :userId AND u.enabled = true")
+    List<UserDTO> findAllExceptUser(@Param("userId") Long userId);
 
     /**
      * Busca usuarios que no están en una sala de chat específica.
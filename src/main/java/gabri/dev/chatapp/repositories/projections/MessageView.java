@@ -0,0 +1,42 @@
+package gabri.dev.chatapp.repositories.projections;
+
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.entities.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proyección de solo lectura de un mensaje junto con su remitente.
+ * <p>
+ * Se arma con una expresión constructora JPQL ({@link #SELECT}), así que las vistas de
+ * historial y búsqueda leen solo las columnas que necesitan, en una consulta, sin
+ * hidratar entidades {@link Message} ni {@link User} en el contexto de persistencia.
+ * </p>
+ */
+public record MessageView(
+        Long id,
+        String content,
+        Message.MessageType type,
+        LocalDateTime sentAt,
+        LocalDateTime editedAt,
+        Boolean isEdited,
+        Long chatRoomId,
+        Long senderId,
+        String senderUsername,
+        String senderEmail,
+        String senderFullName,
+        String senderAvatarUrl,
+        User.UserStatus senderStatus,
+        Boolean senderEnabled,
+        LocalDateTime senderCreatedAt,
+        LocalDateTime senderLastSeenAt
+) {
+
+    /**
+     * Inicio de las consultas que devuelven esta proyección; requiere los alias {@code m} y {@code s}.
+     */
+    public static final String SELECT = "SELECT new gabri.dev.chatapp.repositories.projections.MessageView(" +
+            "m.id, m.content, m.type, m.sentAt, m.editedAt, m.isEdited, m.chatRoom.id, " +
+            "s.id, s.username, s.email, s.fullName, s.avatarUrl, s.status, s.enabled, s.createdAt, s.lastSeenAt) " +
+            "FROM Message m JOIN m.sender s ";
+}
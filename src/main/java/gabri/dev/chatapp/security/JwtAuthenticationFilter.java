@@ -1,6 +1,8 @@
 package gabri.dev.chatapp.security;
 
-import gabri.dev.chatapp.services.CustomUserDetailsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.dtos.ErrorResponseDTO;
 import gabri.dev.chatapp.services.JwtService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -8,18 +10,29 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Collections;
 
 /**
  * Filtro que intercepta cada request para validar el token JWT.
+ * <p>
+ * El usuario se toma de los claims del token, sin consultar la base.
+ * </p>
+ * <p>
+ * En un cluster, mientras el nodo se resincroniza tras reconectar con otro nodo, los requests
+ * con token reciben 503: las cachés del nodo pueden tener datos que ya cambiaron.
+ * </p>
  */
 @Component
 @RequiredArgsConstructor
@@ -27,7 +40,8 @@ import java.io.IOException;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final CustomUserDetailsService userDetailsService;
+    private final ClusterService clusterService;
+    private final ObjectMapper objectMapper;
 
     @Override
     protected void doFilterInternal(
@@ -39,7 +53,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         // Obtener el header Authorization
         final String authHeader = request.getHeader("Authorization");
         final String jwt;
-        final String username;
 
         // Si no hay header o no empieza con "Bearer ", continuar sin autenticar
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
@@ -47,27 +60,29 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
+        // Hasta resincronizar con el cluster no se atienden requests autenticados
+        if (!clusterService.isSynced()) {
+            rejectWhileResyncing(request, response);
+            return;
+        }
+
         // Extraer el token (remover "Bearer ")
         jwt = authHeader.substring(7);
 
         try {
-            // Extraer username del token
-            username = jwtService.extractUsername(jwt);
+            // Si no hay autenticación previa en el contexto
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
 
-            // Si hay username y no hay autenticación previa en el contexto
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                // Validar el token (firma, vencimiento y revocación) y obtener el usuario
+                JwtPrincipal principal = jwtService.authenticate(jwt);
 
-                // Cargar los detalles del usuario
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-
-                // Validar el token
-                if (jwtService.isTokenValid(jwt, userDetails)) {
+                if (principal != null) {
 
                     // Crear el token de autenticación
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userDetails,
+                            principal,
                             null,
-                            userDetails.getAuthorities()
+                            Collections.emptyList()
                     );
 
                     authToken.setDetails(
@@ -77,7 +92,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                     // Establecer la autenticación en el contexto de seguridad
                     SecurityContextHolder.getContext().setAuthentication(authToken);
 
-                    log.debug("Usuario autenticado: {}", username);
+                    log.debug("Usuario autenticado: {}", principal.username());
                 }
             }
         } catch (Exception e) {
@@ -87,6 +102,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    private void rejectWhileResyncing(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ErrorResponseDTO errorResponse = ErrorResponseDTO.builder()
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .error(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase())
+                .message("El servidor se está resincronizando. Por favor, reintenta en unos segundos.")
+                .path(request.getRequestURI())
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.getWriter().write(objectMapper.writeValueAsString(errorResponse));
+    }
+
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) {
         String path = request.getRequestURI();
@@ -0,0 +1,24 @@
+package gabri.dev.chatapp.security;
+
+import java.security.Principal;
+import java.time.Instant;
+
+/**
+ * Usuario autenticado a partir de los claims de un JWT ya verificado.
+ * <p>
+ * Se arma sin consultar la base: el token firmado es la fuente de verdad
+ * hasta que vence o se revoca.
+ * </p>
+ *
+ * @param userId ID del usuario (claim {@code uid}); null en tokens emitidos antes de existir el claim
+ * @param username username del usuario (claim {@code sub})
+ * @param tokenId identificador del token (claim {@code jti}); null en tokens anteriores
+ * @param expiresAt vencimiento del token
+ */
+public record JwtPrincipal(Long userId, String username, String tokenId, Instant expiresAt) implements Principal {
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
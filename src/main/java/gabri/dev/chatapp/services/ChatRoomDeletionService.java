@@ -0,0 +1,247 @@
+package gabri.dev.chatapp.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.dtos.ChatRoomDeletionDTO;
+import gabri.dev.chatapp.dtos.ChatRoomDeletionDTO.Status;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.exceptions.ResourceNotFoundException;
+import gabri.dev.chatapp.exceptions.UnauthorizedException;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Borrado en segundo plano de las salas eliminadas.
+ * <p>
+ * Al eliminar una sala, {@link ChatRoomService#deleteChatRoom} la marca con {@code deletedAt}
+ * y quita sus participantes en la misma transacción, así deja de verse al instante. Tras el
+ * commit, un hilo dedicado borra los mensajes de a {@code app.room-deletion.batch-size}, cada
+ * lote en su propia transacción: la conexión de escritura se libera entre lote y lote y el
+ * resto de la aplicación sigue guardando mensajes mientras tanto. Al final, en una última
+ * transacción, se borran los segmentos archivados y la fila de la sala.
+ * </p>
+ * <p>
+ * Si el borrado falla o el proceso se detiene, cada {@code app.room-deletion.sweep-interval-ms}
+ * se retoman las salas marcadas hace más de ese tiempo (en un cluster, las de este nodo).
+ * El avance queda en memoria del nodo que hace el borrado durante una hora.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatRoomDeletionService {
+
+    private static final Duration PROGRESS_RETENTION = Duration.ofHours(1);
+
+    private final ChatRoomRepository chatRoomRepository;
+    private final MessageRepository messageRepository;
+    private final MessageArchiveService messageArchiveService;
+    private final ClusterService clusterService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.room-deletion.batch-size:2000}")
+    private int batchSize;
+
+    @Value("${app.room-deletion.sweep-interval-ms:300000}")
+    private long sweepIntervalMs;
+
+    /**
+     * Avance de cada borrado, por ID de sala.
+     */
+    private Cache<Long, Progress> progress;
+
+    /**
+     * Salas con un borrado en curso en este nodo.
+     */
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        progress = Caffeine.newBuilder()
+                .expireAfterWrite(PROGRESS_RETENTION)
+                .build();
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "room-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Interrumpe el borrado en curso; el lote actual se descarta y se retoma en el próximo arranque.
+     */
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Programa el borrado de una sala ya marcada, para después del commit de la transacción actual.
+     * @param chatRoom la sala
+     * @param requestedBy el usuario que pidió eliminarla
+     * @param requestedAt el momento del pedido
+     * @return el avance inicial
+     */
+    public ChatRoomDeletionDTO schedule(ChatRoom chatRoom, User requestedBy, LocalDateTime requestedAt) {
+        Long chatRoomId = chatRoom.getId();
+        Progress pending = new Progress(chatRoomId, requestedBy.getId(), Status.PENDING,
+                null, null, requestedAt, null);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                progress.put(chatRoomId, pending);
+                executor.execute(() -> purge(chatRoomId));
+            }
+        });
+        return pending.toDTO();
+    }
+
+    /**
+     * Devuelve el avance del borrado de una sala, solo para quien la eliminó.
+     * <p>
+     * Si el borrado lo hace otro nodo, o todavía no empezó, se informa como pendiente
+     * mientras la sala siga marcada.
+     * </p>
+     * @throws ResourceNotFoundException si no hay un borrado pendiente ni reciente de la sala
+     * @throws UnauthorizedException si el usuario no es quien eliminó la sala
+     */
+    public ChatRoomDeletionDTO getProgress(Long chatRoomId, User user) {
+        Progress current = progress.getIfPresent(chatRoomId);
+        if (current == null) {
+            ChatRoom chatRoom = chatRoomRepository.findById(chatRoomId)
+                    .filter(room -> room.getDeletedAt() != null)
+                    .orElseThrow(() -> new ResourceNotFoundException("Eliminación de sala", "id", chatRoomId));
+            current = new Progress(chatRoomId, chatRoom.getCreatedBy().getId(), Status.PENDING,
+                    null, null, chatRoom.getDeletedAt(), null);
+        }
+
+        if (!current.requestedBy().equals(user.getId())) {
+            throw new UnauthorizedException("Solo quien eliminó la sala puede ver el avance");
+        }
+        return current.toDTO();
+    }
+
+    /**
+     * Retoma los borrados que no terminaron: los que fallaron y los interrumpidos por un reinicio.
+     * Solo toma salas marcadas hace más de un intervalo, para no competir con un borrado en curso
+     * en otro nodo.
+     */
+    @Scheduled(fixedDelayString = "${app.room-deletion.sweep-interval-ms:300000}",
+            initialDelayString = "${app.room-deletion.sweep-initial-delay-ms:30000}")
+    public void resumePending() {
+        LocalDateTime before = LocalDateTime.now().minus(Duration.ofMillis(sweepIntervalMs));
+        for (Long chatRoomId : chatRoomRepository.findDeletedIdsBefore(before)) {
+            if (clusterService.isEnabled() && !clusterService.isOwner(chatRoomId)) {
+                continue;
+            }
+            if (!running.contains(chatRoomId)) {
+                log.info("Retomando el borrado de la sala {}", chatRoomId);
+                executor.execute(() -> purge(chatRoomId));
+            }
+        }
+    }
+
+    /**
+     * Borra los mensajes de la sala de a lotes y después la sala.
+     */
+    private void purge(Long chatRoomId) {
+        if (!running.add(chatRoomId)) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Progress current = progress.get(chatRoomId, id -> chatRoomRepository.findById(id)
+                .map(room -> new Progress(id, room.getCreatedBy().getId(), Status.PENDING,
+                        null, null, room.getDeletedAt(), null))
+                .orElse(null));
+        if (current == null) {
+            running.remove(chatRoomId);
+            return;
+        }
+
+        try {
+            long total = messageRepository.countMessagesByChatRoomId(chatRoomId);
+            long deleted = 0;
+            current = current.running(total, deleted);
+            progress.put(chatRoomId, current);
+            log.info("Borrando sala {}: {} mensajes", chatRoomId, total);
+
+            int count;
+            do {
+                Integer batch = transactionTemplate.execute(status ->
+                        messageRepository.deleteBatchByChatRoomId(chatRoomId, batchSize));
+                count = batch != null ? batch : 0;
+                deleted += count;
+                current = current.running(total, deleted);
+                progress.put(chatRoomId, current);
+                log.debug("Sala {}: {}/{} mensajes borrados", chatRoomId, deleted, total);
+            } while (count == batchSize && !Thread.currentThread().isInterrupted());
+
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            // Los mensajes que hayan llegado durante el borrado se van con la sala
+            transactionTemplate.executeWithoutResult(status -> {
+                messageRepository.deleteByChatRoomId(chatRoomId);
+                messageArchiveService.deleteChatRoom(chatRoomId);
+                chatRoomRepository.deleteChatRoomById(chatRoomId);
+            });
+
+            progress.put(chatRoomId, current.finished(Status.COMPLETED));
+            log.info("Sala {} eliminada: {} mensajes en {} ms",
+                    chatRoomId, deleted, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            progress.put(chatRoomId, current.finished(Status.FAILED));
+            log.warn("Error borrando la sala {}, se reintentará: {}", chatRoomId, e.getMessage());
+        } finally {
+            running.remove(chatRoomId);
+        }
+    }
+
+    private record Progress(Long chatRoomId, Long requestedBy, Status status, Long totalMessages,
+                            Long deletedMessages, LocalDateTime requestedAt, LocalDateTime finishedAt) {
+
+        Progress running(long total, long deleted) {
+            return new Progress(chatRoomId, requestedBy, Status.RUNNING, total, deleted, requestedAt, null);
+        }
+
+        Progress finished(Status result) {
+            return new Progress(chatRoomId, requestedBy, result, totalMessages, deletedMessages,
+                    requestedAt, LocalDateTime.now());
+        }
+
+        ChatRoomDeletionDTO toDTO() {
+            return ChatRoomDeletionDTO.builder()
+                    .chatRoomId(chatRoomId)
+                    .status(status)
+                    .totalMessages(totalMessages)
+                    .deletedMessages(deletedMessages)
+                    .requestedAt(requestedAt)
+                    .finishedAt(finishedAt)
+                    .build();
+        }
+    }
+}
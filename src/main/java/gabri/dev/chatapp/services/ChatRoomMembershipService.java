@@ -0,0 +1,265 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.cluster.ClusterFrame;
+import gabri.dev.chatapp.cluster.ClusterFrameType;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.exceptions.ResourceNotFoundException;
+import gabri.dev.chatapp.exceptions.UserNotParticipantException;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice en memoria de los participantes de cada sala.
+ * <p>
+ * Responde "¿este usuario participa de esta sala?" sin consultar la base ni cargar
+ * el conjunto {@code participants}. Cada sala guarda un arreglo ordenado de IDs de usuario
+ * que no se modifica: los cambios reemplazan el arreglo completo, así que las lecturas
+ * no necesitan locks y no generan objetos.
+ * </p>
+ * <p>
+ * Además guarda el índice inverso (salas de cada usuario), con el mismo formato, para
+ * saber a quién afecta un cambio de un usuario. Ambos índices se actualizan uno después
+ * del otro, no de forma atómica entre sí.
+ * </p>
+ * <p>
+ * El índice se carga al iniciar y se mantiene con las altas, bajas y eliminaciones de sala.
+ * Los cambios hechos dentro de una transacción se aplican recién después del commit,
+ * para no dar acceso por un cambio que terminó en rollback. En un cluster, después de
+ * aplicar un cambio se avisa a los demás nodos, que recargan esa sala desde la base; al
+ * resincronizar con el cluster se recarga el índice completo.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatRoomMembershipService {
+
+    private static final long[] NO_IDS = new long[0];
+
+    private final ChatRoomRepository chatRoomRepository;
+    private final ClusterService clusterService;
+
+    /**
+     * IDs de usuario ordenados, por ID de sala.
+     */
+    private final Map<Long, long[]> membersByChatRoom = new ConcurrentHashMap<>();
+
+    /**
+     * IDs de sala ordenados, por ID de usuario.
+     */
+    private final Map<Long, long[]> chatRoomsByUser = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void warmUp() {
+        reloadAll();
+
+        clusterService.addFrameListener(ClusterFrameType.MEMBERSHIP_CHANGED,
+                (fromNodeId, body) -> reloadChatRoom(body.readLong()));
+        clusterService.addResyncListener(this::reloadAll);
+    }
+
+    /**
+     * Carga los participantes de todas las salas con una sola consulta y reemplaza el índice.
+     * Las salas que ya no tienen participantes salen del índice.
+     */
+    public void reloadAll() {
+        Map<Long, List<Long>> loaded = new HashMap<>();
+        Map<Long, List<Long>> loadedByUser = new HashMap<>();
+        for (Object[] row : chatRoomRepository.findAllParticipantIds()) {
+            loaded.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((Long) row[1]);
+            loadedByUser.computeIfAbsent((Long) row[1], id -> new ArrayList<>()).add((Long) row[0]);
+        }
+
+        loaded.forEach((chatRoomId, userIds) -> membersByChatRoom.put(chatRoomId, toSortedArray(userIds)));
+        loadedByUser.forEach((userId, chatRoomIds) -> chatRoomsByUser.put(userId, toSortedArray(chatRoomIds)));
+        membersByChatRoom.keySet().retainAll(loaded.keySet());
+        chatRoomsByUser.keySet().retainAll(loadedByUser.keySet());
+        log.info("Índice de participantes cargado: {} salas", membersByChatRoom.size());
+    }
+
+    /**
+     * Indica si un usuario participa de una sala.
+     */
+    public boolean isParticipant(Long chatRoomId, Long userId) {
+        long[] members = membersByChatRoom.get(chatRoomId);
+        return members != null && Arrays.binarySearch(members, userId) >= 0;
+    }
+
+    /**
+     * Devuelve los IDs de los participantes de una sala, ordenados. El arreglo no debe modificarse.
+     */
+    public long[] getParticipantIds(Long chatRoomId) {
+        return membersByChatRoom.getOrDefault(chatRoomId, NO_IDS);
+    }
+
+    /**
+     * Devuelve los IDs de las salas de un usuario, ordenados. El arreglo no debe modificarse.
+     */
+    public long[] getChatRoomIds(Long userId) {
+        return chatRoomsByUser.getOrDefault(userId, NO_IDS);
+    }
+
+    /**
+     * Verifica que un usuario participe de una sala.
+     * La sala solo se consulta si no participa, para armar el error.
+     * @throws ResourceNotFoundException si la sala no existe
+     * @throws UserNotParticipantException si el usuario no participa de la sala
+     */
+    public void verifyParticipant(Long chatRoomId, User user) {
+        if (isParticipant(chatRoomId, user.getId())) {
+            return;
+        }
+
+        ChatRoom chatRoom = chatRoomRepository.findActiveById(chatRoomId)
+                .orElseThrow(() -> new ResourceNotFoundException("ChatRoom", "id", chatRoomId));
+        throw new UserNotParticipantException(user.getUsername(), chatRoom.getName());
+    }
+
+    /**
+     * Registra los participantes de una sala recién creada.
+     */
+    public void registerChatRoom(ChatRoom chatRoom) {
+        Long chatRoomId = chatRoom.getId();
+        long[] members = toSortedArray(chatRoom.getParticipants().stream().map(User::getId).toList());
+        afterCommit(chatRoomId, () -> {
+            membersByChatRoom.put(chatRoomId, members);
+            for (long userId : members) {
+                chatRoomsByUser.compute(userId, (id, chatRoomIds) -> insert(chatRoomIds, chatRoomId));
+            }
+        });
+    }
+
+    /**
+     * Registra el alta de un participante.
+     */
+    public void addParticipant(Long chatRoomId, Long userId) {
+        afterCommit(chatRoomId, () -> {
+            membersByChatRoom.compute(chatRoomId, (id, members) -> insert(members, userId));
+            chatRoomsByUser.compute(userId, (id, chatRoomIds) -> insert(chatRoomIds, chatRoomId));
+        });
+    }
+
+    /**
+     * Registra la baja de un participante.
+     */
+    public void removeParticipant(Long chatRoomId, Long userId) {
+        afterCommit(chatRoomId, () -> {
+            membersByChatRoom.computeIfPresent(chatRoomId, (id, members) -> delete(members, userId));
+            chatRoomsByUser.computeIfPresent(userId, (id, chatRoomIds) -> delete(chatRoomIds, chatRoomId));
+        });
+    }
+
+    /**
+     * Registra la eliminación de una sala.
+     */
+    public void removeChatRoom(Long chatRoomId) {
+        afterCommit(chatRoomId, () -> {
+            long[] members = membersByChatRoom.remove(chatRoomId);
+            if (members != null) {
+                for (long userId : members) {
+                    chatRoomsByUser.computeIfPresent(userId, (id, chatRoomIds) -> delete(chatRoomIds, chatRoomId));
+                }
+            }
+        });
+    }
+
+    /**
+     * Reemplaza los participantes de una sala por los que tiene guardados en la base.
+     * Se usa cuando otro nodo del cluster avisa que la sala cambió.
+     */
+    private void reloadChatRoom(Long chatRoomId) {
+        long[] members = toSortedArray(chatRoomRepository.findParticipantIdsByChatRoomId(chatRoomId));
+        long[] previous = members.length > 0
+                ? membersByChatRoom.put(chatRoomId, members)
+                : membersByChatRoom.remove(chatRoomId);
+
+        if (previous != null) {
+            for (long userId : previous) {
+                if (Arrays.binarySearch(members, userId) < 0) {
+                    chatRoomsByUser.computeIfPresent(userId, (id, chatRoomIds) -> delete(chatRoomIds, chatRoomId));
+                }
+            }
+        }
+        for (long userId : members) {
+            chatRoomsByUser.compute(userId, (id, chatRoomIds) -> insert(chatRoomIds, chatRoomId));
+        }
+        log.debug("Sala {} recargada en el índice de participantes: {} participantes", chatRoomId, members.length);
+    }
+
+    /**
+     * Ejecuta el cambio de una sala tras el commit de la transacción actual, o de inmediato
+     * si no hay una, y avisa a los demás nodos del cluster.
+     */
+    private void afterCommit(Long chatRoomId, Runnable change) {
+        Runnable changeAndNotify = () -> {
+            change.run();
+            clusterService.broadcast(ClusterFrame.of(ClusterFrameType.MEMBERSHIP_CHANGED,
+                    body -> body.writeLong(chatRoomId)));
+        };
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            changeAndNotify.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                changeAndNotify.run();
+            }
+        });
+    }
+
+    /**
+     * Devuelve una copia del arreglo con el valor agregado en orden, o el mismo arreglo si ya estaba.
+     */
+    private static long[] insert(long[] ids, long value) {
+        long[] current = ids != null ? ids : NO_IDS;
+        int index = Arrays.binarySearch(current, value);
+        if (index >= 0) {
+            return current;
+        }
+
+        int insertAt = -index - 1;
+        long[] updated = new long[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, insertAt);
+        updated[insertAt] = value;
+        System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+        return updated;
+    }
+
+    /**
+     * Devuelve una copia del arreglo sin el valor, o el mismo arreglo si no estaba.
+     * Devuelve null si queda vacío, para que {@code compute} quite la entrada.
+     */
+    private static long[] delete(long[] ids, long value) {
+        int index = Arrays.binarySearch(ids, value);
+        if (index < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+
+        long[] updated = new long[ids.length - 1];
+        System.arraycopy(ids, 0, updated, 0, index);
+        System.arraycopy(ids, index + 1, updated, index, ids.length - index - 1);
+        return updated;
+    }
+
+    private static long[] toSortedArray(Collection<Long> userIds) {
+        long[] members = userIds.stream().mapToLong(Long::longValue).distinct().toArray();
+        Arrays.sort(members);
+        return members;
+    }
+}
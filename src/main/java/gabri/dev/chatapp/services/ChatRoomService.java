@@ -5,8 +5,12 @@ import gabri.dev.chatapp.entities.ChatRoom;
 import gabri.dev.chatapp.entities.Message;
 import gabri.dev.chatapp.entities.User;
 import gabri.dev.chatapp.exceptions.*;
+import gabri.dev.chatapp.mappers.ChatRoomMapper;
+import gabri.dev.chatapp.mappers.MessageMapper;
+import gabri.dev.chatapp.mappers.UserMapper;
 import gabri.dev.chatapp.repositories.ChatRoomRepository;
 import gabri.dev.chatapp.repositories.MessageRepository;
+import gabri.dev.chatapp.repositories.projections.MessageView;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
@@ -14,6 +18,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -28,7 +33,13 @@ public class ChatRoomService {
     private final ChatRoomRepository chatRoomRepository;
     private final MessageRepository messageRepository;
     private final UserService userService;
-    private final ModelMapper modelMapper;
+    private final ReadStateService readStateService;
+    private final ChatRoomMembershipService membershipService;
+    private final ChatRoomMapper chatRoomMapper;
+    private final MessageMapper messageMapper;
+    private final UserMapper userMapper;
+    private final RecentMessageCache recentMessageCache;
+    private final ChatRoomDeletionService deletionService;
 
     @Qualifier("mergerMapper")
     private final ModelMapper mergerMapper;
@@ -43,6 +54,7 @@ public class ChatRoomService {
                 createDTO.getName(), creator.getUsername());
 
         // Verificar que el nombre no exista
+        verifyNameAllowed(createDTO.getName());
         if (chatRoomRepository.existsByName(createDTO.getName())) {
             throw new ChatRoomAlreadyExistsException(createDTO.getName());
         }
@@ -62,19 +74,22 @@ public class ChatRoomService {
 
         // Agregar otros participantes si se especificaron
         if (createDTO.getParticipantIds() != null && !createDTO.getParticipantIds().isEmpty()) {
-            for (Long userId : createDTO.getParticipantIds()) {
-                User participant = userService.getUserEntityById(userId);
-                chatRoom.getParticipants().add(participant);
-            }
+            // Los usuarios vienen de la caché: se evitan duplicados por ID, no por instancia
+            createDTO.getParticipantIds().stream()
+                    .distinct()
+                    .filter(userId -> !userId.equals(creator.getId()))
+                    .map(userService::getUserEntityById)
+                    .forEach(chatRoom.getParticipants()::add);
         }
 
         ChatRoom savedChatRoom = chatRoomRepository.save(chatRoom);
+        membershipService.registerChatRoom(savedChatRoom);
         log.info("Sala de chat grupal creada: {}", savedChatRoom.getName());
 
         // Crear mensaje de sistema
         createSystemMessage(savedChatRoom, creator.getUsername() + " creó el grupo", Message.MessageType.SYSTEM);
 
-        return mapToChatRoomDTO(savedChatRoom);
+        return mapToChatRoomDTO(savedChatRoom, creator);
     }
 
     /**
@@ -99,7 +114,7 @@ public class ChatRoomService {
 
         if (existingRoom.isPresent()) {
             log.info("Chat privado ya existe: {}", existingRoom.get().getName());
-            return mapToChatRoomDTO(existingRoom.get());
+            return mapToChatRoomDTO(existingRoom.get(), currentUser);
         }
 
         // Crear nueva sala privada
@@ -113,9 +128,10 @@ public class ChatRoomService {
                 .build();
 
         ChatRoom savedChatRoom = chatRoomRepository.save(chatRoom);
+        membershipService.registerChatRoom(savedChatRoom);
         log.info("Chat privado creado: {}", savedChatRoom.getName());
 
-        return mapToChatRoomDTO(savedChatRoom);
+        return mapToChatRoomDTO(savedChatRoom, currentUser);
     }
 
     /**
@@ -124,11 +140,9 @@ public class ChatRoomService {
     @Transactional(readOnly = true)
     public List<ChatRoomDTO> getCurrentUserChatRooms() {
         User currentUser = userService.getCurrentUser();
-        List<ChatRoom> chatRooms = chatRoomRepository.findByParticipantId(currentUser.getId());
+        List<ChatRoom> chatRooms = chatRoomRepository.findByParticipantIdWithCreator(currentUser.getId());
 
-        return chatRooms.stream()
-                .map(this::mapToChatRoomDTO)
-                .collect(Collectors.toList());
+        return mapToChatRoomDTOs(chatRooms, currentUser);
     }
 
     /**
@@ -137,9 +151,9 @@ public class ChatRoomService {
     @Transactional(readOnly = true)
     public ChatRoomDTO getChatRoomById(Long id) {
         ChatRoom chatRoom = getChatRoomEntityById(id);
-        verifyUserIsParticipant(chatRoom);
+        User currentUser = verifyUserIsParticipant(chatRoom);
 
-        return mapToChatRoomDTO(chatRoom);
+        return mapToChatRoomDTO(chatRoom, currentUser);
     }
 
     /**
@@ -164,6 +178,9 @@ public class ChatRoomService {
         }
 
         // Verificar si el nombre cambió y si ya existe
+        if (updateDTO.getName() != null) {
+            verifyNameAllowed(updateDTO.getName());
+        }
         if (updateDTO.getName() != null &&
                 !updateDTO.getName().equals(chatRoom.getName()) &&
                 chatRoomRepository.existsByName(updateDTO.getName())) {
@@ -176,7 +193,7 @@ public class ChatRoomService {
         ChatRoom updatedChatRoom = chatRoomRepository.save(chatRoom);
         log.info("Sala de chat actualizada: {}", updatedChatRoom.getName());
 
-        return mapToChatRoomDTO(updatedChatRoom);
+        return mapToChatRoomDTO(updatedChatRoom, currentUser);
     }
 
     /**
@@ -200,13 +217,14 @@ public class ChatRoomService {
         verifyUserIsParticipant(chatRoom);
 
         // Verificar que el nuevo usuario no sea ya participante
-        if (chatRoom.getParticipants().contains(newParticipant)) {
+        if (membershipService.isParticipant(chatRoomId, newParticipant.getId())) {
             throw new InvalidOperationException("El usuario ya es participante de la sala");
         }
 
         // Agregar participante
         chatRoom.getParticipants().add(newParticipant);
         ChatRoom updatedChatRoom = chatRoomRepository.save(chatRoom);
+        membershipService.addParticipant(chatRoomId, newParticipant.getId());
 
         // Crear mensaje de sistema
         createSystemMessage(chatRoom,
@@ -215,7 +233,7 @@ public class ChatRoomService {
 
         log.info("Participante agregado exitosamente");
 
-        return mapToChatRoomDTO(updatedChatRoom);
+        return mapToChatRoomDTO(updatedChatRoom, currentUser);
     }
 
     /**
@@ -242,13 +260,15 @@ public class ChatRoomService {
         }
 
         // Verificar que el usuario sea participante
-        if (!chatRoom.getParticipants().contains(participantToRemove)) {
+        if (!membershipService.isParticipant(chatRoomId, userId)) {
             throw new InvalidOperationException("El usuario no es participante de la sala");
         }
 
-        // Remover participante
-        chatRoom.getParticipants().remove(participantToRemove);
+        // Remover participante (por ID: el usuario viene de la caché y no es la misma instancia)
+        chatRoom.getParticipants().removeIf(participant -> participant.getId().equals(userId));
         ChatRoom updatedChatRoom = chatRoomRepository.save(chatRoom);
+        membershipService.removeParticipant(chatRoomId, participantToRemove.getId());
+        readStateService.deleteUserState(participantToRemove.getId(), chatRoomId);
 
         // Crear mensaje de sistema
         createSystemMessage(chatRoom,
@@ -257,7 +277,7 @@ public class ChatRoomService {
 
         log.info("Participante removido exitosamente");
 
-        return mapToChatRoomDTO(updatedChatRoom);
+        return mapToChatRoomDTO(updatedChatRoom, currentUser);
     }
 
     /**
@@ -271,9 +291,15 @@ public class ChatRoomService {
 
     /**
      * Elimina una sala de chat (solo el creador en salas grupales).
+     * <p>
+     * La sala se marca como eliminada y se le quitan los participantes y el estado de lectura,
+     * así deja de verse al instante. Los mensajes se borran después, de a lotes, en
+     * {@link ChatRoomDeletionService}; el avance se consulta con {@link #getDeletionProgress}.
+     * </p>
+     * @return el avance inicial del borrado
      */
     @Transactional
-    public void deleteChatRoom(Long id) {
+    public ChatRoomDeletionDTO deleteChatRoom(Long id) {
         ChatRoom chatRoom = getChatRoomEntityById(id);
         User currentUser = userService.getCurrentUser();
 
@@ -290,22 +316,87 @@ public class ChatRoomService {
             throw new UnauthorizedException("Solo el creador puede eliminar la sala");
         }
 
-        chatRoomRepository.delete(chatRoom);
-        log.info("Sala de chat eliminada: {}", chatRoom.getName());
+        LocalDateTime deletedAt = LocalDateTime.now();
+        if (chatRoomRepository.markDeleted(chatRoom.getId(), deletedAt) == 0) {
+            throw new ResourceNotFoundException("ChatRoom", "id", id);
+        }
+
+        readStateService.deleteChatRoomState(chatRoom.getId());
+        chatRoomRepository.deleteParticipantsByChatRoomId(chatRoom.getId());
+        membershipService.removeChatRoom(chatRoom.getId());
+        recentMessageCache.invalidate(chatRoom.getId());
+        log.info("Sala de chat marcada para eliminar: {}", chatRoom.getName());
+
+        return deletionService.schedule(chatRoom, currentUser, deletedAt);
+    }
+
+    /**
+     * Obtiene el avance del borrado de una sala eliminada por el usuario actual.
+     */
+    public ChatRoomDeletionDTO getDeletionProgress(Long id) {
+        return deletionService.getProgress(id, userService.getCurrentUser());
     }
 
     /**
      * Busca salas de chat por nombre.
      */
+    @Transactional(readOnly = true)
     public List<ChatRoomDTO> searchChatRooms(String query) {
         User currentUser = userService.getCurrentUser();
-        List<ChatRoom> chatRooms = chatRoomRepository.findByNameContainingIgnoreCase(query);
 
-        // Filtrar solo las salas donde el usuario es participante
-        return chatRooms.stream()
-                .filter(room -> room.getParticipants().contains(currentUser))
-                .map(this::mapToChatRoomDTO)
-                .collect(Collectors.toList());
+        // Solo las salas donde el usuario es participante (filtrado en la consulta)
+        List<ChatRoom> chatRooms = chatRoomRepository.searchByNameForParticipant(currentUser.getId(), query);
+
+        return mapToChatRoomDTOs(chatRooms, currentUser);
+    }
+
+    /**
+     * Marca una sala como leída por el usuario actual hasta un mensaje.
+     */
+    @Transactional(readOnly = true)
+    public void markAsRead(Long chatRoomId, MarkReadDTO markReadDTO) {
+        ChatRoom chatRoom = getChatRoomEntityById(chatRoomId);
+        User currentUser = verifyUserIsParticipant(chatRoom);
+
+        markAsRead(chatRoom, currentUser, markReadDTO);
+    }
+
+    /**
+     * Marca una sala como leída hasta un mensaje (desde WebSocket, con username explícito).
+     * Usado cuando el SecurityContext no está disponible (contexto WebSocket).
+     */
+    @Transactional(readOnly = true)
+    public void markAsRead(Long chatRoomId, MarkReadDTO markReadDTO, String username) {
+        ChatRoom chatRoom = getChatRoomEntityById(chatRoomId);
+        User user = userService.getUserEntityByUsername(username);
+
+        membershipService.verifyParticipant(chatRoomId, user);
+
+        markAsRead(chatRoom, user, markReadDTO);
+    }
+
+    /**
+     * Registra la marca de lectura, sin pasar del último mensaje de la sala.
+     */
+    private void markAsRead(ChatRoom chatRoom, User user, MarkReadDTO markReadDTO) {
+        Long lastMessageId = chatRoom.getLastMessageId();
+        if (lastMessageId == null) {
+            return;
+        }
+
+        Long messageId = markReadDTO != null && markReadDTO.getMessageId() != null
+                ? Math.min(markReadDTO.getMessageId(), lastMessageId)
+                : lastMessageId;
+
+        readStateService.markRead(user.getId(), chatRoom.getId(), messageId);
+    }
+
+    /**
+     * Obtiene los IDs de las salas donde participa un usuario (uso interno).
+     */
+    @Transactional(readOnly = true)
+    public List<Long> getChatRoomIdsByParticipant(Long userId) {
+        return chatRoomRepository.findIdsByParticipantId(userId);
     }
 
     /**
@@ -313,22 +404,29 @@ public class ChatRoomService {
      */
     @Transactional(readOnly = true)
     public ChatRoom getChatRoomEntityById(Long id) {
-        return chatRoomRepository.findById(id)
+        return chatRoomRepository.findActiveById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("ChatRoom", "id", id));
     }
 
+    /**
+     * Rechaza los nombres que contienen {@link ChatRoom#DELETED_NAME_MARKER}, reservado para
+     * las salas marcadas para eliminar.
+     */
+    private void verifyNameAllowed(String name) {
+        if (name != null && name.contains(ChatRoom.DELETED_NAME_MARKER)) {
+            throw new InvalidOperationException(
+                    "El nombre de la sala no puede contener \"" + ChatRoom.DELETED_NAME_MARKER + "\"");
+        }
+    }
+
     /**
      * Verifica que el usuario actual sea participante de la sala.
      */
-    private void verifyUserIsParticipant(ChatRoom chatRoom) {
+    private User verifyUserIsParticipant(ChatRoom chatRoom) {
         User currentUser = userService.getCurrentUser();
+        membershipService.verifyParticipant(chatRoom.getId(), currentUser);
 
-        if (!chatRoom.getParticipants().contains(currentUser)) {
-            throw new UserNotParticipantException(
-                    currentUser.getUsername(),
-                    chatRoom.getName()
-            );
-        }
+        return currentUser;
     }
 
     /**
@@ -342,37 +440,150 @@ public class ChatRoomService {
                 .sender(chatRoom.getCreatedBy()) // El creador como sender de mensajes del sistema
                 .build();
 
-        messageRepository.save(message);
+        Message savedMessage = messageRepository.save(message);
+        registerNewMessage(savedMessage);
+
+        // Reflejar el cambio en la entidad en memoria, que se mapea a DTO en esta misma transacción
+        chatRoom.setLastMessageId(savedMessage.getId());
+        chatRoom.setLastMessageAt(savedMessage.getSentAt());
+        chatRoom.setLastMessagePreview(ChatRoom.previewOf(savedMessage.getContent()));
+        chatRoom.setMessageCount(chatRoom.getMessageCount() + 1);
+    }
+
+    /**
+     * Actualiza los datos desnormalizados de la sala tras guardar un mensaje.
+     * Debe llamarse dentro de la misma transacción que guardó el mensaje.
+     */
+    @Transactional
+    public void registerNewMessage(Message message) {
+        chatRoomRepository.registerNewMessages(
+                message.getChatRoom().getId(),
+                1,
+                message.getId(),
+                message.getSentAt(),
+                ChatRoom.previewOf(message.getContent())
+        );
+        recentMessageCache.messageAdded(messageMapper.toDTO(message));
+    }
+
+    /**
+     * Actualiza la vista previa de la sala si el mensaje editado es el último.
+     */
+    @Transactional
+    public void registerEditedMessage(Message message) {
+        chatRoomRepository.updateLastMessagePreview(
+                message.getChatRoom().getId(),
+                message.getId(),
+                ChatRoom.previewOf(message.getContent())
+        );
+        recentMessageCache.messageEdited(messageMapper.toDTO(message));
+    }
+
+    /**
+     * Actualiza los datos desnormalizados de la sala tras eliminar un mensaje.
+     * Si era el último mensaje, se busca el anterior para reemplazarlo.
+     */
+    @Transactional
+    public void registerDeletedMessage(Message message) {
+        ChatRoom chatRoom = message.getChatRoom();
+        chatRoomRepository.decrementMessageCount(chatRoom.getId());
+        recentMessageCache.messageDeleted(chatRoom.getId(), message.getId());
+
+        if (!message.getId().equals(chatRoom.getLastMessageId())) {
+            return;
+        }
+
+        Message previous = messageRepository.findLastMessageByChatRoomId(chatRoom.getId());
+        if (previous != null) {
+            chatRoomRepository.updateLastMessage(chatRoom.getId(), previous.getId(),
+                    previous.getSentAt(), ChatRoom.previewOf(previous.getContent()));
+        } else {
+            chatRoomRepository.updateLastMessage(chatRoom.getId(), null, null, null);
+        }
+    }
+
+    /**
+     * Mapea un listado de salas a DTOs con una cantidad fija de consultas.
+     * <p>
+     * Las salas deben venir con {@code createdBy} ya cargado. Los participantes, el
+     * último mensaje y los no leídos de todas las salas se obtienen con una consulta cada uno
+     * y se arman en memoria, en lugar de cargar cada colección lazy sala por sala.
+     * </p>
+     */
+    private List<ChatRoomDTO> mapToChatRoomDTOs(List<ChatRoom> chatRooms, User currentUser) {
+        if (chatRooms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Long> chatRoomIds = chatRooms.stream()
+                .map(ChatRoom::getId)
+                .collect(Collectors.toList());
+
+        // Participantes de todas las salas
+        Map<Long, List<UserDTO>> participantsByRoom = new HashMap<>();
+        for (Object[] row : chatRoomRepository.findParticipantsByChatRoomIds(chatRoomIds)) {
+            participantsByRoom
+                    .computeIfAbsent((Long) row[0], id -> new ArrayList<>())
+                    .add((UserDTO) row[1]);
+        }
+
+        // Último mensaje de todas las salas, por clave primaria gracias a lastMessageId
+        List<Long> lastMessageIds = chatRooms.stream()
+                .map(ChatRoom::getLastMessageId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        Map<Long, MessageDTO> lastMessageByRoom = new HashMap<>();
+        if (!lastMessageIds.isEmpty()) {
+            for (MessageView message : messageRepository.findViewsByIdIn(lastMessageIds)) {
+                lastMessageByRoom.put(message.chatRoomId(), messageMapper.toDTO(message));
+            }
+        }
+
+        // Mensajes no leídos de todas las salas
+        Map<Long, Long> unreadCounts = readStateService.getUnreadCounts(currentUser.getId(), chatRooms);
+
+        return chatRooms.stream()
+                .map(chatRoom -> {
+                    List<UserDTO> participants =
+                            participantsByRoom.getOrDefault(chatRoom.getId(), new ArrayList<>());
+
+                    ChatRoomDTO dto = chatRoomMapper.toDTO(chatRoom);
+                    dto.setParticipants(participants);
+                    dto.setLastMessage(lastMessageByRoom.get(chatRoom.getId()));
+                    dto.setParticipantCount(participants.size());
+                    dto.setUnreadCount(unreadCounts.getOrDefault(chatRoom.getId(), 0L));
+                    return dto;
+                })
+                .collect(Collectors.toList());
     }
 
     /**
      * Mapea ChatRoom a ChatRoomDTO incluyendo información adicional.
      */
-    private ChatRoomDTO mapToChatRoomDTO(ChatRoom chatRoom) {
-        ChatRoomDTO dto = modelMapper.map(chatRoom, ChatRoomDTO.class);
+    private ChatRoomDTO mapToChatRoomDTO(ChatRoom chatRoom, User currentUser) {
+        // Datos de la sala y creador
+        ChatRoomDTO dto = chatRoomMapper.toDTO(chatRoom);
 
         // Mapear participantes
         List<UserDTO> participants = chatRoom.getParticipants().stream()
-                .map(user -> modelMapper.map(user, UserDTO.class))
+                .map(userMapper::toDTO)
                 .collect(Collectors.toList());
         dto.setParticipants(participants);
 
-        // Mapear creador
-        if (chatRoom.getCreatedBy() != null) {
-            dto.setCreatedBy(modelMapper.map(chatRoom.getCreatedBy(), UserDTO.class));
-        }
-
         // Obtener último mensaje
-        Message lastMessage = messageRepository.findLastMessageByChatRoomId(chatRoom.getId());
-        if (lastMessage != null) {
-            dto.setLastMessage(modelMapper.map(lastMessage, MessageDTO.class));
+        if (chatRoom.getLastMessageId() != null) {
+            messageRepository.findViewById(chatRoom.getLastMessageId())
+                    .ifPresent(lastMessage -> dto.setLastMessage(messageMapper.toDTO(lastMessage)));
         }
 
         // Número de participantes
         dto.setParticipantCount(chatRoom.getParticipants().size());
 
-        // TODO: Implementar conteo de mensajes no leídos en el futuro
-        dto.setUnreadCount(0L);
+        // Mensajes no leídos del usuario actual
+        dto.setUnreadCount(readStateService
+                .getUnreadCounts(currentUser.getId(), List.of(chatRoom))
+                .getOrDefault(chatRoom.getId(), 0L));
 
         return dto;
     }
@@ -18,10 +18,14 @@ import java.util.ArrayList;
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final UserCacheService userCache;
 
+    /**
+     * Carga un usuario por username (desde la caché de usuarios) o, si no existe, por email.
+     */
     @Override
     public UserDetails loadUserByUsername(String usernameOrEmail) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(usernameOrEmail)
+        User user = userCache.getByUsername(usernameOrEmail)
                 .or(() -> userRepository.findByEmail(usernameOrEmail))
                 .orElseThrow(() -> new UsernameNotFoundException(
                         "Usuario no encontrado con username o email: " + usernameOrEmail));
@@ -41,7 +45,7 @@ public class CustomUserDetailsService implements UserDetailsService {
      * Carga un usuario por su ID.
      */
     public UserDetails loadUserById(Long id) {
-        User user = userRepository.findById(id)
+        User user = userCache.getById(id)
                 .orElseThrow(() -> new UsernameNotFoundException(
                         "Usuario no encontrado con id: " + id));
 
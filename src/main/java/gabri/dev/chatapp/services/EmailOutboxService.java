@@ -0,0 +1,247 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.entities.EmailOutboxMessage;
+import gabri.dev.chatapp.mail.EmailTransport;
+import gabri.dev.chatapp.repositories.EmailOutboxRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Despachador de la bandeja de salida de emails.
+ * <p>
+ * Un hilo dedicado toma de la tabla hasta {@code app.mail.outbox.batch-size} emails vencidos y
+ * los envía en un solo llamado al {@link EmailTransport}, que con SMTP reutiliza la conexión.
+ * Entre lotes espera al menos {@code app.mail.outbox.send-interval-ms}, así un pico de registros
+ * se envía al ritmo que acepta el servidor y en memoria nunca hay más que un lote.
+ * Sin pendientes, duerme hasta {@code app.mail.outbox.poll-interval-ms} o hasta que
+ * {@link EmailService} avise que hay un email nuevo.
+ * </p>
+ * <p>
+ * Cada email fallido se reintenta con espera exponencial desde {@code retry-base-delay-ms}
+ * hasta {@code retry-max-delay-ms}; tras {@code max-attempts} intentos queda descartado con el
+ * último error. Un destinatario rechazado solo demora su propio email. Si falla el lote completo
+ * (el transporte lanza {@link MailException}: servidor caído, credenciales inválidas), además se
+ * pausa el despachador con la misma espera, para no gastar intentos de los emails que lleguen.
+ * </p>
+ * <p>
+ * El envío es "al menos una vez": si el proceso se detiene entre el envío y el borrado de la
+ * fila, el email se vuelve a enviar. En un cluster despacha solo el nodo dueño de la bandeja.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmailOutboxService {
+
+    // Clave fija en el anillo del cluster: un único nodo despacha toda la bandeja
+    private static final long OUTBOX_KEY = 0L;
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailTransport transport;
+    private final ClusterService clusterService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${spring.mail.username}")
+    private String fromEmail;
+
+    @Value("${app.mail.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.mail.outbox.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Value("${app.mail.outbox.send-interval-ms:1000}")
+    private long sendIntervalMs;
+
+    @Value("${app.mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.mail.outbox.retry-base-delay-ms:30000}")
+    private long retryBaseDelayMs;
+
+    @Value("${app.mail.outbox.retry-max-delay-ms:3600000}")
+    private long retryMaxDelayMs;
+
+    private final Semaphore wakeUp = new Semaphore(0);
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    /**
+     * Lotes seguidos que fallaron por completo en el transporte; define la pausa del despachador.
+     */
+    private int consecutiveFailures;
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        dispatcher = new Thread(this::runDispatcher, "email-outbox");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("Despachador de emails iniciado (lote: {}, intentos: {})", batchSize, maxAttempts);
+    }
+
+    /**
+     * Detiene el despachador; los emails pendientes quedan en la tabla.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        dispatcher.interrupt();
+        dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Avisa que hay emails nuevos, para no esperar a la próxima revisión.
+     * Debe llamarse después del commit que los guardó.
+     */
+    public void wakeUp() {
+        if (wakeUp.availablePermits() == 0) {
+            wakeUp.release();
+        }
+    }
+
+    private void runDispatcher() {
+        while (running) {
+            try {
+                long delay = pollIntervalMs;
+                if (!clusterService.isEnabled() || clusterService.isOwner(OUTBOX_KEY)) {
+                    delay = dispatchBatch();
+                }
+
+                if (consecutiveFailures > 0) {
+                    // El lote completo falló: se ignoran los avisos hasta que pase la pausa
+                    Thread.sleep(delay);
+                } else if (delay > 0) {
+                    wakeUp.tryAcquire(delay, TimeUnit.MILLISECONDS);
+                    wakeUp.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("Error en el despachador de emails: {}", e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Envía un lote de emails vencidos y registra el resultado.
+     * @return milisegundos a esperar antes del próximo lote
+     */
+    private long dispatchBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<EmailOutboxMessage> due = outboxRepository.findDue(now, PageRequest.of(0, batchSize));
+        if (due.isEmpty()) {
+            consecutiveFailures = 0;
+            return pollIntervalMs;
+        }
+
+        Map<SimpleMailMessage, EmailOutboxMessage> rows = new IdentityHashMap<>();
+        List<SimpleMailMessage> messages = new ArrayList<>(due.size());
+        for (EmailOutboxMessage row : due) {
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setFrom(fromEmail);
+            message.setTo(row.getRecipient());
+            message.setSubject(row.getSubject());
+            message.setText(row.getBody());
+            messages.add(message);
+            rows.put(message, row);
+        }
+
+        Map<SimpleMailMessage, Exception> failed;
+        boolean batchFailed = false;
+        try {
+            failed = transport.send(messages);
+        } catch (MailException e) {
+            // No se envió ninguno por un error del servidor o de la conexión, no de los emails
+            failed = new IdentityHashMap<>();
+            for (SimpleMailMessage message : messages) {
+                failed.put(message, e);
+            }
+            batchFailed = true;
+        }
+
+        List<Long> sent = new ArrayList<>(messages.size());
+        for (SimpleMailMessage message : messages) {
+            if (!failed.containsKey(message)) {
+                sent.add(rows.get(message).getId());
+            }
+        }
+
+        Map<SimpleMailMessage, Exception> failures = failed;
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!sent.isEmpty()) {
+                outboxRepository.deleteByIdIn(sent);
+            }
+            failures.forEach((message, error) -> recordFailure(rows.get(message), error, now));
+        });
+
+        if (!failed.isEmpty()) {
+            log.warn("Emails enviados: {}, fallidos: {} ({})", sent.size(), failed.size(),
+                    failed.values().iterator().next().getMessage());
+        } else {
+            log.info("Emails enviados: {}", sent.size());
+        }
+
+        // Los rechazos de destinatarios ya esperan su reintento; solo el transporte caído pausa
+        if (batchFailed) {
+            consecutiveFailures++;
+            return backoff(consecutiveFailures);
+        }
+        consecutiveFailures = 0;
+        return due.size() == batchSize ? sendIntervalMs : pollIntervalMs;
+    }
+
+    private void recordFailure(EmailOutboxMessage row, Exception error, LocalDateTime now) {
+        int attempts = row.getAttempts() + 1;
+        String message = truncate(error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName());
+
+        if (attempts >= maxAttempts) {
+            outboxRepository.markFailed(row.getId(), now, message);
+            log.error("Email a {} descartado tras {} intentos: {}", row.getRecipient(), attempts, message);
+        } else {
+            outboxRepository.scheduleRetry(row.getId(), now.plus(Duration.ofMillis(backoff(attempts))), message);
+        }
+    }
+
+    /**
+     * Espera exponencial para el intento {@code attempt} (desde 1), con hasta un 20% de variación
+     * para que los emails de un mismo corte no se reintenten todos juntos.
+     */
+    private long backoff(int attempt) {
+        long delay = retryBaseDelayMs << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, retryMaxDelayMs);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= MAX_ERROR_LENGTH ? text : text.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -1,91 +1,95 @@
 package gabri.dev.chatapp.services;
 
+import gabri.dev.chatapp.entities.EmailOutboxMessage;
+import gabri.dev.chatapp.repositories.EmailOutboxRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
 
 /**
  * Servicio para envío de emails.
+ * <p>
+ * Los emails no se envían acá: se guardan en la bandeja de salida dentro de la transacción
+ * de quien los pide, y {@link EmailOutboxService} los envía después del commit.
+ * </p>
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class EmailService {
 
-    private final JavaMailSender mailSender;
-
-    @Value("${spring.mail.username}")
-    private String fromEmail;
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailOutboxService outboxService;
 
     @Value("${app.front.url}")
     private String appUrl;
 
     /**
-     * Envía email de verificación de forma asíncrona.
+     * Encola el email de verificación en la transacción actual.
      */
-    @Async
+    @Transactional(propagation = Propagation.MANDATORY)
     public void sendVerificationEmail(String toEmail, String username, String token) {
-        try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(toEmail);
-            message.setSubject("Verifica tu cuenta en Carrot");
-
-            String verificationUrl = appUrl + "auth/verify?token=" + token;
-
-            String emailBody = String.format(
-                    "Hola %s,\n\n" +
-                            "Gracias por registrarte en Carrot!\n\n" +
-                            "Por favor verifica tu dirección de email haciendo clic en el siguiente enlace:\n\n" +
-                            "%s\n\n" +
-                            "Si no creaste esta cuenta, puedes ignorar este email.\n\n" +
-                            "Saludos,\n" +
-                            "El equipo de Carrot",
-                    username, verificationUrl
-            );
-
-            message.setText(emailBody);
-
-            mailSender.send(message);
-            log.info("Email de verificación enviado a: {}", toEmail);
-
-        } catch (Exception e) {
-            log.error("Error al enviar email de verificación a {}: {}", toEmail, e.getMessage());
-        }
+        String verificationUrl = appUrl + "auth/verify?token=" + token;
+
+        String emailBody = String.format(
+                "Hola %s,\n\n" +
+                        "Gracias por registrarte en Carrot!\n\n" +
+                        "Por favor verifica tu dirección de email haciendo clic en el siguiente enlace:\n\n" +
+                        "%s\n\n" +
+                        "Si no creaste esta cuenta, puedes ignorar este email.\n\n" +
+                        "Saludos,\n" +
+                        "El equipo de Carrot",
+                username, verificationUrl
+        );
+
+        enqueue(toEmail, "Verifica tu cuenta en Carrot", emailBody);
+        log.info("Email de verificación encolado para: {}", toEmail);
     }
 
     /**
-     * Envía email de confirmación de verificación exitosa.
+     * Encola el email de confirmación de verificación exitosa en la transacción actual.
      */
-    @Async
+    @Transactional(propagation = Propagation.MANDATORY)
     public void sendWelcomeEmail(String toEmail, String username) {
-        try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(toEmail);
-            message.setSubject("¡Bienvenido a Carrot!");
-
-            String emailBody = String.format(
-                    "Hola %s,\n\n" +
-                            "Tu cuenta ha sido verificada exitosamente.\n\n" +
-                            "Ya puedes iniciar sesión y comenzar a chatear.\n\n" +
-                            "¡Que disfrutes de Carrot!\n\n" +
-                            "Saludos,\n" +
-                            "El equipo de Carrot",
-                    username
-            );
-
-            message.setText(emailBody);
-
-            mailSender.send(message);
-            log.info("Email de bienvenida enviado a: {}", toEmail);
+        String emailBody = String.format(
+                "Hola %s,\n\n" +
+                        "Tu cuenta ha sido verificada exitosamente.\n\n" +
+                        "Ya puedes iniciar sesión y comenzar a chatear.\n\n" +
+                        "¡Que disfrutes de Carrot!\n\n" +
+                        "Saludos,\n" +
+                        "El equipo de Carrot",
+                username
+        );
+
+        enqueue(toEmail, "¡Bienvenido a Carrot!", emailBody);
+        log.info("Email de bienvenida encolado para: {}", toEmail);
+    }
 
-        } catch (Exception e) {
-            log.error("Error al enviar email de bienvenida a {}: {}", toEmail, e.getMessage());
-        }
+    /**
+     * Guarda el email en la bandeja de salida y despierta al despachador tras el commit.
+     */
+    private void enqueue(String toEmail, String subject, String body) {
+        LocalDateTime now = LocalDateTime.now();
+        outboxRepository.save(EmailOutboxMessage.builder()
+                .recipient(toEmail)
+                .subject(subject)
+                .body(body)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                outboxService.wakeUp();
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -1,32 +1,98 @@
 package gabri.dev.chatapp.services;
 
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.security.JwtPrincipal;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
-import java.security.Key;
+import javax.crypto.SecretKey;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 
 /**
  * Servicio para manejar operaciones con JWT (JSON Web Tokens).
+ * <p>
+ * La clave de firma y el parser se construyen una sola vez. Los tokens llevan el ID
+ * del usuario ({@code uid}) y un identificador propio ({@code jti}), de modo que
+ * {@link #authenticate(String)} resuelve al usuario sin consultar la base.
+ * </p>
  */
 @Service
+@RequiredArgsConstructor
 public class JwtService {
 
+    /**
+     * Claim con el ID del usuario.
+     */
+    private static final String USER_ID_CLAIM = "uid";
+
+    private final TokenRevocationService tokenRevocationService;
+
     @Value("${jwt.secret}")
     private String secretKey;
 
     @Value("${jwt.expiration}")
     private Long jwtExpiration;
 
+    private SecretKey signInKey;
+    private JwtParser parser;
+
+    @PostConstruct
+    public void init() {
+        signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        parser = Jwts.parser()
+                .verifyWith(signInKey)
+                .build();
+    }
+
+    /**
+     * Valida un token y obtiene el usuario que representa.
+     * <p>
+     * El token se parsea una sola vez: la firma y el vencimiento los verifica el parser.
+     * Después solo se consulta el registro de tokens revocados, en memoria.
+     * </p>
+     * @param token el token JWT
+     * @return el usuario autenticado, o null si el token fue revocado
+     * @throws io.jsonwebtoken.JwtException si el token es inválido o está vencido
+     */
+    public JwtPrincipal authenticate(String token) {
+        Claims claims = extractAllClaims(token);
+
+        if (claims.getSubject() == null || tokenRevocationService.isRevoked(claims.getId())) {
+            return null;
+        }
+
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+
+        return new JwtPrincipal(
+                userId != null ? userId.longValue() : null,
+                claims.getSubject(),
+                claims.getId(),
+                claims.getExpiration().toInstant()
+        );
+    }
+
+    /**
+     * Revoca el token de un usuario autenticado hasta su vencimiento.
+     */
+    public void revoke(JwtPrincipal principal) {
+        if (principal.tokenId() != null) {
+            tokenRevocationService.revoke(principal.tokenId(), principal.expiresAt());
+        }
+    }
+
     /**
      * Extrae el username del token.
      */
@@ -42,6 +108,15 @@ public class JwtService {
         return claimsResolver.apply(claims);
     }
 
+    /**
+     * Genera un token para un usuario, con su ID como claim.
+     */
+    public String generateToken(User user) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, user.getId());
+        return buildToken(claims, user.getUsername(), jwtExpiration);
+    }
+
     /**
      * Genera un token para un usuario.
      */
@@ -53,7 +128,7 @@ public class JwtService {
      * Genera un token con claims adicionales.
      */
     public String generateToken(Map<String, Object> extraClaims, UserDetails userDetails) {
-        return buildToken(extraClaims, userDetails, jwtExpiration);
+        return buildToken(extraClaims, userDetails.getUsername(), jwtExpiration);
     }
 
     /**
@@ -61,57 +136,23 @@ public class JwtService {
      */
     private String buildToken(
             Map<String, Object> extraClaims,
-            UserDetails userDetails,
+            String subject,
             long expiration) {
 
         return Jwts.builder()
                 .setClaims(extraClaims)
-                .setSubject(userDetails.getUsername())
+                .setId(UUID.randomUUID().toString())
+                .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(signInKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    /**
-     * Valida si el token es válido para el usuario.
-     */
-    public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
-    }
-
-    /**
-     * Verifica si el token ha expirado.
-     */
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
-    /**
-     * Extrae la fecha de expiración del token.
-     */
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
-
     /**
      * Extrae todos los claims del token.
      */
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith((javax.crypto.SecretKey) getSignInKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-    }
-
-
-    /**
-     * Obtiene la clave de firma.
-     */
-    private Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return parser.parseSignedClaims(token).getPayload();
     }
 }
\ No newline at end of file
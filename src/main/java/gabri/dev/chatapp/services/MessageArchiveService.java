@@ -0,0 +1,462 @@
+package gabri.dev.chatapp.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.dtos.MessageCursor;
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.UserDTO;
+import gabri.dev.chatapp.entities.MessageArchiveSegment;
+import gabri.dev.chatapp.exceptions.CarrotException;
+import gabri.dev.chatapp.mappers.MessageMapper;
+import gabri.dev.chatapp.mappers.UserMapper;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import gabri.dev.chatapp.repositories.MessageArchiveSegmentRepository;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import gabri.dev.chatapp.repositories.projections.MessageView;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archivo de mensajes antiguos en segmentos comprimidos, fuera de la base.
+ * <p>
+ * Se activa con {@code app.archive.enabled=true}: archivar saca mensajes de la base y de la
+ * búsqueda, así que no ocurre sin pedirlo. Cada sala retiene sus mensajes en {@code messages}
+ * durante {@code retentionDays} días ({@code app.archive.default-retention-days} si no tiene
+ * una propia; 0 no archiva nunca). Cada {@code app.archive.interval-ms} se mueven los vencidos
+ * al archivo, de a {@code app.archive.segment-size} mensajes: cada lote se escribe como un
+ * archivo NDJSON comprimido en {@code app.archive.dir/room-<id>/}, con el mismo formato que la
+ * exportación, y recién con el archivo en disco una transacción corta registra el segmento y
+ * borra los mensajes de la base. Los lotes de menos de {@code app.archive.min-segment-size}
+ * mensajes esperan a la próxima pasada, para no llenar el directorio de archivos chicos.
+ * </p>
+ * <p>
+ * Un archivo que no llega a registrarse (el lote cambió mientras se escribía, falló la
+ * transacción o se cortó el proceso) se borra en el momento o, si quedó, en una pasada
+ * posterior, cuando tiene más de {@link #ORPHAN_MIN_AGE} y la sala es de este nodo.
+ * </p>
+ * <p>
+ * Los segmentos no se modifican: los mensajes archivados son de solo lectura y ya no aparecen
+ * en la búsqueda. El historial, los últimos mensajes y la exportación los leen desde aquí;
+ * los segmentos leídos quedan en una caché de hasta {@code app.archive.cache-max-messages}
+ * mensajes. El remitente se completa al leer desde la caché de usuarios.
+ * </p>
+ * <p>
+ * En un cluster cada nodo archiva las salas de las que es dueño. El directorio, como la base,
+ * tiene que ser el mismo para todos los nodos.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageArchiveService {
+
+    private static final String SEGMENT_EXTENSION = ".ndjson.gz";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final String ROOM_DIRECTORY_PREFIX = "room-";
+
+    // Margen para no borrar el archivo de un segmento que otro nodo está por registrar
+    private static final Duration ORPHAN_MIN_AGE = Duration.ofMinutes(10);
+
+    // Límites de los rangos abiertos en las consultas de segmentos
+    private static final MessageCursor NO_UPPER_BOUND = new MessageCursor(LocalDateTime.of(9999, 12, 31, 0, 0), Long.MAX_VALUE);
+    private static final MessageCursor NO_LOWER_BOUND = new MessageCursor(LocalDateTime.of(1970, 1, 1, 0, 0), 0L);
+
+    private static final Comparator<MessageDTO> NEWEST_FIRST = Comparator
+            .comparing(MessageDTO::getSentAt)
+            .thenComparing(MessageDTO::getId)
+            .reversed();
+
+    private final MessageRepository messageRepository;
+    private final ChatRoomRepository chatRoomRepository;
+    private final MessageArchiveSegmentRepository segmentRepository;
+    private final MessageMapper messageMapper;
+    private final UserCacheService userCache;
+    private final UserMapper userMapper;
+    private final ClusterService clusterService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.archive.dir:./data/archive}")
+    private Path directory;
+
+    @Value("${app.archive.default-retention-days:90}")
+    private int defaultRetentionDays;
+
+    @Value("${app.archive.segment-size:1000}")
+    private int segmentSize;
+
+    @Value("${app.archive.min-segment-size:100}")
+    private int minSegmentSize;
+
+    @Value("${app.archive.cache-max-messages:20000}")
+    private long cacheMaxMessages;
+
+    /**
+     * Mensajes de cada segmento leído, en orden cronológico, por ID de segmento.
+     */
+    private Cache<Long, MessageDTO[]> segments;
+
+    @PostConstruct
+    public void init() {
+        segments = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxMessages)
+                .weigher((Long id, MessageDTO[] messages) -> Math.max(1, messages.length))
+                .build();
+    }
+
+    /**
+     * Mueve al archivo los mensajes vencidos de todas las salas.
+     */
+    @Scheduled(fixedDelayString = "${app.archive.interval-ms:3600000}",
+            initialDelayString = "${app.archive.initial-delay-ms:60000}")
+    public void archiveExpiredMessages() {
+        if (!enabled) {
+            return;
+        }
+
+        deleteOrphanFiles();
+
+        long archived = 0;
+        for (Object[] policy : chatRoomRepository.findRetentionPolicies()) {
+            Long chatRoomId = (Long) policy[0];
+            int retentionDays = policy[1] != null ? ((Number) policy[1]).intValue() : defaultRetentionDays;
+            if (retentionDays <= 0 || (clusterService.isEnabled() && !clusterService.isOwner(chatRoomId))) {
+                continue;
+            }
+
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+            try {
+                int count;
+                do {
+                    count = archiveSegment(chatRoomId, cutoff);
+                    archived += count;
+                } while (count == segmentSize);
+            } catch (Exception e) {
+                log.warn("Error archivando mensajes de la sala {}: {}", chatRoomId, e.getMessage());
+            }
+        }
+
+        if (archived > 0) {
+            log.info("Mensajes archivados: {}", archived);
+        }
+    }
+
+    /**
+     * Busca mensajes archivados de una sala entre dos posiciones {@code (sentAt, id)}, excluidas.
+     * @param chatRoomId el ID de la sala
+     * @param before límite superior, o {@code null} para empezar por el más reciente
+     * @param after límite inferior, o {@code null} para no tener límite
+     * @param limit cantidad máxima de mensajes
+     * @return los mensajes, del más nuevo al más antiguo
+     */
+    public List<MessageDTO> findBetween(Long chatRoomId, MessageCursor before, MessageCursor after, int limit) {
+        MessageCursor upper = before != null ? before : NO_UPPER_BOUND;
+        MessageCursor lower = after != null ? after : NO_LOWER_BOUND;
+
+        List<MessageArchiveSegment> candidates = segmentRepository.findBetween(chatRoomId,
+                upper.getSentAt(), upper.getId(), lower.getSentAt(), lower.getId());
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+
+        List<MessageDTO> result = new ArrayList<>();
+        Map<Long, UserDTO> senders = new HashMap<>();
+        for (MessageArchiveSegment segment : candidates) {
+            MessageDTO[] messages = segments.get(segment.getId(), id -> read(segment));
+            for (int i = messages.length - 1; i >= 0 && result.size() < limit; i--) {
+                MessageDTO message = messages[i];
+                if (compare(message, upper) < 0 && compare(message, lower) > 0) {
+                    result.add(withCurrentSender(message, senders));
+                }
+            }
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    /**
+     * Recorre los mensajes archivados de una sala en orden cronológico, segmento por segmento.
+     * Los segmentos se leen sin pasar por la caché.
+     */
+    public void forEachSegment(Long chatRoomId, Consumer<MessageDTO[]> action) {
+        for (MessageArchiveSegment segment : segmentRepository.findByChatRoomIdInOrder(chatRoomId)) {
+            MessageDTO[] cached = segments.getIfPresent(segment.getId());
+            action.accept(cached != null ? cached : read(segment));
+        }
+    }
+
+    /**
+     * Elimina los segmentos de una sala. Los archivos se borran tras el commit.
+     * Debe llamarse dentro de la transacción que elimina la sala.
+     */
+    public void deleteChatRoom(Long chatRoomId) {
+        List<Long> segmentIds = segmentRepository.findByChatRoomIdInOrder(chatRoomId).stream()
+                .map(MessageArchiveSegment::getId)
+                .toList();
+        if (segmentIds.isEmpty()) {
+            return;
+        }
+
+        segmentRepository.deleteByChatRoomId(chatRoomId);
+        Path roomDirectory = roomDirectory(chatRoomId);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                segments.invalidateAll(segmentIds);
+                try {
+                    FileSystemUtils.deleteRecursively(roomDirectory);
+                } catch (IOException e) {
+                    log.warn("No se pudo borrar el archivo de la sala {}: {}", chatRoomId, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Archiva los mensajes más antiguos de la sala enviados antes de {@code cutoff}, hasta un segmento.
+     * <p>
+     * El archivo se escribe y se baja a disco fuera de la transacción, para no frenar al escritor
+     * de la base mientras tanto. La transacción vuelve a leer el lote y solo registra el segmento
+     * y borra los mensajes si no cambiaron desde la primera lectura; si cambiaron (una edición,
+     * un borrado, un mensaje importado) el archivo se descarta y el lote se reintenta en la
+     * próxima pasada. Si algo falla los mensajes quedan en la base.
+     * </p>
+     * @return mensajes archivados
+     */
+    private int archiveSegment(Long chatRoomId, LocalDateTime cutoff) {
+        List<MessageView> views = messageRepository.findArchiveBatch(chatRoomId, cutoff, PageRequest.of(0, segmentSize));
+        if (views.isEmpty() || views.size() < minSegmentSize) {
+            return 0;
+        }
+
+        List<MessageDTO> messages = views.stream().map(messageMapper::toDTO).toList();
+        MessageDTO first = messages.get(0);
+        MessageDTO last = messages.get(messages.size() - 1);
+        String fileName = first.getId() + "-" + last.getId() + SEGMENT_EXTENSION;
+        Path file = roomDirectory(chatRoomId).resolve(fileName);
+
+        write(file, messages);
+
+        Boolean registered;
+        try {
+            registered = transactionTemplate.execute(status -> {
+                List<MessageView> current = messageRepository.findArchiveBatch(
+                        chatRoomId, cutoff, PageRequest.of(0, segmentSize));
+                if (!sameMessages(views, current)) {
+                    return false;
+                }
+
+                segmentRepository.save(MessageArchiveSegment.builder()
+                        .chatRoomId(chatRoomId)
+                        .fileName(fileName)
+                        .firstSentAt(first.getSentAt())
+                        .firstId(first.getId())
+                        .lastSentAt(last.getSentAt())
+                        .lastId(last.getId())
+                        .messageCount(messages.size())
+                        .createdAt(LocalDateTime.now())
+                        .build());
+                messageRepository.deleteByIdIn(messages.stream().map(MessageDTO::getId).toList());
+                return true;
+            });
+        } catch (RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+
+        if (!Boolean.TRUE.equals(registered)) {
+            deleteQuietly(file);
+            log.debug("Sala {}: los mensajes cambiaron mientras se archivaban, se reintenta en la próxima pasada",
+                    chatRoomId);
+            return 0;
+        }
+
+        log.debug("Sala {}: {} mensajes archivados", chatRoomId, messages.size());
+        return messages.size();
+    }
+
+    /**
+     * Compara dos lecturas del mismo lote: mismos mensajes, en el mismo orden y sin ediciones.
+     */
+    private static boolean sameMessages(List<MessageView> read, List<MessageView> current) {
+        if (read.size() != current.size()) {
+            return false;
+        }
+        for (int i = 0; i < read.size(); i++) {
+            MessageView before = read.get(i);
+            MessageView now = current.get(i);
+            if (!before.id().equals(now.id()) || !Objects.equals(before.content(), now.content())
+                    || !Objects.equals(before.editedAt(), now.editedAt())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Borra los archivos de las salas de este nodo que no corresponden a ningún segmento registrado.
+     */
+    private void deleteOrphanFiles() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        Instant olderThan = Instant.now().minus(ORPHAN_MIN_AGE);
+        try (DirectoryStream<Path> rooms = Files.newDirectoryStream(directory, ROOM_DIRECTORY_PREFIX + "*")) {
+            for (Path roomDirectory : rooms) {
+                Long chatRoomId = chatRoomId(roomDirectory);
+                if (chatRoomId == null || (clusterService.isEnabled() && !clusterService.isOwner(chatRoomId))) {
+                    continue;
+                }
+
+                Set<String> registered = segmentRepository.findByChatRoomIdInOrder(chatRoomId).stream()
+                        .map(MessageArchiveSegment::getFileName)
+                        .collect(Collectors.toSet());
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(roomDirectory)) {
+                    for (Path file : files) {
+                        String name = file.getFileName().toString();
+                        boolean segmentFile = name.endsWith(SEGMENT_EXTENSION) || name.endsWith(TEMPORARY_EXTENSION);
+                        if (segmentFile && !registered.contains(name)
+                                && Files.getLastModifiedTime(file).toInstant().isBefore(olderThan)) {
+                            log.info("Borrando archivo sin segmento registrado: {}", file);
+                            deleteQuietly(file);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("No se pudieron revisar los archivos del archivo de mensajes: {}", e.getMessage());
+        }
+    }
+
+    private static Long chatRoomId(Path roomDirectory) {
+        try {
+            return Long.parseLong(roomDirectory.getFileName().toString().substring(ROOM_DIRECTORY_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("No se pudo borrar {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Escribe un segmento en un archivo temporal, lo baja a disco y lo renombra.
+     */
+    private void write(Path file, List<MessageDTO> messages) {
+        Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_EXTENSION);
+        try {
+            Files.createDirectories(file.getParent());
+
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary));
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                for (MessageDTO message : messages) {
+                    generator.writeObject(message);
+                    generator.writeRaw('\n');
+                }
+            }
+
+            // Los mensajes se borran de la base: el archivo tiene que estar en disco antes de registrarlo
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Lee un segmento completo.
+     * @throws CarrotException si el archivo falta o está dañado: el historial y la exportación
+     *         fallan en vez de devolverse con un hueco, y el error no queda en la caché de segmentos
+     */
+    private MessageDTO[] read(MessageArchiveSegment segment) {
+        Path file = roomDirectory(segment.getChatRoomId()).resolve(segment.getFileName());
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file));
+             MappingIterator<MessageDTO> iterator = objectMapper.readerFor(MessageDTO.class).readValues(in)) {
+            return iterator.readAll().toArray(MessageDTO[]::new);
+        } catch (IOException e) {
+            log.error("No se pudo leer el segmento {} de la sala {}: {}",
+                    segment.getFileName(), segment.getChatRoomId(), e.getMessage());
+            throw new CarrotException("No se pudieron leer los mensajes archivados de la sala "
+                    + segment.getChatRoomId(), e);
+        }
+    }
+
+    private Path roomDirectory(Long chatRoomId) {
+        return directory.resolve(ROOM_DIRECTORY_PREFIX + chatRoomId);
+    }
+
+    /**
+     * Copia un mensaje con el remitente tomado de la caché de usuarios.
+     */
+    private MessageDTO withCurrentSender(MessageDTO message, Map<Long, UserDTO> senders) {
+        UserDTO sender = message.getSender();
+        if (sender != null) {
+            sender = senders.computeIfAbsent(sender.getId(), id -> userCache.getById(id)
+                    .map(userMapper::toDTO)
+                    .orElse(message.getSender()));
+        }
+        return new MessageDTO(message.getId(), message.getContent(), message.getType(),
+                message.getSentAt(), message.getEditedAt(), message.getIsEdited(), sender,
+                message.getChatRoomId());
+    }
+
+    private static int compare(MessageDTO message, MessageCursor position) {
+        int bySentAt = message.getSentAt().compareTo(position.getSentAt());
+        return bySentAt != 0 ? bySentAt : Long.compare(message.getId(), position.getId());
+    }
+}
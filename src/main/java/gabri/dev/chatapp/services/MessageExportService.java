@@ -0,0 +1,123 @@
+package gabri.dev.chatapp.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.mappers.MessageMapper;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import gabri.dev.chatapp.repositories.projections.MessageView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Servicio para exportar el historial completo de una sala como NDJSON (un mensaje JSON por línea).
+ * <p>
+ * Los mensajes se leen en lotes de {@code app.export.batch-size} con un cursor {@code (sentAt, id)},
+ * cada uno en su propia transacción de solo lectura, y se escriben a la respuesta a medida que llegan.
+ * La memoria usada no depende del tamaño de la sala y la base nunca queda tomada por una lectura
+ * larga: entre lote y lote los escritores pueden confirmar sus transacciones.
+ * </p>
+ * <p>
+ * Primero se escriben los mensajes archivados, segmento por segmento, y después los de la base,
+ * así la salida queda en orden cronológico. Si el archivador mueve mensajes mientras se exporta,
+ * esos mensajes pueden faltar en la salida.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageExportService {
+
+    private final MessageRepository messageRepository;
+    private final ChatRoomMembershipService membershipService;
+    private final UserService userService;
+    private final MessageMapper messageMapper;
+    private final ObjectMapper objectMapper;
+    private final MessageArchiveService archive;
+
+    @Value("${app.export.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * Prepara la exportación del historial de una sala.
+     * <p>
+     * La verificación de participante se hace acá, en el hilo del request; el cuerpo devuelto
+     * se escribe después, en el executor asíncrono de MVC.
+     * </p>
+     * @param chatRoomId el ID de la sala
+     * @param gzip si la salida se comprime con gzip
+     * @return el cuerpo de la respuesta
+     */
+    public StreamingResponseBody exportChatRoom(Long chatRoomId, boolean gzip) {
+        User currentUser = userService.getCurrentUser();
+        membershipService.verifyParticipant(chatRoomId, currentUser);
+
+        log.info("Usuario {} exportando historial de sala {}", currentUser.getUsername(), chatRoomId);
+
+        return outputStream -> {
+            OutputStream out = gzip ? new GZIPOutputStream(outputStream) : outputStream;
+            long exported = writeMessages(chatRoomId, out);
+            log.info("Exportación de sala {} terminada: {} mensajes", chatRoomId, exported);
+        };
+    }
+
+    /**
+     * Escribe todos los mensajes de la sala, archivados y en la base, lote por lote, y cierra la salida.
+     * @return cantidad de mensajes escritos
+     */
+    private long writeMessages(Long chatRoomId, OutputStream out) throws IOException {
+        Pageable batch = PageRequest.of(0, batchSize);
+        long exported = 0;
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // Cada mensaje termina con su propio salto de línea
+            generator.setRootValueSeparator(null);
+
+            long[] archived = {0};
+            archive.forEachSegment(chatRoomId, segment -> {
+                try {
+                    for (MessageDTO message : segment) {
+                        generator.writeObject(message);
+                        generator.writeRaw('\n');
+                    }
+                    generator.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                archived[0] += segment.length;
+            });
+            exported += archived[0];
+
+            List<MessageView> messages = messageRepository.findExportFirstBatch(chatRoomId, batch);
+            while (!messages.isEmpty()) {
+                for (MessageView message : messages) {
+                    generator.writeObject(messageMapper.toDTO(message));
+                    generator.writeRaw('\n');
+                }
+                generator.flush();
+                exported += messages.size();
+
+                if (messages.size() < batchSize) {
+                    break;
+                }
+
+                MessageView last = messages.get(messages.size() - 1);
+                messages = messageRepository.findExportBatchAfter(chatRoomId, last.sentAt(), last.id(), batch);
+            }
+        }
+
+        return exported;
+    }
+}
@@ -0,0 +1,355 @@
+package gabri.dev.chatapp.services;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.MessageImportResultDTO;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.exceptions.UnauthorizedException;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import gabri.dev.chatapp.repositories.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Servicio para importar mensajes en bloque desde NDJSON, en el mismo formato que la exportación.
+ * <p>
+ * Los remitentes se resuelven por username y las salas por ID, una sola vez cada uno, en mapas
+ * en memoria que duran lo que dura la importación. Los mensajes se insertan con lotes JDBC de
+ * {@code app.import.batch-size} filas, un lote por transacción. Los triggers de {@code messages}
+ * mantienen el índice de búsqueda dentro de esa misma transacción.
+ * </p>
+ * <p>
+ * Al terminar se recalculan el contador y el último mensaje de cada sala afectada, y se avanzan
+ * los cursores de lectura de quienes estaban al día: los mensajes importados reciben IDs nuevos
+ * y, sin esto, aparecerían como no leídos.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageImportService {
+
+    private static final String INSERT_MESSAGE = "INSERT INTO messages " +
+            "(content, type, sent_at, edited_at, is_edited, sender_id, chat_room_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MessageRepository messageRepository;
+    private final ChatRoomRepository chatRoomRepository;
+    private final UserRepository userRepository;
+    private final ChatRoomService chatRoomService;
+    private final ChatRoomMembershipService membershipService;
+    private final ReadStateService readStateService;
+    private final RecentMessageCache recentMessageCache;
+    private final UserService userService;
+
+    @Value("${app.import.batch-size:5000}")
+    private int batchSize;
+
+    /**
+     * Importa mensajes a una sala desde el request.
+     * Todas las líneas van a esa sala, sin importar su {@code chatRoomId}.
+     * En salas grupales solo puede importar el creador; en privadas, cualquier participante.
+     * @param chatRoomId el ID de la sala destino
+     * @param input el cuerpo del request, en NDJSON
+     * @param gzip si el cuerpo viene comprimido con gzip
+     * @return el resultado de la importación
+     */
+    public MessageImportResultDTO importToChatRoom(Long chatRoomId, InputStream input, boolean gzip) throws IOException {
+        User currentUser = userService.getCurrentUser();
+        membershipService.verifyParticipant(chatRoomId, currentUser);
+
+        ChatRoom chatRoom = chatRoomService.getChatRoomEntityById(chatRoomId);
+        if (chatRoom.getType() == ChatRoom.ChatRoomType.GROUP &&
+                !chatRoom.getCreatedBy().getId().equals(currentUser.getId())) {
+            throw new UnauthorizedException("Solo el creador puede importar mensajes a la sala");
+        }
+
+        log.info("Usuario {} importando mensajes a sala {}", currentUser.getUsername(), chatRoom.getName());
+
+        return importMessages(gzip ? new GZIPInputStream(input) : input, chatRoomId);
+    }
+
+    /**
+     * Importa mensajes desde NDJSON.
+     * <p>
+     * Las líneas que no se pueden importar (JSON inválido, sin contenido o fecha, sala inexistente,
+     * remitente desconocido o que no participa de la sala) se omiten y se informan en el resultado.
+     * </p>
+     * @param input el NDJSON, un mensaje por línea
+     * @param targetChatRoomId sala destino de todas las líneas, o null para usar el {@code chatRoomId} de cada una
+     * @return el resultado de la importación
+     */
+    public MessageImportResultDTO importMessages(InputStream input, Long targetChatRoomId) throws IOException {
+        return importMessages(input, targetChatRoomId, 1);
+    }
+
+    /**
+     * Importa mensajes desde NDJSON a partir de una línea, para retomar una importación interrumpida.
+     * <p>
+     * Cada lote se confirma por separado: si un lote falla, los anteriores quedan guardados, se
+     * recalculan los datos derivados de lo importado y se informa en el log la línea desde la que
+     * retomar. Las líneas anteriores a {@code startLine} no se leen como mensajes ni se cuentan.
+     * </p>
+     * @param input el NDJSON, un mensaje por línea
+     * @param targetChatRoomId sala destino de todas las líneas, o null para usar el {@code chatRoomId} de cada una
+     * @param startLine primera línea a importar, desde 1
+     * @return el resultado de la importación
+     */
+    public MessageImportResultDTO importMessages(InputStream input, Long targetChatRoomId, long startLine) throws IOException {
+        ImportRun run = new ImportRun(targetChatRoomId, startLine);
+        ObjectReader reader = objectMapper.readerFor(MessageDTO.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+        BufferedReader lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        List<ImportedMessage> batch = new ArrayList<>(batchSize);
+        long lineNumber = 0;
+        String line;
+
+        try {
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber < startLine || line.isBlank()) {
+                    continue;
+                }
+
+                ImportedMessage message = parseLine(line, lineNumber, reader, run);
+                if (message != null) {
+                    batch.add(message);
+                }
+
+                if (batch.size() >= batchSize) {
+                    insertBatch(batch, run);
+                    batch.clear();
+                    run.committedLine = lineNumber;
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                insertBatch(batch, run);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Importación interrumpida: {} mensajes importados hasta la línea {}. " +
+                    "Para retomarla, importar desde la línea {}", run.imported, run.committedLine, run.committedLine + 1);
+            try {
+                rebuildDerivedData(run);
+            } catch (RuntimeException rebuildError) {
+                e.addSuppressed(rebuildError);
+            }
+            throw e;
+        }
+
+        rebuildDerivedData(run);
+
+        MessageImportResultDTO result = run.toResult();
+        log.info("Importación terminada: {} mensajes importados, {} omitidos en {} ms ({} msg/s)",
+                result.getImported(), result.getSkipped(), result.getElapsedMs(),
+                Math.round(result.getMessagesPerSecond()));
+        return result;
+    }
+
+    /**
+     * Convierte una línea en un mensaje listo para insertar, o lo omite registrando el motivo.
+     */
+    private ImportedMessage parseLine(String line, long lineNumber, ObjectReader reader, ImportRun run) {
+        MessageDTO dto;
+        try {
+            dto = reader.readValue(line);
+        } catch (IOException e) {
+            run.skip(lineNumber, "JSON inválido");
+            return null;
+        }
+
+        if (dto.getContent() == null || dto.getContent().isBlank()) {
+            run.skip(lineNumber, "mensaje sin contenido");
+            return null;
+        }
+        if (dto.getSentAt() == null) {
+            run.skip(lineNumber, "mensaje sin fecha de envío");
+            return null;
+        }
+
+        Long chatRoomId = run.targetChatRoomId != null ? run.targetChatRoomId : dto.getChatRoomId();
+        if (chatRoomId == null || !resolveChatRoom(chatRoomId, run)) {
+            run.skip(lineNumber, "sala inexistente: " + chatRoomId);
+            return null;
+        }
+
+        String username = dto.getSender() != null ? dto.getSender().getUsername() : null;
+        Long senderId = username != null
+                ? run.senderIds.computeIfAbsent(username, name -> userRepository.findIdByUsername(name).orElse(null))
+                : null;
+        if (senderId == null) {
+            run.skip(lineNumber, "remitente desconocido: " + username);
+            return null;
+        }
+        if (!membershipService.isParticipant(chatRoomId, senderId)) {
+            run.skip(lineNumber, "el remitente " + username + " no participa de la sala " + chatRoomId);
+            return null;
+        }
+
+        return new ImportedMessage(
+                dto.getContent(),
+                dto.getType() != null ? dto.getType() : Message.MessageType.CHAT,
+                dto.getSentAt(),
+                dto.getEditedAt(),
+                Boolean.TRUE.equals(dto.getIsEdited()),
+                senderId,
+                chatRoomId
+        );
+    }
+
+    /**
+     * Indica si la sala existe, consultándola solo la primera vez.
+     * También guarda su mayor ID de mensaje antes de importar.
+     */
+    private boolean resolveChatRoom(Long chatRoomId, ImportRun run) {
+        if (!run.chatRooms.containsKey(chatRoomId)) {
+            boolean exists = chatRoomRepository.findActiveById(chatRoomId).isPresent();
+            run.chatRooms.put(chatRoomId, exists);
+            if (exists) {
+                run.previousLastMessageIds.put(chatRoomId, messageRepository.findMaxIdByChatRoomId(chatRoomId));
+            }
+        }
+        return run.chatRooms.get(chatRoomId);
+    }
+
+    /**
+     * Inserta un lote de mensajes en una sola transacción.
+     */
+    private void insertBatch(List<ImportedMessage> batch, ImportRun run) {
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.batchUpdate(INSERT_MESSAGE, batch, batch.size(), (ps, message) -> {
+                    ps.setString(1, message.content());
+                    ps.setString(2, message.type().name());
+                    ps.setTimestamp(3, Timestamp.valueOf(message.sentAt()));
+                    if (message.editedAt() != null) {
+                        ps.setTimestamp(4, Timestamp.valueOf(message.editedAt()));
+                    } else {
+                        ps.setNull(4, Types.TIMESTAMP);
+                    }
+                    ps.setBoolean(5, message.isEdited());
+                    ps.setLong(6, message.senderId());
+                    ps.setLong(7, message.chatRoomId());
+                }));
+
+        run.imported += batch.size();
+        log.info("Importación: {} mensajes importados, {} omitidos ({} msg/s)",
+                run.imported, run.skipped, Math.round(run.messagesPerSecond()));
+    }
+
+    /**
+     * Recalcula contadores, último mensaje y cursores de lectura de las salas afectadas.
+     */
+    private void rebuildDerivedData(ImportRun run) {
+        Set<Long> chatRoomIds = run.previousLastMessageIds.keySet();
+        if (run.imported == 0 || chatRoomIds.isEmpty()) {
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            chatRoomRepository.recalculateMessageStats(chatRoomIds);
+            chatRoomIds.forEach(recentMessageCache::invalidate);
+
+            run.previousLastMessageIds.forEach((chatRoomId, previousMessageId) -> {
+                if (previousMessageId != null) {
+                    readStateService.markAppendedHistoryRead(chatRoomId, previousMessageId,
+                            messageRepository.findMaxIdByChatRoomId(chatRoomId));
+                }
+            });
+        });
+
+        log.info("Datos derivados recalculados para {} salas", chatRoomIds.size());
+    }
+
+    /**
+     * Mensaje validado, con remitente y sala ya resueltos.
+     */
+    private record ImportedMessage(String content,
+                                   Message.MessageType type,
+                                   LocalDateTime sentAt,
+                                   LocalDateTime editedAt,
+                                   boolean isEdited,
+                                   Long senderId,
+                                   Long chatRoomId) {
+    }
+
+    /**
+     * Estado de una importación en curso: mapas de resolución, contadores y errores.
+     */
+    private static class ImportRun {
+
+        private final Long targetChatRoomId;
+        private final long startedAt = System.nanoTime();
+
+        // ID de usuario por username (null si no existe)
+        private final Map<String, Long> senderIds = new HashMap<>();
+
+        // Si la sala existe, por ID
+        private final Map<Long, Boolean> chatRooms = new HashMap<>();
+
+        // Mayor ID de mensaje antes de importar (null si la sala estaba vacía), por sala existente
+        private final Map<Long, Long> previousLastMessageIds = new HashMap<>();
+
+        private final List<String> errors = new ArrayList<>();
+        private long imported;
+        private long skipped;
+
+        // Última línea cuyo lote ya se confirmó
+        private long committedLine;
+
+        private ImportRun(Long targetChatRoomId, long startLine) {
+            this.targetChatRoomId = targetChatRoomId;
+            this.committedLine = startLine - 1;
+        }
+
+        private void skip(long lineNumber, String reason) {
+            skipped++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Línea " + lineNumber + ": " + reason);
+            }
+        }
+
+        private long elapsedMs() {
+            return (System.nanoTime() - startedAt) / 1_000_000;
+        }
+
+        private double messagesPerSecond() {
+            return imported * 1000.0 / Math.max(elapsedMs(), 1);
+        }
+
+        private MessageImportResultDTO toResult() {
+            return MessageImportResultDTO.builder()
+                    .imported(imported)
+                    .skipped(skipped)
+                    .errors(errors)
+                    .elapsedMs(elapsedMs())
+                    .messagesPerSecond(messagesPerSecond())
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.MessageSendDTO;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.exceptions.*;
+import gabri.dev.chatapp.mappers.MessageMapper;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Etapa de ingreso de mensajes con escritura agrupada (group commit).
+ * <p>
+ * Los mensajes recibidos por WebSocket no se guardan cada uno en su propia transacción:
+ * se encolan en una cola acotada y un único hilo escritor los guarda en lotes de hasta
+ * {@code app.ingest.batch-size} mensajes, o los que hayan llegado en {@code app.ingest.max-delay-ms},
+ * en una sola transacción. En SQLite eso es un solo fsync y una sola toma del lock de escritura
+ * por lote en lugar de por mensaje.
+ * </p>
+ * <p>
+ * Cada llamada a {@link #submit} devuelve un {@link CompletableFuture} que se completa recién
+ * después del commit, con el mensaje y su ID definitivo, o con el error de ese mensaje.
+ * Un error de validación de un mensaje no afecta al resto del lote. Si la cola está llena,
+ * el mensaje se rechaza de inmediato con {@link MessageQueueFullException}.
+ * </p>
+ * <p>
+ * Los IDs siguen siendo los que asigna la base al insertar: así se mantienen crecientes en el
+ * orden de commit, que es lo que suponen los cursores de historial y de lectura. Para correlacionar
+ * antes de tener el ID, el cliente usa {@code clientMessageId}.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageIngestService {
+
+    static final int MAX_CONTENT_LENGTH = 5000;
+
+    private final MessageRepository messageRepository;
+    private final ChatRoomRepository chatRoomRepository;
+    private final UserCacheService userCache;
+    private final ChatRoomMembershipService membershipService;
+    private final MessageMapper messageMapper;
+    private final RecentMessageCache recentMessageCache;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.ingest.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.ingest.max-delay-ms:5}")
+    private long maxDelayMs;
+
+    private BlockingQueue<PendingMessage> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    /**
+     * Crea la cola e inicia el hilo escritor.
+     */
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::runWriter, "message-ingest");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Ingreso de mensajes iniciado (lote: {}, espera máxima: {} ms, cola: {})",
+                batchSize, maxDelayMs, queueCapacity);
+    }
+
+    /**
+     * Deja de aceptar mensajes y espera a que se guarden los ya encolados.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Encola un mensaje para guardarlo en el próximo lote.
+     * @param sendDTO el mensaje a enviar
+     * @param username el usuario que lo envía
+     * @return futuro que se completa tras el commit con el mensaje guardado, o con el error
+     */
+    public CompletableFuture<MessageDTO> submit(MessageSendDTO sendDTO, String username) {
+        CompletableFuture<MessageDTO> future = new CompletableFuture<>();
+
+        String content = sendDTO.getContent();
+        if (content == null || content.isBlank() || content.length() > MAX_CONTENT_LENGTH) {
+            future.completeExceptionally(new InvalidOperationException(
+                    "El contenido del mensaje es obligatorio y no puede exceder "
+                            + MAX_CONTENT_LENGTH + " caracteres"));
+            return future;
+        }
+
+        if (!running || !queue.offer(new PendingMessage(sendDTO, username, future))) {
+            future.completeExceptionally(new MessageQueueFullException());
+        }
+
+        return future;
+    }
+
+    /**
+     * Bucle del hilo escritor: toma un lote de la cola y lo guarda.
+     */
+    private void runWriter() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                collectBatch(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Error inesperado guardando lote de mensajes: {}", e.getMessage(), e);
+                batch.forEach(pending -> pending.future.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Completa el lote con lo que ya está en la cola y con lo que llegue dentro de la espera máxima.
+     */
+    private void collectBatch(List<PendingMessage> batch) throws InterruptedException {
+        queue.drainTo(batch, batchSize - batch.size());
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+
+            PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    /**
+     * Guarda un lote en una transacción y, tras el commit, completa los futuros.
+     * Si la transacción del lote falla, se reintenta cada mensaje en su propia transacción
+     * para que el error quede solo en el mensaje que lo produjo.
+     */
+    private void flush(List<PendingMessage> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(batch));
+        } catch (Exception e) {
+            log.warn("Error guardando lote de {} mensajes, se reintenta uno por uno: {}",
+                    batch.size(), e.getMessage());
+
+            for (PendingMessage pending : batch) {
+                pending.reset();
+                try {
+                    transactionTemplate.executeWithoutResult(status -> persist(List.of(pending)));
+                } catch (Exception ex) {
+                    pending.reset();
+                    pending.error = ex;
+                }
+            }
+        }
+
+        for (PendingMessage pending : batch) {
+            if (pending.error != null) {
+                pending.future.completeExceptionally(pending.error);
+            } else {
+                pending.future.complete(pending.result);
+            }
+        }
+
+        log.debug("Lote de {} mensajes guardado", batch.size());
+    }
+
+    /**
+     * Guarda los mensajes de un lote en la transacción actual.
+     * <p>
+     * Los usuarios salen de la caché de usuarios y las salas no se consultan: la pertenencia
+     * se verifica contra el índice en memoria. Los errores de validación se registran
+     * en el mensaje y no se propagan, para no marcar la transacción para rollback. Los datos
+     * desnormalizados de cada sala se actualizan con una sola sentencia por sala.
+     * </p>
+     */
+    private void persist(List<PendingMessage> batch) {
+        Map<String, User> senders = new HashMap<>();
+        Map<Long, ChatRoom> chatRooms = new HashMap<>();
+        Map<Long, List<Message>> savedByRoom = new LinkedHashMap<>();
+
+        for (PendingMessage pending : batch) {
+            try {
+                MessageSendDTO sendDTO = pending.sendDTO;
+
+                User sender = senders.computeIfAbsent(pending.username, username ->
+                        userCache.getByUsername(username)
+                                .orElseThrow(() -> new ResourceNotFoundException("Usuario", "username", username)));
+
+                // Verificar que el usuario sea participante; si lo es, la sala existe
+                // y alcanza con una referencia, sin consultarla
+                membershipService.verifyParticipant(sendDTO.getChatRoomId(), sender);
+                ChatRoom chatRoom = chatRooms.computeIfAbsent(sendDTO.getChatRoomId(),
+                        chatRoomRepository::getReferenceById);
+
+                Message message = Message.builder()
+                        .content(sendDTO.getContent())
+                        .type(sendDTO.getType() != null ? sendDTO.getType() : Message.MessageType.CHAT)
+                        .sender(sender)
+                        .chatRoom(chatRoom)
+                        .isEdited(false)
+                        .build();
+
+                Message savedMessage = messageRepository.save(message);
+                savedByRoom.computeIfAbsent(chatRoom.getId(), id -> new ArrayList<>()).add(savedMessage);
+
+                pending.result = messageMapper.toDTO(savedMessage);
+                recentMessageCache.messageAdded(pending.result);
+            } catch (CarrotException e) {
+                pending.error = e;
+            }
+        }
+
+        savedByRoom.forEach((chatRoomId, messages) -> {
+            Message last = messages.get(messages.size() - 1);
+            chatRoomRepository.registerNewMessages(chatRoomId, messages.size(),
+                    last.getId(), last.getSentAt(), ChatRoom.previewOf(last.getContent()));
+        });
+    }
+
+    /**
+     * Mensaje encolado junto con el futuro de su llamador.
+     */
+    private static class PendingMessage {
+
+        private final MessageSendDTO sendDTO;
+        private final String username;
+        private final CompletableFuture<MessageDTO> future;
+        private MessageDTO result;
+        private Exception error;
+
+        PendingMessage(MessageSendDTO sendDTO, String username, CompletableFuture<MessageDTO> future) {
+            this.sendDTO = sendDTO;
+            this.username = username;
+            this.future = future;
+        }
+
+        void reset() {
+            result = null;
+            error = null;
+        }
+    }
+}
@@ -1,16 +1,22 @@
 package gabri.dev.chatapp.services;
 
+import gabri.dev.chatapp.dtos.MessageCursor;
 import gabri.dev.chatapp.dtos.MessageDTO;
 import gabri.dev.chatapp.dtos.MessageEditDTO;
+import gabri.dev.chatapp.dtos.MessageSearchCursor;
+import gabri.dev.chatapp.dtos.MessageSearchResultDTO;
+import gabri.dev.chatapp.dtos.MessageSearchSliceDTO;
 import gabri.dev.chatapp.dtos.MessageSendDTO;
+import gabri.dev.chatapp.dtos.MessageSliceDTO;
 import gabri.dev.chatapp.entities.ChatRoom;
 import gabri.dev.chatapp.entities.Message;
 import gabri.dev.chatapp.entities.User;
 import gabri.dev.chatapp.exceptions.*;
+import gabri.dev.chatapp.mappers.MessageMapper;
 import gabri.dev.chatapp.repositories.MessageRepository;
+import gabri.dev.chatapp.repositories.projections.MessageView;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -19,7 +25,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -30,10 +36,17 @@ import java.util.stream.Collectors;
 @Slf4j
 public class MessageService {
 
+    private static final int MAX_HISTORY_LIMIT = 100;
+    private static final int MAX_SEARCH_LIMIT = 50;
+    private static final int MAX_SEARCH_TERMS = 8;
+
     private final MessageRepository messageRepository;
     private final ChatRoomService chatRoomService;
+    private final ChatRoomMembershipService membershipService;
     private final UserService userService;
-    private final ModelMapper modelMapper;
+    private final MessageMapper messageMapper;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageArchiveService archive;
 
     /**
      * Envía un mensaje a una sala de chat.
@@ -47,9 +60,7 @@ public class MessageService {
                 sender.getUsername(), chatRoom.getName());
 
         // Verificar que el usuario sea participante
-        if (!chatRoom.getParticipants().contains(sender)) {
-            throw new UserNotParticipantException(sender.getUsername(), chatRoom.getName());
-        }
+        membershipService.verifyParticipant(chatRoom.getId(), sender);
 
         // Crear mensaje
         Message message = Message.builder()
@@ -61,9 +72,10 @@ public class MessageService {
                 .build();
 
         Message savedMessage = messageRepository.save(message);
+        chatRoomService.registerNewMessage(savedMessage);
         log.info("Mensaje enviado con ID: {}", savedMessage.getId());
 
-        return mapToMessageDTO(savedMessage);
+        return messageMapper.toDTO(savedMessage);
     }
 
     /**
@@ -71,75 +83,93 @@ public class MessageService {
      */
     @Transactional(readOnly = true)
     public Page<MessageDTO> getMessagesByChatRoom(Long chatRoomId, int page, int size) {
-        ChatRoom chatRoom = chatRoomService.getChatRoomEntityById(chatRoomId);
         User currentUser = userService.getCurrentUser();
 
         // Verificar que el usuario sea participante
-        if (!chatRoom.getParticipants().contains(currentUser)) {
-            throw new UserNotParticipantException(currentUser.getUsername(), chatRoom.getName());
-        }
+        membershipService.verifyParticipant(chatRoomId, currentUser);
 
         Pageable pageable = PageRequest.of(page, size, Sort.by("sentAt").descending());
-        Page<Message> messages = messageRepository.findByChatRoomId(chatRoomId, pageable);
+        Page<MessageView> messages = messageRepository.findByChatRoomId(chatRoomId, pageable);
 
-        return messages.map(this::mapToMessageDTO);
+        return messages.map(messageMapper::toDTO);
     }
 
     /**
-     * Obtiene los últimos N mensajes de una sala.
+     * Obtiene el historial de una sala paginado por cursor (keyset).
+     * <p>
+     * A diferencia de {@link #getMessagesByChatRoom}, no usa OFFSET ni ejecuta COUNT,
+     * por lo que la latencia se mantiene constante sin importar la profundidad del scroll.
+     * Cuando la página llega a los mensajes archivados, se completa con los de
+     * {@link MessageArchiveService}; el cursor es el mismo en los dos casos.
+     * </p>
      */
     @Transactional(readOnly = true)
-    public List<MessageDTO> getLastMessages(Long chatRoomId, int limit) {
-        ChatRoom chatRoom = chatRoomService.getChatRoomEntityById(chatRoomId);
+    public MessageSliceDTO getMessageHistory(Long chatRoomId, String before, int limit) {
         User currentUser = userService.getCurrentUser();
 
         // Verificar que el usuario sea participante
-        if (!chatRoom.getParticipants().contains(currentUser)) {
-            throw new UserNotParticipantException(currentUser.getUsername(), chatRoom.getName());
+        membershipService.verifyParticipant(chatRoomId, currentUser);
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_LIMIT));
+        // Se pide una fila extra para saber si hay más sin hacer COUNT
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+
+        MessageCursor cursor = before == null || before.isBlank() ? null : MessageCursor.decode(before);
+        List<MessageView> views = cursor == null
+                ? messageRepository.findHistoryFirstPage(chatRoomId, pageable)
+                : messageRepository.findHistoryBefore(chatRoomId, cursor.getSentAt(), cursor.getId(), pageable);
+
+        List<MessageDTO> messages = views.stream()
+                .map(messageMapper::toDTO)
+                .collect(Collectors.toCollection(ArrayList::new));
+
+        // Con la página completa solo hacen falta los archivados posteriores al más antiguo leído,
+        // que normalmente no hay; si no, se completa con los más recientes del archivo
+        MessageCursor floor = null;
+        if (views.size() > pageSize) {
+            MessageView oldest = views.get(views.size() - 1);
+            floor = new MessageCursor(oldest.sentAt(), oldest.id());
+        }
+        List<MessageDTO> archived = archive.findBetween(chatRoomId, cursor, floor, pageSize + 1);
+        if (!archived.isEmpty()) {
+            messages.addAll(archived);
+            messages.sort(Comparator.comparing(MessageDTO::getSentAt)
+                    .thenComparing(MessageDTO::getId)
+                    .reversed());
         }
 
-        Pageable pageable = PageRequest.of(0, limit);
-        List<Message> messages = messageRepository.findLastMessagesByChatRoomId(chatRoomId, pageable);
+        boolean hasMore = messages.size() > pageSize;
+        if (hasMore) {
+            messages = messages.subList(0, pageSize);
+        }
 
-        // Invertir para que el más antiguo esté primero
-        List<Message> reversed = messages.stream()
-                .sorted((m1, m2) -> m1.getSentAt().compareTo(m2.getSentAt()))
-                .collect(Collectors.toList());
+        String nextCursor = null;
+        if (hasMore) {
+            MessageDTO last = messages.get(messages.size() - 1);
+            nextCursor = new MessageCursor(last.getSentAt(), last.getId()).encode();
+        }
 
-        return reversed.stream()
-                .map(this::mapToMessageDTO)
-                .collect(Collectors.toList());
+        return MessageSliceDTO.builder()
+                .messages(messages)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
     }
 
-
     /**
-     * Envía un mensaje a una sala de chat (desde WebSocket, con username explícito).
-     * Usado cuando el SecurityContext no está disponible (contexto WebSocket).
+     * Obtiene los últimos N mensajes de una sala, del más antiguo al más nuevo.
+     * <p>
+     * Sin transacción: en salas con actividad reciente se responde desde
+     * {@link RecentMessageCache} sin consultar la base.
+     * </p>
      */
-    @Transactional
-    public MessageDTO sendMessage(MessageSendDTO sendDTO, String username) {
-        User sender = userService.getUserEntityByUsername(username);
-        ChatRoom chatRoom = chatRoomService.getChatRoomEntityById(sendDTO.getChatRoomId());
-
-        log.info("Usuario {} enviando mensaje a sala {} (via WebSocket)",
-                sender.getUsername(), chatRoom.getName());
-
-        if (!chatRoom.getParticipants().contains(sender)) {
-            throw new UserNotParticipantException(sender.getUsername(), chatRoom.getName());
-        }
-
-        Message message = Message.builder()
-                .content(sendDTO.getContent())
-                .type(sendDTO.getType())
-                .sender(sender)
-                .chatRoom(chatRoom)
-                .isEdited(false)
-                .build();
+    public List<MessageDTO> getLastMessages(Long chatRoomId, int limit) {
+        User currentUser = userService.getCurrentUser();
 
-        Message savedMessage = messageRepository.save(message);
-        log.info("Mensaje enviado con ID: {}", savedMessage.getId());
+        // Verificar que el usuario sea participante
+        membershipService.verifyParticipant(chatRoomId, currentUser);
 
-        return mapToMessageDTO(savedMessage);
+        return recentMessageCache.getLastMessages(chatRoomId, limit);
     }
 
     /**
@@ -147,18 +177,14 @@ public class MessageService {
      */
     @Transactional(readOnly = true)
     public MessageDTO getMessageById(Long id) {
-        Message message = getMessageEntityById(id);
+        MessageView message = messageRepository.findViewById(id)
+                .orElseThrow(() -> new MessageNotFoundException(id));
         User currentUser = userService.getCurrentUser();
 
         // Verificar que el usuario sea participante de la sala
-        if (!message.getChatRoom().getParticipants().contains(currentUser)) {
-            throw new UserNotParticipantException(
-                    currentUser.getUsername(),
-                    message.getChatRoom().getName()
-            );
-        }
+        membershipService.verifyParticipant(message.chatRoomId(), currentUser);
 
-        return mapToMessageDTO(message);
+        return messageMapper.toDTO(message);
     }
 
     /**
@@ -166,10 +192,29 @@ public class MessageService {
      */
     @Transactional
     public MessageDTO editMessage(Long id, MessageEditDTO editDTO) {
-        Message message = getMessageEntityById(id);
-        User currentUser = userService.getCurrentUser();
+        return applyEdit(getMessageEntityById(id), editDTO, userService.getCurrentUser());
+    }
 
-        log.info("Usuario {} editando mensaje {}", currentUser.getUsername(), id);
+    /**
+     * Edita un mensaje de una sala en nombre de un usuario.
+     * <p>
+     * Lo usa el canal WebSocket, donde el usuario sale del token de la sesión y no del
+     * contexto de seguridad y el contenido no pasa por la validación de los DTOs REST.
+     * El mensaje tiene que ser de la sala indicada.
+     * </p>
+     */
+    @Transactional
+    public MessageDTO editMessage(Long chatRoomId, Long id, MessageEditDTO editDTO, User currentUser) {
+        String content = editDTO.getContent();
+        if (content == null || content.isBlank() || content.length() > MessageIngestService.MAX_CONTENT_LENGTH) {
+            throw new InvalidOperationException("El contenido del mensaje es obligatorio y no puede exceder "
+                    + MessageIngestService.MAX_CONTENT_LENGTH + " caracteres");
+        }
+        return applyEdit(getMessageEntityInChatRoom(chatRoomId, id), editDTO, currentUser);
+    }
+
+    private MessageDTO applyEdit(Message message, MessageEditDTO editDTO, User currentUser) {
+        log.info("Usuario {} editando mensaje {}", currentUser.getUsername(), message.getId());
 
         // Verificar que el usuario sea el autor del mensaje
         if (!message.getSender().getId().equals(currentUser.getId())) {
@@ -187,9 +232,10 @@ public class MessageService {
         message.setEditedAt(LocalDateTime.now());
 
         Message updatedMessage = messageRepository.save(message);
+        chatRoomService.registerEditedMessage(updatedMessage);
         log.info("Mensaje editado: {}", updatedMessage.getId());
 
-        return mapToMessageDTO(updatedMessage);
+        return messageMapper.toDTO(updatedMessage);
     }
 
     /**
@@ -197,10 +243,20 @@ public class MessageService {
      */
     @Transactional
     public void deleteMessage(Long id) {
-        Message message = getMessageEntityById(id);
-        User currentUser = userService.getCurrentUser();
+        applyDelete(getMessageEntityById(id), userService.getCurrentUser());
+    }
 
-        log.info("Usuario {} eliminando mensaje {}", currentUser.getUsername(), id);
+    /**
+     * Elimina un mensaje de una sala en nombre de un usuario, desde el canal WebSocket.
+     * El mensaje tiene que ser de la sala indicada.
+     */
+    @Transactional
+    public void deleteMessage(Long chatRoomId, Long id, User currentUser) {
+        applyDelete(getMessageEntityInChatRoom(chatRoomId, id), currentUser);
+    }
+
+    private void applyDelete(Message message, User currentUser) {
+        log.info("Usuario {} eliminando mensaje {}", currentUser.getUsername(), message.getId());
 
         // Verificar que el usuario sea el autor del mensaje
         if (!message.getSender().getId().equals(currentUser.getId())) {
@@ -213,27 +269,135 @@ public class MessageService {
         }
 
         messageRepository.delete(message);
-        log.info("Mensaje eliminado: {}", id);
+        chatRoomService.registerDeletedMessage(message);
+        log.info("Mensaje eliminado: {}", message.getId());
     }
 
     /**
      * Busca mensajes por contenido en una sala.
+     * <p>
+     * Usa el índice de texto completo: coincidencia por prefijo de cada palabra,
+     * resultados ordenados por relevancia y paginados por cursor.
+     * </p>
      */
     @Transactional(readOnly = true)
-    public List<MessageDTO> searchMessages(Long chatRoomId, String query) {
-        ChatRoom chatRoom = chatRoomService.getChatRoomEntityById(chatRoomId);
+    public MessageSearchSliceDTO searchMessages(Long chatRoomId, String query, String cursor, int limit) {
         User currentUser = userService.getCurrentUser();
 
         // Verificar que el usuario sea participante
-        if (!chatRoom.getParticipants().contains(currentUser)) {
-            throw new UserNotParticipantException(currentUser.getUsername(), chatRoom.getName());
+        membershipService.verifyParticipant(chatRoomId, currentUser);
+
+        return search(query, List.of(chatRoomId), cursor, limit);
+    }
+
+    /**
+     * Busca mensajes por contenido en todas las salas donde participa el usuario actual.
+     */
+    @Transactional(readOnly = true)
+    public MessageSearchSliceDTO searchAllMessages(String query, String cursor, int limit) {
+        User currentUser = userService.getCurrentUser();
+        List<Long> chatRoomIds = chatRoomService.getChatRoomIdsByParticipant(currentUser.getId());
+
+        return search(query, chatRoomIds, cursor, limit);
+    }
+
+    /**
+     * Ejecuta una búsqueda en el índice de texto completo restringida a las salas dadas.
+     */
+    private MessageSearchSliceDTO search(String query, Collection<Long> chatRoomIds, String cursor, int limit) {
+        String match = buildMatchExpression(query, chatRoomIds);
+        if (match == null) {
+            return MessageSearchSliceDTO.builder()
+                    .results(new ArrayList<>())
+                    .hasMore(false)
+                    .build();
+        }
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+
+        // Se pide una fila extra para saber si hay más sin hacer COUNT
+        List<Object[]> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = messageRepository.searchFirstPage(match, pageSize + 1);
+        } else {
+            MessageSearchCursor searchCursor = MessageSearchCursor.decode(cursor);
+            rows = messageRepository.searchAfter(
+                    match, searchCursor.getScore(), searchCursor.getId(), pageSize + 1);
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
         }
 
-        List<Message> messages = messageRepository.searchMessagesByContent(chatRoomId, query);
+        List<Long> ids = rows.stream()
+                .map(row -> ((Number) row[0]).longValue())
+                .collect(Collectors.toList());
+
+        Map<Long, String> snippets = new HashMap<>();
+        Map<Long, MessageView> messages = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (Object[] row : messageRepository.findSnippets(match, ids)) {
+                snippets.put(((Number) row[0]).longValue(), (String) row[1]);
+            }
+            for (MessageView message : messageRepository.findViewsByIdIn(ids)) {
+                messages.put(message.id(), message);
+            }
+        }
 
-        return messages.stream()
-                .map(this::mapToMessageDTO)
+        List<MessageSearchResultDTO> results = ids.stream()
+                .filter(messages::containsKey)
+                .map(id -> MessageSearchResultDTO.builder()
+                        .message(messageMapper.toDTO(messages.get(id)))
+                        .snippet(snippets.get(id))
+                        .build())
                 .collect(Collectors.toList());
+
+        String nextCursor = null;
+        if (hasMore) {
+            Object[] last = rows.get(rows.size() - 1);
+            nextCursor = new MessageSearchCursor(
+                    Double.parseDouble((String) last[1]),
+                    ((Number) last[0]).longValue()
+            ).encode();
+        }
+
+        return MessageSearchSliceDTO.builder()
+                .results(results)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * Arma la expresión FTS5 a partir del texto del usuario.
+     * <p>
+     * Cada palabra se busca por prefijo (salvo las de una letra, que se buscan exactas
+     * para no expandir a medio vocabulario) y todas deben aparecer en el contenido.
+     * El filtro de salas usa el token {@code r<id>} de la columna {@code room}.
+     * </p>
+     * @return la expresión, o null si el texto no tiene palabras o no hay salas
+     */
+    private String buildMatchExpression(String query, Collection<Long> chatRoomIds) {
+        if (query == null || chatRoomIds.isEmpty()) {
+            return null;
+        }
+
+        List<String> terms = Arrays.stream(query.split("[^\\p{L}\\p{N}]+"))
+                .filter(term -> !term.isEmpty())
+                .limit(MAX_SEARCH_TERMS)
+                .map(term -> term.length() > 1 ? "\"" + term + "\"*" : "\"" + term + "\"")
+                .collect(Collectors.toList());
+
+        if (terms.isEmpty()) {
+            return null;
+        }
+
+        String rooms = chatRoomIds.stream()
+                .map(id -> "r" + id)
+                .collect(Collectors.joining(" OR "));
+
+        return "content : (" + String.join(" ", terms) + ") AND room : (" + rooms + ")";
     }
 
     /**
@@ -245,11 +409,9 @@ public class MessageService {
         User currentUser = userService.getCurrentUser();
 
         // Verificar que el usuario sea participante
-        if (!chatRoom.getParticipants().contains(currentUser)) {
-            throw new UserNotParticipantException(currentUser.getUsername(), chatRoom.getName());
-        }
+        membershipService.verifyParticipant(chatRoomId, currentUser);
 
-        return messageRepository.countMessagesByChatRoomId(chatRoomId);
+        return chatRoom.getMessageCount();
     }
 
     /**
@@ -260,12 +422,11 @@ public class MessageService {
                 .orElseThrow(() -> new MessageNotFoundException(id));
     }
 
-    /**
-     * Mapea Message a MessageDTO.
-     */
-    private MessageDTO mapToMessageDTO(Message message) {
-        MessageDTO dto = modelMapper.map(message, MessageDTO.class);
-        dto.setChatRoomId(message.getChatRoom().getId());
-        return dto;
+    private Message getMessageEntityInChatRoom(Long chatRoomId, Long id) {
+        Message message = getMessageEntityById(id);
+        if (!message.getChatRoom().getId().equals(chatRoomId)) {
+            throw new MessageNotFoundException(id);
+        }
+        return message;
     }
 }
\ No newline at end of file
@@ -0,0 +1,267 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.dtos.websocket.UserStatusWS;
+import gabri.dev.chatapp.entities.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro en memoria de las sesiones WebSocket de cada usuario.
+ * <p>
+ * Un usuario está conectado mientras tenga al menos una sesión abierta, así que varias
+ * pestañas cuentan como una sola presencia. Al cerrar la última sesión pasa a desconectado
+ * recién después de {@code app.presence.offline-grace-ms}: si vuelve a conectarse antes
+ * (una recarga, un corte breve de red) no hubo cambio.
+ * </p>
+ * <p>
+ * Los cambios no se notifican ni se guardan al instante. Cada {@code app.presence.flush-interval-ms}
+ * se toman los cambios netos, se guardan {@code status} y {@code lastSeenAt} en un solo lote JDBC
+ * y cada usuario conectado recibe en {@code /user/queue/user-status} un único resumen con los
+ * cambios de quienes comparten alguna sala con él. Una ola de reconexiones tras un corte de red
+ * no genera escrituras ni mensajes.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PresenceService {
+
+    private static final String UPDATE_STATUS = "UPDATE users SET status = ?, last_seen_at = ? WHERE id = ?";
+
+    private final ChatRoomMembershipService membershipService;
+    private final UserCacheService userCache;
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.presence.offline-grace-ms:5000}")
+    private long offlineGraceMs;
+
+    /**
+     * Usuario de cada sesión abierta, por ID de sesión.
+     */
+    private final Map<String, Long> sessionUsers = new ConcurrentHashMap<>();
+
+    /**
+     * Presencia de cada usuario conectado o con cambios sin procesar, por ID de usuario.
+     */
+    private final Map<Long, Presence> presences = new ConcurrentHashMap<>();
+
+    /**
+     * Usuarios con cambios sin procesar.
+     */
+    private final Set<Long> pendingUsers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Registra una sesión abierta. Ignora sesiones ya registradas.
+     */
+    public void sessionConnected(String sessionId, Long userId, String username) {
+        if (sessionUsers.putIfAbsent(sessionId, userId) != null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        presences.compute(userId, (id, presence) -> {
+            Presence current = presence != null ? presence : new Presence(username);
+            current.sessions++;
+            current.changedAt = now;
+            return current;
+        });
+        pendingUsers.add(userId);
+    }
+
+    /**
+     * Registra una sesión cerrada. Spring puede avisar más de una vez por sesión: solo cuenta la primera.
+     */
+    public void sessionDisconnected(String sessionId) {
+        Long userId = sessionUsers.remove(sessionId);
+        if (userId == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        presences.computeIfPresent(userId, (id, presence) -> {
+            presence.sessions--;
+            if (presence.sessions == 0) {
+                presence.changedAt = now;
+            }
+            return presence;
+        });
+        pendingUsers.add(userId);
+    }
+
+    /**
+     * Indica si un usuario tiene al menos una sesión abierta.
+     */
+    public boolean isOnline(Long userId) {
+        Presence presence = presences.get(userId);
+        return presence != null && presence.sessions > 0;
+    }
+
+    /**
+     * Devuelve los IDs de los usuarios con al menos una sesión abierta.
+     */
+    public List<Long> getOnlineUserIds() {
+        List<Long> userIds = new ArrayList<>();
+        presences.forEach((userId, presence) -> {
+            if (presence.sessions > 0) {
+                userIds.add(userId);
+            }
+        });
+        return userIds;
+    }
+
+    /**
+     * Procesa los cambios netos: los guarda en lote y envía los resúmenes.
+     * <p>
+     * El estado publicado de cada usuario se actualiza recién después de guardar. Si el lote
+     * falla, los usuarios quedan pendientes sin cambios y se reintentan en el próximo ciclo;
+     * los resúmenes tampoco se envían, así nadie ve un estado que no quedó guardado.
+     * </p>
+     */
+    @Scheduled(fixedDelayString = "${app.presence.flush-interval-ms:1000}")
+    public void flush() {
+        if (pendingUsers.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<UserStatusWS> changes = new ArrayList<>();
+
+        for (Long userId : pendingUsers) {
+            pendingUsers.remove(userId);
+
+            presences.computeIfPresent(userId, (id, presence) -> {
+                boolean online = presence.sessions > 0;
+
+                // Sin sesiones pero dentro del período de gracia: se decide en un próximo ciclo
+                if (!online && now - presence.changedAt < offlineGraceMs) {
+                    pendingUsers.add(id);
+                    return presence;
+                }
+
+                if (online != presence.published) {
+                    changes.add(UserStatusWS.builder()
+                            .userId(id)
+                            .username(presence.username)
+                            .status(online ? User.UserStatus.ONLINE : User.UserStatus.OFFLINE)
+                            .timestamp(toLocalDateTime(presence.changedAt))
+                            .build());
+                    return presence;
+                }
+
+                // Los desconectados ya publicados no se guardan
+                return online ? presence : null;
+            });
+        }
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        if (!saveStatuses(changes)) {
+            changes.forEach(change -> pendingUsers.add(change.getUserId()));
+            return;
+        }
+
+        changes.forEach(this::markPublished);
+        sendDigests(changes);
+        log.debug("Cambios de presencia procesados: {}", changes.size());
+    }
+
+    /**
+     * Guarda el estado y la última conexión de los usuarios que cambiaron, en un solo lote.
+     * @return false si no se pudo guardar
+     */
+    private boolean saveStatuses(List<UserStatusWS> changes) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(UPDATE_STATUS, changes, changes.size(), (ps, change) -> {
+                        ps.setString(1, change.getStatus().name());
+                        ps.setTimestamp(2, Timestamp.valueOf(change.getTimestamp()));
+                        ps.setLong(3, change.getUserId());
+                    }));
+            changes.forEach(change -> userCache.evict(change.getUserId(), change.getUsername()));
+            return true;
+        } catch (Exception e) {
+            log.warn("Error guardando cambios de presencia, se reintentarán: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Registra un cambio ya guardado como publicado. Si el usuario quedó desconectado se deja
+     * de seguir; si volvió a conectarse mientras tanto, ya está pendiente y se publica en el próximo ciclo.
+     */
+    private void markPublished(UserStatusWS change) {
+        boolean online = change.getStatus() == User.UserStatus.ONLINE;
+        presences.computeIfPresent(change.getUserId(), (id, presence) -> {
+            presence.published = online;
+            return online || presence.sessions > 0 ? presence : null;
+        });
+    }
+
+    /**
+     * Envía a cada usuario conectado los cambios de quienes comparten alguna sala con él.
+     */
+    private void sendDigests(List<UserStatusWS> changes) {
+        Map<Long, Map<Long, UserStatusWS>> digests = new HashMap<>();
+
+        for (UserStatusWS change : changes) {
+            for (long chatRoomId : membershipService.getChatRoomIds(change.getUserId())) {
+                for (long recipientId : membershipService.getParticipantIds(chatRoomId)) {
+                    if (recipientId != change.getUserId() && isOnline(recipientId)) {
+                        digests.computeIfAbsent(recipientId, id -> new LinkedHashMap<>())
+                                .put(change.getUserId(), change);
+                    }
+                }
+            }
+        }
+
+        digests.forEach((recipientId, digest) -> {
+            Presence recipient = presences.get(recipientId);
+            if (recipient != null) {
+                messagingTemplate.convertAndSendToUser(recipient.username, "/queue/user-status",
+                        new ArrayList<>(digest.values()));
+            }
+        });
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Presencia de un usuario. Solo se modifica dentro de {@code compute} sobre su clave.
+     */
+    private static class Presence {
+
+        private final String username;
+
+        // Sesiones abiertas
+        private int sessions;
+
+        // Momento del último cambio: primera sesión abierta o última cerrada
+        private long changedAt;
+
+        // Último estado notificado y guardado
+        private boolean published;
+
+        private Presence(String username) {
+            this.username = username;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.repositories.ChatRoomReadStateRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Servicio para los cursores de lectura y el conteo de mensajes no leídos.
+ * <p>
+ * Las marcas de lectura no se escriben al instante: se acumulan en memoria quedándose
+ * con el mayor ID por usuario y sala, y se vuelcan a la base periódicamente en una
+ * sola transacción. Así, un scroll rápido que marca decenas de mensajes termina en
+ * una única escritura.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReadStateService {
+
+    private final ChatRoomReadStateRepository readStateRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Marcas de lectura pendientes de escribir, por usuario y sala.
+     */
+    private final Map<ReadStateKey, Long> pendingReads = new ConcurrentHashMap<>();
+
+    /**
+     * Registra que un usuario leyó una sala hasta un mensaje.
+     * La escritura se difiere hasta el próximo volcado.
+     */
+    public void markRead(Long userId, Long chatRoomId, Long messageId) {
+        pendingReads.merge(new ReadStateKey(userId, chatRoomId), messageId, Math::max);
+    }
+
+    /**
+     * Calcula los mensajes no leídos de un usuario en varias salas.
+     * <p>
+     * Las salas sin mensajes, o cuya marca pendiente ya cubre el último mensaje,
+     * se resuelven sin consultar la base. El resto se cuenta con una única consulta agrupada.
+     * Una marca pendiente que no llega al último mensaje se refleja recién tras el volcado.
+     * </p>
+     * @param userId el ID del usuario
+     * @param chatRooms las salas, con {@code lastMessageId} cargado
+     * @return cantidad de mensajes no leídos por ID de sala
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, Long> getUnreadCounts(Long userId, Collection<ChatRoom> chatRooms) {
+        Map<Long, Long> unreadCounts = new HashMap<>();
+        List<Long> chatRoomIds = new ArrayList<>();
+
+        for (ChatRoom chatRoom : chatRooms) {
+            unreadCounts.put(chatRoom.getId(), 0L);
+
+            if (chatRoom.getLastMessageId() == null) {
+                continue;
+            }
+
+            Long pending = pendingReads.get(new ReadStateKey(userId, chatRoom.getId()));
+            if (pending != null && pending >= chatRoom.getLastMessageId()) {
+                continue;
+            }
+
+            chatRoomIds.add(chatRoom.getId());
+        }
+
+        if (!chatRoomIds.isEmpty()) {
+            for (Object[] row : readStateRepository.countUnreadByChatRoomIds(userId, chatRoomIds)) {
+                unreadCounts.put((Long) row[0], (Long) row[1]);
+            }
+        }
+
+        return unreadCounts;
+    }
+
+    /**
+     * Elimina los cursores de lectura de una sala, incluidos los pendientes.
+     */
+    @Transactional
+    public void deleteChatRoomState(Long chatRoomId) {
+        pendingReads.keySet().removeIf(key -> key.chatRoomId().equals(chatRoomId));
+        readStateRepository.deleteByChatRoomId(chatRoomId);
+    }
+
+    /**
+     * Elimina el cursor de lectura de un usuario en una sala, incluido el pendiente.
+     */
+    @Transactional
+    public void deleteUserState(Long userId, Long chatRoomId) {
+        pendingReads.remove(new ReadStateKey(userId, chatRoomId));
+        readStateRepository.deleteByUserIdAndChatRoomId(userId, chatRoomId);
+    }
+
+    /**
+     * Marca como leídos mensajes agregados a una sala con IDs nuevos pero fechas antiguas,
+     * como los de una importación.
+     * <p>
+     * Solo avanza los cursores de quienes ya habían leído hasta {@code previousMessageId};
+     * el resto conserva sus no leídos. Las marcas pendientes se vuelcan antes para no
+     * dejar afuera a quien leyó en el último intervalo.
+     * </p>
+     * @param chatRoomId el ID de la sala
+     * @param previousMessageId mayor ID de la sala antes de agregar los mensajes
+     * @param messageId mayor ID de la sala después de agregarlos
+     */
+    @Transactional
+    public void markAppendedHistoryRead(Long chatRoomId, Long previousMessageId, Long messageId) {
+        flushPendingReads();
+        int updated = readStateRepository.advanceCaughtUp(chatRoomId, previousMessageId, messageId, LocalDateTime.now());
+        log.debug("Cursores de lectura avanzados en sala {}: {}", chatRoomId, updated);
+    }
+
+    /**
+     * Vuelca las marcas de lectura pendientes a la base en una sola transacción.
+     * Si la escritura falla, las marcas se devuelven a la cola para el próximo intento.
+     */
+    @Scheduled(fixedDelayString = "${app.read-state.flush-interval-ms:1000}")
+    @PreDestroy
+    public void flushPendingReads() {
+        if (pendingReads.isEmpty()) {
+            return;
+        }
+
+        Map<ReadStateKey, Long> batch = new HashMap<>();
+        for (ReadStateKey key : pendingReads.keySet()) {
+            Long messageId = pendingReads.remove(key);
+            if (messageId != null) {
+                batch.put(key, messageId);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach((key, messageId) ->
+                    readStateRepository.upsertLastRead(key.userId(), key.chatRoomId(), messageId, now)));
+            log.debug("Cursores de lectura actualizados: {}", batch.size());
+        } catch (Exception e) {
+            log.warn("Error guardando cursores de lectura, se reintentará: {}", e.getMessage());
+            batch.forEach((key, messageId) -> pendingReads.merge(key, messageId, Math::max));
+        }
+    }
+
+    /**
+     * Clave de un cursor de lectura: usuario y sala.
+     */
+    private record ReadStateKey(Long userId, Long chatRoomId) {
+    }
+}
@@ -0,0 +1,442 @@
+package gabri.dev.chatapp.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gabri.dev.chatapp.cluster.ClusterFrame;
+import gabri.dev.chatapp.cluster.ClusterFrameType;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.dtos.MessageCursor;
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.UserDTO;
+import gabri.dev.chatapp.mappers.MessageMapper;
+import gabri.dev.chatapp.mappers.UserMapper;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import gabri.dev.chatapp.repositories.projections.MessageView;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Últimos mensajes de cada sala, en memoria.
+ * <p>
+ * Cada sala guarda una ventana con sus últimos {@code app.recent-messages.size} mensajes,
+ * ordenados del más antiguo al más nuevo (por fecha de envío y luego por ID), que se carga
+ * de la base en la primera lectura y después se mantiene con cada envío, edición y eliminación
+ * confirmados. Como en el índice de participantes, la ventana no se modifica: cada cambio
+ * arma una nueva dentro de {@code compute}, así que las lecturas no necesitan locks.
+ * </p>
+ * <p>
+ * Las salas que no se leen salen de la caché cuando el total estimado supera
+ * {@code app.recent-messages.max-memory-mb}. El remitente de cada mensaje se completa al leer
+ * desde la caché de usuarios, así que su estado y su perfil no quedan congelados en la ventana.
+ * En un cluster cada cambio se envía a los demás nodos, que lo aplican a su propia caché, y al
+ * resincronizar con el cluster se descartan todas las ventanas.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RecentMessageCache {
+
+    // Estimación del tamaño de un MessageDTO sin contar el texto: objetos, fechas y remitente
+    private static final int MESSAGE_OVERHEAD_BYTES = 400;
+
+    private static final byte ADDED = 0;
+    private static final byte EDITED = 1;
+    private static final byte DELETED = 2;
+    private static final byte INVALIDATED = 3;
+
+    private static final Comparator<MessageDTO> ORDER = Comparator
+            .comparing(MessageDTO::getSentAt)
+            .thenComparing(MessageDTO::getId);
+
+    private final MessageRepository messageRepository;
+    private final MessageMapper messageMapper;
+    private final UserCacheService userCache;
+    private final UserMapper userMapper;
+    private final ClusterService clusterService;
+    private final ObjectMapper objectMapper;
+    private final MessageArchiveService archive;
+
+    @Value("${app.recent-messages.size:50}")
+    private int windowSize;
+
+    @Value("${app.recent-messages.max-memory-mb:64}")
+    private long maxMemoryMb;
+
+    private Cache<Long, Window> windows;
+
+    @PostConstruct
+    public void init() {
+        windows = Caffeine.newBuilder()
+                .maximumWeight(maxMemoryMb * 1024 * 1024)
+                .weigher((Long chatRoomId, Window window) -> window.weight)
+                .build();
+
+        clusterService.addFrameListener(ClusterFrameType.RECENT_MESSAGES, (fromNodeId, body) -> {
+            switch (body.readByte()) {
+                case ADDED -> applyAdded(readMessage(body));
+                case EDITED -> applyEdited(readMessage(body));
+                case DELETED -> applyDeleted(body.readLong(), body.readLong());
+                case INVALIDATED -> windows.invalidate(body.readLong());
+                default -> log.warn("Operación de últimos mensajes desconocida del nodo {}", fromNodeId);
+            }
+        });
+        // Con cambios perdidos durante un corte, las ventanas se vuelven a cargar de la base
+        clusterService.addResyncListener(windows::invalidateAll);
+    }
+
+    /**
+     * Devuelve los últimos mensajes de una sala, del más antiguo al más nuevo.
+     * Si la ventana de la sala está cargada y alcanza, no consulta la base.
+     */
+    public List<MessageDTO> getLastMessages(Long chatRoomId, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        if (limit > windowSize) {
+            return load(chatRoomId, limit);
+        }
+
+        Window cached = windows.getIfPresent(chatRoomId);
+        if (cached != null && cached.loaded && cached.covers(limit)) {
+            return withCurrentSenders(cached.messages, limit);
+        }
+
+        // Se marca la sala como cargándose: los cambios que lleguen mientras se consulta
+        // la base se acumulan en la ventana pendiente y se combinan con lo leído
+        Window pending = windows.asMap().compute(chatRoomId, (id, current) ->
+                current == null || current.loaded ? Window.pending() : current);
+        Object token = pending.token;
+
+        List<MessageDTO> loaded = load(chatRoomId, windowSize);
+        boolean complete = loaded.size() < windowSize;
+
+        Window installed = windows.asMap().computeIfPresent(chatRoomId, (id, current) -> {
+            if (current.loaded || current.token != token) {
+                return current;
+            }
+            // Hubo ediciones o eliminaciones durante la carga: lo leído puede estar viejo
+            return current.stale ? null : current.load(loaded, complete, windowSize);
+        });
+
+        if (installed != null && installed.loaded && installed.covers(limit)) {
+            return withCurrentSenders(installed.messages, limit);
+        }
+        return withCurrentSenders(loaded.toArray(MessageDTO[]::new), limit);
+    }
+
+    /**
+     * Registra un mensaje nuevo, tras el commit de la transacción actual.
+     */
+    public void messageAdded(MessageDTO message) {
+        afterCommit(() -> {
+            applyAdded(message);
+            broadcast(ADDED, message);
+        });
+    }
+
+    /**
+     * Registra la edición de un mensaje, tras el commit de la transacción actual.
+     */
+    public void messageEdited(MessageDTO message) {
+        afterCommit(() -> {
+            applyEdited(message);
+            broadcast(EDITED, message);
+        });
+    }
+
+    /**
+     * Registra la eliminación de un mensaje, tras el commit de la transacción actual.
+     */
+    public void messageDeleted(Long chatRoomId, Long messageId) {
+        afterCommit(() -> {
+            applyDeleted(chatRoomId, messageId);
+            if (clusterService.isEnabled()) {
+                clusterService.broadcast(ClusterFrame.of(ClusterFrameType.RECENT_MESSAGES, body -> {
+                    body.writeByte(DELETED);
+                    body.writeLong(chatRoomId);
+                    body.writeLong(messageId);
+                }));
+            }
+        });
+    }
+
+    /**
+     * Descarta la ventana de una sala tras el commit de la transacción actual,
+     * por ejemplo al importar historial o eliminar la sala.
+     */
+    public void invalidate(Long chatRoomId) {
+        afterCommit(() -> {
+            windows.invalidate(chatRoomId);
+            if (clusterService.isEnabled()) {
+                clusterService.broadcast(ClusterFrame.of(ClusterFrameType.RECENT_MESSAGES, body -> {
+                    body.writeByte(INVALIDATED);
+                    body.writeLong(chatRoomId);
+                }));
+            }
+        });
+    }
+
+    private void applyAdded(MessageDTO message) {
+        MessageDTO normalized = normalize(message);
+        windows.asMap().computeIfPresent(message.getChatRoomId(),
+                (id, window) -> window.add(normalized, windowSize));
+    }
+
+    private void applyEdited(MessageDTO message) {
+        MessageDTO normalized = normalize(message);
+        windows.asMap().computeIfPresent(message.getChatRoomId(),
+                (id, window) -> window.edit(normalized));
+    }
+
+    private void applyDeleted(Long chatRoomId, Long messageId) {
+        windows.asMap().computeIfPresent(chatRoomId, (id, window) -> window.delete(messageId));
+    }
+
+    /**
+     * Lee de la base los últimos mensajes de una sala, del más antiguo al más nuevo.
+     * Si la base tiene menos de {@code limit}, completa con los más recientes del archivo.
+     */
+    private List<MessageDTO> load(Long chatRoomId, int limit) {
+        List<MessageView> views = messageRepository.findLastMessagesByChatRoomId(chatRoomId, PageRequest.of(0, limit));
+
+        List<MessageDTO> messages = new ArrayList<>(views.size());
+        if (views.size() < limit) {
+            MessageCursor oldest = views.isEmpty() ? null
+                    : new MessageCursor(views.get(views.size() - 1).sentAt(), views.get(views.size() - 1).id());
+            List<MessageDTO> archived = archive.findBetween(chatRoomId, oldest, null, limit - views.size());
+            for (int i = archived.size() - 1; i >= 0; i--) {
+                messages.add(archived.get(i));
+            }
+        }
+
+        // La consulta los trae del más nuevo al más antiguo
+        for (int i = views.size() - 1; i >= 0; i--) {
+            messages.add(messageMapper.toDTO(views.get(i)));
+        }
+        return messages;
+    }
+
+    /**
+     * Copia los últimos {@code limit} mensajes con el remitente tomado de la caché de usuarios.
+     * Las copias evitan que quien recibe la lista modifique la ventana.
+     */
+    private List<MessageDTO> withCurrentSenders(MessageDTO[] messages, int limit) {
+        int from = Math.max(0, messages.length - limit);
+        Map<Long, UserDTO> senders = new HashMap<>();
+        List<MessageDTO> result = new ArrayList<>(messages.length - from);
+
+        for (int i = from; i < messages.length; i++) {
+            MessageDTO message = messages[i];
+            UserDTO sender = message.getSender();
+            if (sender != null) {
+                sender = senders.computeIfAbsent(sender.getId(), id -> userCache.getById(id)
+                        .map(userMapper::toDTO)
+                        .orElse(message.getSender()));
+            }
+
+            result.add(new MessageDTO(message.getId(), message.getContent(), message.getType(),
+                    message.getSentAt(), message.getEditedAt(), message.getIsEdited(), sender,
+                    message.getChatRoomId()));
+        }
+        return result;
+    }
+
+    /**
+     * Copia un mensaje recién guardado con las fechas truncadas a milisegundos,
+     * la precisión con la que quedan en la base, para devolver lo mismo que una lectura de la base.
+     */
+    private static MessageDTO normalize(MessageDTO message) {
+        return new MessageDTO(message.getId(), message.getContent(), message.getType(),
+                truncate(message.getSentAt()), truncate(message.getEditedAt()), message.getIsEdited(),
+                message.getSender(), message.getChatRoomId());
+    }
+
+    private static LocalDateTime truncate(LocalDateTime dateTime) {
+        return dateTime != null ? dateTime.truncatedTo(ChronoUnit.MILLIS) : null;
+    }
+
+    private void broadcast(byte operation, MessageDTO message) {
+        if (!clusterService.isEnabled()) {
+            return;
+        }
+
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(message);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        clusterService.broadcast(ClusterFrame.of(ClusterFrameType.RECENT_MESSAGES, body -> {
+            body.writeByte(operation);
+            body.writeInt(json.length);
+            body.write(json);
+        }));
+    }
+
+    private MessageDTO readMessage(DataInput body) throws IOException {
+        byte[] json = new byte[body.readInt()];
+        body.readFully(json);
+        return objectMapper.readValue(json, MessageDTO.class);
+    }
+
+    /**
+     * Ejecuta el cambio tras el commit de la transacción actual, o de inmediato si no hay una.
+     */
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    /**
+     * Ventana de últimos mensajes de una sala. No se modifica: cada cambio devuelve una nueva.
+     * <p>
+     * Mientras se carga de la base está pendiente ({@code loaded = false}): acumula los mensajes
+     * nuevos para combinarlos con lo leído y se marca como vieja si hay ediciones o eliminaciones.
+     * {@code complete} indica que la ventana tiene todos los mensajes de la sala.
+     * </p>
+     */
+    private static final class Window {
+
+        private final MessageDTO[] messages;
+        private final boolean loaded;
+        private final boolean complete;
+        private final boolean stale;
+        private final Object token;
+        private final int weight;
+
+        private Window(MessageDTO[] messages, boolean loaded, boolean complete, boolean stale, Object token) {
+            this.messages = messages;
+            this.loaded = loaded;
+            this.complete = complete;
+            this.stale = stale;
+            this.token = token;
+            this.weight = weigh(messages);
+        }
+
+        static Window pending() {
+            return new Window(new MessageDTO[0], false, false, false, new Object());
+        }
+
+        boolean covers(int limit) {
+            return messages.length >= limit || complete;
+        }
+
+        /**
+         * Combina lo leído de la base con lo acumulado mientras tanto.
+         */
+        Window load(List<MessageDTO> fromDatabase, boolean completeInDatabase, int windowSize) {
+            Map<Long, MessageDTO> byId = new HashMap<>();
+            fromDatabase.forEach(message -> byId.put(message.getId(), message));
+            for (MessageDTO message : messages) {
+                byId.put(message.getId(), message);
+            }
+
+            MessageDTO[] merged = byId.values().toArray(MessageDTO[]::new);
+            Arrays.sort(merged, ORDER);
+            boolean trimmed = merged.length > windowSize;
+            if (trimmed) {
+                merged = Arrays.copyOfRange(merged, merged.length - windowSize, merged.length);
+            }
+            return new Window(merged, true, completeInDatabase && !trimmed, false, token);
+        }
+
+        Window add(MessageDTO message, int windowSize) {
+            int existing = indexOf(message.getId());
+            if (existing >= 0) {
+                return replace(existing, message);
+            }
+
+            // Casi siempre va al final; se busca desde atrás
+            int insertAt = messages.length;
+            while (insertAt > 0 && ORDER.compare(messages[insertAt - 1], message) > 0) {
+                insertAt--;
+            }
+
+            MessageDTO[] updated = new MessageDTO[messages.length + 1];
+            System.arraycopy(messages, 0, updated, 0, insertAt);
+            updated[insertAt] = message;
+            System.arraycopy(messages, insertAt, updated, insertAt + 1, messages.length - insertAt);
+
+            boolean trimmed = loaded && updated.length > windowSize;
+            if (trimmed) {
+                updated = Arrays.copyOfRange(updated, updated.length - windowSize, updated.length);
+            }
+            return new Window(updated, loaded, complete && !trimmed, stale, token);
+        }
+
+        Window edit(MessageDTO message) {
+            if (!loaded) {
+                return markStale();
+            }
+            int existing = indexOf(message.getId());
+            return existing >= 0 ? replace(existing, message) : this;
+        }
+
+        Window delete(Long messageId) {
+            if (!loaded) {
+                return markStale();
+            }
+            int existing = indexOf(messageId);
+            if (existing < 0) {
+                return this;
+            }
+
+            MessageDTO[] updated = new MessageDTO[messages.length - 1];
+            System.arraycopy(messages, 0, updated, 0, existing);
+            System.arraycopy(messages, existing + 1, updated, existing, messages.length - existing - 1);
+            return new Window(updated, true, complete, false, token);
+        }
+
+        private Window replace(int index, MessageDTO message) {
+            MessageDTO[] updated = messages.clone();
+            updated[index] = message;
+            return new Window(updated, loaded, complete, stale, token);
+        }
+
+        private Window markStale() {
+            return new Window(messages, false, false, true, token);
+        }
+
+        private int indexOf(Long messageId) {
+            for (int i = messages.length - 1; i >= 0; i--) {
+                if (messages[i].getId().equals(messageId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int weigh(MessageDTO[] messages) {
+            int bytes = 64;
+            for (MessageDTO message : messages) {
+                String content = message.getContent();
+                bytes += MESSAGE_OVERHEAD_BYTES + (content != null ? 2 * content.length() : 0);
+            }
+            return bytes;
+        }
+    }
+}
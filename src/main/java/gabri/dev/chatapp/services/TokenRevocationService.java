@@ -0,0 +1,102 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.cluster.ClusterFrame;
+import gabri.dev.chatapp.cluster.ClusterFrameType;
+import gabri.dev.chatapp.cluster.ClusterPeerListener;
+import gabri.dev.chatapp.cluster.ClusterService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de tokens JWT revocados antes de su vencimiento (por ejemplo, al cerrar sesión).
+ * <p>
+ * Como la autenticación confía en los claims del token y no consulta la base, esta es
+ * la única forma de invalidar un token vigente. Cada entrada se guarda solo hasta que
+ * el token vence; a partir de ahí lo rechaza la validación de la firma y la entrada se purga.
+ * El registro vive en memoria: se pierde al reiniciar la aplicación. En un cluster cada
+ * revocación se envía a los demás nodos, y al conectar con un nodo se le envía el registro
+ * completo, así recupera las revocaciones que se perdieron mientras no había conexión.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TokenRevocationService implements ClusterPeerListener {
+
+    // Revocaciones por frame al enviar el registro completo a un nodo
+    private static final int SYNC_BATCH_SIZE = 1000;
+
+    private final ClusterService clusterService;
+
+    /**
+     * Vencimiento de cada token revocado, por {@code jti}.
+     */
+    private final Map<String, Instant> revokedTokens = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        clusterService.addFrameListener(ClusterFrameType.TOKEN_REVOKED, (fromNodeId, body) -> {
+            for (int i = body.readInt(); i > 0; i--) {
+                revokedTokens.put(body.readUTF(), Instant.ofEpochMilli(body.readLong()));
+            }
+        });
+        clusterService.addPeerListener(this);
+    }
+
+    /**
+     * Envía el registro completo al nodo que acaba de conectarse.
+     */
+    @Override
+    public void peerUp(String nodeId) {
+        List<Map.Entry<String, Instant>> entries = new ArrayList<>(revokedTokens.entrySet());
+        for (int from = 0; from < entries.size(); from += SYNC_BATCH_SIZE) {
+            List<Map.Entry<String, Instant>> batch = entries.subList(from, Math.min(from + SYNC_BATCH_SIZE, entries.size()));
+            clusterService.send(nodeId, ClusterFrame.of(ClusterFrameType.TOKEN_REVOKED, body -> {
+                body.writeInt(batch.size());
+                for (Map.Entry<String, Instant> entry : batch) {
+                    body.writeUTF(entry.getKey());
+                    body.writeLong(entry.getValue().toEpochMilli());
+                }
+            }));
+        }
+        log.debug("Tokens revocados enviados al nodo {}: {}", nodeId, entries.size());
+    }
+
+    /**
+     * Revoca un token hasta su vencimiento, en este nodo y en el resto del cluster.
+     */
+    public void revoke(String tokenId, Instant expiresAt) {
+        revokedTokens.put(tokenId, expiresAt);
+        clusterService.broadcast(ClusterFrame.of(ClusterFrameType.TOKEN_REVOKED, body -> {
+            body.writeInt(1);
+            body.writeUTF(tokenId);
+            body.writeLong(expiresAt.toEpochMilli());
+        }));
+        log.debug("Token revocado: {}", tokenId);
+    }
+
+    /**
+     * Indica si un token fue revocado.
+     */
+    public boolean isRevoked(String tokenId) {
+        return tokenId != null && revokedTokens.containsKey(tokenId);
+    }
+
+    /**
+     * Quita las entradas de tokens que ya vencieron.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        revokedTokens.values().removeIf(expiresAt -> expiresAt.isBefore(now));
+    }
+}
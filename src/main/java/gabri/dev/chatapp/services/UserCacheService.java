@@ -0,0 +1,239 @@
+package gabri.dev.chatapp.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gabri.dev.chatapp.cluster.ClusterFrame;
+import gabri.dev.chatapp.cluster.ClusterFrameType;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.repositories.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de usuarios por username y por ID.
+ * <p>
+ * Las entradas tienen tamaño máximo ({@code app.user-cache.max-size}) y vencen a los
+ * {@code app.user-cache.ttl-seconds} de cargadas. Se guarda una copia inmutable de cada usuario
+ * ({@link CachedUser}) y cada llamada recibe su propia entidad desacoplada armada desde esa copia:
+ * sirve para leer datos y como referencia en relaciones, y aunque se modifique no afecta a la
+ * caché ni a otros hilos. Quien modifica un usuario lo carga desde el repositorio y después
+ * llama a {@link #evict(User)}, que en un cluster también lo quita de la caché de los demás nodos.
+ * </p>
+ * <p>
+ * Cada eliminación incrementa un contador. Una carga anota el contador antes de consultar la
+ * base y solo guarda su resultado si no hubo eliminaciones mientras tanto; la comprobación y el
+ * guardado se hacen dentro de {@code compute} sobre la entrada, igual que la eliminación. Así una
+ * carga que leyó la fila antes del commit de un cambio no puede volver a cachear la versión anterior.
+ * </p>
+ * <p>
+ * Quien guarda datos de usuarios por su cuenta se registra con {@link #addEvictionListener} y
+ * recibe cada eliminación, local o de otro nodo, para olvidarlos también.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserCacheService {
+
+    private final UserRepository userRepository;
+    private final ClusterService clusterService;
+
+    @Value("${app.user-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${app.user-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private Cache<Long, CachedUser> usersById;
+    private Cache<String, Long> idsByUsername;
+
+    /**
+     * Eliminaciones hechas hasta ahora; las cargas anteriores a la última no se guardan.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        usersById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        idsByUsername = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+
+        clusterService.addFrameListener(ClusterFrameType.USER_EVICTED, (fromNodeId, body) ->
+                invalidate(body.readLong(), body.readUTF()));
+        clusterService.addResyncListener(this::invalidateAll);
+    }
+
+    /**
+     * Registra a quien debe enterarse de los usuarios quitados de la caché.
+     */
+    public void addEvictionListener(EvictionListener listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * Obtiene un usuario por username, desde la caché o desde la base.
+     */
+    public Optional<User> getByUsername(String username) {
+        Long id = idsByUsername.getIfPresent(username);
+        CachedUser cached = id != null ? usersById.getIfPresent(id) : null;
+        if (cached != null && cached.username().equals(username)) {
+            return Optional.of(cached.toEntity());
+        }
+
+        long stamp = evictions.get();
+        Optional<User> loaded = userRepository.findByUsername(username);
+        loaded.ifPresent(user -> put(user, stamp));
+        return loaded;
+    }
+
+    /**
+     * Obtiene un usuario por ID, desde la caché o desde la base.
+     */
+    public Optional<User> getById(Long id) {
+        CachedUser cached = usersById.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(cached.toEntity());
+        }
+
+        long stamp = evictions.get();
+        Optional<User> loaded = userRepository.findById(id);
+        loaded.ifPresent(user -> put(user, stamp));
+        return loaded;
+    }
+
+    /**
+     * Quita un usuario de la caché.
+     * <p>
+     * Se quita de inmediato y, si hay una transacción en curso, otra vez después del commit:
+     * la segunda eliminación descarta las cargas que empezaron antes del commit y todavía
+     * leyeron la versión anterior. A los demás nodos se les avisa recién con el cambio guardado.
+     * </p>
+     */
+    public void evict(User user) {
+        evict(user.getId(), user.getUsername());
+    }
+
+    /**
+     * Quita un usuario de la caché por ID y username, sin necesidad de tener la entidad.
+     * @see #evict(User)
+     */
+    public void evict(Long id, String username) {
+        Runnable clusterEviction = () -> clusterService.broadcast(ClusterFrame.of(ClusterFrameType.USER_EVICTED, body -> {
+            body.writeLong(id);
+            body.writeUTF(username);
+        }));
+        invalidate(id, username);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(id, username);
+                    clusterEviction.run();
+                }
+            });
+        } else {
+            clusterEviction.run();
+        }
+
+        log.debug("Usuario quitado de la caché: {}", username);
+    }
+
+    private void invalidate(Long id, String username) {
+        usersById.asMap().compute(id, (key, current) -> {
+            evictions.incrementAndGet();
+            return null;
+        });
+        idsByUsername.invalidate(username);
+        evictionListeners.forEach(listener -> listener.evicted(id));
+    }
+
+    /**
+     * Vacía la caché. Se usa al resincronizar con el cluster, cuando pueden haberse perdido
+     * avisos de otros nodos; las cargas en curso tampoco se guardan.
+     */
+    public void invalidateAll() {
+        evictions.incrementAndGet();
+        usersById.invalidateAll();
+        idsByUsername.invalidateAll();
+        evictionListeners.forEach(EvictionListener::evictedAll);
+        log.debug("Caché de usuarios vaciada");
+    }
+
+    /**
+     * Guarda un usuario cargado de la base, salvo que haya habido una eliminación desde {@code stamp}.
+     */
+    private void put(User user, long stamp) {
+        CachedUser snapshot = CachedUser.of(user);
+        usersById.asMap().compute(user.getId(), (key, current) ->
+                evictions.get() == stamp ? snapshot : current);
+        idsByUsername.put(user.getUsername(), user.getId());
+    }
+
+    /**
+     * Copia inmutable de las columnas de un usuario.
+     */
+    record CachedUser(Long id, String username, String email, String password, String fullName,
+                      String avatarUrl, User.UserStatus status, Boolean enabled, LocalDateTime createdAt,
+                      LocalDateTime updatedAt, Boolean emailVerified, String verificationToken,
+                      LocalDateTime lastSeenAt) {
+
+        static CachedUser of(User user) {
+            return new CachedUser(user.getId(), user.getUsername(), user.getEmail(), user.getPassword(),
+                    user.getFullName(), user.getAvatarUrl(), user.getStatus(), user.getEnabled(),
+                    user.getCreatedAt(), user.getUpdatedAt(), user.getEmailVerified(),
+                    user.getVerificationToken(), user.getLastSeenAt());
+        }
+
+        /**
+         * Arma una entidad desacoplada nueva; las relaciones quedan vacías.
+         */
+        User toEntity() {
+            return User.builder()
+                    .id(id)
+                    .username(username)
+                    .email(email)
+                    .password(password)
+                    .fullName(fullName)
+                    .avatarUrl(avatarUrl)
+                    .status(status)
+                    .enabled(enabled)
+                    .createdAt(createdAt)
+                    .updatedAt(updatedAt)
+                    .emailVerified(emailVerified)
+                    .verificationToken(verificationToken)
+                    .lastSeenAt(lastSeenAt)
+                    .build();
+        }
+    }
+
+    /**
+     * Recibe los usuarios quitados de la caché: cambiaron, o pueden haber cambiado.
+     */
+    public interface EvictionListener {
+
+        void evicted(Long id);
+
+        void evictedAll();
+    }
+}
@@ -4,8 +4,10 @@ import gabri.dev.chatapp.dtos.*;
 import gabri.dev.chatapp.entities.User;
 import gabri.dev.chatapp.entities.VerificationToken;
 import gabri.dev.chatapp.exceptions.*;
+import gabri.dev.chatapp.mappers.UserMapper;
 import gabri.dev.chatapp.repositories.UserRepository;
 import gabri.dev.chatapp.repositories.VerificationTokenRepository;
+import gabri.dev.chatapp.security.JwtPrincipal;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
@@ -17,26 +19,34 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import java.security.Principal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class UserService {
 
+    /**
+     * Atributo del request donde se guarda el usuario actual ya resuelto.
+     */
+    private static final String CURRENT_USER_ATTRIBUTE = UserService.class.getName() + ".currentUser";
+
     private final UserRepository userRepository;
+    private final UserCacheService userCache;
     private final VerificationTokenRepository verificationTokenRepository;
     private final PasswordEncoder passwordEncoder;
-    private final ModelMapper modelMapper;
+    private final UserMapper userMapper;
     @Qualifier("mergerMapper")
     private final ModelMapper mergerMapper;
     private final JwtService jwtService;
+    private final PresenceService presenceService;
     private final AuthenticationManager authenticationManager;
-    private final CustomUserDetailsService userDetailsService;
     private final EmailService emailService;
 
     /**
@@ -90,7 +100,7 @@ public class UserService {
         log.info("Usuario registrado (pendiente verificación): {}", savedUser.getUsername());
 
         // NO generar token JWT aquí, usuario debe verificar email primero
-        UserDTO userDTO = modelMapper.map(savedUser, UserDTO.class);
+        UserDTO userDTO = userMapper.toDTO(savedUser);
 
         return AuthResponseDTO.builder()
                 .token(null)  // No hay token hasta verificar
@@ -119,6 +129,8 @@ public class UserService {
         user.setEnabled(true);
         userRepository.save(user);
 
+        userCache.evict(user);
+
         // Marcar token como usado
         verificationToken.setUsed(true);
         verificationTokenRepository.save(verificationToken);
@@ -199,14 +211,14 @@ public class UserService {
         user.setStatus(User.UserStatus.ONLINE);
         user.setLastSeenAt(LocalDateTime.now());
         userRepository.save(user);
+        userCache.evict(user);
 
         log.info("Login exitoso: {}", user.getUsername());
 
-        // Generar token
-        var userDetails = userDetailsService.loadUserByUsername(user.getUsername());
-        String token = jwtService.generateToken(userDetails);
+        // Generar token (con el ID del usuario como claim)
+        String token = jwtService.generateToken(user);
 
-        UserDTO userDTO = modelMapper.map(user, UserDTO.class);
+        UserDTO userDTO = userMapper.toDTO(user);
 
         return AuthResponseDTO.builder()
                 .token(token)
@@ -216,41 +228,82 @@ public class UserService {
 
     /**
      * Obtiene el usuario autenticado actualmente.
+     * <p>
+     * Se resuelve una sola vez por request (desde la caché de usuarios) y se reutiliza
+     * en las llamadas siguientes. El usuario devuelto es de solo lectura: para modificarlo
+     * usar {@link #loadCurrentUserForUpdate()}.
+     * </p>
      */
     public User getCurrentUser() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String username = authentication.getName();
+        String username = getCurrentUsername();
+
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null &&
+                requestAttributes.getAttribute(CURRENT_USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                        instanceof User user &&
+                user.getUsername().equals(username)) {
+            return user;
+        }
+
+        User user = getUserEntityByUsername(username);
+        if (requestAttributes != null) {
+            requestAttributes.setAttribute(CURRENT_USER_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        }
+
+        return user;
+    }
+
+    /**
+     * Carga el usuario autenticado desde la base, sin caché, para modificarlo.
+     */
+    private User loadCurrentUserForUpdate() {
+        String username = getCurrentUsername();
 
         return userRepository.findByUsername(username)
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario", "username", username));
     }
 
+    /**
+     * Quita un usuario modificado de la caché y del request actual.
+     */
+    private void evictUser(User user) {
+        userCache.evict(user);
+
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            requestAttributes.removeAttribute(CURRENT_USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    private String getCurrentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication.getName();
+    }
+
     /**
      * Obtiene el DTO del usuario autenticado.
      */
     public UserDTO getCurrentUserDTO() {
         User user = getCurrentUser();
-        return modelMapper.map(user, UserDTO.class);
+        return userMapper.toDTO(user);
     }
 
     /**
      * Obtiene un usuario por ID.
      */
     public UserDTO getUserById(Long id) {
-        User user = userRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Usuario", "id", id));
+        User user = getUserEntityById(id);
 
-        return modelMapper.map(user, UserDTO.class);
+        return userMapper.toDTO(user);
     }
 
     /**
      * Obtiene un usuario por username.
      */
     public UserDTO getUserByUsername(String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("Usuario", "username", username));
+        User user = getUserEntityByUsername(username);
 
-        return modelMapper.map(user, UserDTO.class);
+        return userMapper.toDTO(user);
     }
 
     /**
@@ -258,22 +311,14 @@ public class UserService {
      */
     public List<UserDTO> getAllUsers() {
         User currentUser = getCurrentUser();
-        List<User> users = userRepository.findAllExceptUser(currentUser.getId());
-
-        return users.stream()
-                .map(user -> modelMapper.map(user, UserDTO.class))
-                .collect(Collectors.toList());
+        return userRepository.findAllExceptUser(currentUser.getId());
     }
 
     /**
      * Busca usuarios por username.
      */
     public List<UserDTO> searchUsers(String query) {
-        List<User> users = userRepository.findByUsernameContainingIgnoreCase(query);
-
-        return users.stream()
-                .map(user -> modelMapper.map(user, UserDTO.class))
-                .collect(Collectors.toList());
+        return userRepository.findByUsernameContainingIgnoreCase(query);
     }
 
     /**
@@ -281,7 +326,7 @@ public class UserService {
      */
     @Transactional
     public UserDTO updateCurrentUser(UserUpdateDTO updateDTO) {
-        User user = getCurrentUser();
+        User user = loadCurrentUserForUpdate();
         log.info("Actualizando usuario: {}", user.getUsername());
 
         // Verificar si el email cambió y si ya existe
@@ -295,9 +340,10 @@ public class UserService {
         mergerMapper.map(updateDTO, user);
 
         User updatedUser = userRepository.save(user);
+        evictUser(updatedUser);
         log.info("Usuario actualizado exitosamente: {}", updatedUser.getUsername());
 
-        return modelMapper.map(updatedUser, UserDTO.class);
+        return userMapper.toDTO(updatedUser);
     }
 
     /**
@@ -305,54 +351,76 @@ public class UserService {
      */
     @Transactional
     public UserDTO updateUserStatus(UserStatusDTO statusDTO) {
-        User user = getCurrentUser();
+        User user = loadCurrentUserForUpdate();
         log.info("Actualizando estado de usuario {} a {}", user.getUsername(), statusDTO.getStatus());
 
         user.setStatus(statusDTO.getStatus());
         user.setLastSeenAt(LocalDateTime.now());
 
         User updatedUser = userRepository.save(user);
+        evictUser(updatedUser);
 
-        return modelMapper.map(updatedUser, UserDTO.class);
+        return userMapper.toDTO(updatedUser);
     }
 
     /**
-     * Cierra sesión del usuario actual (cambia estado a OFFLINE).
+     * Cierra sesión del usuario actual (cambia estado a OFFLINE) y revoca su token.
      */
     @Transactional
     public void logout() {
-        User user = getCurrentUser();
+        User user = loadCurrentUserForUpdate();
         log.info("Cerrando sesión de usuario: {}", user.getUsername());
 
         user.setStatus(User.UserStatus.OFFLINE);
         user.setLastSeenAt(LocalDateTime.now());
         userRepository.save(user);
+        evictUser(user);
+
+        if (SecurityContextHolder.getContext().getAuthentication().getPrincipal() instanceof JwtPrincipal principal) {
+            jwtService.revoke(principal);
+        }
     }
 
     /**
-     * Obtiene usuarios online.
+     * Obtiene usuarios online: los que tienen al menos una sesión WebSocket abierta.
+     * Sale del registro de presencia y de la caché de usuarios.
      */
     public List<UserDTO> getOnlineUsers() {
-        List<User> users = userRepository.findByStatus(User.UserStatus.ONLINE);
+        return presenceService.getOnlineUserIds().stream()
+                .map(userCache::getById)
+                .flatMap(Optional::stream)
+                .map(userMapper::toDTO)
+                .toList();
+    }
 
-        return users.stream()
-                .map(user -> modelMapper.map(user, UserDTO.class))
-                .collect(Collectors.toList());
+    /**
+     * Obtiene el ID del usuario de una sesión desde los claims del token, sin consultar la base.
+     * Los tokens emitidos antes de existir el claim {@code uid} se resuelven por username, desde la caché.
+     */
+    public Long resolveUserId(Principal principal) {
+        if (principal instanceof Authentication authentication &&
+                authentication.getPrincipal() instanceof JwtPrincipal jwtPrincipal &&
+                jwtPrincipal.userId() != null) {
+            return jwtPrincipal.userId();
+        }
+        return getUserEntityByUsername(principal.getName()).getId();
     }
 
     /**
      * Obtiene la entidad User por username (uso interno).
+     * Viene de la caché de usuarios: es de solo lectura.
      */
     public User getUserEntityByUsername(String username) {
-        return userRepository.findByUsername(username)
+        return userCache.getByUsername(username)
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario", "username", username));
     }
 
     /**
      * Obtiene la entidad User por ID (uso interno).
+     * Viene de la caché de usuarios: es de solo lectura.
      */
     public User getUserEntityById(Long id) {
-        return userRepository.findById(id)
+        return userCache.getById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario", "id", id));
     }
 }
\ No newline at end of file
@@ -0,0 +1,347 @@
+package gabri.dev.chatapp.websocket;
+
+import gabri.dev.chatapp.cluster.ClusterFrame;
+import gabri.dev.chatapp.cluster.ClusterFrameType;
+import gabri.dev.chatapp.cluster.ClusterPeerListener;
+import gabri.dev.chatapp.cluster.ClusterService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reparte entre los nodos del cluster los mensajes publicados en {@code /topic/...},
+ * para que un envío a {@code /topic/chatroom/{id}} llegue a los suscriptores de cualquier nodo.
+ * <p>
+ * Solo actúa con el cluster activo y el broker simple; con el relay STOMP ya es el broker
+ * externo quien reparte. Cada sala tiene un nodo dueño ({@link ClusterService#ownerOf(long)})
+ * que sabe qué nodos tienen suscriptores en ella: cada nodo le avisa cuando pasa a tener
+ * el primero o deja de tener el último. Un mensaje de una sala va del nodo que lo publica
+ * al dueño y del dueño solo a los nodos con suscriptores, así que un nodo sin suscriptores
+ * en una sala no recibe su tráfico. Los demás {@code /topic/...} se envían a todos los nodos.
+ * </p>
+ * <p>
+ * Con cada alta o baja de nodo cambia el reparto de salas y cada nodo le reenvía a cada
+ * dueño la lista completa de sus salas con suscriptores.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterBrokerBridge implements ChannelInterceptor, ClusterPeerListener {
+
+    private static final String ROOM_TOPIC_PREFIX = "/topic/chatroom/";
+
+    /**
+     * Marca los mensajes que llegaron de otro nodo, para no volver a reenviarlos.
+     */
+    private static final String ORIGIN_HEADER = "clusterOrigin";
+
+    private final ClusterService clusterService;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Value("${app.broker.mode:simple}")
+    private String brokerMode;
+
+    private MessageChannel brokerChannel;
+
+    /**
+     * Sala de cada suscripción a {@code /topic/chatroom/...}, por sesión e ID de suscripción.
+     */
+    private final Map<String, Map<String, Long>> subscriptionsBySession = new ConcurrentHashMap<>();
+
+    /**
+     * Suscripciones de este nodo, por ID de sala.
+     */
+    private final Map<Long, Integer> localSubscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * Otros nodos con suscriptores, por ID de sala. Solo se cargan las salas de las que este nodo es dueño.
+     */
+    private final Map<Long, Set<String>> interestedNodes = new ConcurrentHashMap<>();
+
+    private volatile boolean active;
+
+    @PostConstruct
+    public void init() {
+        if (!clusterService.isEnabled() || !"simple".equalsIgnoreCase(brokerMode)) {
+            return;
+        }
+
+        brokerChannel = messagingTemplate.getMessageChannel();
+        ((AbstractSubscribableChannel) brokerChannel).addInterceptor(this);
+
+        clusterService.addPeerListener(this);
+        clusterService.addFrameListener(ClusterFrameType.PUBLISH, this::onPublish);
+        clusterService.addFrameListener(ClusterFrameType.INTEREST, this::onInterest);
+        clusterService.addFrameListener(ClusterFrameType.INTEREST_SYNC, this::onInterestSync);
+        clusterService.addFrameListener(ClusterFrameType.INTEREST_SYNC_REQUEST,
+                (fromNodeId, body) -> sendInterestSync(fromNodeId));
+        active = true;
+    }
+
+    // --- Mensajes publicados en este nodo ---
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null || accessor.getMessageType() != SimpMessageType.MESSAGE ||
+                !(message.getPayload() instanceof byte[] payload) ||
+                message.getHeaders().containsKey(ORIGIN_HEADER)) {
+            return message;
+        }
+
+        String destination = accessor.getDestination();
+        if (destination == null || !destination.startsWith("/topic/")) {
+            return message;
+        }
+
+        MimeType contentType = accessor.getContentType();
+        Long chatRoomId = chatRoomIdOf(destination);
+
+        if (chatRoomId == null) {
+            clusterService.broadcast(publishFrame(false, destination, contentType, payload));
+            return message;
+        }
+
+        String owner = clusterService.ownerOf(chatRoomId);
+        if (clusterService.getNodeId().equals(owner)) {
+            fanOut(chatRoomId, null, publishFrame(false, destination, contentType, payload));
+        } else if (!clusterService.send(owner, publishFrame(true, destination, contentType, payload))) {
+            // Sin conexión con el dueño: se envía a todos para no perder el mensaje
+            clusterService.broadcast(publishFrame(false, destination, contentType, payload));
+        }
+        return message;
+    }
+
+    // --- Frames de otros nodos ---
+
+    /**
+     * Entrega localmente un mensaje de otro nodo y, si viene para que el dueño lo reparta,
+     * lo reenvía a los nodos con suscriptores en la sala.
+     */
+    private void onPublish(String fromNodeId, DataInput body) throws IOException {
+        boolean relay = body.readBoolean();
+        String destination = body.readUTF();
+        String contentType = body.readUTF();
+        byte[] payload = new byte[body.readInt()];
+        body.readFully(payload);
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        if (!contentType.isEmpty()) {
+            accessor.setContentType(MimeType.valueOf(contentType));
+        }
+        accessor.setHeader(ORIGIN_HEADER, fromNodeId);
+        brokerChannel.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+
+        Long chatRoomId = chatRoomIdOf(destination);
+        if (relay && chatRoomId != null) {
+            fanOut(chatRoomId, fromNodeId, publishFrame(false, destination,
+                    contentType.isEmpty() ? null : MimeType.valueOf(contentType), payload));
+        }
+    }
+
+    private void onInterest(String fromNodeId, DataInput body) throws IOException {
+        long chatRoomId = body.readLong();
+        boolean interested = body.readBoolean();
+        updateInterest(chatRoomId, fromNodeId, interested);
+    }
+
+    /**
+     * Reemplaza las salas de interés de un nodo por la lista recibida.
+     */
+    private void onInterestSync(String fromNodeId, DataInput body) throws IOException {
+        removeInterests(fromNodeId);
+
+        int count = body.readInt();
+        for (int i = 0; i < count; i++) {
+            updateInterest(body.readLong(), fromNodeId, true);
+        }
+        log.debug("Salas de interés del nodo {}: {}", fromNodeId, count);
+    }
+
+    private void fanOut(long chatRoomId, String exceptNodeId, ClusterFrame frame) {
+        Set<String> nodes = interestedNodes.get(chatRoomId);
+        if (nodes == null) {
+            return;
+        }
+        for (String nodeId : nodes) {
+            if (!nodeId.equals(exceptNodeId)) {
+                clusterService.send(nodeId, frame);
+            }
+        }
+    }
+
+    private void updateInterest(long chatRoomId, String nodeId, boolean interested) {
+        interestedNodes.compute(chatRoomId, (id, nodes) -> {
+            if (interested) {
+                Set<String> updated = nodes != null ? nodes : ConcurrentHashMap.newKeySet();
+                updated.add(nodeId);
+                return updated;
+            }
+            if (nodes != null) {
+                nodes.remove(nodeId);
+            }
+            return nodes == null || nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    private void removeInterests(String nodeId) {
+        for (Long chatRoomId : interestedNodes.keySet()) {
+            updateInterest(chatRoomId, nodeId, false);
+        }
+    }
+
+    // --- Altas y bajas de nodos ---
+
+    @Override
+    public void peerUp(String nodeId) {
+        resyncInterests();
+        // El otro nodo pudo haber borrado el interés de este al perder la conexión en su sentido
+        clusterService.send(nodeId, ClusterFrame.of(ClusterFrameType.INTEREST_SYNC_REQUEST, body -> { }));
+    }
+
+    @Override
+    public void peerDown(String nodeId) {
+        removeInterests(nodeId);
+        resyncInterests();
+    }
+
+    private void resyncInterests() {
+        clusterService.getPeerIds().forEach(this::sendInterestSync);
+    }
+
+    /**
+     * Envía a un nodo la lista de salas con suscriptores en este nodo de las que él es dueño.
+     */
+    private void sendInterestSync(String nodeId) {
+        List<Long> chatRoomIds = new ArrayList<>();
+        localSubscriptions.keySet().forEach(chatRoomId -> {
+            if (nodeId.equals(clusterService.ownerOf(chatRoomId))) {
+                chatRoomIds.add(chatRoomId);
+            }
+        });
+
+        clusterService.send(nodeId, ClusterFrame.of(ClusterFrameType.INTEREST_SYNC, body -> {
+            body.writeInt(chatRoomIds.size());
+            for (Long chatRoomId : chatRoomIds) {
+                body.writeLong(chatRoomId);
+            }
+        }));
+    }
+
+    // --- Suscripciones de este nodo ---
+
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Long chatRoomId = chatRoomIdOf(accessor.getDestination());
+        if (!active || chatRoomId == null || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+
+        subscriptionsBySession.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), chatRoomId);
+        subscriptionAdded(chatRoomId);
+    }
+
+    @EventListener
+    public void handleUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (!active || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+
+        Map<String, Long> subscriptions = subscriptionsBySession.get(accessor.getSessionId());
+        Long chatRoomId = subscriptions != null ? subscriptions.remove(accessor.getSubscriptionId()) : null;
+        if (chatRoomId != null) {
+            subscriptionRemoved(chatRoomId);
+        }
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        if (!active) {
+            return;
+        }
+
+        Map<String, Long> subscriptions = subscriptionsBySession.remove(event.getSessionId());
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::subscriptionRemoved);
+        }
+    }
+
+    private void subscriptionAdded(Long chatRoomId) {
+        Integer count = localSubscriptions.merge(chatRoomId, 1, Integer::sum);
+        if (count == 1) {
+            sendInterest(chatRoomId, true);
+        }
+    }
+
+    private void subscriptionRemoved(Long chatRoomId) {
+        Integer count = localSubscriptions.computeIfPresent(chatRoomId, (id, current) -> current > 1 ? current - 1 : null);
+        if (count == null) {
+            sendInterest(chatRoomId, false);
+        }
+    }
+
+    private void sendInterest(long chatRoomId, boolean interested) {
+        String owner = clusterService.ownerOf(chatRoomId);
+        if (!clusterService.getNodeId().equals(owner)) {
+            clusterService.send(owner, ClusterFrame.of(ClusterFrameType.INTEREST, body -> {
+                body.writeLong(chatRoomId);
+                body.writeBoolean(interested);
+            }));
+        }
+    }
+
+    private static ClusterFrame publishFrame(boolean relay, String destination, MimeType contentType, byte[] payload) {
+        return ClusterFrame.of(ClusterFrameType.PUBLISH, body -> {
+            body.writeBoolean(relay);
+            body.writeUTF(destination);
+            body.writeUTF(contentType != null ? contentType.toString() : "");
+            body.writeInt(payload.length);
+            body.write(payload);
+        });
+    }
+
+    /**
+     * Devuelve el ID de sala de {@code /topic/chatroom/{id}} o {@code /topic/chatroom/{id}/...},
+     * o null si el destino no es de una sala.
+     */
+    private static Long chatRoomIdOf(String destination) {
+        if (destination == null || !destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return null;
+        }
+
+        int start = ROOM_TOPIC_PREFIX.length();
+        int end = destination.indexOf('/', start);
+        try {
+            return Long.valueOf(destination.substring(start, end < 0 ? destination.length() : end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
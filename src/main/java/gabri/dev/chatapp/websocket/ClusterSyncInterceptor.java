@@ -0,0 +1,33 @@
+package gabri.dev.chatapp.websocket;
+
+import gabri.dev.chatapp.cluster.ClusterService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rechaza los envíos y suscripciones de las sesiones STOMP mientras el nodo se resincroniza
+ * con el cluster, como el filtro JWT con los requests REST. El cliente recibe un frame ERROR
+ * y, al reconectar, reanuda las salas.
+ */
+@Component
+@RequiredArgsConstructor
+public class ClusterSyncInterceptor implements ChannelInterceptor {
+
+    private final ClusterService clusterService;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if ((type == SimpMessageType.MESSAGE || type == SimpMessageType.SUBSCRIBE) && !clusterService.isSynced()) {
+            throw new MessageDeliveryException(message,
+                    "El servidor se está resincronizando. Por favor, reintenta en unos segundos.");
+        }
+        return message;
+    }
+}
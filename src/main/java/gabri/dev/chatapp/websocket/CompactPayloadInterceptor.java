@@ -0,0 +1,255 @@
+package gabri.dev.chatapp.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gabri.dev.chatapp.dtos.websocket.ChatMessageWS;
+import gabri.dev.chatapp.dtos.websocket.CompactMessageWS;
+import gabri.dev.chatapp.dtos.websocket.CompactReplayWS;
+import gabri.dev.chatapp.dtos.websocket.RoomEventWS;
+import gabri.dev.chatapp.dtos.websocket.RoomReplayWS;
+import gabri.dev.chatapp.services.UserCacheService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Envía en formato binario compacto los mensajes de chat a las sesiones que lo piden.
+ * <p>
+ * Una sesión lo negocia con el header {@code payload-format: cbor} en el frame CONNECT; el resto
+ * sigue recibiendo JSON. Solo se aplica a WebSocket directo: SockJS no transporta frames binarios.
+ * A esas sesiones los mensajes, ediciones y eliminaciones de sala y las respuestas de reanudación
+ * les llegan como {@link CompactMessageWS} y {@link CompactReplayWS} en CBOR, con
+ * {@code content-type: application/octet-stream} y el mismo header {@code payload-format: cbor}.
+ * Los demás destinos (escritura, estados, confirmaciones) siguen en JSON.
+ * </p>
+ * <p>
+ * Un mismo mensaje publicado en una sala llega a cada suscriptor con el mismo payload, así que
+ * se convierte una sola vez: se guarda por identidad del payload, con y sin los datos del
+ * remitente. Cada sesión recuerda a qué remitentes ya conoce; como {@code preservePublishOrder}
+ * entrega los mensajes de cada sesión en orden, el primero que recibe de cada remitente es el
+ * que lleva sus datos. Cuando un usuario cambia y se quita de {@link UserCacheService}, todas las
+ * sesiones lo olvidan: su próximo mensaje vuelve a llevar los datos, ya actualizados.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CompactPayloadInterceptor implements ChannelInterceptor {
+
+    public static final String FORMAT_HEADER = "payload-format";
+    public static final String CBOR_FORMAT = "cbor";
+
+    /**
+     * Atributo de sesión que marca las sesiones SockJS, que no admiten frames binarios.
+     */
+    public static final String SOCKJS_ATTRIBUTE = "sockJs";
+
+    private static final Pattern ROOM_MESSAGE_DESTINATION = Pattern.compile("/topic/chatroom/\\d+(/edited|/deleted)?");
+    private static final String REPLAY_DESTINATION = "/user/queue/replay";
+
+    private final ObjectMapper objectMapper;
+    private final UserCacheService userCache;
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    @Value("${app.websocket.compact-payloads.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Remitentes que ya conoce cada sesión en formato compacto, por ID de sesión.
+     */
+    private final Map<String, Set<Long>> compactSessions = new ConcurrentHashMap<>();
+
+    /**
+     * Mensajes ya convertidos, por identidad del payload JSON. Se descartan cuando nadie más
+     * tiene ese payload.
+     */
+    private final Cache<byte[], Encoded> encodedPayloads = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(4096)
+            .build();
+
+    @PostConstruct
+    public void init() {
+        userCache.addEvictionListener(new UserCacheService.EvictionListener() {
+            @Override
+            public void evicted(Long id) {
+                compactSessions.values().forEach(knownSenders -> knownSenders.remove(id));
+            }
+
+            @Override
+            public void evictedAll() {
+                compactSessions.values().forEach(Set::clear);
+            }
+        });
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled) {
+            return message;
+        }
+
+        // Se mira el tipo y la sesión sin copiar los headers: la mayoría de los frames no se tocan
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null) {
+            return message;
+        }
+
+        if (messageType == SimpMessageType.CONNECT) {
+            negotiate(StompHeaderAccessor.wrap(message));
+            return message;
+        }
+
+        Set<Long> knownSenders = compactSessions.get(sessionId);
+        if (messageType != SimpMessageType.MESSAGE || knownSenders == null ||
+                !(message.getPayload() instanceof byte[] json)) {
+            return message;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        try {
+            String destination = originalDestination(accessor);
+            if (REPLAY_DESTINATION.equals(destination)) {
+                return withPayload(accessor, encodeReplay(json, knownSenders));
+            }
+            if (destination != null && ROOM_MESSAGE_DESTINATION.matcher(destination).matches()) {
+                return withPayload(accessor, encodeMessage(json, knownSenders));
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo convertir a formato compacto el mensaje para la sesión {}: {}",
+                    accessor.getSessionId(), e.getMessage());
+        }
+        return message;
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        compactSessions.remove(event.getSessionId());
+    }
+
+    private void negotiate(StompHeaderAccessor accessor) {
+        String format = accessor.getFirstNativeHeader(FORMAT_HEADER);
+        if (format == null) {
+            return;
+        }
+
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (!CBOR_FORMAT.equalsIgnoreCase(format) || (attributes != null && attributes.containsKey(SOCKJS_ATTRIBUTE))) {
+            log.debug("Formato {} no disponible para la sesión {}, se usa JSON", format, accessor.getSessionId());
+            return;
+        }
+
+        compactSessions.put(accessor.getSessionId(), ConcurrentHashMap.newKeySet());
+    }
+
+    private byte[] encodeMessage(byte[] json, Set<Long> knownSenders) throws IOException {
+        Encoded encoded = encodedPayloads.getIfPresent(json);
+        if (encoded == null) {
+            CompactMessageWS compact = toCompact(objectMapper.readValue(json, ChatMessageWS.class));
+            encoded = new Encoded(compact.getSenderId(),
+                    cborMapper.writeValueAsBytes(compact),
+                    cborMapper.writeValueAsBytes(compact.toBuilder().sender(null).build()));
+            encodedPayloads.put(json, encoded);
+        }
+
+        boolean firstFromSender = encoded.senderId() != null && knownSenders.add(encoded.senderId());
+        return firstFromSender ? encoded.withSender() : encoded.withoutSender();
+    }
+
+    /**
+     * Las respuestas de reanudación van a una sola sesión: se convierten cada vez.
+     */
+    private byte[] encodeReplay(byte[] json, Set<Long> knownSenders) throws IOException {
+        RoomReplayWS replay = objectMapper.readValue(json, RoomReplayWS.class);
+
+        List<CompactReplayWS.Event> events = new ArrayList<>();
+        if (replay.getEvents() != null) {
+            for (RoomEventWS event : replay.getEvents()) {
+                CompactMessageWS compact = toCompact(event.getMessage());
+                if (compact.getSenderId() == null || !knownSenders.add(compact.getSenderId())) {
+                    compact.setSender(null);
+                }
+                events.add(new CompactReplayWS.Event(event.getKind(), compact));
+            }
+        }
+
+        return cborMapper.writeValueAsBytes(new CompactReplayWS(replay.getChatRoomId(), replay.getEpoch(),
+                replay.getLastSeq(), replay.getResync(), events));
+    }
+
+    private static CompactMessageWS toCompact(ChatMessageWS message) {
+        return CompactMessageWS.builder()
+                .id(message.getId())
+                .chatRoomId(message.getChatRoomId())
+                .senderId(message.getSenderId())
+                .content(message.getContent())
+                .type(message.getType() != null ? message.getType().name() : null)
+                .sentAt(toEpochMillis(message.getSentAt()))
+                .isEdited(message.getIsEdited())
+                .clientMessageId(message.getClientMessageId())
+                .seq(message.getSeq())
+                .epoch(message.getEpoch())
+                .editedAt(toEpochMillis(message.getEditedAt()))
+                .sender(message.getSenderId() != null
+                        ? new CompactMessageWS.Sender(message.getSenderId(), message.getSenderUsername(),
+                                message.getSenderAvatarUrl())
+                        : null)
+                .build();
+    }
+
+    private static Long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime != null ? dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : null;
+    }
+
+    /**
+     * Destino al que se suscribió el cliente: para los destinos de usuario, el original
+     * ({@code /user/queue/...}) y no el resuelto para la sesión.
+     */
+    private static String originalDestination(SimpMessageHeaderAccessor accessor) {
+        String original = accessor.getFirstNativeHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION);
+        return original != null ? original : accessor.getDestination();
+    }
+
+    /**
+     * Reemplaza el payload. Los headers quedan como headers de simp, sin comando STOMP:
+     * el handler de STOMP los convierte al armar el frame, como con cualquier otro mensaje.
+     */
+    private static Message<byte[]> withPayload(SimpMessageHeaderAccessor accessor, byte[] payload) {
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(FORMAT_HEADER, CBOR_FORMAT);
+        // Lo recalcula el encoder para el nuevo payload
+        accessor.removeNativeHeader(StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    /**
+     * Mensaje convertido, con y sin los datos del remitente.
+     */
+    private record Encoded(Long senderId, byte[] withSender, byte[] withoutSender) {
+    }
+}
@@ -1,23 +1,29 @@
 package gabri.dev.chatapp.websocket;
 
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.security.JwtPrincipal;
 import gabri.dev.chatapp.services.JwtService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
  * Interceptor para validar el token JWT durante el handshake de WebSocket.
+ * <p>
+ * Mientras el nodo se resincroniza con el cluster, responde 503 sin validar el token.
+ * </p>
  */
 @Component
 @RequiredArgsConstructor
@@ -25,7 +31,7 @@ import java.util.Map;
 public class JwtHandshakeInterceptor implements HandshakeInterceptor {
 
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
+    private final ClusterService clusterService;
 
     @Override
     public boolean beforeHandshake(
@@ -34,6 +40,13 @@ public class JwtHandshakeInterceptor implements HandshakeInterceptor {
             WebSocketHandler wsHandler,
             Map<String, Object> attributes) throws Exception {
 
+        if (!clusterService.isSynced()) {
+            log.info("WebSocket handshake rechazado: el nodo se está resincronizando con el cluster");
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+            return false;
+        }
+
         if (request instanceof ServletServerHttpRequest) {
             ServletServerHttpRequest servletRequest = (ServletServerHttpRequest) request;
 
@@ -49,27 +62,26 @@ public class JwtHandshakeInterceptor implements HandshakeInterceptor {
 
             if (token != null) {
                 try {
-                    String username = jwtService.extractUsername(token);
-
-                    if (username != null) {
-                        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
-                        if (jwtService.isTokenValid(token, userDetails)) {
-                            // Guardar username en los atributos de la sesión WebSocket
-                            attributes.put("username", username);
-
-                            // Establecer autenticación en el contexto
-                            UsernamePasswordAuthenticationToken authentication =
-                                    new UsernamePasswordAuthenticationToken(
-                                            userDetails,
-                                            null,
-                                            userDetails.getAuthorities()
-                                    );
-                            SecurityContextHolder.getContext().setAuthentication(authentication);
-
-                            log.info("WebSocket handshake exitoso para usuario: {}", username);
-                            return true;
-                        }
+                    // Validar el token (firma, vencimiento y revocación) sin consultar la base
+                    JwtPrincipal principal = jwtService.authenticate(token);
+
+                    if (principal != null) {
+                        String username = principal.username();
+
+                        // Guardar username en los atributos de la sesión WebSocket
+                        attributes.put("username", username);
+
+                        // Establecer autenticación en el contexto
+                        UsernamePasswordAuthenticationToken authentication =
+                                new UsernamePasswordAuthenticationToken(
+                                        principal,
+                                        null,
+                                        Collections.emptyList()
+                                );
+                        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+                        log.info("WebSocket handshake exitoso para usuario: {}", username);
+                        return true;
                     }
                 } catch (Exception e) {
                     log.error("Error validando token JWT en WebSocket: {}", e.getMessage());
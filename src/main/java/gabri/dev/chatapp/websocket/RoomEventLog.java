@@ -0,0 +1,211 @@
+package gabri.dev.chatapp.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gabri.dev.chatapp.cluster.ClusterFrame;
+import gabri.dev.chatapp.cluster.ClusterFrameType;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.dtos.websocket.ChatMessageWS;
+import gabri.dev.chatapp.dtos.websocket.RoomEventWS;
+import gabri.dev.chatapp.dtos.websocket.RoomReplayWS;
+import gabri.dev.chatapp.dtos.websocket.RoomResumeWS;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Numeración y registro en memoria de los eventos de cada sala, para que un cliente que
+ * reconecta reciba solo lo que se perdió.
+ * <p>
+ * Cada mensaje, edición y eliminación publicado en una sala lleva un {@code seq} consecutivo
+ * dentro de la sala y el {@code epoch} de esa numeración. Los últimos {@code app.room-replay.size}
+ * eventos quedan en memoria: un cliente que reanuda con el último {@code seq} que vio recibe
+ * los posteriores. Si el hueco ya no está en memoria o la numeración es otra (reinicio del nodo,
+ * sala descartada de la caché, cambio de dueño en el cluster), la respuesta pide resincronizar
+ * y el cliente recarga la sala por REST. Al resincronizar el nodo con el cluster se descartan
+ * todos los registros: durante el corte otro nodo pudo numerar eventos de las mismas salas.
+ * </p>
+ * <p>
+ * El {@code seq} se asigna y el evento se publica bajo el lock de la sala, así los eventos
+ * salen en el orden de su numeración. En un cluster numera el nodo dueño de la sala: los demás
+ * le reenvían los eventos y los pedidos de reanudación, como con los indicadores de escritura.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RoomEventLog {
+
+    private static final RoomEventWS.Kind[] KINDS = RoomEventWS.Kind.values();
+
+    private final WebSocketNotificationService notificationService;
+    private final ClusterService clusterService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.room-replay.size:100}")
+    private int logSize;
+
+    @Value("${app.room-replay.max-rooms:1000}")
+    private long maxRooms;
+
+    private Cache<Long, RoomLog> logs;
+
+    @PostConstruct
+    public void init() {
+        logs = Caffeine.newBuilder()
+                .maximumSize(maxRooms)
+                .build();
+
+        clusterService.addFrameListener(ClusterFrameType.ROOM_EVENT, (fromNodeId, body) -> {
+            long chatRoomId = body.readLong();
+            RoomEventWS.Kind kind = KINDS[body.readByte()];
+            append(chatRoomId, kind, readJson(body, ChatMessageWS.class));
+        });
+        clusterService.addFrameListener(ClusterFrameType.REPLAY_REQUEST, (fromNodeId, body) -> {
+            long chatRoomId = body.readLong();
+            String sessionId = body.readUTF();
+            Long epoch = body.readBoolean() ? body.readLong() : null;
+            Long lastSeq = body.readBoolean() ? body.readLong() : null;
+
+            byte[] json = toJson(replay(chatRoomId, epoch, lastSeq));
+            clusterService.send(fromNodeId, ClusterFrame.of(ClusterFrameType.REPLAY, out -> {
+                out.writeUTF(sessionId);
+                writeJson(out, json);
+            }));
+        });
+        clusterService.addFrameListener(ClusterFrameType.REPLAY, (fromNodeId, body) ->
+                notificationService.sendReplay(body.readUTF(), readJson(body, RoomReplayWS.class)));
+        clusterService.addResyncListener(logs::invalidateAll);
+    }
+
+    /**
+     * Numera un evento y lo publica en la sala.
+     * Si la sala es de otro nodo del cluster, se lo reenvía para que la numeración sea una sola.
+     */
+    public void publish(Long chatRoomId, RoomEventWS.Kind kind, ChatMessageWS message) {
+        if (clusterService.isEnabled() && !clusterService.isOwner(chatRoomId)) {
+            byte[] json = toJson(message);
+            ClusterFrame frame = ClusterFrame.of(ClusterFrameType.ROOM_EVENT, body -> {
+                body.writeLong(chatRoomId);
+                body.writeByte(kind.ordinal());
+                writeJson(body, json);
+            });
+            if (clusterService.send(clusterService.ownerOf(chatRoomId), frame)) {
+                return;
+            }
+        }
+        append(chatRoomId, kind, message);
+    }
+
+    /**
+     * Responde a una sesión que reanuda una sala con los eventos que se perdió.
+     * El participante ya debe estar verificado.
+     */
+    public void resume(Long chatRoomId, String sessionId, RoomResumeWS resume) {
+        Long epoch = resume != null ? resume.getEpoch() : null;
+        Long lastSeq = resume != null ? resume.getLastSeq() : null;
+
+        if (clusterService.isEnabled() && !clusterService.isOwner(chatRoomId)) {
+            ClusterFrame frame = ClusterFrame.of(ClusterFrameType.REPLAY_REQUEST, body -> {
+                body.writeLong(chatRoomId);
+                body.writeUTF(sessionId);
+                writeOptionalLong(body, epoch);
+                writeOptionalLong(body, lastSeq);
+            });
+            if (clusterService.send(clusterService.ownerOf(chatRoomId), frame)) {
+                return;
+            }
+        }
+        notificationService.sendReplay(sessionId, replay(chatRoomId, epoch, lastSeq));
+    }
+
+    private void append(long chatRoomId, RoomEventWS.Kind kind, ChatMessageWS message) {
+        RoomLog log = logs.get(chatRoomId, id -> new RoomLog());
+
+        synchronized (log) {
+            message.setEpoch(log.epoch);
+            message.setSeq(++log.seq);
+
+            log.events.addLast(new RoomEventWS(kind, message));
+            if (log.events.size() > logSize) {
+                log.events.removeFirst();
+            }
+
+            switch (kind) {
+                case MESSAGE -> notificationService.sendMessageToRoom(chatRoomId, message);
+                case EDITED -> notificationService.sendEditedMessage(chatRoomId, message);
+                case DELETED -> notificationService.sendDeletedMessage(chatRoomId, message);
+            }
+        }
+    }
+
+    private RoomReplayWS replay(long chatRoomId, Long epoch, Long lastSeq) {
+        RoomLog log = logs.get(chatRoomId, id -> new RoomLog());
+
+        synchronized (log) {
+            // Primer seq que sigue en memoria; con el registro vacío, el siguiente a asignar
+            long firstSeq = log.events.isEmpty() ? log.seq + 1 : log.events.getFirst().getMessage().getSeq();
+            boolean resync = epoch == null || lastSeq == null || epoch != log.epoch ||
+                    lastSeq > log.seq || lastSeq < firstSeq - 1;
+
+            List<RoomEventWS> events = new ArrayList<>();
+            if (!resync) {
+                for (RoomEventWS event : log.events) {
+                    if (event.getMessage().getSeq() > lastSeq) {
+                        events.add(event);
+                    }
+                }
+            }
+            return new RoomReplayWS(chatRoomId, log.epoch, log.seq, resync, events);
+        }
+    }
+
+    private byte[] toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T readJson(DataInput body, Class<T> type) throws IOException {
+        byte[] json = new byte[body.readInt()];
+        body.readFully(json);
+        return objectMapper.readValue(json, type);
+    }
+
+    private static void writeJson(DataOutput body, byte[] json) throws IOException {
+        body.writeInt(json.length);
+        body.write(json);
+    }
+
+    private static void writeOptionalLong(DataOutput body, Long value) throws IOException {
+        body.writeBoolean(value != null);
+        if (value != null) {
+            body.writeLong(value);
+        }
+    }
+
+    /**
+     * Numeración y últimos eventos de una sala. Solo se accede con el lock del propio objeto.
+     */
+    private static final class RoomLog {
+
+        // Distinto en cada registro nuevo de la sala y sin perder precisión en un número de JavaScript
+        private final long epoch = System.currentTimeMillis() * 1000 + ThreadLocalRandom.current().nextInt(1000);
+        private final ArrayDeque<RoomEventWS> events = new ArrayDeque<>();
+        private long seq;
+    }
+}
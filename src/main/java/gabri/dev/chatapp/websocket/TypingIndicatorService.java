@@ -0,0 +1,147 @@
+package gabri.dev.chatapp.websocket;
+
+import gabri.dev.chatapp.cluster.ClusterFrame;
+import gabri.dev.chatapp.cluster.ClusterFrameType;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.dtos.websocket.TypingStateWS;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estado en memoria de quién está escribiendo en cada sala.
+ * <p>
+ * Los eventos de escritura no se reenvían uno por uno: solo actualizan el estado de la sala.
+ * Cada {@code app.typing.flush-interval-ms} se envía a las salas que cambiaron un único
+ * mensaje con la lista completa de quienes escriben. Un evento de alguien que ya figuraba
+ * escribiendo solo renueva su vencimiento y no genera envío, así que las teclas sucesivas
+ * de un mismo usuario no producen tráfico.
+ * </p>
+ * <p>
+ * Cada usuario deja de figurar al avisar que terminó o, si no avisa (por ejemplo, porque
+ * se desconectó), a los {@code app.typing.ttl-ms} de su último evento.
+ * </p>
+ * <p>
+ * En un cluster el estado de cada sala lo lleva su nodo dueño: los demás le reenvían los
+ * eventos, así la lista enviada incluye a quienes escriben desde cualquier nodo.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TypingIndicatorService {
+
+    private final WebSocketNotificationService notificationService;
+    private final ClusterService clusterService;
+
+    @Value("${app.typing.ttl-ms:5000}")
+    private long ttlMs;
+
+    /**
+     * Estado de cada sala con alguien escribiendo o con cambios sin enviar.
+     */
+    private final Map<Long, RoomTyping> rooms = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        clusterService.addFrameListener(ClusterFrameType.TYPING, (fromNodeId, body) ->
+                apply(body.readLong(), body.readLong(), body.readUTF(), body.readBoolean()));
+    }
+
+    /**
+     * Registra que un usuario empezó, siguió o dejó de escribir en una sala.
+     * Si la sala es de otro nodo del cluster, le reenvía el evento.
+     */
+    public void update(Long chatRoomId, Long userId, String username, boolean isTyping) {
+        if (clusterService.isEnabled() && !clusterService.isOwner(chatRoomId)) {
+            ClusterFrame frame = ClusterFrame.of(ClusterFrameType.TYPING, body -> {
+                body.writeLong(chatRoomId);
+                body.writeLong(userId);
+                body.writeUTF(username);
+                body.writeBoolean(isTyping);
+            });
+            if (clusterService.send(clusterService.ownerOf(chatRoomId), frame)) {
+                return;
+            }
+        }
+        apply(chatRoomId, userId, username, isTyping);
+    }
+
+    private void apply(Long chatRoomId, Long userId, String username, boolean isTyping) {
+        long now = System.currentTimeMillis();
+
+        rooms.compute(chatRoomId, (id, room) -> {
+            if (room == null) {
+                if (!isTyping) {
+                    return null;
+                }
+                room = new RoomTyping();
+            }
+
+            if (isTyping) {
+                Typist previous = room.typists.put(userId, new Typist(username, now + ttlMs));
+                room.changed |= previous == null;
+            } else {
+                room.changed |= room.typists.remove(userId) != null;
+            }
+            return room;
+        });
+    }
+
+    /**
+     * Quita los usuarios vencidos y envía el estado de las salas que cambiaron.
+     */
+    @Scheduled(fixedRateString = "${app.typing.flush-interval-ms:300}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+
+        for (Long chatRoomId : rooms.keySet()) {
+            TypingStateWS[] pending = new TypingStateWS[1];
+
+            rooms.computeIfPresent(chatRoomId, (id, room) -> {
+                room.changed |= room.typists.values().removeIf(typist -> typist.expiresAt() <= now);
+
+                if (room.changed) {
+                    room.changed = false;
+                    pending[0] = room.toState(id);
+                }
+                return room.typists.isEmpty() ? null : room;
+            });
+
+            if (pending[0] != null) {
+                notificationService.sendTypingState(pending[0]);
+            }
+        }
+    }
+
+    /**
+     * Usuarios escribiendo en una sala. Solo se accede dentro de {@code compute} sobre su clave.
+     */
+    private static class RoomTyping {
+
+        // En el orden en que empezaron a escribir
+        private final Map<Long, Typist> typists = new LinkedHashMap<>();
+        private boolean changed;
+
+        private TypingStateWS toState(Long chatRoomId) {
+            List<TypingStateWS.TypingUser> users = new ArrayList<>(typists.size());
+            typists.forEach((userId, typist) -> users.add(new TypingStateWS.TypingUser(userId, typist.username())));
+            return new TypingStateWS(chatRoomId, users);
+        }
+    }
+
+    /**
+     * Usuario escribiendo y momento en que deja de figurar si no renueva.
+     */
+    private record Typist(String username, long expiresAt) {
+    }
+}
@@ -1,10 +1,17 @@
 package gabri.dev.chatapp.websocket;
 
+import gabri.dev.chatapp.dtos.MarkReadDTO;
 import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.MessageEditDTO;
 import gabri.dev.chatapp.dtos.MessageSendDTO;
 import gabri.dev.chatapp.dtos.websocket.ChatMessageWS;
+import gabri.dev.chatapp.dtos.websocket.MessageAckWS;
+import gabri.dev.chatapp.dtos.websocket.RoomEventWS;
+import gabri.dev.chatapp.dtos.websocket.RoomResumeWS;
 import gabri.dev.chatapp.dtos.websocket.TypingIndicatorWS;
-import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.services.ChatRoomMembershipService;
+import gabri.dev.chatapp.services.ChatRoomService;
+import gabri.dev.chatapp.services.MessageIngestService;
 import gabri.dev.chatapp.services.MessageService;
 import gabri.dev.chatapp.services.UserService;
 import lombok.RequiredArgsConstructor;
@@ -12,10 +19,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * Controlador WebSocket para mensajes de chat en tiempo real.
@@ -25,60 +35,84 @@ import java.security.Principal;
 @Slf4j
 public class WebSocketChatController {
 
-    private final SimpMessageSendingOperations messagingTemplate;
+    private final MessageIngestService messageIngestService;
     private final MessageService messageService;
+    private final WebSocketNotificationService notificationService;
+    private final RoomEventLog roomEventLog;
+    private final ChatRoomService chatRoomService;
+    private final ChatRoomMembershipService membershipService;
+    private final TypingIndicatorService typingIndicatorService;
     private final UserService userService;
+    private final ThreadPoolTaskExecutor messageFanOutExecutor;
 
     /**
      * Recibe un mensaje del cliente y lo broadcast a la sala.
      * Ruta: /app/chat.sendMessage/{chatRoomId}
      * Subscripción: /topic/chatroom/{chatRoomId}
+     * Confirmación: /user/queue/message-acks (solo a la sesión que envió el mensaje)
+     * <p>
+     * El mensaje pasa por {@link MessageIngestService}, que lo guarda agrupado con otros
+     * en una sola transacción. El broadcast y la confirmación se envían tras el commit,
+     * ya con el ID definitivo, desde {@code messageFanOutExecutor} y no desde el hilo escritor.
+     * El broadcast pasa por {@link RoomEventLog}, que le asigna el seq de la sala.
+     * </p>
      */
     @MessageMapping("/chat.sendMessage/{chatRoomId}")
     public void sendMessage(
             @DestinationVariable Long chatRoomId,
             @Payload MessageSendDTO messageSendDTO,
+            SimpMessageHeaderAccessor headerAccessor,
             Principal principal) {
 
-        log.info("Mensaje recibido via WebSocket de usuario: {} para sala: {}",
-                principal.getName(), chatRoomId);
+        String username = resolveUsername(principal, headerAccessor);
+        String sessionId = headerAccessor.getSessionId();
 
-        try {
-            // Guardar el mensaje en la base de datos
-            MessageDTO savedMessage = messageService.sendMessage(messageSendDTO, principal.getName());
+        log.debug("Mensaje recibido via WebSocket de usuario: {} para sala: {}", username, chatRoomId);
+
+        // La sala es la del destino, así el broadcast va siempre a la sala donde se guardó
+        messageSendDTO.setChatRoomId(chatRoomId);
+        if (messageSendDTO.getClientMessageId() == null) {
+            messageSendDTO.setClientMessageId(UUID.randomUUID().toString());
+        }
+        String clientMessageId = messageSendDTO.getClientMessageId();
+
+        messageIngestService.submit(messageSendDTO, username).whenCompleteAsync((savedMessage, error) -> {
+            if (error != null) {
+                log.warn("Mensaje de {} rechazado para sala {}: {}", username, chatRoomId, error.getMessage());
+                notificationService.sendMessageAck(sessionId, MessageAckWS.builder()
+                        .clientMessageId(clientMessageId)
+                        .chatRoomId(chatRoomId)
+                        .success(false)
+                        .error(error.getMessage())
+                        .build());
+                return;
+            }
 
             // Crear DTO optimizado para WebSocket
-            User sender = userService.getUserEntityById(savedMessage.getSender().getId());
-
-            ChatMessageWS wsMessage = ChatMessageWS.builder()
-                    .id(savedMessage.getId())
-                    .chatRoomId(savedMessage.getChatRoomId())
-                    .senderId(savedMessage.getSender().getId())
-                    .senderUsername(savedMessage.getSender().getUsername())
-                    .senderAvatarUrl(sender.getAvatarUrl())
-                    .content(savedMessage.getContent())
-                    .type(savedMessage.getType())
-                    .sentAt(savedMessage.getSentAt())
-                    .isEdited(savedMessage.getIsEdited())
-                    .build();
-
-            // Enviar a todos los subscriptores de la sala
-            messagingTemplate.convertAndSend(
-                    "/topic/chatroom/" + chatRoomId,
-                    wsMessage
-            );
-
-            log.info("Mensaje enviado via WebSocket a sala: {}", chatRoomId);
+            ChatMessageWS wsMessage = toChatMessageWS(savedMessage);
+            wsMessage.setClientMessageId(clientMessageId);
 
-        } catch (Exception e) {
-            log.error("Error procesando mensaje via WebSocket: {}", e.getMessage(), e);
-        }
+            // Numerar y enviar a todos los subscriptores de la sala
+            roomEventLog.publish(chatRoomId, RoomEventWS.Kind.MESSAGE, wsMessage);
+
+            notificationService.sendMessageAck(sessionId, MessageAckWS.builder()
+                    .clientMessageId(clientMessageId)
+                    .messageId(savedMessage.getId())
+                    .chatRoomId(chatRoomId)
+                    .success(true)
+                    .build());
+        }, messageFanOutExecutor);
     }
 
     /**
      * Maneja el indicador de "está escribiendo".
      * Ruta: /app/chat.typing/{chatRoomId}
      * Subscripción: /topic/chatroom/{chatRoomId}/typing
+     * <p>
+     * No se reenvía de inmediato: {@link TypingIndicatorService} agrupa los eventos y envía
+     * periódicamente a la sala la lista de quienes escriben. El usuario sale del token
+     * y la membresía del índice en memoria, así que no se consulta la base.
+     * </p>
      */
     @MessageMapping("/chat.typing/{chatRoomId}")
     public void handleTyping(
@@ -86,33 +120,83 @@ public class WebSocketChatController {
             @Payload TypingIndicatorWS typingIndicator,
             Principal principal) {
 
-        log.debug("Indicador de escritura recibido de {} para sala {}",
-                principal.getName(), chatRoomId);
-
         try {
-            User user = userService.getUserEntityById(
-                    userService.getUserByUsername(principal.getName()).getId()
-            );
+            Long userId = userService.resolveUserId(principal);
 
-            typingIndicator.setUserId(user.getId());
-            typingIndicator.setUsername(user.getUsername());
-            typingIndicator.setChatRoomId(chatRoomId);
+            if (!membershipService.isParticipant(chatRoomId, userId)) {
+                log.debug("Indicador de escritura ignorado: {} no participa de la sala {}",
+                        principal.getName(), chatRoomId);
+                return;
+            }
 
-            // Enviar indicador a la sala (excepto al remitente)
-            messagingTemplate.convertAndSend(
-                    "/topic/chatroom/" + chatRoomId + "/typing",
-                    typingIndicator
-            );
+            typingIndicatorService.update(chatRoomId, userId, principal.getName(),
+                    !Boolean.FALSE.equals(typingIndicator.getIsTyping()));
 
         } catch (Exception e) {
             log.error("Error procesando indicador de escritura: {}", e.getMessage());
         }
     }
 
+    /**
+     * Reanuda una sala tras una reconexión.
+     * Ruta: /app/chat.resume/{chatRoomId}
+     * Respuesta: /user/queue/replay (solo a la sesión que la pidió)
+     * <p>
+     * El cliente envía el epoch y el seq del último evento que recibió de la sala y recibe
+     * los posteriores, o la indicación de recargar la sala por REST si el hueco ya no está
+     * en memoria. Conviene pedirla después de suscribirse, para no perder eventos entre ambas.
+     * </p>
+     */
+    @MessageMapping("/chat.resume/{chatRoomId}")
+    public void handleResume(
+            @DestinationVariable Long chatRoomId,
+            @Payload(required = false) RoomResumeWS resume,
+            SimpMessageHeaderAccessor headerAccessor,
+            Principal principal) {
+
+        try {
+            Long userId = userService.resolveUserId(principal);
+
+            if (!membershipService.isParticipant(chatRoomId, userId)) {
+                log.debug("Reanudación ignorada: {} no participa de la sala {}", principal.getName(), chatRoomId);
+                return;
+            }
+
+            roomEventLog.resume(chatRoomId, headerAccessor.getSessionId(), resume);
+
+        } catch (Exception e) {
+            log.error("Error procesando reanudación de sala: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Marca una sala como leída hasta un mensaje.
+     * Ruta: /app/chat.markRead/{chatRoomId}
+     */
+    @MessageMapping("/chat.markRead/{chatRoomId}")
+    public void handleMarkRead(
+            @DestinationVariable Long chatRoomId,
+            @Payload(required = false) MarkReadDTO markReadDTO,
+            Principal principal) {
+
+        log.debug("Marca de lectura recibida de {} para sala {}", principal.getName(), chatRoomId);
+
+        try {
+            chatRoomService.markAsRead(chatRoomId, markReadDTO, principal.getName());
+        } catch (Exception e) {
+            log.error("Error procesando marca de lectura: {}", e.getMessage());
+        }
+    }
+
     /**
      * Maneja la edición de mensajes en tiempo real.
      * Ruta: /app/chat.editMessage/{chatRoomId}
      * Subscripción: /topic/chatroom/{chatRoomId}/edited
+     * <p>
+     * El cliente envía el ID y el contenido nuevo. La edición pasa por {@link MessageService},
+     * que verifica que el usuario sea el autor y que el mensaje sea de la sala; a la sala se
+     * envía el mensaje guardado, nunca lo que mandó el cliente.
+     * </p>
      */
     @MessageMapping("/chat.editMessage/{chatRoomId}")
     public void handleEditMessage(
@@ -124,17 +208,24 @@ public class WebSocketChatController {
                 principal.getName(), chatRoomId);
 
         try {
-            // Verificar que el usuario sea el autor del mensaje
-            // (la validación real se hace en el servicio)
+            Long userId = userService.resolveUserId(principal);
+
+            // Solo los participantes pueden ocupar un seq en la sala
+            if (!membershipService.isParticipant(chatRoomId, userId)) {
+                log.warn("Edición ignorada: {} no participa de la sala {}", principal.getName(), chatRoomId);
+                return;
+            }
+
+            MessageDTO edited = messageService.editMessage(chatRoomId, editedMessage.getId(),
+                    MessageEditDTO.builder().content(editedMessage.getContent()).build(),
+                    userService.getUserEntityById(userId));
 
-            // Broadcast del mensaje editado
-            messagingTemplate.convertAndSend(
-                    "/topic/chatroom/" + chatRoomId + "/edited",
-                    editedMessage
-            );
+            // Broadcast del mensaje editado, numerado en la sala
+            roomEventLog.publish(chatRoomId, RoomEventWS.Kind.EDITED, toChatMessageWS(edited));
 
         } catch (Exception e) {
-            log.error("Error procesando edición de mensaje: {}", e.getMessage());
+            log.warn("Edición de mensaje rechazada para {} en sala {}: {}",
+                    principal.getName(), chatRoomId, e.getMessage());
         }
     }
 
@@ -142,6 +233,12 @@ public class WebSocketChatController {
      * Maneja la eliminación de mensajes en tiempo real.
      * Ruta: /app/chat.deleteMessage/{chatRoomId}
      * Subscripción: /topic/chatroom/{chatRoomId}/deleted
+     * <p>
+     * La eliminación pasa por {@link MessageService}, que verifica que el usuario sea el autor
+     * y que el mensaje sea de la sala. Solo si el mensaje se eliminó se envía a la sala un
+     * {@link ChatMessageWS} con su ID y su seq; un ID inexistente o de otra sala se rechaza
+     * como en la edición y no ocupa un seq.
+     * </p>
      */
     @MessageMapping("/chat.deleteMessage/{chatRoomId}")
     public void handleDeleteMessage(
@@ -153,14 +250,53 @@ public class WebSocketChatController {
                 messageId, principal.getName(), chatRoomId);
 
         try {
-            // Broadcast del ID del mensaje eliminado
-            messagingTemplate.convertAndSend(
-                    "/topic/chatroom/" + chatRoomId + "/deleted",
-                    messageId
-            );
+            Long userId = userService.resolveUserId(principal);
+
+            // Solo los participantes pueden ocupar un seq en la sala
+            if (!membershipService.isParticipant(chatRoomId, userId)) {
+                log.warn("Eliminación ignorada: {} no participa de la sala {}", principal.getName(), chatRoomId);
+                return;
+            }
+
+            messageService.deleteMessage(chatRoomId, messageId, userService.getUserEntityById(userId));
+
+            // Broadcast del ID del mensaje eliminado, numerado en la sala
+            roomEventLog.publish(chatRoomId, RoomEventWS.Kind.DELETED, ChatMessageWS.builder()
+                    .id(messageId)
+                    .chatRoomId(chatRoomId)
+                    .build());
 
         } catch (Exception e) {
-            log.error("Error procesando eliminación de mensaje: {}", e.getMessage());
+            log.warn("Eliminación de mensaje rechazada para {} en sala {}: {}",
+                    principal.getName(), chatRoomId, e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private static ChatMessageWS toChatMessageWS(MessageDTO message) {
+        return ChatMessageWS.builder()
+                .id(message.getId())
+                .chatRoomId(message.getChatRoomId())
+                .senderId(message.getSender().getId())
+                .senderUsername(message.getSender().getUsername())
+                .senderAvatarUrl(message.getSender().getAvatarUrl())
+                .content(message.getContent())
+                .type(message.getType())
+                .sentAt(message.getSentAt())
+                .isEdited(message.getIsEdited())
+                .editedAt(message.getEditedAt())
+                .build();
+    }
+
+    /**
+     * Obtiene el usuario de la sesión: el Principal si existe, o el username que guardó
+     * {@link JwtHandshakeInterceptor} en los atributos de la sesión.
+     */
+    private String resolveUsername(Principal principal, SimpMessageHeaderAccessor headerAccessor) {
+        if (principal != null) {
+            return principal.getName();
+        }
+
+        Map<String, Object> attributes = headerAccessor.getSessionAttributes();
+        return attributes != null ? (String) attributes.get("username") : null;
+    }
+}
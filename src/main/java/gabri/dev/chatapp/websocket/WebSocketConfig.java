@@ -1,22 +1,114 @@
 package gabri.dev.chatapp.websocket;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.messaging.tcp.TcpOperations;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Configuración de WebSocket para comunicación en tiempo real.
  * Usa STOMP (Simple Text Oriented Messaging Protocol) sobre WebSocket.
+ * <p>
+ * Con {@code app.broker.mode=simple} (por defecto) las suscripciones viven en memoria y solo
+ * hay un nodo. Con {@code app.broker.mode=relay} se reenvían a un broker STOMP externo
+ * compartido, así varios nodos reciben los mensajes de las mismas salas. El relay y el broker
+ * embebido necesitan compilar con el perfil Maven {@code broker}; sin él, el arranque falla
+ * si se piden.
+ * </p>
  */
 @Configuration
 @EnableWebSocketMessageBroker
 @RequiredArgsConstructor
+@Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
+    private final CompactPayloadInterceptor compactPayloadInterceptor;
+    private final ClusterSyncInterceptor clusterSyncInterceptor;
+    private final ObjectProvider<TcpOperations<byte[]>> relayTcpClient;
+
+    @Value("${app.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${app.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${app.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${app.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    @Value("${app.broker.relay.client-login:guest}")
+    private String relayClientLogin;
+
+    @Value("${app.broker.relay.client-passcode:guest}")
+    private String relayClientPasscode;
+
+    @Value("${app.broker.relay.system-login:guest}")
+    private String relaySystemLogin;
+
+    @Value("${app.broker.relay.system-passcode:guest}")
+    private String relaySystemPasscode;
+
+    @Value("${app.broker.relay.system-heartbeat-ms:10000}")
+    private long relaySystemHeartbeatMs;
+
+    @Value("${app.broker.embedded.enabled:false}")
+    private boolean embeddedBroker;
+
+    @Value("${app.ingest.queue-capacity:10000}")
+    private int fanOutQueueCapacity;
+
+    /**
+     * Executor del broadcast y la confirmación de los mensajes ya guardados.
+     * <p>
+     * Así el hilo escritor de {@link gabri.dev.chatapp.services.MessageIngestService} solo
+     * completa los futuros y vuelve a tomar el siguiente lote. Tiene un único hilo para que
+     * los mensajes se numeren y se envíen en el orden de commit. Si la cola se llena, quien
+     * encola espera: frena al escritor en lugar de desordenar o perder mensajes.
+     * </p>
+     */
+    @Bean
+    public ThreadPoolTaskExecutor messageFanOutExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(fanOutQueueCapacity);
+        executor.setThreadNamePrefix("message-fanout-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("El executor de broadcast está detenido");
+            }
+            try {
+                pool.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        });
+        return executor;
+    }
 
     /**
      * Configura el message broker.
@@ -25,8 +117,20 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
      */
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        // Habilita un broker simple en memoria
-        config.enableSimpleBroker("/topic", "/queue");
+        if (embeddedBroker && !ClassUtils.isPresent("org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ",
+                getClass().getClassLoader())) {
+            throw new IllegalStateException("app.broker.embedded.enabled requiere compilar con el perfil Maven 'broker'");
+        }
+
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            configureBrokerRelay(config);
+        } else {
+            // Habilita un broker simple en memoria
+            config.enableSimpleBroker("/topic", "/queue");
+        }
+
+        // Entrega en orden los mensajes de cada sesión: los clientes detectan huecos por el seq de cada sala
+        config.setPreservePublishOrder(true);
 
         // Prefijo para mensajes desde el cliente al servidor
         config.setApplicationDestinationPrefixes("/app");
@@ -42,11 +146,80 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
-                .addInterceptors(jwtHandshakeInterceptor)
+                .addInterceptors(jwtHandshakeInterceptor, new SockJsSessionMarker())
                 .withSockJS(); // Fallback para navegadores que no soportan WebSocket
 
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .addInterceptors(jwtHandshakeInterceptor); // Sin SockJS
     }
+
+    /**
+     * Las sesiones negocian el formato de sus mensajes en el CONNECT y lo reciben a la salida.
+     * Mientras el nodo se resincroniza con el cluster, sus envíos y suscripciones se rechazan.
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(clusterSyncInterceptor, compactPayloadInterceptor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(compactPayloadInterceptor);
+    }
+
+    /**
+     * Reenvía /topic y /queue al broker externo.
+     * <p>
+     * El relay abre una conexión TCP al broker por cada sesión WebSocket más una conexión
+     * "de sistema" compartida para los mensajes que envía el servidor. Si la de sistema se
+     * cae, Spring la reintenta cada 5 segundos; las sesiones de clientes afectadas se cierran
+     * y el cliente reconecta por su cuenta.
+     * </p>
+     */
+    private void configureBrokerRelay(MessageBrokerRegistry config) {
+        TcpOperations<byte[]> tcpClient = relayTcpClient.getIfAvailable();
+        if (tcpClient == null) {
+            throw new IllegalStateException("app.broker.mode=relay requiere compilar con el perfil Maven 'broker'");
+        }
+
+        StompBrokerRelayRegistration relay = config.enableStompBrokerRelay("/topic", "/queue")
+                .setRelayHost(relayHost)
+                .setRelayPort(relayPort)
+                .setClientLogin(relayClientLogin)
+                .setClientPasscode(relayClientPasscode)
+                .setSystemLogin(relaySystemLogin)
+                .setSystemPasscode(relaySystemPasscode)
+                .setSystemHeartbeatSendInterval(relaySystemHeartbeatMs)
+                .setSystemHeartbeatReceiveInterval(relaySystemHeartbeatMs)
+                // Los mensajes a /user/... llegan al usuario aunque esté conectado a otro nodo
+                .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                .setUserRegistryBroadcast("/topic/user-registry")
+                .setTcpClient(tcpClient);
+
+        if (!relayVirtualHost.isBlank()) {
+            relay.setVirtualHost(relayVirtualHost);
+        }
+
+        log.info("Usando relay STOMP hacia {}:{}", relayHost, relayPort);
+    }
+
+    /**
+     * Marca las sesiones SockJS, que no pueden recibir frames binarios.
+     */
+    private static final class SockJsSessionMarker implements HandshakeInterceptor {
+
+        @Override
+        public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            attributes.put(CompactPayloadInterceptor.SOCKJS_ATTRIBUTE, true);
+            return true;
+        }
+
+        @Override
+        public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Exception exception) {
+            // No se necesita implementación
+        }
+    }
 }
\ No newline at end of file
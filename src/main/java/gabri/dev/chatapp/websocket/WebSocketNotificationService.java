@@ -1,10 +1,15 @@
 package gabri.dev.chatapp.websocket;
 
 import gabri.dev.chatapp.dtos.websocket.ChatMessageWS;
+import gabri.dev.chatapp.dtos.websocket.MessageAckWS;
+import gabri.dev.chatapp.dtos.websocket.RoomReplayWS;
+import gabri.dev.chatapp.dtos.websocket.TypingStateWS;
 import gabri.dev.chatapp.dtos.websocket.UserStatusWS;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.stereotype.Service;
 
 /**
@@ -25,6 +30,27 @@ public class WebSocketNotificationService {
         messagingTemplate.convertAndSend("/topic/chatroom/" + chatRoomId, message);
     }
 
+    /**
+     * Envía a una sala un mensaje editado.
+     */
+    public void sendEditedMessage(Long chatRoomId, ChatMessageWS message) {
+        messagingTemplate.convertAndSend("/topic/chatroom/" + chatRoomId + "/edited", message);
+    }
+
+    /**
+     * Envía a una sala un mensaje eliminado; solo lleva el ID del mensaje y su seq.
+     */
+    public void sendDeletedMessage(Long chatRoomId, ChatMessageWS message) {
+        messagingTemplate.convertAndSend("/topic/chatroom/" + chatRoomId + "/deleted", message);
+    }
+
+    /**
+     * Envía a una sala quiénes están escribiendo.
+     */
+    public void sendTypingState(TypingStateWS typingState) {
+        messagingTemplate.convertAndSend("/topic/chatroom/" + typingState.getChatRoomId() + "/typing", typingState);
+    }
+
     /**
      * Notifica cambio de estado de usuario a todos.
      */
@@ -42,6 +68,31 @@ public class WebSocketNotificationService {
         messagingTemplate.convertAndSendToUser(username, "/queue/notifications", notification);
     }
 
+    /**
+     * Envía la confirmación de un mensaje a la sesión que lo envió.
+     * Se dirige por ID de sesión, así funciona aunque la sesión no tenga Principal.
+     */
+    public void sendMessageAck(String sessionId, MessageAckWS ack) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setLeaveMutable(true);
+
+        messagingTemplate.convertAndSendToUser(sessionId, "/queue/message-acks", ack,
+                headerAccessor.getMessageHeaders());
+    }
+
+    /**
+     * Envía a la sesión que reanudó una sala los eventos que se perdió.
+     */
+    public void sendReplay(String sessionId, RoomReplayWS replay) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setLeaveMutable(true);
+
+        messagingTemplate.convertAndSendToUser(sessionId, "/queue/replay", replay,
+                headerAccessor.getMessageHeaders());
+    }
+
     /**
      * Broadcast general a todos los usuarios conectados.
      */
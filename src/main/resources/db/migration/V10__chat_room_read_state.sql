@@ -0,0 +1,19 @@
+-- Cursor de lectura de cada usuario en cada sala, para contar los mensajes no leídos.
+
+CREATE TABLE IF NOT EXISTS chat_room_read_state (
+    last_read_message_id bigint not null,
+    updated_at timestamp not null,
+    chat_room_id bigint not null,
+    user_id bigint not null,
+    primary key (chat_room_id, user_id)
+);
+
+-- Conteo de no leídos: rango id > cursor sin leer la tabla
+CREATE INDEX IF NOT EXISTS idx_messages_room_id_sender ON messages (chat_room_id, id, sender_id);
+
+-- Antes no se contaban no leídos: los participantes arrancan con la sala leída hasta el último mensaje
+INSERT INTO chat_room_read_state (last_read_message_id, updated_at, chat_room_id, user_id)
+SELECT MAX(m.id), MAX(m.sent_at), p.chat_room_id, p.user_id
+FROM chat_room_participants p
+JOIN messages m ON m.chat_room_id = p.chat_room_id
+GROUP BY p.chat_room_id, p.user_id;
@@ -0,0 +1,37 @@
+-- Índice de texto completo (FTS5) de los mensajes.
+-- messages_fts es de contenido externo: no duplica el texto, lo lee de messages_fts_source
+-- cuando necesita generar fragmentos. Además del contenido indexa un token de sala (r<id>),
+-- así el filtro por sala se resuelve dentro del índice invertido.
+
+CREATE VIEW IF NOT EXISTS messages_fts_source AS
+SELECT id, content, 'r' || chat_room_id AS room FROM messages;
+
+CREATE VIRTUAL TABLE IF NOT EXISTS messages_fts USING fts5(
+    content, room,
+    content = 'messages_fts_source', content_rowid = 'id',
+    tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3'
+);
+
+-- Los triggers mantienen el índice en la misma transacción que escribe el mensaje
+CREATE TRIGGER IF NOT EXISTS messages_fts_ai AFTER INSERT ON messages BEGIN
+    INSERT INTO messages_fts (rowid, content, room)
+    VALUES (new.id, new.content, 'r' || new.chat_room_id);
+END;
+
+CREATE TRIGGER IF NOT EXISTS messages_fts_ad AFTER DELETE ON messages BEGIN
+    INSERT INTO messages_fts (messages_fts, rowid, content, room)
+    VALUES ('delete', old.id, old.content, 'r' || old.chat_room_id);
+END;
+
+CREATE TRIGGER IF NOT EXISTS messages_fts_au AFTER UPDATE OF content, chat_room_id ON messages BEGIN
+    INSERT INTO messages_fts (messages_fts, rowid, content, room)
+    VALUES ('delete', old.id, old.content, 'r' || old.chat_room_id);
+    INSERT INTO messages_fts (rowid, content, room)
+    VALUES (new.id, new.content, 'r' || new.chat_room_id);
+END;
+
+-- La relevancia solo considera el contenido, no el token de sala
+INSERT INTO messages_fts (messages_fts, rank) VALUES ('rank', 'bm25(1.0, 0.0)');
+
+-- Indexa los mensajes existentes (en una base nueva no hay ninguno)
+INSERT INTO messages_fts (messages_fts) VALUES ('rebuild');
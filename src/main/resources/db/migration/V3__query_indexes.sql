@@ -0,0 +1,20 @@
+-- Índices para los filtros de los repositorios que no cubrían los índices del esquema inicial.
+-- QueryPlanVerifier revisa al arrancar que las consultas principales los usen.
+
+-- Salas de un usuario (JOIN por user_id); la clave primaria empieza por chat_room_id
+CREATE INDEX IF NOT EXISTS idx_participants_user_room ON chat_room_participants (user_id, chat_room_id);
+
+-- Mensajes de un remitente, del más reciente al más antiguo
+CREATE INDEX IF NOT EXISTS idx_messages_sender_sent ON messages (sender_id, sent_at);
+
+-- Mensajes editados de una sala, ordenados por fecha de edición
+CREATE INDEX IF NOT EXISTS idx_messages_room_edited ON messages (chat_room_id, is_edited, edited_at);
+
+-- Mensajes de una sala por tipo, en orden cronológico
+CREATE INDEX IF NOT EXISTS idx_messages_room_type_sent ON messages (chat_room_id, type, sent_at);
+
+-- Salas grupales creadas por un usuario
+CREATE INDEX IF NOT EXISTS idx_chat_rooms_creator_type ON chat_rooms (created_by_user_id, type);
+
+-- Usuarios por estado de conexión
+CREATE INDEX IF NOT EXISTS idx_users_status ON users (status);
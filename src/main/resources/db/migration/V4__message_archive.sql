@@ -0,0 +1,23 @@
+-- Retención por sala y archivo de mensajes antiguos en segmentos comprimidos.
+
+-- Días que los mensajes de la sala quedan en la base; NULL usa app.archive.default-retention-days
+-- y 0 los deja siempre en la base
+ALTER TABLE chat_rooms ADD COLUMN retention_days integer;
+
+-- Un segmento es un archivo NDJSON comprimido con mensajes consecutivos de una sala,
+-- en orden (sent_at, id). No se modifica después de escrito.
+CREATE TABLE IF NOT EXISTS message_archive_segments (
+    id integer,
+    chat_room_id bigint not null,
+    file_name varchar(255) not null,
+    first_sent_at timestamp not null,
+    first_id bigint not null,
+    last_sent_at timestamp not null,
+    last_id bigint not null,
+    message_count integer not null,
+    created_at timestamp not null,
+    primary key (id)
+);
+
+-- Segmentos de una sala anteriores a un cursor del historial, del más nuevo al más antiguo
+CREATE INDEX IF NOT EXISTS idx_archive_segments_room_last ON message_archive_segments (chat_room_id, last_sent_at, last_id);
@@ -0,0 +1,7 @@
+-- Eliminación diferida de salas: la sala se marca y deja de verse al instante,
+-- y sus mensajes se borran después, de a lotes.
+
+ALTER TABLE chat_rooms ADD COLUMN deleted_at timestamp;
+
+-- Salas marcadas con el borrado pendiente; casi siempre vacío
+CREATE INDEX IF NOT EXISTS idx_chat_rooms_deleted ON chat_rooms (deleted_at) WHERE deleted_at IS NOT NULL;
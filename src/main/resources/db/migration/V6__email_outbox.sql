@@ -0,0 +1,18 @@
+-- Bandeja de salida de emails: cada email se guarda en la transacción que lo origina
+-- y un despachador lo envía después, con reintentos.
+
+CREATE TABLE IF NOT EXISTS email_outbox (
+    id integer,
+    recipient varchar(255) not null,
+    subject varchar(255) not null,
+    body TEXT not null,
+    attempts integer not null default 0,
+    next_attempt_at timestamp not null,
+    last_error varchar(500),
+    failed_at timestamp,
+    created_at timestamp not null,
+    primary key (id)
+);
+
+-- Emails pendientes por fecha del próximo intento; los descartados quedan fuera del índice
+CREATE INDEX IF NOT EXISTS idx_email_outbox_due ON email_outbox (next_attempt_at) WHERE failed_at IS NULL;
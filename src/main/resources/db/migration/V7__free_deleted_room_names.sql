@@ -0,0 +1,5 @@
+-- Las salas marcadas para eliminar liberan su nombre: se le agrega '#deleted-' y el ID.
+-- Corrige las que se marcaron antes de este cambio.
+
+UPDATE chat_rooms SET name = name || '#deleted-' || id
+WHERE deleted_at IS NOT NULL AND name NOT LIKE '%#deleted-%';
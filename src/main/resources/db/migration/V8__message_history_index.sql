@@ -0,0 +1,3 @@
+-- Paginación por cursor del historial (seek en lugar de OFFSET)
+
+CREATE INDEX IF NOT EXISTS idx_messages_room_sent_id ON messages (chat_room_id, sent_at, id);
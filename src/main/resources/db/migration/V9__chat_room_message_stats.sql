@@ -0,0 +1,18 @@
+-- Último mensaje y cantidad de mensajes de cada sala, desnormalizados en chat_rooms para
+-- listar las salas sin leer messages. Los mantiene ChatRoomService al guardar y eliminar mensajes.
+
+ALTER TABLE chat_rooms ADD COLUMN last_message_at timestamp;
+ALTER TABLE chat_rooms ADD COLUMN last_message_id bigint;
+ALTER TABLE chat_rooms ADD COLUMN last_message_preview varchar(200);
+ALTER TABLE chat_rooms ADD COLUMN message_count bigint default 0 not null;
+
+-- Completa las salas existentes, igual que ChatRoomRepository.recalculateMessageStats
+UPDATE chat_rooms SET
+    message_count = (SELECT COUNT(*) FROM messages m WHERE m.chat_room_id = chat_rooms.id) +
+        (SELECT COALESCE(SUM(s.message_count), 0) FROM message_archive_segments s WHERE s.chat_room_id = chat_rooms.id),
+    last_message_id = (SELECT m.id FROM messages m WHERE m.chat_room_id = chat_rooms.id
+        ORDER BY m.sent_at DESC, m.id DESC LIMIT 1),
+    last_message_at = (SELECT m.sent_at FROM messages m WHERE m.chat_room_id = chat_rooms.id
+        ORDER BY m.sent_at DESC, m.id DESC LIMIT 1),
+    last_message_preview = (SELECT substr(m.content, 1, 200) FROM messages m WHERE m.chat_room_id = chat_rooms.id
+        ORDER BY m.sent_at DESC, m.id DESC LIMIT 1);
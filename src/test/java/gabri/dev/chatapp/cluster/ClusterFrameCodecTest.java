@@ -0,0 +1,81 @@
+package gabri.dev.chatapp.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterFrameCodecTest {
+
+    @Test
+    void framesRoundTripInOrder() throws IOException {
+        ClusterFrame publish = ClusterFrame.of(ClusterFrameType.PUBLISH, body -> {
+            body.writeUTF("/topic/chat/7");
+            body.writeLong(42L);
+        });
+        ClusterFrame ping = ClusterFrame.of(ClusterFrameType.PING, body -> { });
+
+        DataInputStream in = input(publish, ping);
+
+        ClusterFrame first = ClusterService.readFrame(in);
+        assertEquals(ClusterFrameType.PUBLISH, first.type());
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(first.body()));
+        assertEquals("/topic/chat/7", body.readUTF());
+        assertEquals(42L, body.readLong());
+
+        ClusterFrame second = ClusterService.readFrame(in);
+        assertEquals(ClusterFrameType.PING, second.type());
+        assertEquals(0, second.body().length);
+        assertThrows(EOFException.class, () -> ClusterService.readFrame(in));
+    }
+
+    @Test
+    void everyTypeKeepsItsCode() throws IOException {
+        for (ClusterFrameType type : ClusterFrameType.values()) {
+            ClusterFrame frame = ClusterService.readFrame(input(new ClusterFrame(type, new byte[]{1, 2, 3})));
+            assertEquals(type, frame.type());
+            assertArrayEquals(new byte[]{1, 2, 3}, frame.body());
+        }
+    }
+
+    @Test
+    void rejectsInvalidLengths() throws IOException {
+        assertThrows(IOException.class, () -> ClusterService.readFrame(raw(0, 0)));
+        assertThrows(IOException.class, () -> ClusterService.readFrame(raw(-5, 0)));
+        assertThrows(IOException.class, () -> ClusterService.readFrame(raw(5000, ClusterFrameType.HELLO.ordinal()),
+                ClusterHandshake.MAX_HANDSHAKE_FRAME_BYTES));
+    }
+
+    @Test
+    void rejectsUnknownType() {
+        assertThrows(IOException.class, () -> ClusterService.readFrame(raw(1, 250)));
+    }
+
+    @Test
+    void truncatedBodyFails() {
+        assertThrows(EOFException.class, () -> ClusterService.readFrame(raw(10, ClusterFrameType.PUBLISH.ordinal())));
+    }
+
+    private static DataInputStream input(ClusterFrame... frames) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (ClusterFrame frame : frames) {
+            ClusterService.writeFrame(out, frame);
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static DataInputStream raw(int length, int type) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(length);
+        out.writeByte(type);
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
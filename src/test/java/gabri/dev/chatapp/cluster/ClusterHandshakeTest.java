@@ -0,0 +1,127 @@
+package gabri.dev.chatapp.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterHandshakeTest {
+
+    private static final String SECRET = "secreto-compartido-del-cluster";
+
+    private ServerSocket serverSocket;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    void nodesWithTheSameSecretLearnEachOther() throws Exception {
+        CompletableFuture<ClusterHandshake.Hello> accepted = acceptWith(new ClusterHandshake(SECRET, "A", "10.0.0.1", 7600));
+
+        ClusterHandshake.Hello remote = connectWith(new ClusterHandshake(SECRET, "B", "10.0.0.2", 7601));
+
+        assertEquals("A", remote.nodeId());
+        ClusterHandshake.Hello connector = accepted.get(5, TimeUnit.SECONDS);
+        assertEquals("B", connector.nodeId());
+        assertEquals("10.0.0.2", connector.host());
+        assertEquals(7601, connector.port());
+    }
+
+    @Test
+    void connectorWithAnotherSecretIsRejectedByBothSides() {
+        CompletableFuture<ClusterHandshake.Hello> accepted = acceptWith(new ClusterHandshake(SECRET, "A", "10.0.0.1", 7600));
+
+        assertThrows(ClusterHandshake.RejectedException.class,
+                () -> connectWith(new ClusterHandshake("otro-secreto-cualquiera", "X", "10.0.0.9", 7600)));
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> accepted.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, error.getCause());
+    }
+
+    @Test
+    void connectorThatSkipsAuthIsRejected() throws Exception {
+        CompletableFuture<ClusterHandshake.Hello> accepted = acceptWith(new ClusterHandshake(SECRET, "A", "10.0.0.1", 7600));
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            // Saludo válido en formato, seguido de un frame cualquiera en lugar de AUTH
+            ClusterService.writeFrame(out, ClusterFrame.of(ClusterFrameType.HELLO, body -> {
+                body.writeUTF("X");
+                body.writeUTF("10.0.0.9");
+                body.writeInt(7600);
+                body.write(new byte[ClusterHandshake.NONCE_BYTES]);
+                body.writeShort(0);
+            }));
+            ClusterService.writeFrame(out, ClusterFrame.of(ClusterFrameType.PUBLISH, body -> body.writeUTF("/topic/chat/1")));
+            out.flush();
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> accepted.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(ClusterHandshake.RejectedException.class, error.getCause());
+        }
+    }
+
+    @Test
+    void replayedProofDoesNotAuthenticate() throws Exception {
+        CompletableFuture<ClusterHandshake.Hello> accepted = acceptWith(new ClusterHandshake(SECRET, "A", "10.0.0.1", 7600));
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            ClusterService.writeFrame(out, ClusterFrame.of(ClusterFrameType.HELLO, body -> {
+                body.writeUTF("B");
+                body.writeUTF("10.0.0.2");
+                body.writeInt(7601);
+                body.write(new byte[ClusterHandshake.NONCE_BYTES]);
+                body.writeShort(0);
+            }));
+            // Una prueba de 32 bytes que no se calculó sobre el nonce de esta conexión
+            ClusterService.writeFrame(out, new ClusterFrame(ClusterFrameType.AUTH, new byte[32]));
+            out.flush();
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> accepted.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(ClusterHandshake.RejectedException.class, error.getCause());
+        }
+    }
+
+    private CompletableFuture<ClusterHandshake.Hello> acceptWith(ClusterHandshake handshake) {
+        CompletableFuture<ClusterHandshake.Hello> result = new CompletableFuture<>();
+        Thread acceptor = new Thread(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(5000);
+                result.complete(handshake.accept(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                        new DataOutputStream(socket.getOutputStream())));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return result;
+    }
+
+    private ClusterHandshake.Hello connectWith(ClusterHandshake handshake) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            return handshake.connect(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                    new DataOutputStream(socket.getOutputStream()));
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package gabri.dev.chatapp.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterServiceTest {
+
+    private static final String SECRET = "secreto-compartido-del-cluster";
+
+    @TempDir
+    Path dataDir;
+
+    private ClusterService cluster;
+
+    @BeforeEach
+    void setUp() {
+        cluster = new ClusterService();
+        ReflectionTestUtils.setField(cluster, "enabled", true);
+        ReflectionTestUtils.setField(cluster, "configuredNodeId", "A");
+        ReflectionTestUtils.setField(cluster, "secret", SECRET);
+        ReflectionTestUtils.setField(cluster, "port", 0);
+        ReflectionTestUtils.setField(cluster, "peerPorts", List.of());
+        ReflectionTestUtils.setField(cluster, "pointsPerNode", 16);
+        ReflectionTestUtils.setField(cluster, "heartbeatMs", 2000);
+        ReflectionTestUtils.setField(cluster, "connectTimeoutMs", 1000);
+        ReflectionTestUtils.setField(cluster, "retryMs", 50L);
+        ReflectionTestUtils.setField(cluster, "queueCapacity", 100);
+        ReflectionTestUtils.setField(cluster, "datasourceUrl", "jdbc:sqlite:" + dataDir.resolve("chatapp.db"));
+        ReflectionTestUtils.setField(cluster, "archiveDir", dataDir.resolve("archive").toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        cluster.stop();
+    }
+
+    @Test
+    void refusesToStartWithoutSecret() {
+        ReflectionTestUtils.setField(cluster, "secret", "corto");
+
+        assertThrows(IllegalStateException.class, cluster::checkConfiguration);
+    }
+
+    @Test
+    void acceptsDatabaseOnLocalDisk() {
+        assertDoesNotThrow(cluster::checkConfiguration);
+    }
+
+    @Test
+    void refusesDatabaseThatNodesCannotShare() {
+        for (String url : List.of("jdbc:sqlite::memory:", "jdbc:sqlite:file::memory:?cache=shared",
+                "jdbc:sqlite:file:chat?mode=memory", "jdbc:sqlite://servidor/compartida/chatapp.db",
+                "jdbc:sqlite:\\\\servidor\\compartida\\chatapp.db")) {
+            ReflectionTestUtils.setField(cluster, "datasourceUrl", url);
+            assertThrows(IllegalStateException.class, cluster::checkConfiguration, url);
+        }
+    }
+
+    @Test
+    void databasePathIgnoresUrlOptions() {
+        assertEquals("./data/chatapp.db", ClusterService.databasePath("jdbc:sqlite:./data/chatapp.db"));
+        assertEquals("/var/carrot/chat.db", ClusterService.databasePath("jdbc:sqlite:file:/var/carrot/chat.db?journal_mode=WAL"));
+        assertNull(ClusterService.databasePath("jdbc:sqlite:"));
+    }
+
+    @Test
+    void listensOnlyOnLoopback() {
+        cluster.start();
+
+        ServerSocket serverSocket = (ServerSocket) ReflectionTestUtils.getField(cluster, "serverSocket");
+        assertEquals(InetAddress.getLoopbackAddress(), serverSocket.getInetAddress());
+    }
+
+    @Test
+    void connectionFromAnotherNodeHoldsTrafficUntilResynced() throws Exception {
+        CountDownLatch resyncing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        cluster.addResyncListener(() -> {
+            resyncing.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+        });
+        cluster.start();
+        assertTrue(cluster.isSynced());
+
+        try (Socket socket = connectAs("B")) {
+            assertTrue(resyncing.await(5, TimeUnit.SECONDS));
+            assertFalse(cluster.isSynced());
+            assertEquals(1, cluster.getEpoch());
+
+            release.countDown();
+            awaitSynced();
+        }
+    }
+
+    @Test
+    void failedResyncIsRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        cluster.addResyncListener(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("database is locked");
+            }
+        });
+        cluster.start();
+
+        try (Socket socket = connectAs("B")) {
+            awaitSynced();
+            assertEquals(2, attempts.get());
+        }
+    }
+
+    @Test
+    void unauthenticatedConnectionDoesNotChangeTheEpoch() throws Exception {
+        AtomicInteger resyncs = new AtomicInteger();
+        cluster.addResyncListener(resyncs::incrementAndGet);
+        cluster.start();
+
+        ClusterHandshake impostor = new ClusterHandshake("otro-secreto-cualquiera", "X", "127.0.0.1", 1);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), localPort())) {
+            socket.setSoTimeout(5000);
+            assertThrows(ClusterHandshake.RejectedException.class, () -> impostor.connect(
+                    new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                    new DataOutputStream(socket.getOutputStream())));
+        }
+
+        assertEquals(0, cluster.getEpoch());
+        assertTrue(cluster.isSynced());
+        assertEquals(0, resyncs.get());
+    }
+
+    /**
+     * Conecta y completa el saludo como otro nodo, que anuncia un puerto donde nadie escucha.
+     */
+    private Socket connectAs(String nodeId) throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), localPort());
+        socket.setSoTimeout(5000);
+        new ClusterHandshake(SECRET, nodeId, "127.0.0.1", 1).connect(
+                new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                new DataOutputStream(socket.getOutputStream()));
+        return socket;
+    }
+
+    private int localPort() {
+        return ((ServerSocket) ReflectionTestUtils.getField(cluster, "serverSocket")).getLocalPort();
+    }
+
+    /**
+     * Espera a que la conexión suba la época y el nodo termine de resincronizarse.
+     */
+    private void awaitSynced() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((cluster.getEpoch() == 0 || !cluster.isSynced()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(cluster.isSynced());
+        assertEquals(1, cluster.getEpoch());
+    }
+}
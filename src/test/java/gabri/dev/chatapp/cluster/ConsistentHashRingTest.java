@@ -0,0 +1,74 @@
+package gabri.dev.chatapp.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 20_000;
+    private static final int POINTS = 128;
+
+    @Test
+    void emptyRingHasNoOwner() {
+        assertNull(new ConsistentHashRing(List.of(), POINTS).ownerOf(1L));
+    }
+
+    @Test
+    void ownersDoNotDependOnNodeOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("A", "B", "C"), POINTS);
+        ConsistentHashRing reordered = new ConsistentHashRing(List.of("C", "A", "B"), POINTS);
+
+        for (long key = 0; key < KEYS; key++) {
+            assertEquals(ring.ownerOf(key), reordered.ownerOf(key));
+        }
+    }
+
+    @Test
+    void keysAreSpreadAcrossNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("A", "B", "C", "D"), POINTS);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (long key = 0; key < KEYS; key++) {
+            owned.merge(ring.ownerOf(key), 1, Integer::sum);
+        }
+
+        assertEquals(4, owned.size());
+        owned.values().forEach(count -> assertTrue(count > KEYS * 0.15 && count < KEYS * 0.35,
+                "reparto desparejo: " + owned));
+    }
+
+    @Test
+    void joiningNodeOnlyTakesKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("A", "B", "C"), POINTS);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("A", "B", "C", "D"), POINTS);
+
+        int moved = 0;
+        for (long key = 0; key < KEYS; key++) {
+            if (!before.ownerOf(key).equals(after.ownerOf(key))) {
+                assertEquals("D", after.ownerOf(key));
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS * 0.15 && moved < KEYS * 0.35, "claves movidas: " + moved);
+    }
+
+    @Test
+    void leavingNodeOnlyGivesAwayItsKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("A", "B", "C", "D"), POINTS);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("A", "B", "D"), POINTS);
+
+        for (long key = 0; key < KEYS; key++) {
+            String owner = before.ownerOf(key);
+            if (owner.equals("C")) {
+                assertNotEquals("C", after.ownerOf(key));
+            } else {
+                assertEquals(owner, after.ownerOf(key));
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package gabri.dev.chatapp.configs;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.data.repository.Repository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryPlanVerifierTest {
+
+    @Test
+    void everyRepositoryMethodIsCheckedOrExplained() throws Exception {
+        Set<String> methods = repositoryMethods();
+        Set<String> listed = new HashSet<>(QueryPlanVerifier.checkedQueries());
+        listed.addAll(QueryPlanVerifier.UNCHECKED.keySet());
+
+        Set<String> missing = new TreeSet<>(methods);
+        missing.removeAll(listed);
+        assertTrue(missing.isEmpty(), "Métodos de repositorio sin revisión de plan en QueryPlanVerifier: " + missing);
+
+        Set<String> stale = new TreeSet<>(listed);
+        stale.removeAll(methods);
+        assertTrue(stale.isEmpty(), "QueryPlanVerifier nombra métodos que ya no existen: " + stale);
+    }
+
+    @Test
+    void checkedQueriesAreNotAlsoExplained() {
+        Set<String> both = new TreeSet<>(QueryPlanVerifier.checkedQueries());
+        both.retainAll(QueryPlanVerifier.UNCHECKED.keySet());
+
+        assertTrue(both.isEmpty(), "Métodos revisados y exceptuados a la vez: " + both);
+    }
+
+    @Test
+    void checksPassOnTheMigratedSchema() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource("jdbc:sqlite::memory:", true);
+        try {
+            new SchemaMigrationRunner(dataSource).migrate();
+
+            QueryPlanVerifier verifier = new QueryPlanVerifier(new JdbcTemplate(dataSource));
+            ReflectionTestUtils.setField(verifier, "enabled", true);
+            assertDoesNotThrow(verifier::verify);
+        } finally {
+            dataSource.destroy();
+        }
+    }
+
+    /**
+     * Métodos declarados en las interfaces de repositorio, como {@code Repositorio.método}.
+     */
+    private static Set<String> repositoryMethods() throws ClassNotFoundException {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition beanDefinition) {
+                return beanDefinition.getMetadata().isInterface();
+            }
+        };
+        scanner.addIncludeFilter(new AssignableTypeFilter(Repository.class));
+
+        Set<String> methods = new TreeSet<>();
+        for (var candidate : scanner.findCandidateComponents("gabri.dev.chatapp.repositories")) {
+            Class<?> repository = Class.forName(candidate.getBeanClassName());
+            for (Method method : repository.getDeclaredMethods()) {
+                if (!method.isDefault() && !method.isSynthetic() && !Modifier.isStatic(method.getModifiers())) {
+                    methods.add(repository.getSimpleName() + "." + method.getName());
+                }
+            }
+        }
+        assertFalse(methods.isEmpty());
+        return methods;
+    }
+}
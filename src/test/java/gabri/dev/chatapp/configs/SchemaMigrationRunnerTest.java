@@ -0,0 +1,158 @@
+package gabri.dev.chatapp.configs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigrationRunnerTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 10, 0);
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite::memory:", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void baselineDatabaseIsUpgradedWithItsData() throws IOException {
+        createBaselineSchema();
+        insertUser(1L, "alice");
+        insertUser(2L, "bob");
+        insertUser(3L, "carol");
+        jdbcTemplate.update("INSERT INTO chat_rooms (id, created_at, name, type, created_by_user_id) VALUES (?, ?, ?, ?, ?)",
+                7L, Timestamp.valueOf(START), "general", "GROUP", 1L);
+        jdbcTemplate.update("INSERT INTO chat_rooms (id, created_at, name, type, created_by_user_id) VALUES (?, ?, ?, ?, ?)",
+                8L, Timestamp.valueOf(START), "vacia", "GROUP", 1L);
+        for (long[] participant : new long[][]{{7, 1}, {7, 2}, {8, 1}, {8, 3}}) {
+            jdbcTemplate.update("INSERT INTO chat_room_participants (chat_room_id, user_id) VALUES (?, ?)",
+                    participant[0], participant[1]);
+        }
+        insertMessage(10L, 7L, 1L, "hola", START.plusMinutes(1));
+        insertMessage(11L, 7L, 2L, "qué tal", START.plusMinutes(3));
+        insertMessage(12L, 7L, 1L, "bien", START.plusMinutes(2));
+
+        new SchemaMigrationRunner(dataSource).migrate();
+
+        Map<String, Object> general = jdbcTemplate.queryForMap(
+                "SELECT message_count, last_message_id, last_message_preview FROM chat_rooms WHERE id = 7");
+        assertEquals(3L, ((Number) general.get("message_count")).longValue());
+        assertEquals(11L, ((Number) general.get("last_message_id")).longValue());
+        assertEquals("qué tal", general.get("last_message_preview"));
+        assertEquals(Timestamp.valueOf(START.plusMinutes(3)),
+                jdbcTemplate.queryForObject("SELECT last_message_at FROM chat_rooms WHERE id = 7", Timestamp.class));
+
+        Map<String, Object> empty = jdbcTemplate.queryForMap(
+                "SELECT message_count, last_message_id FROM chat_rooms WHERE id = 8");
+        assertEquals(0L, ((Number) empty.get("message_count")).longValue());
+        assertNull(empty.get("last_message_id"));
+
+        // Los participantes quedan al día: la actualización no marca el historial como no leído
+        assertEquals(List.of(Map.of("user_id", 1L, "last_read_message_id", 12L),
+                        Map.of("user_id", 2L, "last_read_message_id", 12L)),
+                jdbcTemplate.query("SELECT user_id, last_read_message_id FROM chat_room_read_state " +
+                                "WHERE chat_room_id = 7 ORDER BY user_id",
+                        (rs, row) -> Map.of("user_id", rs.getLong(1), "last_read_message_id", rs.getLong(2))));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM chat_room_read_state WHERE chat_room_id = 8", Integer.class));
+
+        // Los mensajes existentes quedan en el índice de búsqueda
+        assertEquals(List.of(12L), jdbcTemplate.queryForList(
+                "SELECT rowid FROM messages_fts WHERE messages_fts MATCH 'bien'", Long.class));
+    }
+
+    @Test
+    void upgradedBaselineHasTheSameSchemaAsANewDatabase() throws IOException {
+        new SchemaMigrationRunner(dataSource).migrate();
+        Map<String, List<String>> fresh = columns();
+        dataSource.destroy();
+
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite::memory:", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        createBaselineSchema();
+        new SchemaMigrationRunner(dataSource).migrate();
+
+        assertEquals(fresh, columns());
+    }
+
+    @Test
+    void queryPlanChecksPassOnTheUpgradedBaseline() throws IOException {
+        createBaselineSchema();
+        new SchemaMigrationRunner(dataSource).migrate();
+
+        QueryPlanVerifier verifier = new QueryPlanVerifier(jdbcTemplate);
+        ReflectionTestUtils.setField(verifier, "enabled", true);
+        assertDoesNotThrow(verifier::verify);
+    }
+
+    @Test
+    void appliedMigrationsAreNotRunAgain() {
+        new SchemaMigrationRunner(dataSource).migrate();
+        int applied = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM schema_history", Integer.class);
+
+        new SchemaMigrationRunner(dataSource).migrate();
+
+        assertEquals(applied, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM schema_history", Integer.class));
+    }
+
+    private void createBaselineSchema() throws IOException {
+        String script = StreamUtils.copyToString(
+                new ClassPathResource("db/baseline-schema.sql").getInputStream(), StandardCharsets.UTF_8);
+        for (String statement : script.split(";\\R")) {
+            String sql = statement.lines().filter(line -> !line.startsWith("--")).reduce("", String::concat).trim();
+            if (!sql.isEmpty()) {
+                jdbcTemplate.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Columnas de cada tabla e índices de la base, sin los internos de SQLite ni del índice de texto completo.
+     */
+    private Map<String, List<String>> columns() {
+        Map<String, List<String>> schema = new TreeMap<>();
+        for (String table : jdbcTemplate.queryForList("SELECT name FROM sqlite_master WHERE type = 'table' " +
+                "AND name NOT LIKE 'sqlite_%' AND name NOT LIKE 'messages_fts%'", String.class)) {
+            schema.put(table, jdbcTemplate.query("SELECT name FROM pragma_table_info(?) ORDER BY name",
+                    (rs, row) -> rs.getString(1), table));
+        }
+        schema.put("indexes", jdbcTemplate.queryForList("SELECT name FROM sqlite_master WHERE type = 'index' " +
+                "AND name NOT LIKE 'sqlite_%' ORDER BY name", String.class));
+        return schema;
+    }
+
+    private void insertUser(Long id, String username) {
+        jdbcTemplate.update("INSERT INTO users (id, created_at, email, email_verified, enabled, password, status, username) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                id, Timestamp.valueOf(START), username + "@example.com", true, true, "x", "OFFLINE", username);
+    }
+
+    private void insertMessage(Long id, Long chatRoomId, Long senderId, String content, LocalDateTime sentAt) {
+        jdbcTemplate.update("INSERT INTO messages (id, content, is_edited, sent_at, type, chat_room_id, sender_id) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                id, content, false, Timestamp.valueOf(sentAt), "CHAT", chatRoomId, senderId);
+    }
+}
@@ -0,0 +1,27 @@
+package gabri.dev.chatapp.dtos;
+
+import gabri.dev.chatapp.exceptions.InvalidOperationException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageCursorTest {
+
+    @Test
+    void encodeAndDecodeRoundTrip() {
+        MessageCursor cursor = new MessageCursor(LocalDateTime.of(2024, 5, 1, 10, 30, 15, 123_000_000), 42L);
+
+        MessageCursor decoded = MessageCursor.decode(cursor.encode());
+
+        assertEquals(cursor, decoded);
+    }
+
+    @Test
+    void decodeRejectsGarbage() {
+        assertThrows(InvalidOperationException.class, () -> MessageCursor.decode("no-es-un-cursor"));
+        assertThrows(InvalidOperationException.class, () -> MessageCursor.decode("%%%"));
+    }
+}
@@ -0,0 +1,80 @@
+package gabri.dev.chatapp.mail;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SmtpEmailTransportTest {
+
+    private final JavaMailSender mailSender = mock(JavaMailSender.class);
+    private final SmtpEmailTransport transport = new SmtpEmailTransport(mailSender);
+
+    private final SimpleMailMessage first = message("alice@example.com");
+    private final SimpleMailMessage second = message("nobody@example.com");
+
+    @Test
+    void rejectedRecipientsAreReturnedOneByOne() {
+        SendFailedException rejected = new SendFailedException("550 no such user");
+        failWith(Map.of(second, rejected));
+
+        Map<SimpleMailMessage, Exception> failed = transport.send(List.of(first, second));
+
+        assertEquals(1, failed.size());
+        assertSame(rejected, failed.get(second));
+    }
+
+    @Test
+    void everyRecipientRejectedIsStillReturnedOneByOne() {
+        SendFailedException rejected = new SendFailedException("550 no such user");
+        failWith(Map.of(first, rejected, second, rejected));
+
+        assertEquals(2, transport.send(List.of(first, second)).size());
+    }
+
+    @Test
+    void connectionThatCouldNotOpenFailsTheBatch() {
+        MessagingException refused = new MessagingException("Connection refused");
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        failedMessages.put(first, refused);
+        failedMessages.put(second, refused);
+        failWith(failedMessages);
+
+        assertThrows(MailSendException.class, () -> transport.send(List.of(first, second)));
+    }
+
+    @Test
+    void failuresWithoutDetailOrAuthenticationFailTheBatch() {
+        doThrow(new MailSendException("Mail server connection failed"))
+                .when(mailSender).send(any(SimpleMailMessage[].class));
+        assertThrows(MailException.class, () -> transport.send(List.of(first)));
+
+        doThrow(new MailAuthenticationException("535 authentication failed"))
+                .when(mailSender).send(any(SimpleMailMessage[].class));
+        assertThrows(MailAuthenticationException.class, () -> transport.send(List.of(first)));
+    }
+
+    private void failWith(Map<Object, Exception> failedMessages) {
+        doThrow(new MailSendException(failedMessages)).when(mailSender).send(any(SimpleMailMessage[].class));
+    }
+
+    private static SimpleMailMessage message(String to) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(to);
+        message.setSubject("Verifica tu cuenta");
+        message.setText("...");
+        return message;
+    }
+}
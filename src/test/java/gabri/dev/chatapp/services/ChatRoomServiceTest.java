@@ -0,0 +1,115 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.dtos.ChatRoomCreateDTO;
+import gabri.dev.chatapp.dtos.ChatRoomDeletionDTO;
+import gabri.dev.chatapp.dtos.ChatRoomUpdateDTO;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.exceptions.InvalidOperationException;
+import gabri.dev.chatapp.exceptions.ResourceNotFoundException;
+import gabri.dev.chatapp.exceptions.UnauthorizedException;
+import gabri.dev.chatapp.mappers.ChatRoomMapper;
+import gabri.dev.chatapp.mappers.MessageMapper;
+import gabri.dev.chatapp.mappers.UserMapper;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ChatRoomServiceTest {
+
+    private static final long ROOM = 7L;
+
+    private final ChatRoomRepository chatRoomRepository = mock(ChatRoomRepository.class);
+    private final UserService userService = mock(UserService.class);
+    private final ReadStateService readStateService = mock(ReadStateService.class);
+    private final ChatRoomMembershipService membershipService = mock(ChatRoomMembershipService.class);
+    private final RecentMessageCache recentMessageCache = mock(RecentMessageCache.class);
+    private final ChatRoomDeletionService deletionService = mock(ChatRoomDeletionService.class);
+    private final User alice = User.builder().id(1L).username("alice").build();
+    private final User bob = User.builder().id(2L).username("bob").build();
+
+    private ChatRoomService chatRoomService;
+
+    @BeforeEach
+    void setUp() {
+        when(userService.getCurrentUser()).thenReturn(alice);
+        when(chatRoomRepository.markDeleted(eq(ROOM), any(LocalDateTime.class))).thenReturn(1);
+
+        chatRoomService = new ChatRoomService(chatRoomRepository, mock(MessageRepository.class), userService,
+                readStateService, membershipService, mock(ChatRoomMapper.class), mock(MessageMapper.class),
+                mock(UserMapper.class), recentMessageCache, deletionService, mock(ModelMapper.class));
+    }
+
+    @Test
+    void deletedRoomIsMarkedAndLeftWithoutParticipants() {
+        ChatRoom room = room(ChatRoom.ChatRoomType.GROUP, alice);
+        ChatRoomDeletionDTO pending = new ChatRoomDeletionDTO();
+        when(deletionService.schedule(eq(room), eq(alice), any(LocalDateTime.class))).thenReturn(pending);
+
+        assertSame(pending, chatRoomService.deleteChatRoom(ROOM));
+
+        verify(chatRoomRepository).markDeleted(eq(ROOM), any(LocalDateTime.class));
+        verify(readStateService).deleteChatRoomState(ROOM);
+        verify(chatRoomRepository).deleteParticipantsByChatRoomId(ROOM);
+        verify(membershipService).removeChatRoom(ROOM);
+        verify(recentMessageCache).invalidate(ROOM);
+    }
+
+    @Test
+    void roomAlreadyMarkedIsNotDeletedTwice() {
+        room(ChatRoom.ChatRoomType.GROUP, alice);
+        when(chatRoomRepository.markDeleted(eq(ROOM), any(LocalDateTime.class))).thenReturn(0);
+
+        assertThrows(ResourceNotFoundException.class, () -> chatRoomService.deleteChatRoom(ROOM));
+
+        verify(chatRoomRepository, never()).deleteParticipantsByChatRoomId(anyLong());
+        verifyNoInteractions(deletionService);
+    }
+
+    @Test
+    void onlyTheCreatorDeletesAGroupRoom() {
+        room(ChatRoom.ChatRoomType.GROUP, bob);
+
+        assertThrows(UnauthorizedException.class, () -> chatRoomService.deleteChatRoom(ROOM));
+
+        verify(chatRoomRepository, never()).markDeleted(anyLong(), any());
+    }
+
+    @Test
+    void privateRoomsAreNotDeleted() {
+        room(ChatRoom.ChatRoomType.PRIVATE, alice);
+
+        assertThrows(InvalidOperationException.class, () -> chatRoomService.deleteChatRoom(ROOM));
+
+        verify(chatRoomRepository, never()).markDeleted(anyLong(), any());
+    }
+
+    @Test
+    void namesWithTheDeletedMarkerAreRejected() {
+        String reserved = "general" + ChatRoom.DELETED_NAME_MARKER + "3";
+        room(ChatRoom.ChatRoomType.GROUP, alice);
+
+        assertThrows(InvalidOperationException.class, () -> chatRoomService.createGroupChatRoom(
+                ChatRoomCreateDTO.builder().name(reserved).type(ChatRoom.ChatRoomType.GROUP).build()));
+        assertThrows(InvalidOperationException.class, () -> chatRoomService.updateChatRoom(ROOM,
+                ChatRoomUpdateDTO.builder().name(reserved).build()));
+
+        verify(chatRoomRepository, never()).existsByName(any());
+        verify(chatRoomRepository, never()).save(any());
+    }
+
+    private ChatRoom room(ChatRoom.ChatRoomType type, User createdBy) {
+        ChatRoom room = ChatRoom.builder().id(ROOM).name("general").type(type).createdBy(createdBy).build();
+        when(chatRoomRepository.findActiveById(ROOM)).thenReturn(Optional.of(room));
+        return room;
+    }
+}
@@ -0,0 +1,142 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.entities.EmailOutboxMessage;
+import gabri.dev.chatapp.mail.EmailTransport;
+import gabri.dev.chatapp.repositories.EmailOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class EmailOutboxServiceTest {
+
+    private static final long POLL_INTERVAL_MS = 5000;
+    private static final long RETRY_BASE_DELAY_MS = 30000;
+
+    private final EmailOutboxRepository outboxRepository = mock(EmailOutboxRepository.class);
+    private final EmailTransport transport = mock(EmailTransport.class);
+
+    private EmailOutboxService outbox;
+
+    @BeforeEach
+    void setUp() {
+        outbox = new EmailOutboxService(outboxRepository, transport, mock(ClusterService.class),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(outbox, "fromEmail", "carrot@example.com");
+        ReflectionTestUtils.setField(outbox, "batchSize", 10);
+        ReflectionTestUtils.setField(outbox, "pollIntervalMs", POLL_INTERVAL_MS);
+        ReflectionTestUtils.setField(outbox, "sendIntervalMs", 1000L);
+        ReflectionTestUtils.setField(outbox, "maxAttempts", 3);
+        ReflectionTestUtils.setField(outbox, "retryBaseDelayMs", RETRY_BASE_DELAY_MS);
+        ReflectionTestUtils.setField(outbox, "retryMaxDelayMs", 3600000L);
+    }
+
+    @Test
+    void rejectedRecipientBacksOffOnlyItsOwnEmail() {
+        due(row(1L, "alice@example.com", 0), row(2L, "nobody@example.com", 0));
+        when(transport.send(anyList())).thenAnswer(invocation -> failedTo(invocation.getArgument(0), "nobody@example.com"));
+
+        long delay = dispatch();
+
+        verify(outboxRepository).deleteByIdIn(List.of(1L));
+        verify(outboxRepository).scheduleRetry(eq(2L), any(LocalDateTime.class), eq("550 no such user"));
+        verify(outboxRepository, never()).scheduleRetry(eq(1L), any(), any());
+        assertEquals(POLL_INTERVAL_MS, delay);
+        assertEquals(0, consecutiveFailures());
+    }
+
+    @Test
+    void batchOfRejectedRecipientsDoesNotPauseTheDispatcher() {
+        due(row(1L, "nobody@example.com", 0), row(2L, "nobody@example.com", 0));
+        when(transport.send(anyList())).thenAnswer(invocation -> failedTo(invocation.getArgument(0), "nobody@example.com"));
+
+        long delay = dispatch();
+
+        verify(outboxRepository, never()).deleteByIdIn(any());
+        verify(outboxRepository, times(2)).scheduleRetry(anyLong(), any(LocalDateTime.class), eq("550 no such user"));
+        assertEquals(POLL_INTERVAL_MS, delay);
+        assertEquals(0, consecutiveFailures());
+    }
+
+    @Test
+    void transportFailurePausesTheDispatcherUntilABatchIsSent() {
+        due(row(1L, "alice@example.com", 0), row(2L, "bob@example.com", 0));
+        when(transport.send(anyList())).thenThrow(new MailSendException("Connection refused"));
+
+        long first = dispatch();
+        long second = dispatch();
+
+        verify(outboxRepository, never()).deleteByIdIn(any());
+        verify(outboxRepository, times(2)).scheduleRetry(eq(1L), any(LocalDateTime.class), eq("Connection refused"));
+        verify(outboxRepository, times(2)).scheduleRetry(eq(2L), any(LocalDateTime.class), eq("Connection refused"));
+        assertTrue(first >= RETRY_BASE_DELAY_MS && first < 2 * RETRY_BASE_DELAY_MS);
+        assertTrue(second >= 2 * RETRY_BASE_DELAY_MS);
+        assertEquals(2, consecutiveFailures());
+
+        reset(transport);
+        when(transport.send(anyList())).thenReturn(Map.of());
+
+        assertEquals(POLL_INTERVAL_MS, dispatch());
+        assertEquals(0, consecutiveFailures());
+    }
+
+    @Test
+    void emailIsDiscardedAfterTheLastAttempt() {
+        due(row(1L, "nobody@example.com", 2));
+        when(transport.send(anyList())).thenAnswer(invocation -> failedTo(invocation.getArgument(0), "nobody@example.com"));
+
+        dispatch();
+
+        verify(outboxRepository).markFailed(eq(1L), any(LocalDateTime.class), eq("550 no such user"));
+        verify(outboxRepository, never()).scheduleRetry(anyLong(), any(), any());
+    }
+
+    private long dispatch() {
+        return ReflectionTestUtils.<Long>invokeMethod(outbox, "dispatchBatch");
+    }
+
+    private int consecutiveFailures() {
+        return (int) ReflectionTestUtils.getField(outbox, "consecutiveFailures");
+    }
+
+    private void due(EmailOutboxMessage... rows) {
+        when(outboxRepository.findDue(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(rows));
+    }
+
+    private static EmailOutboxMessage row(Long id, String recipient, int attempts) {
+        return EmailOutboxMessage.builder()
+                .id(id)
+                .recipient(recipient)
+                .subject("Verifica tu cuenta")
+                .body("...")
+                .attempts(attempts)
+                .build();
+    }
+
+    /**
+     * Resultado del transporte con los emails a {@code recipient} rechazados uno por uno.
+     */
+    private static Map<SimpleMailMessage, Exception> failedTo(List<SimpleMailMessage> messages, String recipient) {
+        Map<SimpleMailMessage, Exception> failed = new IdentityHashMap<>();
+        for (SimpleMailMessage message : messages) {
+            if (recipient.equals(message.getTo()[0])) {
+                failed.put(message, new MailSendException("550 no such user"));
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,322 @@
+package gabri.dev.chatapp.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.dtos.MessageCursor;
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.MessageSliceDTO;
+import gabri.dev.chatapp.dtos.UserDTO;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.entities.MessageArchiveSegment;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.exceptions.CarrotException;
+import gabri.dev.chatapp.mappers.MessageMapper;
+import gabri.dev.chatapp.mappers.UserMapper;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import gabri.dev.chatapp.repositories.MessageArchiveSegmentRepository;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import gabri.dev.chatapp.repositories.projections.MessageView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessageArchiveServiceTest {
+
+    private static final long ROOM = 7L;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 10, 0);
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final ChatRoomRepository chatRoomRepository = mock(ChatRoomRepository.class);
+    private final MessageArchiveSegmentRepository segmentRepository = mock(MessageArchiveSegmentRepository.class);
+    private final MessageMapper messageMapper = mock(MessageMapper.class);
+    private final UserCacheService userCache = mock(UserCacheService.class);
+    private final ClusterService clusterService = mock(ClusterService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    // Mensajes en la base y segmentos registrados
+    private final List<MessageView> database = new CopyOnWriteArrayList<>();
+    private final List<MessageArchiveSegment> registered = new CopyOnWriteArrayList<>();
+    private final AtomicLong segmentIds = new AtomicLong();
+
+    @TempDir
+    Path directory;
+
+    private MessageArchiveService archive;
+
+    @BeforeEach
+    void setUp() {
+        when(chatRoomRepository.findRetentionPolicies()).thenReturn(List.<Object[]>of(new Object[]{ROOM, 30}));
+        when(messageRepository.findArchiveBatch(eq(ROOM), any(LocalDateTime.class), any(Pageable.class)))
+                .thenAnswer(invocation -> database.stream()
+                        .filter(view -> view.sentAt().isBefore(invocation.getArgument(1, LocalDateTime.class)))
+                        .sorted(Comparator.comparing(MessageView::sentAt).thenComparing(MessageView::id))
+                        .limit(invocation.getArgument(2, Pageable.class).getPageSize())
+                        .toList());
+        when(messageRepository.deleteByIdIn(anyCollection())).thenAnswer(invocation -> {
+            List<Long> ids = List.copyOf(invocation.getArgument(0));
+            database.removeIf(view -> ids.contains(view.id()));
+            return ids.size();
+        });
+        when(messageMapper.toDTO(any(MessageView.class))).thenAnswer(invocation -> dto(invocation.getArgument(0)));
+        when(segmentRepository.save(any(MessageArchiveSegment.class))).thenAnswer(invocation -> {
+            MessageArchiveSegment segment = invocation.getArgument(0);
+            segment.setId(segmentIds.incrementAndGet());
+            registered.add(segment);
+            return segment;
+        });
+        when(segmentRepository.findByChatRoomIdInOrder(ROOM)).thenAnswer(invocation -> registered.stream()
+                .sorted(Comparator.comparing(MessageArchiveSegment::getLastSentAt))
+                .toList());
+        when(segmentRepository.findBetween(eq(ROOM), any(), any(), any(), any())).thenAnswer(invocation -> registered.stream()
+                .sorted(Comparator.comparing(MessageArchiveSegment::getLastSentAt).reversed())
+                .toList());
+        when(userCache.getById(anyLong())).thenReturn(Optional.empty());
+
+        archive = new MessageArchiveService(messageRepository, chatRoomRepository, segmentRepository, messageMapper,
+                userCache, mock(UserMapper.class), clusterService, objectMapper,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(archive, "enabled", true);
+        ReflectionTestUtils.setField(archive, "directory", directory);
+        ReflectionTestUtils.setField(archive, "defaultRetentionDays", 30);
+        ReflectionTestUtils.setField(archive, "segmentSize", 3);
+        ReflectionTestUtils.setField(archive, "minSegmentSize", 2);
+        ReflectionTestUtils.setField(archive, "cacheMaxMessages", 100L);
+        archive.init();
+    }
+
+    @Test
+    void disabledArchiveDoesNothing() {
+        ReflectionTestUtils.setField(archive, "enabled", false);
+        saveAll(1, 3);
+
+        archive.archiveExpiredMessages();
+
+        verifyNoInteractions(chatRoomRepository, segmentRepository);
+        assertEquals(3, database.size());
+    }
+
+    @Test
+    void segmentFileIsOnDiskBeforeItIsRegistered() {
+        saveAll(1, 7);
+        doAnswer(invocation -> {
+            MessageArchiveSegment segment = invocation.getArgument(0);
+            assertTrue(Files.exists(roomFile(segment.getFileName())), "el archivo se escribe antes de registrarlo");
+            segment.setId(segmentIds.incrementAndGet());
+            registered.add(segment);
+            return segment;
+        }).when(segmentRepository).save(any(MessageArchiveSegment.class));
+
+        archive.archiveExpiredMessages();
+
+        // Dos segmentos de 3; el último mensaje no alcanza el mínimo y queda en la base
+        assertEquals(List.of("1-3.ndjson.gz", "4-6.ndjson.gz"),
+                registered.stream().map(MessageArchiveSegment::getFileName).toList());
+        assertEquals(List.of(7L), database.stream().map(MessageView::id).toList());
+        assertFalse(Files.exists(roomFile("1-3.ndjson.gz.tmp")));
+    }
+
+    @Test
+    void batchChangedWhileWritingIsNotArchived() {
+        saveAll(1, 3);
+        List<MessageView> read = List.copyOf(database);
+        doReturn(read)
+                .doReturn(List.of(read.get(0), edited(read.get(1)), read.get(2)))
+                .when(messageRepository).findArchiveBatch(eq(ROOM), any(LocalDateTime.class), any(Pageable.class));
+
+        archive.archiveExpiredMessages();
+
+        assertTrue(registered.isEmpty());
+        assertEquals(3, database.size());
+        verify(messageRepository, never()).deleteByIdIn(anyCollection());
+        assertFalse(Files.exists(roomFile("1-3.ndjson.gz")));
+    }
+
+    @Test
+    void failedRegistrationDeletesTheFileAndKeepsTheMessages() {
+        saveAll(1, 3);
+        doThrow(new IllegalStateException("database is locked"))
+                .when(segmentRepository).save(any(MessageArchiveSegment.class));
+
+        archive.archiveExpiredMessages();
+
+        assertEquals(3, database.size());
+        assertFalse(Files.exists(roomFile("1-3.ndjson.gz")));
+    }
+
+    @Test
+    void orphanFilesAreDeletedOnTheNextRun() throws Exception {
+        saveAll(1, 3);
+        archive.archiveExpiredMessages();
+        Path registeredFile = roomFile("1-3.ndjson.gz");
+        Path oldOrphan = Files.writeString(roomFile("8-9.ndjson.gz"), "x");
+        Path oldTemporary = Files.writeString(roomFile("8-9.ndjson.gz.tmp"), "x");
+        Path recentOrphan = Files.writeString(roomFile("10-11.ndjson.gz"), "x");
+        FileTime old = FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS));
+        for (Path file : List.of(registeredFile, oldOrphan, oldTemporary)) {
+            Files.setLastModifiedTime(file, old);
+        }
+
+        archive.archiveExpiredMessages();
+
+        assertTrue(Files.exists(registeredFile));
+        assertFalse(Files.exists(oldOrphan));
+        assertFalse(Files.exists(oldTemporary));
+        assertTrue(Files.exists(recentOrphan), "un archivo reciente puede ser de un segmento por registrarse");
+    }
+
+    @Test
+    void orphansOfRoomsOwnedByOtherNodesAreKept() throws Exception {
+        when(clusterService.isEnabled()).thenReturn(true);
+        when(clusterService.isOwner(ROOM)).thenReturn(false);
+        Files.createDirectories(directory.resolve("room-" + ROOM));
+        Path orphan = Files.writeString(roomFile("8-9.ndjson.gz"), "x");
+        Files.setLastModifiedTime(orphan, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+
+        archive.archiveExpiredMessages();
+
+        assertTrue(Files.exists(orphan));
+    }
+
+    @Test
+    void archivedMessagesAreReadBetweenPositionsNewestFirst() {
+        saveAll(1, 6);
+        archive.archiveExpiredMessages();
+
+        List<MessageDTO> page = archive.findBetween(ROOM, new MessageCursor(at(5), 5L), new MessageCursor(at(1), 1L), 10);
+
+        assertEquals(List.of(4L, 3L, 2L), ids(page));
+        assertEquals("m3", page.get(1).getContent());
+        assertEquals(List.of(6L, 5L), ids(archive.findBetween(ROOM, null, null, 2)));
+    }
+
+    @Test
+    void unreadableSegmentFailsAndIsNotCached() throws Exception {
+        saveAll(1, 3);
+        archive.archiveExpiredMessages();
+        Path file = roomFile("1-3.ndjson.gz");
+        byte[] contents = Files.readAllBytes(file);
+        Files.delete(file);
+
+        assertThrows(CarrotException.class, () -> archive.findBetween(ROOM, null, null, 10));
+
+        Files.write(file, contents);
+        assertEquals(List.of(3L, 2L, 1L), ids(archive.findBetween(ROOM, null, null, 10)));
+    }
+
+    @Test
+    void historyContinuesFromTheDatabaseIntoTheArchive() {
+        saveAll(1, 3);
+        archive.archiveExpiredMessages();
+        save(4, LocalDateTime.now());
+        save(5, LocalDateTime.now().plusSeconds(1));
+        when(messageRepository.findHistoryFirstPage(eq(ROOM), any(Pageable.class))).thenAnswer(invocation -> database.stream()
+                .sorted(Comparator.comparing(MessageView::sentAt).thenComparing(MessageView::id).reversed())
+                .limit(invocation.getArgument(1, Pageable.class).getPageSize())
+                .toList());
+        when(messageRepository.findHistoryBefore(eq(ROOM), any(), any(), any(Pageable.class))).thenReturn(List.of());
+        UserService userService = mock(UserService.class);
+        when(userService.getCurrentUser()).thenReturn(User.builder().id(1L).username("alice").build());
+        MessageService messageService = new MessageService(messageRepository, mock(ChatRoomService.class),
+                mock(ChatRoomMembershipService.class), userService, messageMapper, mock(RecentMessageCache.class), archive);
+
+        MessageSliceDTO first = messageService.getMessageHistory(ROOM, null, 3);
+        MessageSliceDTO second = messageService.getMessageHistory(ROOM, first.getNextCursor(), 3);
+
+        assertEquals(List.of(5L, 4L, 3L), ids(first.getMessages()));
+        assertTrue(first.getHasMore());
+        assertEquals(List.of(2L, 1L), ids(second.getMessages()));
+        assertFalse(second.getHasMore());
+    }
+
+    @Test
+    void exportWritesArchivedMessagesFirstInOrder() throws Exception {
+        saveAll(1, 6);
+        archive.archiveExpiredMessages();
+        save(7, LocalDateTime.now());
+        when(messageRepository.findExportFirstBatch(eq(ROOM), any(Pageable.class))).thenAnswer(invocation -> List.copyOf(database));
+        UserService userService = mock(UserService.class);
+        when(userService.getCurrentUser()).thenReturn(User.builder().id(1L).username("alice").build());
+        MessageExportService exportService = new MessageExportService(messageRepository,
+                mock(ChatRoomMembershipService.class), userService, messageMapper, objectMapper, archive);
+        ReflectionTestUtils.setField(exportService, "batchSize", 10);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.exportChatRoom(ROOM, false).writeTo(out);
+
+        List<Long> exported = out.toString(StandardCharsets.UTF_8).lines()
+                .map(line -> {
+                    try {
+                        return objectMapper.readValue(line, MessageDTO.class).getId();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .toList();
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L), exported);
+    }
+
+    private Path roomFile(String fileName) {
+        return directory.resolve("room-" + ROOM).resolve(fileName);
+    }
+
+    private void saveAll(int fromId, int toId) {
+        for (int id = fromId; id <= toId; id++) {
+            save(id, at(id));
+        }
+    }
+
+    private void save(long id, LocalDateTime sentAt) {
+        database.add(new MessageView(id, "m" + id, Message.MessageType.CHAT, sentAt, null, false, ROOM,
+                1L, "alice", "alice@example.com", null, null, null, true, START, null));
+    }
+
+    private static MessageView edited(MessageView view) {
+        return new MessageView(view.id(), "editado", view.type(), view.sentAt(), LocalDateTime.now(), true,
+                view.chatRoomId(), view.senderId(), view.senderUsername(), view.senderEmail(), view.senderFullName(),
+                view.senderAvatarUrl(), view.senderStatus(), view.senderEnabled(), view.senderCreatedAt(),
+                view.senderLastSeenAt());
+    }
+
+    private static MessageDTO dto(MessageView view) {
+        return MessageDTO.builder()
+                .id(view.id())
+                .content(view.content())
+                .type(view.type())
+                .sentAt(view.sentAt())
+                .editedAt(view.editedAt())
+                .isEdited(view.isEdited())
+                .chatRoomId(view.chatRoomId())
+                .sender(UserDTO.builder().id(view.senderId()).username(view.senderUsername()).build())
+                .build();
+    }
+
+    private static LocalDateTime at(long minute) {
+        return START.plusMinutes(minute);
+    }
+
+    private static List<Long> ids(List<MessageDTO> messages) {
+        return messages.stream().map(MessageDTO::getId).toList();
+    }
+}
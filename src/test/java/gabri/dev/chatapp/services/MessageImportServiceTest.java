@@ -0,0 +1,155 @@
+package gabri.dev.chatapp.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gabri.dev.chatapp.dtos.MessageImportResultDTO;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import gabri.dev.chatapp.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessageImportServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final ChatRoomRepository chatRoomRepository = mock(ChatRoomRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final ChatRoomMembershipService membershipService = mock(ChatRoomMembershipService.class);
+    private final ReadStateService readStateService = mock(ReadStateService.class);
+    private final RecentMessageCache recentMessageCache = mock(RecentMessageCache.class);
+
+    // Contenidos de cada lote insertado, en orden
+    private final List<List<String>> batches = new ArrayList<>();
+
+    private MessageImportService service;
+
+    @BeforeEach
+    void setUp() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    Collection<?> batch = invocation.getArgument(1);
+                    batches.add(batch.stream().map(MessageImportServiceTest::contentOf).toList());
+                    return new int[0][];
+                });
+        when(chatRoomRepository.findActiveById(7L)).thenReturn(Optional.of(ChatRoom.builder().id(7L).build()));
+        when(chatRoomRepository.findActiveById(9L)).thenReturn(Optional.empty());
+        when(messageRepository.findMaxIdByChatRoomId(7L)).thenReturn(100L, 105L);
+        when(userRepository.findIdByUsername("alice")).thenReturn(Optional.of(1L));
+        when(userRepository.findIdByUsername("nadie")).thenReturn(Optional.empty());
+        when(membershipService.isParticipant(7L, 1L)).thenReturn(true);
+
+        service = new MessageImportService(jdbcTemplate, new TransactionTemplate(transactionManager),
+                new ObjectMapper().findAndRegisterModules(), messageRepository, chatRoomRepository, userRepository,
+                mock(ChatRoomService.class), membershipService, readStateService, recentMessageCache,
+                mock(UserService.class));
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+    }
+
+    @Test
+    void insertsInBatchesAndRebuildsDerivedDataOnce() throws Exception {
+        MessageImportResultDTO result = service.importMessages(ndjson(
+                line(7, "alice", "m1"), line(7, "alice", "m2"), line(7, "alice", "m3"),
+                line(7, "alice", "m4"), line(7, "alice", "m5")), null);
+
+        assertEquals(5, result.getImported());
+        assertEquals(0, result.getSkipped());
+        assertEquals(List.of(List.of("m1", "m2"), List.of("m3", "m4"), List.of("m5")), batches);
+        verify(transactionManager, times(4)).commit(any());
+        verify(chatRoomRepository).recalculateMessageStats(Set.of(7L));
+        verify(recentMessageCache).invalidate(7L);
+        verify(readStateService).markAppendedHistoryRead(7L, 100L, 105L);
+        verify(userRepository, times(1)).findIdByUsername("alice");
+    }
+
+    @Test
+    void skipsUnknownRoomsSendersAndInvalidLines() throws Exception {
+        MessageImportResultDTO result = service.importMessages(ndjson(
+                line(9, "alice", "sala borrada"),
+                line(9, "alice", "otra vez"),
+                line(7, "nadie", "desconocido"),
+                "{no es json",
+                line(7, "alice", "ok")), null);
+
+        assertEquals(1, result.getImported());
+        assertEquals(4, result.getSkipped());
+        assertEquals(List.of(
+                "Línea 1: sala inexistente: 9",
+                "Línea 2: sala inexistente: 9",
+                "Línea 3: remitente desconocido: nadie",
+                "Línea 4: JSON inválido"), result.getErrors());
+        assertEquals(List.of(List.of("ok")), batches);
+        verify(chatRoomRepository, times(1)).findActiveById(9L);
+        verify(chatRoomRepository).recalculateMessageStats(Set.of(7L));
+    }
+
+    @Test
+    void targetRoomOverridesEachLine() throws Exception {
+        MessageImportResultDTO result = service.importMessages(ndjson(
+                line(9, "alice", "a la sala 7"), line(42, "alice", "también")), 7L);
+
+        assertEquals(2, result.getImported());
+        verify(chatRoomRepository, never()).findActiveById(9L);
+    }
+
+    @Test
+    void resumesFromTheGivenLine() throws Exception {
+        MessageImportResultDTO result = service.importMessages(ndjson(
+                line(7, "alice", "m1"), line(7, "alice", "m2"), "{ya importada y rota",
+                line(7, "alice", "m4"), line(7, "alice", "m5")), null, 4);
+
+        assertEquals(2, result.getImported());
+        assertEquals(0, result.getSkipped());
+        assertEquals(List.of(List.of("m4", "m5")), batches);
+    }
+
+    @Test
+    void failedBatchKeepsCommittedBatchesAndRebuildsThem() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    batches.add(List.of());
+                    return new int[0][];
+                })
+                .thenThrow(new IllegalStateException("disk I/O error"));
+
+        assertThrows(IllegalStateException.class, () -> service.importMessages(ndjson(
+                line(7, "alice", "m1"), line(7, "alice", "m2"), line(7, "alice", "m3"),
+                line(7, "alice", "m4")), null));
+
+        assertEquals(1, batches.size());
+        verify(chatRoomRepository).recalculateMessageStats(Set.of(7L));
+        verify(readStateService).markAppendedHistoryRead(7L, 100L, 105L);
+    }
+
+    private static String line(long chatRoomId, String username, String content) {
+        return "{\"content\":\"" + content + "\",\"type\":\"CHAT\",\"sentAt\":\"2024-01-01T10:00:00\"," +
+                "\"isEdited\":false,\"sender\":{\"username\":\"" + username + "\"},\"chatRoomId\":" + chatRoomId + "}";
+    }
+
+    private static InputStream ndjson(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String contentOf(Object importedMessage) {
+        return (String) ReflectionTestUtils.invokeMethod(importedMessage, "content");
+    }
+}
@@ -0,0 +1,165 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.MessageSendDTO;
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.exceptions.InvalidOperationException;
+import gabri.dev.chatapp.exceptions.UnauthorizedException;
+import gabri.dev.chatapp.mappers.MessageMapper;
+import gabri.dev.chatapp.repositories.ChatRoomRepository;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessageIngestServiceTest {
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final ChatRoomRepository chatRoomRepository = mock(ChatRoomRepository.class);
+    private final UserCacheService userCache = mock(UserCacheService.class);
+    private final ChatRoomMembershipService membershipService = mock(ChatRoomMembershipService.class);
+    private final MessageMapper messageMapper = mock(MessageMapper.class);
+    private final RecentMessageCache recentMessageCache = mock(RecentMessageCache.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    private final AtomicLong ids = new AtomicLong();
+    private MessageIngestService service;
+
+    @BeforeEach
+    void setUp() {
+        when(userCache.getByUsername(anyString())).thenAnswer(invocation -> Optional.of(
+                User.builder().id((long) invocation.getArgument(0, String.class).hashCode())
+                        .username(invocation.getArgument(0)).build()));
+        when(chatRoomRepository.getReferenceById(anyLong())).thenAnswer(invocation ->
+                ChatRoom.builder().id(invocation.getArgument(0)).build());
+        when(messageRepository.save(any(Message.class))).thenAnswer(invocation -> {
+            Message message = invocation.getArgument(0);
+            message.setId(ids.incrementAndGet());
+            return message;
+        });
+        when(messageMapper.toDTO(any(Message.class))).thenAnswer(invocation -> {
+            Message message = invocation.getArgument(0);
+            return MessageDTO.builder()
+                    .id(message.getId())
+                    .content(message.getContent())
+                    .chatRoomId(message.getChatRoom().getId())
+                    .build();
+        });
+
+        service = new MessageIngestService(messageRepository, chatRoomRepository, userCache,
+                membershipService, messageMapper, recentMessageCache, new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(service, "queueCapacity", 100);
+        ReflectionTestUtils.setField(service, "batchSize", 5);
+        ReflectionTestUtils.setField(service, "maxDelayMs", 1000L);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        service.stop();
+    }
+
+    @Test
+    void savesFullBatchesInOneTransactionEach() throws Exception {
+        service.start();
+
+        List<CompletableFuture<MessageDTO>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(service.submit(message(1L, "hola " + i), "alice"));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            MessageDTO saved = futures.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(i + 1, saved.getId());
+            assertEquals("hola " + i, saved.getContent());
+        }
+
+        verify(transactionManager, times(2)).commit(any());
+        verify(chatRoomRepository).registerNewMessages(eq(1L), eq(5L), eq(5L), any(), eq("hola 4"));
+        verify(chatRoomRepository).registerNewMessages(eq(1L), eq(5L), eq(10L), any(), eq("hola 9"));
+        verify(recentMessageCache, times(10)).messageAdded(any());
+    }
+
+    @Test
+    void flushesPartialBatchAfterMaxDelay() throws Exception {
+        ReflectionTestUtils.setField(service, "maxDelayMs", 50L);
+        service.start();
+
+        CompletableFuture<MessageDTO> first = service.submit(message(1L, "uno"), "alice");
+        CompletableFuture<MessageDTO> second = service.submit(message(2L, "dos"), "alice");
+
+        assertEquals(1L, first.get(5, TimeUnit.SECONDS).getChatRoomId());
+        assertEquals(2L, second.get(5, TimeUnit.SECONDS).getChatRoomId());
+        verify(transactionManager, times(1)).commit(any());
+        verify(chatRoomRepository).registerNewMessages(eq(1L), eq(1L), anyLong(), any(), eq("uno"));
+        verify(chatRoomRepository).registerNewMessages(eq(2L), eq(1L), anyLong(), any(), eq("dos"));
+    }
+
+    @Test
+    void validationErrorOnlyFailsItsOwnMessage() throws Exception {
+        ReflectionTestUtils.setField(service, "maxDelayMs", 50L);
+        doThrow(new UnauthorizedException("No eres participante de esta sala"))
+                .when(membershipService).verifyParticipant(eq(1L), argThat(user -> "mallory".equals(user.getUsername())));
+        service.start();
+
+        CompletableFuture<MessageDTO> ok = service.submit(message(1L, "hola"), "alice");
+        CompletableFuture<MessageDTO> rejected = service.submit(message(1L, "intruso"), "mallory");
+
+        assertEquals("hola", ok.get(5, TimeUnit.SECONDS).getContent());
+        ExecutionException error = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(UnauthorizedException.class, error.getCause());
+        verify(transactionManager, times(1)).commit(any());
+        verify(chatRoomRepository).registerNewMessages(eq(1L), eq(1L), anyLong(), any(), eq("hola"));
+    }
+
+    @Test
+    void failedBatchIsRetriedMessageByMessage() throws Exception {
+        ReflectionTestUtils.setField(service, "maxDelayMs", 50L);
+        when(chatRoomRepository.registerNewMessages(anyLong(), anyLong(), anyLong(), any(), anyString()))
+                .thenThrow(new IllegalStateException("database is locked"))
+                .thenReturn(1);
+        service.start();
+
+        CompletableFuture<MessageDTO> first = service.submit(message(1L, "uno"), "alice");
+        CompletableFuture<MessageDTO> second = service.submit(message(1L, "dos"), "bob");
+
+        assertEquals("uno", first.get(5, TimeUnit.SECONDS).getContent());
+        assertEquals("dos", second.get(5, TimeUnit.SECONDS).getContent());
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void rejectsBlankContentWithoutQueueing() {
+        service.start();
+
+        CompletableFuture<MessageDTO> future = service.submit(message(1L, "  "), "alice");
+
+        ExecutionException error = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(InvalidOperationException.class, error.getCause());
+        verifyNoInteractions(messageRepository);
+    }
+
+    private static MessageSendDTO message(Long chatRoomId, String content) {
+        MessageSendDTO sendDTO = new MessageSendDTO();
+        sendDTO.setChatRoomId(chatRoomId);
+        sendDTO.setContent(content);
+        return sendDTO;
+    }
+}
@@ -0,0 +1,141 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.dtos.websocket.UserStatusWS;
+import gabri.dev.chatapp.entities.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PresenceServiceTest {
+
+    private final ChatRoomMembershipService membershipService = mock(ChatRoomMembershipService.class);
+    private final UserCacheService userCache = mock(UserCacheService.class);
+    private final SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    // Estados guardados en cada lote, como "userId:STATUS"
+    private final List<List<String>> saved = new ArrayList<>();
+
+    private PresenceService service;
+
+    @BeforeEach
+    void setUp() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    Collection<UserStatusWS> changes = invocation.getArgument(1);
+                    saved.add(changes.stream().map(change -> change.getUserId() + ":" + change.getStatus()).toList());
+                    return new int[0][];
+                });
+        when(membershipService.getChatRoomIds(anyLong())).thenReturn(new long[]{10L});
+        when(membershipService.getParticipantIds(10L)).thenReturn(new long[]{1L, 2L});
+
+        service = new PresenceService(membershipService, userCache, messagingTemplate, jdbcTemplate,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(service, "offlineGraceMs", 0L);
+    }
+
+    @Test
+    void publishesNetChangesOnce() {
+        service.sessionConnected("s1", 1L, "alice");
+        service.sessionConnected("s2", 1L, "alice");
+        service.sessionConnected("s3", 2L, "bob");
+
+        service.flush();
+        service.flush();
+
+        assertEquals(List.of(List.of("1:ONLINE", "2:ONLINE")), saved);
+        verify(userCache).evict(1L, "alice");
+        verify(messagingTemplate).convertAndSendToUser(eq("alice"), eq("/queue/user-status"), any());
+        verify(messagingTemplate).convertAndSendToUser(eq("bob"), eq("/queue/user-status"), any());
+    }
+
+    @Test
+    void reconnectWithinGraceIsNotAChange() {
+        ReflectionTestUtils.setField(service, "offlineGraceMs", 60_000L);
+        service.sessionConnected("s1", 1L, "alice");
+        service.flush();
+
+        service.sessionDisconnected("s1");
+        service.flush();
+        service.sessionConnected("s2", 1L, "alice");
+        service.flush();
+
+        assertEquals(List.of(List.of("1:ONLINE")), saved);
+        assertTrue(service.isOnline(1L));
+    }
+
+    @Test
+    void lastSessionClosedPublishesOffline() {
+        service.sessionConnected("s1", 1L, "alice");
+        service.flush();
+
+        service.sessionDisconnected("s1");
+        service.sessionDisconnected("s1");
+        service.flush();
+
+        assertEquals(List.of(List.of("1:ONLINE"), List.of("1:OFFLINE")), saved);
+        assertFalse(service.isOnline(1L));
+        assertTrue(service.getOnlineUserIds().isEmpty());
+    }
+
+    @Test
+    void failedSaveIsRetriedAndNotNotified() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new IllegalStateException("database is locked"))
+                .thenAnswer(invocation -> {
+                    Collection<UserStatusWS> changes = invocation.getArgument(1);
+                    saved.add(changes.stream().map(change -> change.getUserId() + ":" + change.getStatus()).toList());
+                    return new int[0][];
+                });
+        service.sessionConnected("s1", 1L, "alice");
+        service.sessionConnected("s2", 2L, "bob");
+
+        service.flush();
+        verifyNoInteractions(messagingTemplate);
+        verifyNoInteractions(userCache);
+
+        service.flush();
+        assertEquals(1, saved.size());
+        assertEquals(2, saved.get(0).size());
+        verify(messagingTemplate, times(2)).convertAndSendToUser(anyString(), eq("/queue/user-status"), any());
+    }
+
+    @Test
+    void offlineChangeSurvivesFailedSave() {
+        service.sessionConnected("s1", 1L, "alice");
+        service.sessionConnected("s2", 2L, "bob");
+        service.flush();
+        saved.clear();
+
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new IllegalStateException("database is locked"))
+                .thenAnswer(invocation -> {
+                    Collection<UserStatusWS> changes = invocation.getArgument(1);
+                    saved.add(changes.stream().map(change -> change.getUserId() + ":" + change.getStatus()).toList());
+                    return new int[0][];
+                });
+        service.sessionDisconnected("s1");
+        service.flush();
+        service.flush();
+
+        assertEquals(List.of(List.of("1:OFFLINE")), saved);
+        ArgumentCaptor<Object> digest = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate, times(2)).convertAndSendToUser(eq("bob"), eq("/queue/user-status"), digest.capture());
+        List<?> last = (List<?>) digest.getValue();
+        assertEquals(User.UserStatus.OFFLINE, ((UserStatusWS) last.get(0)).getStatus());
+    }
+}
@@ -0,0 +1,108 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.entities.ChatRoom;
+import gabri.dev.chatapp.repositories.ChatRoomReadStateRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReadStateServiceTest {
+
+    private static final long ALICE = 1L;
+    private static final long BOB = 2L;
+    private static final long ROOM = 7L;
+    private static final long OTHER_ROOM = 8L;
+
+    private final ChatRoomReadStateRepository readStateRepository = mock(ChatRoomReadStateRepository.class);
+
+    private ReadStateService readStateService;
+
+    @BeforeEach
+    void setUp() {
+        readStateService = new ReadStateService(readStateRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    }
+
+    @Test
+    void marksOfTheSameRoomAreWrittenOnceWithTheHighestId() {
+        readStateService.markRead(ALICE, ROOM, 10L);
+        readStateService.markRead(ALICE, ROOM, 30L);
+        readStateService.markRead(ALICE, ROOM, 20L);
+        readStateService.markRead(BOB, ROOM, 15L);
+        readStateService.markRead(ALICE, OTHER_ROOM, 5L);
+
+        readStateService.flushPendingReads();
+
+        verify(readStateRepository).upsertLastRead(eq(ALICE), eq(ROOM), eq(30L), any(LocalDateTime.class));
+        verify(readStateRepository).upsertLastRead(eq(BOB), eq(ROOM), eq(15L), any(LocalDateTime.class));
+        verify(readStateRepository).upsertLastRead(eq(ALICE), eq(OTHER_ROOM), eq(5L), any(LocalDateTime.class));
+        verifyNoMoreInteractions(readStateRepository);
+    }
+
+    @Test
+    void flushWithoutPendingMarksDoesNotWrite() {
+        readStateService.markRead(ALICE, ROOM, 10L);
+        readStateService.flushPendingReads();
+        clearInvocations(readStateRepository);
+
+        readStateService.flushPendingReads();
+
+        verifyNoInteractions(readStateRepository);
+    }
+
+    @Test
+    void failedFlushKeepsTheMarksForTheNextOne() {
+        readStateService.markRead(ALICE, ROOM, 10L);
+        when(readStateRepository.upsertLastRead(anyLong(), anyLong(), anyLong(), any()))
+                .thenThrow(new IllegalStateException("database is locked"))
+                .thenReturn(1);
+
+        readStateService.flushPendingReads();
+        // Una marca más antigua que llega mientras tanto no pisa la devuelta a la cola
+        readStateService.markRead(ALICE, ROOM, 5L);
+        readStateService.flushPendingReads();
+
+        verify(readStateRepository, times(2)).upsertLastRead(eq(ALICE), eq(ROOM), eq(10L), any(LocalDateTime.class));
+        verify(readStateRepository, never()).upsertLastRead(eq(ALICE), eq(ROOM), eq(5L), any());
+    }
+
+    @Test
+    void pendingMarkCoveringTheLastMessageSkipsTheCount() {
+        readStateService.markRead(ALICE, ROOM, 30L);
+        readStateService.markRead(ALICE, OTHER_ROOM, 10L);
+        when(readStateRepository.countUnreadByChatRoomIds(ALICE, List.of(OTHER_ROOM)))
+                .thenReturn(List.<Object[]>of(new Object[]{OTHER_ROOM, 4L}));
+
+        Map<Long, Long> unread = readStateService.getUnreadCounts(ALICE, List.of(
+                room(ROOM, 30L), room(OTHER_ROOM, 20L), room(9L, null)));
+
+        assertEquals(Map.of(ROOM, 0L, OTHER_ROOM, 4L, 9L, 0L), unread);
+        verify(readStateRepository).countUnreadByChatRoomIds(ALICE, List.of(OTHER_ROOM));
+    }
+
+    @Test
+    void deletedStateDropsPendingMarks() {
+        readStateService.markRead(ALICE, ROOM, 10L);
+        readStateService.markRead(BOB, ROOM, 10L);
+        readStateService.markRead(ALICE, OTHER_ROOM, 10L);
+
+        readStateService.deleteChatRoomState(ROOM);
+        readStateService.deleteUserState(ALICE, OTHER_ROOM);
+        readStateService.flushPendingReads();
+
+        verify(readStateRepository, never()).upsertLastRead(anyLong(), anyLong(), anyLong(), any());
+    }
+
+    private static ChatRoom room(Long id, Long lastMessageId) {
+        return ChatRoom.builder().id(id).lastMessageId(lastMessageId).build();
+    }
+}
@@ -0,0 +1,265 @@
+package gabri.dev.chatapp.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gabri.dev.chatapp.cluster.ClusterResyncListener;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.mappers.MessageMapper;
+import gabri.dev.chatapp.mappers.UserMapper;
+import gabri.dev.chatapp.repositories.MessageRepository;
+import gabri.dev.chatapp.repositories.projections.MessageView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RecentMessageCacheTest {
+
+    private static final long ROOM = 7L;
+    private static final int WINDOW = 5;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 10, 0);
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final MessageMapper messageMapper = mock(MessageMapper.class);
+    private final UserCacheService userCache = mock(UserCacheService.class);
+    private final ClusterService clusterService = mock(ClusterService.class);
+    private final MessageArchiveService archive = mock(MessageArchiveService.class);
+
+    // Mensajes guardados en la base, en cualquier orden
+    private final List<MessageView> database = new CopyOnWriteArrayList<>();
+
+    private RecentMessageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(messageRepository.findLastMessagesByChatRoomId(eq(ROOM), any(Pageable.class))).thenAnswer(invocation ->
+                lastInDatabase(invocation.getArgument(1, Pageable.class).getPageSize()));
+        when(messageMapper.toDTO(any(MessageView.class))).thenAnswer(invocation -> {
+            MessageView view = invocation.getArgument(0);
+            return message(view.id(), view.content(), view.sentAt());
+        });
+        when(userCache.getById(anyLong())).thenReturn(Optional.empty());
+        when(archive.findBetween(anyLong(), any(), any(), anyInt())).thenReturn(List.of());
+
+        cache = new RecentMessageCache(messageRepository, messageMapper, userCache, mock(UserMapper.class),
+                clusterService, new ObjectMapper().findAndRegisterModules(), archive);
+        ReflectionTestUtils.setField(cache, "windowSize", WINDOW);
+        ReflectionTestUtils.setField(cache, "maxMemoryMb", 1L);
+        cache.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void secondReadIsServedFromTheWindow() {
+        saveAll(1, 3);
+
+        assertEquals(List.of(1L, 2L, 3L), ids(cache.getLastMessages(ROOM, WINDOW)));
+        assertEquals(List.of(2L, 3L), ids(cache.getLastMessages(ROOM, 2)));
+        verify(messageRepository, times(1)).findLastMessagesByChatRoomId(eq(ROOM), any());
+    }
+
+    @Test
+    void addedMessagesSlideTheWindowInOrder() {
+        saveAll(1, 5);
+        cache.getLastMessages(ROOM, WINDOW);
+
+        cache.messageAdded(save(7, "siete"));
+        cache.messageAdded(save(6, "seis"));
+        cache.messageAdded(message(7L, "siete", at(7)));
+
+        assertEquals(List.of(3L, 4L, 5L, 6L, 7L), ids(cache.getLastMessages(ROOM, WINDOW)));
+        verify(messageRepository, times(1)).findLastMessagesByChatRoomId(eq(ROOM), any());
+    }
+
+    @Test
+    void addIsAppliedOnlyAfterCommit() {
+        saveAll(1, 2);
+        cache.getLastMessages(ROOM, WINDOW);
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.messageAdded(save(3, "tres"));
+        assertEquals(List.of(1L, 2L), ids(cache.getLastMessages(ROOM, WINDOW)));
+
+        commit();
+        assertEquals(List.of(1L, 2L, 3L), ids(cache.getLastMessages(ROOM, WINDOW)));
+        verify(messageRepository, times(1)).findLastMessagesByChatRoomId(eq(ROOM), any());
+    }
+
+    @Test
+    void editReplacesOnlyMessagesInTheWindow() {
+        saveAll(1, 8);
+        cache.getLastMessages(ROOM, WINDOW);
+
+        cache.messageEdited(message(6L, "editado", at(6)));
+        cache.messageEdited(message(2L, "fuera de la ventana", at(2)));
+
+        List<MessageDTO> messages = cache.getLastMessages(ROOM, WINDOW);
+        assertEquals(List.of(4L, 5L, 6L, 7L, 8L), ids(messages));
+        assertEquals("editado", messages.get(2).getContent());
+        verify(messageRepository, times(1)).findLastMessagesByChatRoomId(eq(ROOM), any());
+    }
+
+    @Test
+    void deleteReloadsOnlyWhenTheWindowNoLongerCoversTheRequest() {
+        saveAll(1, 8);
+        cache.getLastMessages(ROOM, WINDOW);
+
+        delete(8);
+        cache.messageDeleted(ROOM, 2L);
+
+        // Con 4 mensajes en la ventana alcanza para pedir 4, no para pedir 5
+        assertEquals(List.of(4L, 5L, 6L, 7L), ids(cache.getLastMessages(ROOM, 4)));
+        verify(messageRepository, times(1)).findLastMessagesByChatRoomId(eq(ROOM), any());
+
+        assertEquals(List.of(3L, 4L, 5L, 6L, 7L), ids(cache.getLastMessages(ROOM, WINDOW)));
+        verify(messageRepository, times(2)).findLastMessagesByChatRoomId(eq(ROOM), any());
+    }
+
+    @Test
+    void completeRoomIsNotReloadedAfterDelete() {
+        saveAll(1, 3);
+        cache.getLastMessages(ROOM, WINDOW);
+
+        delete(2);
+
+        assertEquals(List.of(1L, 3L), ids(cache.getLastMessages(ROOM, WINDOW)));
+        verify(messageRepository, times(1)).findLastMessagesByChatRoomId(eq(ROOM), any());
+    }
+
+    @Test
+    void addCommittedDuringLoadIsMergedIntoTheWindow() throws Exception {
+        saveAll(1, 3);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(messageRepository.findLastMessagesByChatRoomId(eq(ROOM), any(Pageable.class))).thenAnswer(invocation -> {
+            // Lee la base antes del commit del mensaje nuevo y se demora hasta que se confirma
+            List<MessageView> before = lastInDatabase(invocation.getArgument(1, Pageable.class).getPageSize());
+            loading.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return before;
+        });
+
+        CompletableFuture<List<MessageDTO>> read = CompletableFuture.supplyAsync(() -> cache.getLastMessages(ROOM, WINDOW));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        TransactionSynchronizationManager.initSynchronization();
+        cache.messageAdded(save(4, "cuatro"));
+        commit();
+        release.countDown();
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(read.get(5, TimeUnit.SECONDS)));
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(cache.getLastMessages(ROOM, WINDOW)));
+        verify(messageRepository, times(1)).findLastMessagesByChatRoomId(eq(ROOM), any());
+    }
+
+    @Test
+    void editDuringLoadDiscardsWhatWasRead() throws Exception {
+        saveAll(1, 3);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(messageRepository.findLastMessagesByChatRoomId(eq(ROOM), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    List<MessageView> before = lastInDatabase(invocation.getArgument(1, Pageable.class).getPageSize());
+                    loading.countDown();
+                    assertTrue(release.await(5, TimeUnit.SECONDS));
+                    return before;
+                })
+                .thenAnswer(invocation -> lastInDatabase(invocation.getArgument(1, Pageable.class).getPageSize()));
+
+        CompletableFuture<List<MessageDTO>> read = CompletableFuture.supplyAsync(() -> cache.getLastMessages(ROOM, WINDOW));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        delete(2);
+        save(2, "editado");
+        cache.messageEdited(message(2L, "editado", at(2)));
+        release.countDown();
+
+        assertEquals("m2", read.get(5, TimeUnit.SECONDS).get(1).getContent());
+        assertEquals("editado", cache.getLastMessages(ROOM, WINDOW).get(1).getContent());
+        verify(messageRepository, times(2)).findLastMessagesByChatRoomId(eq(ROOM), any());
+    }
+
+    @Test
+    void resyncDropsEveryWindow() throws Exception {
+        ArgumentCaptor<ClusterResyncListener> resync = ArgumentCaptor.forClass(ClusterResyncListener.class);
+        verify(clusterService).addResyncListener(resync.capture());
+        saveAll(1, 3);
+        cache.getLastMessages(ROOM, WINDOW);
+
+        resync.getValue().resync();
+        cache.getLastMessages(ROOM, WINDOW);
+
+        verify(messageRepository, times(2)).findLastMessagesByChatRoomId(eq(ROOM), any());
+    }
+
+    private static void commit() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+    }
+
+    private List<MessageView> lastInDatabase(int limit) {
+        return database.stream()
+                .sorted(Comparator.comparing(MessageView::sentAt).thenComparing(MessageView::id).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private void saveAll(int fromId, int toId) {
+        for (int id = fromId; id <= toId; id++) {
+            save(id, "m" + id);
+        }
+    }
+
+    private MessageDTO save(long id, String content) {
+        database.add(new MessageView(id, content, Message.MessageType.CHAT, at(id), null, false, ROOM,
+                1L, "alice", "alice@example.com", null, null, null, true, START, null));
+        return message(id, content, at(id));
+    }
+
+    private void delete(long id) {
+        database.removeIf(view -> view.id() == id);
+        cache.messageDeleted(ROOM, id);
+    }
+
+    private static MessageDTO message(Long id, String content, LocalDateTime sentAt) {
+        return MessageDTO.builder()
+                .id(id)
+                .content(content)
+                .type(Message.MessageType.CHAT)
+                .sentAt(sentAt)
+                .isEdited(false)
+                .chatRoomId(ROOM)
+                .build();
+    }
+
+    private static LocalDateTime at(long minute) {
+        return START.plusMinutes(minute);
+    }
+
+    private static List<Long> ids(List<MessageDTO> messages) {
+        return messages.stream().map(MessageDTO::getId).toList();
+    }
+}
@@ -0,0 +1,147 @@
+package gabri.dev.chatapp.services;
+
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserCacheServiceTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final ClusterService clusterService = mock(ClusterService.class);
+
+    private UserCacheService cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new UserCacheService(userRepository, clusterService);
+        ReflectionTestUtils.setField(cache, "maxSize", 100L);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+        cache.init();
+    }
+
+    @Test
+    void eachCallGetsItsOwnCopy() {
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user(1L, "alice", "a.png")));
+        cache.getById(1L);
+
+        User first = cache.getById(1L).orElseThrow();
+        first.setAvatarUrl("modificado.png");
+        User second = cache.getById(1L).orElseThrow();
+
+        assertNotSame(first, second);
+        assertEquals("a.png", second.getAvatarUrl());
+        verify(userRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void usernameLookupSharesTheEntryById() {
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user(1L, "alice", "a.png")));
+        cache.getByUsername("alice");
+
+        assertEquals("alice", cache.getById(1L).orElseThrow().getUsername());
+        assertEquals(1L, cache.getByUsername("alice").orElseThrow().getId());
+        verify(userRepository, never()).findById(1L);
+        verify(userRepository, times(1)).findByUsername("alice");
+    }
+
+    @Test
+    void evictionForcesReload() {
+        when(userRepository.findById(1L))
+                .thenReturn(Optional.of(user(1L, "alice", "a.png")))
+                .thenReturn(Optional.of(user(1L, "alice", "b.png")));
+        cache.getById(1L);
+
+        cache.evict(1L, "alice");
+
+        assertEquals("b.png", cache.getById(1L).orElseThrow().getAvatarUrl());
+        verify(clusterService).broadcast(any());
+    }
+
+    @Test
+    void evictionListenersHearLocalAndClusterEvictions() throws Exception {
+        UserCacheService.EvictionListener listener = mock(UserCacheService.EvictionListener.class);
+        cache.addEvictionListener(listener);
+
+        cache.evict(1L, "alice");
+        cache.invalidateAll();
+
+        verify(listener).evicted(1L);
+        verify(listener).evictedAll();
+    }
+
+    @Test
+    void loadStartedBeforeEvictionIsNotCached() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch evicted = new CountDownLatch(1);
+        when(userRepository.findById(1L))
+                .thenAnswer(invocation -> {
+                    // Lee la versión anterior y se demora hasta que el cambio ya se guardó
+                    loading.countDown();
+                    assertTrue(evicted.await(5, TimeUnit.SECONDS));
+                    return Optional.of(user(1L, "alice", "a.png"));
+                })
+                .thenReturn(Optional.of(user(1L, "alice", "b.png")));
+
+        CompletableFuture<Optional<User>> staleLoad = CompletableFuture.supplyAsync(() -> cache.getById(1L));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.evict(1L, "alice");
+        evicted.countDown();
+
+        assertEquals("a.png", staleLoad.get(5, TimeUnit.SECONDS).orElseThrow().getAvatarUrl());
+        assertEquals("b.png", cache.getById(1L).orElseThrow().getAvatarUrl());
+        assertEquals("b.png", cache.getById(1L).orElseThrow().getAvatarUrl());
+        verify(userRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void resyncDropsEveryEntry() {
+        when(userRepository.findById(1L))
+                .thenReturn(Optional.of(user(1L, "alice", "a.png")))
+                .thenReturn(Optional.of(user(1L, "alice", "b.png")));
+        when(userRepository.findByUsername("bob")).thenReturn(Optional.of(user(2L, "bob", "c.png")));
+        cache.getById(1L);
+        cache.getByUsername("bob");
+
+        cache.invalidateAll();
+
+        assertEquals("b.png", cache.getById(1L).orElseThrow().getAvatarUrl());
+        cache.getByUsername("bob");
+        verify(userRepository, times(2)).findByUsername("bob");
+        verify(clusterService, never()).broadcast(any());
+    }
+
+    @Test
+    void renamedUserIsNotServedUnderTheOldUsername() {
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user(1L, "alice", "a.png")));
+        when(userRepository.findByUsername("alicia")).thenReturn(Optional.of(user(1L, "alicia", "a.png")));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user(1L, "alicia", "a.png")));
+        cache.getByUsername("alice");
+
+        cache.evict(1L, "alicia");
+        cache.getById(1L);
+
+        assertEquals("alice", cache.getByUsername("alice").orElseThrow().getUsername());
+        verify(userRepository, times(2)).findByUsername("alice");
+    }
+
+    private static User user(Long id, String username, String avatarUrl) {
+        return User.builder()
+                .id(id)
+                .username(username)
+                .email(username + "@example.com")
+                .password("hash")
+                .avatarUrl(avatarUrl)
+                .build();
+    }
+}
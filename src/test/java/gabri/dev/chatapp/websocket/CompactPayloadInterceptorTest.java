@@ -0,0 +1,193 @@
+package gabri.dev.chatapp.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import gabri.dev.chatapp.dtos.websocket.ChatMessageWS;
+import gabri.dev.chatapp.dtos.websocket.CompactMessageWS;
+import gabri.dev.chatapp.dtos.websocket.CompactReplayWS;
+import gabri.dev.chatapp.dtos.websocket.RoomEventWS;
+import gabri.dev.chatapp.dtos.websocket.RoomReplayWS;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.services.UserCacheService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CompactPayloadInterceptorTest {
+
+    private static final LocalDateTime SENT_AT = LocalDateTime.of(2024, 1, 1, 10, 0);
+    private static final LocalDateTime EDITED_AT = LocalDateTime.of(2024, 1, 1, 10, 5);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final CBORMapper cborMapper = new CBORMapper();
+    private final UserCacheService userCache = mock(UserCacheService.class);
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    private CompactPayloadInterceptor interceptor;
+    private UserCacheService.EvictionListener evictionListener;
+
+    @BeforeEach
+    void setUp() {
+        interceptor = new CompactPayloadInterceptor(objectMapper, userCache);
+        ReflectionTestUtils.setField(interceptor, "enabled", true);
+        interceptor.init();
+
+        ArgumentCaptor<UserCacheService.EvictionListener> listener =
+                ArgumentCaptor.forClass(UserCacheService.EvictionListener.class);
+        verify(userCache).addEvictionListener(listener.capture());
+        evictionListener = listener.getValue();
+    }
+
+    @Test
+    void roomMessageRoundTripsThroughCbor() throws Exception {
+        connect("s1", "cbor");
+
+        org.springframework.messaging.Message<?> sent = send("s1", "/topic/chatroom/7/edited", message(10L, 1L, "alice"));
+
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(sent);
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, headers.getContentType());
+        assertEquals("cbor", headers.getFirstNativeHeader(CompactPayloadInterceptor.FORMAT_HEADER));
+
+        CompactMessageWS compact = cborMapper.readValue((byte[]) sent.getPayload(), CompactMessageWS.class);
+        assertEquals(10L, compact.getId());
+        assertEquals(7L, compact.getChatRoomId());
+        assertEquals(1L, compact.getSenderId());
+        assertEquals("hola", compact.getContent());
+        assertEquals("CHAT", compact.getType());
+        assertEquals(millis(SENT_AT), compact.getSentAt());
+        assertTrue(compact.getIsEdited());
+        assertEquals(millis(EDITED_AT), compact.getEditedAt());
+        assertEquals(3L, compact.getSeq());
+        assertEquals(99L, compact.getEpoch());
+        assertEquals(new CompactMessageWS.Sender(1L, "alice", "a.png"), compact.getSender());
+    }
+
+    @Test
+    void senderIsSentOncePerSession() throws Exception {
+        connect("s1", "cbor");
+        connect("s2", "cbor");
+
+        assertNotNull(decode(send("s1", "/topic/chatroom/7", message(10L, 1L, "alice"))).getSender());
+        assertNull(decode(send("s1", "/topic/chatroom/7", message(11L, 1L, "alice"))).getSender());
+        assertNotNull(decode(send("s2", "/topic/chatroom/7", message(11L, 1L, "alice"))).getSender());
+    }
+
+    @Test
+    void evictedSenderIsSentAgainWithItsNewData() throws Exception {
+        connect("s1", "cbor");
+        send("s1", "/topic/chatroom/7", message(10L, 1L, "alice"));
+        send("s1", "/topic/chatroom/7", message(11L, 2L, "bob"));
+
+        evictionListener.evicted(1L);
+
+        assertEquals("alicia", decode(send("s1", "/topic/chatroom/7", message(12L, 1L, "alicia"))).getSender().getUsername());
+        assertNull(decode(send("s1", "/topic/chatroom/7", message(13L, 2L, "bob"))).getSender());
+
+        evictionListener.evictedAll();
+        assertNotNull(decode(send("s1", "/topic/chatroom/7", message(14L, 2L, "bob"))).getSender());
+    }
+
+    @Test
+    void replayRoundTripsThroughCbor() throws Exception {
+        connect("s1", "cbor");
+        RoomReplayWS replay = new RoomReplayWS(7L, 99L, 4L, false, List.of(
+                new RoomEventWS(RoomEventWS.Kind.MESSAGE, message(10L, 1L, "alice")),
+                new RoomEventWS(RoomEventWS.Kind.EDITED, message(10L, 1L, "alice"))));
+
+        org.springframework.messaging.Message<?> sent = send("s1", "/user/queue/replay", replay);
+
+        CompactReplayWS compact = cborMapper.readValue((byte[]) sent.getPayload(), CompactReplayWS.class);
+        assertEquals(7L, compact.getChatRoomId());
+        assertEquals(99L, compact.getEpoch());
+        assertEquals(4L, compact.getLastSeq());
+        assertFalse(compact.getResync());
+        assertEquals(2, compact.getEvents().size());
+        assertEquals(RoomEventWS.Kind.EDITED, compact.getEvents().get(1).getKind());
+        assertNotNull(compact.getEvents().get(0).getMessage().getSender());
+        assertNull(compact.getEvents().get(1).getMessage().getSender());
+        assertEquals(millis(EDITED_AT), compact.getEvents().get(1).getMessage().getEditedAt());
+    }
+
+    @Test
+    void sessionsWithoutTheHeaderKeepJson() throws Exception {
+        connect("s1", null);
+        byte[] json = objectMapper.writeValueAsBytes(message(10L, 1L, "alice"));
+        org.springframework.messaging.Message<byte[]> message = messageTo("s1", "/topic/chatroom/7", json);
+
+        assertSame(message, interceptor.preSend(message, channel));
+    }
+
+    @Test
+    void otherDestinationsKeepJson() throws Exception {
+        connect("s1", "cbor");
+        byte[] json = objectMapper.writeValueAsBytes(message(10L, 1L, "alice"));
+        org.springframework.messaging.Message<byte[]> message = messageTo("s1", "/topic/chatroom/7/typing", json);
+
+        assertSame(message, interceptor.preSend(message, channel));
+    }
+
+    private void connect(String sessionId, String format) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(new HashMap<>());
+        if (format != null) {
+            accessor.setNativeHeader(CompactPayloadInterceptor.FORMAT_HEADER, format);
+        }
+        interceptor.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), channel);
+    }
+
+    private org.springframework.messaging.Message<?> send(String sessionId, String destination, Object payload)
+            throws Exception {
+        return interceptor.preSend(messageTo(sessionId, destination, objectMapper.writeValueAsBytes(payload)), channel);
+    }
+
+    private static org.springframework.messaging.Message<byte[]> messageTo(String sessionId, String destination,
+                                                                            byte[] payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private CompactMessageWS decode(org.springframework.messaging.Message<?> message) throws Exception {
+        return cborMapper.readValue((byte[]) message.getPayload(), CompactMessageWS.class);
+    }
+
+    private static ChatMessageWS message(Long id, Long senderId, String senderUsername) {
+        return ChatMessageWS.builder()
+                .id(id)
+                .chatRoomId(7L)
+                .senderId(senderId)
+                .senderUsername(senderUsername)
+                .senderAvatarUrl("a.png")
+                .content("hola")
+                .type(Message.MessageType.CHAT)
+                .sentAt(SENT_AT)
+                .isEdited(true)
+                .editedAt(EDITED_AT)
+                .seq(3L)
+                .epoch(99L)
+                .build();
+    }
+
+    private static Long millis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
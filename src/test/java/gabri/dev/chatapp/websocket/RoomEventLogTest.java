@@ -0,0 +1,159 @@
+package gabri.dev.chatapp.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gabri.dev.chatapp.cluster.ClusterResyncListener;
+import gabri.dev.chatapp.cluster.ClusterService;
+import gabri.dev.chatapp.dtos.websocket.ChatMessageWS;
+import gabri.dev.chatapp.dtos.websocket.RoomEventWS;
+import gabri.dev.chatapp.dtos.websocket.RoomReplayWS;
+import gabri.dev.chatapp.dtos.websocket.RoomResumeWS;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RoomEventLogTest {
+
+    private static final long ROOM = 7L;
+    private static final int LOG_SIZE = 3;
+
+    private final WebSocketNotificationService notificationService = mock(WebSocketNotificationService.class);
+    private final ClusterService clusterService = mock(ClusterService.class);
+
+    private RoomEventLog eventLog;
+
+    @BeforeEach
+    void setUp() {
+        eventLog = new RoomEventLog(notificationService, clusterService, new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(eventLog, "logSize", LOG_SIZE);
+        ReflectionTestUtils.setField(eventLog, "maxRooms", 10L);
+        eventLog.init();
+    }
+
+    @Test
+    void eventsAreNumberedConsecutivelyInOneEpoch() {
+        ChatMessageWS first = publish(RoomEventWS.Kind.MESSAGE, 1L);
+        ChatMessageWS edited = publish(RoomEventWS.Kind.EDITED, 1L);
+        ChatMessageWS deleted = publish(RoomEventWS.Kind.DELETED, 1L);
+
+        assertEquals(List.of(1L, 2L, 3L), List.of(first.getSeq(), edited.getSeq(), deleted.getSeq()));
+        assertNotNull(first.getEpoch());
+        assertEquals(first.getEpoch(), deleted.getEpoch());
+        verify(notificationService).sendMessageToRoom(ROOM, first);
+        verify(notificationService).sendEditedMessage(ROOM, edited);
+        verify(notificationService).sendDeletedMessage(ROOM, deleted);
+    }
+
+    @Test
+    void roomsAreNumberedIndependently() {
+        publish(RoomEventWS.Kind.MESSAGE, 1L);
+        ChatMessageWS other = ChatMessageWS.builder().id(2L).chatRoomId(8L).build();
+        eventLog.publish(8L, RoomEventWS.Kind.MESSAGE, other);
+
+        assertEquals(1L, other.getSeq());
+    }
+
+    @Test
+    void resumeReplaysOnlyEventsAfterLastSeq() {
+        ChatMessageWS first = publish(RoomEventWS.Kind.MESSAGE, 1L);
+        publish(RoomEventWS.Kind.MESSAGE, 2L);
+        publish(RoomEventWS.Kind.EDITED, 1L);
+
+        RoomReplayWS replay = resume(first.getEpoch(), 1L);
+
+        assertFalse(replay.getResync());
+        assertEquals(3L, replay.getLastSeq());
+        assertEquals(List.of(2L, 3L), seqs(replay));
+        assertEquals(RoomEventWS.Kind.EDITED, replay.getEvents().get(1).getKind());
+    }
+
+    @Test
+    void resumeUpToDateReplaysNothing() {
+        ChatMessageWS last = publish(RoomEventWS.Kind.MESSAGE, 1L);
+
+        RoomReplayWS replay = resume(last.getEpoch(), last.getSeq());
+
+        assertFalse(replay.getResync());
+        assertTrue(replay.getEvents().isEmpty());
+    }
+
+    @Test
+    void gapOlderThanTheLogAsksForResync() {
+        ChatMessageWS first = publish(RoomEventWS.Kind.MESSAGE, 1L);
+        for (long id = 2; id <= 5; id++) {
+            publish(RoomEventWS.Kind.MESSAGE, id);
+        }
+
+        // Quedan en memoria los seq 3 a 5: desde el 2 se cubre, desde el 1 no
+        RoomReplayWS covered = resume(first.getEpoch(), 2L);
+        assertFalse(covered.getResync());
+        assertEquals(List.of(3L, 4L, 5L), seqs(covered));
+
+        RoomReplayWS gap = resume(first.getEpoch(), 1L);
+        assertTrue(gap.getResync());
+        assertTrue(gap.getEvents().isEmpty());
+        assertEquals(5L, gap.getLastSeq());
+    }
+
+    @Test
+    void otherEpochOrUnknownSeqAsksForResync() {
+        ChatMessageWS first = publish(RoomEventWS.Kind.MESSAGE, 1L);
+
+        assertTrue(resume(first.getEpoch() + 1, 1L).getResync());
+        assertTrue(resume(first.getEpoch(), 2L).getResync());
+        assertTrue(resume(null, null).getResync());
+        assertEquals(first.getEpoch(), resume(null, null).getEpoch());
+    }
+
+    @Test
+    void clusterResyncStartsANewNumbering() throws Exception {
+        ArgumentCaptor<ClusterResyncListener> resync = ArgumentCaptor.forClass(ClusterResyncListener.class);
+        verify(clusterService).addResyncListener(resync.capture());
+        ChatMessageWS before = publish(RoomEventWS.Kind.MESSAGE, 1L);
+
+        resync.getValue().resync();
+        ChatMessageWS after = publish(RoomEventWS.Kind.MESSAGE, 2L);
+
+        assertEquals(1L, after.getSeq());
+        assertNotEquals(before.getEpoch(), after.getEpoch());
+        assertTrue(resume(before.getEpoch(), before.getSeq()).getResync());
+    }
+
+    @Test
+    void roomOwnedByAnotherNodeIsForwardedWithoutNumbering() {
+        when(clusterService.isEnabled()).thenReturn(true);
+        when(clusterService.isOwner(ROOM)).thenReturn(false);
+        when(clusterService.ownerOf(ROOM)).thenReturn("B");
+        when(clusterService.send(eq("B"), any())).thenReturn(true);
+
+        ChatMessageWS message = publish(RoomEventWS.Kind.MESSAGE, 1L);
+
+        assertNull(message.getSeq());
+        verify(clusterService).send(eq("B"), any());
+        verifyNoInteractions(notificationService);
+    }
+
+    private ChatMessageWS publish(RoomEventWS.Kind kind, Long messageId) {
+        ChatMessageWS message = ChatMessageWS.builder().id(messageId).chatRoomId(ROOM).build();
+        eventLog.publish(ROOM, kind, message);
+        return message;
+    }
+
+    private RoomReplayWS resume(Long epoch, Long lastSeq) {
+        clearInvocations(notificationService);
+        eventLog.resume(ROOM, "s1", new RoomResumeWS(epoch, lastSeq));
+        ArgumentCaptor<RoomReplayWS> replay = ArgumentCaptor.forClass(RoomReplayWS.class);
+        verify(notificationService).sendReplay(eq("s1"), replay.capture());
+        return replay.getValue();
+    }
+
+    private static List<Long> seqs(RoomReplayWS replay) {
+        return replay.getEvents().stream().map(event -> event.getMessage().getSeq()).toList();
+    }
+}
@@ -0,0 +1,141 @@
+package gabri.dev.chatapp.websocket;
+
+import gabri.dev.chatapp.dtos.MessageDTO;
+import gabri.dev.chatapp.dtos.MessageEditDTO;
+import gabri.dev.chatapp.dtos.UserDTO;
+import gabri.dev.chatapp.dtos.websocket.ChatMessageWS;
+import gabri.dev.chatapp.dtos.websocket.RoomEventWS;
+import gabri.dev.chatapp.entities.Message;
+import gabri.dev.chatapp.entities.User;
+import gabri.dev.chatapp.exceptions.MessageNotFoundException;
+import gabri.dev.chatapp.exceptions.UnauthorizedException;
+import gabri.dev.chatapp.services.ChatRoomMembershipService;
+import gabri.dev.chatapp.services.ChatRoomService;
+import gabri.dev.chatapp.services.MessageIngestService;
+import gabri.dev.chatapp.services.MessageService;
+import gabri.dev.chatapp.services.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.security.Principal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WebSocketChatControllerTest {
+
+    private static final long ROOM = 7L;
+    private static final long ALICE = 1L;
+
+    private final MessageService messageService = mock(MessageService.class);
+    private final RoomEventLog roomEventLog = mock(RoomEventLog.class);
+    private final ChatRoomMembershipService membershipService = mock(ChatRoomMembershipService.class);
+    private final UserService userService = mock(UserService.class);
+    private final Principal principal = () -> "alice";
+    private final User alice = User.builder().id(ALICE).username("alice").build();
+
+    private WebSocketChatController controller;
+
+    @BeforeEach
+    void setUp() {
+        when(userService.resolveUserId(principal)).thenReturn(ALICE);
+        when(userService.getUserEntityById(ALICE)).thenReturn(alice);
+        when(membershipService.isParticipant(ROOM, ALICE)).thenReturn(true);
+
+        controller = new WebSocketChatController(mock(MessageIngestService.class), messageService,
+                mock(WebSocketNotificationService.class), roomEventLog, mock(ChatRoomService.class),
+                membershipService, mock(TypingIndicatorService.class), userService, mock(ThreadPoolTaskExecutor.class));
+    }
+
+    @Test
+    void editPublishesTheSavedMessageAndNotThePayload() {
+        when(messageService.editMessage(eq(ROOM), eq(10L), any(MessageEditDTO.class), eq(alice)))
+                .thenReturn(MessageDTO.builder()
+                        .id(10L)
+                        .chatRoomId(ROOM)
+                        .content("nuevo")
+                        .type(Message.MessageType.CHAT)
+                        .sentAt(LocalDateTime.of(2024, 1, 1, 10, 0))
+                        .isEdited(true)
+                        .sender(UserDTO.builder().id(ALICE).username("alice").build())
+                        .build());
+
+        controller.handleEditMessage(ROOM, ChatMessageWS.builder()
+                .id(10L)
+                .content("nuevo")
+                .senderId(99L)
+                .senderUsername("bob")
+                .sentAt(LocalDateTime.of(2030, 1, 1, 0, 0))
+                .build(), principal);
+
+        ArgumentCaptor<ChatMessageWS> published = ArgumentCaptor.forClass(ChatMessageWS.class);
+        verify(roomEventLog).publish(eq(ROOM), eq(RoomEventWS.Kind.EDITED), published.capture());
+        assertEquals(ALICE, published.getValue().getSenderId());
+        assertEquals("alice", published.getValue().getSenderUsername());
+        assertEquals(LocalDateTime.of(2024, 1, 1, 10, 0), published.getValue().getSentAt());
+        assertTrue(published.getValue().getIsEdited());
+    }
+
+    @Test
+    void editFromNonParticipantIsIgnored() {
+        when(membershipService.isParticipant(ROOM, ALICE)).thenReturn(false);
+
+        controller.handleEditMessage(ROOM, ChatMessageWS.builder().id(10L).content("nuevo").build(), principal);
+
+        verifyNoInteractions(messageService, roomEventLog);
+    }
+
+    @Test
+    void editRejectedByTheServiceIsNotPublished() {
+        when(messageService.editMessage(eq(ROOM), eq(10L), any(MessageEditDTO.class), eq(alice)))
+                .thenThrow(new UnauthorizedException("Solo puedes editar tus propios mensajes"));
+
+        controller.handleEditMessage(ROOM, ChatMessageWS.builder().id(10L).content("nuevo").build(), principal);
+
+        verifyNoInteractions(roomEventLog);
+    }
+
+    @Test
+    void deleteOfAnotherUsersMessageIsNotPublished() {
+        doThrow(new UnauthorizedException("Solo puedes eliminar tus propios mensajes"))
+                .when(messageService).deleteMessage(ROOM, 10L, alice);
+
+        controller.handleDeleteMessage(ROOM, 10L, principal);
+
+        verifyNoInteractions(roomEventLog);
+    }
+
+    @Test
+    void deleteFromNonParticipantIsIgnored() {
+        when(membershipService.isParticipant(ROOM, ALICE)).thenReturn(false);
+
+        controller.handleDeleteMessage(ROOM, 10L, principal);
+
+        verifyNoInteractions(messageService, roomEventLog);
+    }
+
+    @Test
+    void deleteIsPublishedOnlyAfterTheServiceDeletesTheMessage() {
+        controller.handleDeleteMessage(ROOM, 10L, principal);
+
+        ArgumentCaptor<ChatMessageWS> published = ArgumentCaptor.forClass(ChatMessageWS.class);
+        verify(messageService).deleteMessage(ROOM, 10L, alice);
+        verify(roomEventLog).publish(eq(ROOM), eq(RoomEventWS.Kind.DELETED), published.capture());
+        assertEquals(10L, published.getValue().getId());
+        assertEquals(ROOM, published.getValue().getChatRoomId());
+    }
+
+    @Test
+    void deleteOfAMissingOrForeignMessageIsNotPublished() {
+        // El servicio responde igual a un ID inexistente y a uno de otra sala
+        doThrow(new MessageNotFoundException(11L)).when(messageService).deleteMessage(ROOM, 11L, alice);
+
+        controller.handleDeleteMessage(ROOM, 11L, principal);
+
+        verifyNoInteractions(roomEventLog);
+    }
+}
@@ -0,0 +1,12 @@
+-- Esquema que generaba Hibernate (ddl-auto=update) en la última versión sin migraciones,
+-- copiado de sqlite_master de una base creada por esa versión.
+
+CREATE TABLE chat_room_participants (chat_room_id bigint not null, user_id bigint not null, primary key (chat_room_id, user_id));
+
+CREATE TABLE chat_rooms (id integer, created_at timestamp not null, description varchar(500), image_url varchar(500), name varchar(100) not null unique, type varchar(255) not null check (type in ('PRIVATE','GROUP')), updated_at timestamp, created_by_user_id bigint, primary key (id));
+
+CREATE TABLE messages (id integer, content TEXT not null, edited_at timestamp, is_edited boolean not null, sent_at timestamp not null, type varchar(255) not null check (type in ('CHAT','JOIN','LEAVE','SYSTEM','FILE','IMAGE')), chat_room_id bigint not null, sender_id bigint not null, primary key (id));
+
+CREATE TABLE users (id integer, avatar_url varchar(500), created_at timestamp not null, email varchar(100) not null unique, email_verified boolean not null, enabled boolean not null, full_name varchar(100), last_seen_at timestamp, password varchar(255) not null, status varchar(255) not null check (status in ('ONLINE','OFFLINE','AWAY','BUSY')), updated_at timestamp, username varchar(50) not null unique, verification_token varchar(255) unique, primary key (id));
+
+CREATE TABLE verification_tokens (id integer, created_at timestamp not null, token varchar(255) not null unique, used boolean not null, user_id bigint not null unique, primary key (id));